@@ -29,14 +29,17 @@ import com.sun.labs.util.props.ConfigComponent;
 import com.sun.labs.util.props.ConfigComponentList;
 import com.sun.labs.util.props.ConfigInteger;
 import com.sun.labs.util.props.ConfigString;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
 import com.sun.labs.util.props.Configurable;
 import com.sun.labs.util.props.PropertyException;
 import com.sun.labs.util.props.PropertySheet;
 import com.sun.labs.minion.engine.SearchEngineImpl;
+import com.sun.labs.minion.indexer.dictionary.QueryTimerTask;
 import com.sun.labs.minion.knowledge.KnowledgeSource;
 import com.sun.labs.minion.lexmorph.LiteMorph_en;
 import com.sun.labs.minion.pipeline.StopWords;
@@ -44,6 +47,7 @@ import com.sun.labs.minion.retrieval.CollectionStats;
 import com.sun.labs.minion.retrieval.TFIDF;
 import com.sun.labs.minion.retrieval.WeightingComponents;
 import com.sun.labs.minion.retrieval.WeightingFunction;
+import com.sun.labs.minion.retrieval.cache.EntryCache;
 import com.sun.labs.minion.util.CharUtils;
 import java.util.ArrayList;
 import java.util.logging.Level;
@@ -147,6 +151,16 @@ public class QueryConfig implements Cloneable,
     public static final String PROP_KNOWLEDGE_SOURCE =
             "knowledge_source";
 
+    /**
+     * The property indicating whether boolean queries should be evaluated a
+     * document at a time, by stepping through the postings for the query
+     * terms together, rather than by building a group of documents for
+     * each element of the query.
+     */
+    @ConfigBoolean(defaultValue = false)
+    public static final String PROP_DOCUMENT_AT_A_TIME =
+            "document_at_a_time";
+
     /**
      * The search engine associated with the collection that we're
      * querying.
@@ -223,6 +237,17 @@ public class QueryConfig implements Cloneable,
      */
     protected long maxQueryTime = -1;
 
+    /**
+     * The timer for the query using this configuration, if there is a
+     * maximum query time.
+     */
+    protected volatile QueryTimerTask queryTimer;
+
+    /**
+     * Whether to evaluate boolean queries a document at a time.
+     */
+    protected boolean documentAtATime;
+
     /**
      * A string representation of the sorting specification to use for
      * sorting results.
@@ -262,6 +287,12 @@ public class QueryConfig implements Cloneable,
     protected KnowledgeSource knowledgeSource =
             LiteMorph_en.getMorph();
 
+    /**
+     * A cache of dictionary entries shared by the queries in a batch, or
+     * <code>null</code> if the query isn't part of a batch.
+     */
+    protected EntryCache entryCache;
+
     /**
      * Our log.
      */
@@ -522,6 +553,25 @@ public class QueryConfig implements Cloneable,
         return boostPerfectProx;
     }
 
+    /**
+     * Gets whether boolean queries will be evaluated a document at a time.
+     * @return <code>true</code> if queries consisting of terms combined with
+     * <code>and</code>, <code>or</code> and <code>not</code> will be
+     * evaluated a document at a time.
+     */
+    public boolean getDocumentAtATime() {
+        return documentAtATime;
+    }
+
+    /**
+     * Sets whether boolean queries will be evaluated a document at a time.
+     * @param documentAtATime if <code>true</code>, queries that can be
+     * evaluated a document at a time will be.
+     */
+    public void setDocumentAtATime(boolean documentAtATime) {
+        this.documentAtATime = documentAtATime;
+    }
+
     /**
      * Sets the sorting specification.
      * @param sortSpec the sorting specification to use for this query
@@ -555,6 +605,28 @@ public class QueryConfig implements Cloneable,
         return knowledgeSource;
     }
 
+    /**
+     * Gets the cache of dictionary entries shared by the queries in the batch
+     * that a query using this configuration is part of.
+     *
+     * @return the cache, or <code>null</code> if the query isn't part of a
+     * batch.
+     */
+    public EntryCache getEntryCache() {
+        return entryCache;
+    }
+
+    /**
+     * Sets the cache of dictionary entries to use when evaluating a query.
+     * This should only be called on a copy of the engine's configuration
+     * that is used for a query in a batch.
+     *
+     * @param entryCache the cache of entries shared by the batch
+     */
+    public void setEntryCache(EntryCache entryCache) {
+        this.entryCache = entryCache;
+    }
+
     /**
      * Clones the query configuration.
      */
@@ -563,6 +635,7 @@ public class QueryConfig implements Cloneable,
         try {
             result = (QueryConfig) super.clone();
             result.defaultFields = new ArrayList<FieldInfo>(defaultFields);
+            result.queryTimer = null;
         } catch(CloneNotSupportedException ex) {
             throw new InternalError();
         }
@@ -585,6 +658,7 @@ public class QueryConfig implements Cloneable,
         setFieldCross(ps.getBoolean(PROP_FIELD_CROSS));
         setBoostPerfectProximity(ps.getBoolean(PROP_BOOST_PERFECT_PROXIMITY));
         setAllUpperIsCI(ps.getBoolean(PROP_ALL_UPPER_IS_CI));
+        setDocumentAtATime(ps.getBoolean(PROP_DOCUMENT_AT_A_TIME));
         vectorZeroWords =
                 (StopWords) ps.getComponent(PROP_VECTOR_ZERO_WORDS);
         setFieldMultipliers((List<FieldMultiplier>) ps.getComponentList(PROP_FIELD_MULTIPLIERS));
@@ -621,10 +695,99 @@ public class QueryConfig implements Cloneable,
         setFieldMultipliers(map);
     }
 
-    private void setMaxQueryTime(long maxQueryTime) {
+    /**
+     * Gets the maximum amount of time to spend on a query.
+     * @return the maximum time, in milliseconds.  Less than zero indicates
+     * that there is no maximum.
+     */
+    public long getMaxQueryTime() {
+        return maxQueryTime;
+    }
+
+    /**
+     * Sets the maximum amount of time to spend on a query.  When the time
+     * runs out, the evaluation of the query stops and the results found so
+     * far are returned.
+     * @param maxQueryTime the maximum time, in milliseconds.  Less than or
+     * equal to zero indicates that there is no maximum.
+     */
+    public void setMaxQueryTime(long maxQueryTime) {
         this.maxQueryTime = maxQueryTime;
     }
 
+    /**
+     * Starts timing a query that will be evaluated with this configuration,
+     * if there is a maximum query time and the query isn't already being
+     * timed.  This should only be called on a copy of the engine's
+     * configuration that is used for a single query.
+     *
+     * @param timer the timer to use to time the query.
+     * @return <code>true</code> if this call started the timer, in which case
+     * the caller should call {@link #stopQueryTimer} when it is done.
+     */
+    public synchronized boolean startQueryTimer(Timer timer) {
+        if(maxQueryTime > 0 && queryTimer == null) {
+            queryTimer = new QueryTimerTask();
+            timer.schedule(queryTimer, maxQueryTime);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stops timing the query, cancelling the timer task so that it doesn't
+     * hang around in the timer's queue.  After this, {@link #timedOut} will
+     * return <code>false</code> until the timer is started again.
+     */
+    public synchronized void stopQueryTimer() {
+        if(queryTimer != null) {
+            queryTimer.cancel();
+            queryTimer = null;
+        }
+    }
+
+    /**
+     * Indicates whether the time allowed for the query using this
+     * configuration has run out.  This is cheap enough to check during the
+     * evaluation of a query.
+     *
+     * @return <code>true</code> if the query has run out of time,
+     * <code>false</code> otherwise.
+     * @see #startQueryTimer
+     */
+    public boolean timedOut() {
+        QueryTimerTask qtt = queryTimer;
+        return qtt != null && qtt.timedOut;
+    }
+
+    /**
+     * Gets the settings in this configuration that can change the results
+     * of a query.  Two configurations with equal settings will find the same
+     * documents with the same scores for a query, so results computed with
+     * one of them can be reused for the other.  The time limits are left
+     * out, since results that ran out of time are never reused.
+     *
+     * @return a list of the settings, suitable for comparing with
+     * <code>equals</code> and for hashing.
+     */
+    public List<Object> getResultSettings() {
+        List<String> dfs = new ArrayList<String>();
+        if(defaultFields != null) {
+            for(FieldInfo fi : defaultFields) {
+                dfs.add(fi.getName());
+            }
+        }
+        return Arrays.<Object>asList(
+                wf == null ? null : wf.getClass(),
+                wc == null ? null : wc.getClass(),
+                knowledgeSource == null ? null : knowledgeSource.getClass(),
+                fieldMultipliers == null ? null
+                        : new HashMap<String, Float>(fieldMultipliers),
+                dfs, proxLimit, maxDictTerms, maxDictLookupTime,
+                alwaysFindCaseVariants, allUpperIsCI, allLowerIsCI,
+                fieldCross, boostPerfectProx, dvln);
+    }
+
     private void setWeightingFunction(PropertySheet ps)
             throws PropertyException {
         String wfClass = ps.getString(PROP_WEIGHTING_FUNCTION);
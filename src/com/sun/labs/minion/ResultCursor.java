@@ -0,0 +1,67 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion;
+
+import java.util.List;
+
+/**
+ * A cursor that can be used to walk through all of the results in a result
+ * set, a page at a time, in the order given by the set's sorting
+ * specification.  Each page starts with the result following the last
+ * result on the previous page, so the memory needed to get a page depends
+ * only on the size of the page, no matter how deep into the results we
+ * have gone.  This makes a cursor suitable for exporting very large sets
+ * of results.
+ *
+ * <p>
+ *
+ * Results with the same sort values are ordered by partition and then by
+ * document ID, so that each result is returned exactly once.
+ *
+ * @see ResultSet#cursor
+ */
+public interface ResultCursor {
+
+    /**
+     * Gets the next page of results.
+     *
+     * @param n the maximum number of results to get
+     * @return the results following the last result returned by this cursor,
+     * in sorted order.  This list will have fewer than <code>n</code> results
+     * when the end of the set has been reached, and will be empty once all of
+     * the results have been returned.
+     * @throws SearchEngineException if there is any error getting the
+     * results
+     */
+    public List<Result> next(int n) throws SearchEngineException;
+
+    /**
+     * Tells whether there might be more results to get from this cursor.
+     *
+     * @return <code>false</code> if this cursor is known to have returned all
+     * of the results in the set, <code>true</code> otherwise.
+     */
+    public boolean hasNext();
+}
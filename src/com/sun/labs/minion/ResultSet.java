@@ -120,6 +120,62 @@ public interface ResultSet {
      */
     public List<Result> getAllResults(boolean sorted, ResultsFilter rf) throws SearchEngineException;
 
+    /**
+     * Gets a cursor that can be used to get all of the results in this set,
+     * sorted according to the sorting specification, a page at a time.
+     * Unlike getting deep pages with {@link #getResults(int,int)}, the memory
+     * used to get a page depends only on the size of the page.
+     *
+     * @return a cursor positioned before the first result in the set
+     * @throws SearchEngineException if there is any error evaluating the query
+     */
+    public ResultCursor cursor() throws SearchEngineException;
+
+    /**
+     * Counts the number of documents in this set that have each of the values
+     * of a saved field.  A document that has more than one value for the
+     * field is counted once for each of its distinct values.
+     *
+     * @param field the name of the saved field whose values we want to count
+     * @param n the number of values to return.  If this is less than 1, all
+     * of the values that occur in the set are returned.
+     * @return the values of the field that occur in this set with the number
+     * of documents that have them, ordered from most to least frequent.
+     * Values with the same frequency are in the natural order of the values.
+     * If the field is not a saved field, the list will be empty.
+     * @throws SearchEngineException if there is any error evaluating the
+     * query
+     * @see #facet(String, int, int)
+     */
+    public List<FieldFrequency> facet(String field, int n)
+            throws SearchEngineException;
+
+    /**
+     * Counts the number of documents in this set that have values of a saved
+     * date field in each of a number of time periods.  The value for each
+     * time period is the date at the start of the period, in the default time
+     * zone.
+     *
+     * @param field the name of the saved date field whose values we want to
+     * count
+     * @param n the number of time periods to return.  If this is less than
+     * 1, all of the time periods that occur in the set are returned.
+     * @param period the length of the time periods, given as one of the
+     * <code>java.util.Calendar</code> fields <code>YEAR</code>,
+     * <code>MONTH</code>, <code>WEEK_OF_YEAR</code>,
+     * <code>DAY_OF_MONTH</code>, <code>HOUR_OF_DAY</code> or
+     * <code>MINUTE</code>.  For fields of other types, this is ignored.
+     * @return the time periods that occur in this set with the number of
+     * documents that have dates in them, ordered from most to least frequent.
+     * @throws SearchEngineException if there is any error evaluating the
+     * query
+     * @throws IllegalArgumentException if the period is not one of the
+     * supported calendar fields
+     * @see #facet(String, int)
+     */
+    public List<FieldFrequency> facet(String field, int n, int period)
+            throws SearchEngineException;
+
     /**
      * Gets the statistics for the query that generated this set.
      * @return the query statistics for the query that generated this set.
@@ -179,6 +235,17 @@ public interface ResultSet {
      */
     public boolean querySyntaxError();
 
+    /**
+     * Indicates whether the time allowed for the query ran out before the
+     * query was completely evaluated and the results sorted.  In this case,
+     * the results are the best ones that were found in the time allowed.
+     *
+     * @return <code>true</code> if the results are incomplete because the
+     * query ran out of time, <code>false</code> otherwise.
+     * @see QueryConfig#setMaxQueryTime
+     */
+    public boolean queryTimedOut();
+
     /**
      * Gets the size of the results set, that is, the number of documents
      * that matched the query.  If this number is 0, it may be worthwhile
@@ -366,6 +366,72 @@ public interface SearchEngine extends Searcher, Classifier {
                             Searcher.Grammar grammar)
             throws SearchEngineException;
 
+    /**
+     * Runs a query against the index with a limit on the time that can be
+     * spent evaluating it.  If the time runs out, the result set will
+     * contain the best results found in the time allowed and its
+     * {@link ResultSet#queryTimedOut} method will return <code>true</code>.
+     *
+     * @param query The query to run, in our query syntax.
+     * @param sortOrder How the results should be sorted.  This is a set of
+     * comma-separated field names, each preceeded by a <code>+</code> (for
+     * increasing order) or by a <code>-</code> (for decreasing order).
+     * @param defaultOperator specified the default operator to use when no
+     * other operator is provided between terms in the query.
+     * @param grammar specifies the grammar to use to parse the query.
+     * @param maxQueryTime the maximum amount of time to spend on the query,
+     * in milliseconds, including the time spent sorting the results.  A
+     * value less than or equal to zero indicates that there is no limit.
+     * @return a set of results for this search.
+     * @throws com.sun.labs.minion.SearchEngineException if there is any error during
+     * the search.
+     * @see QueryConfig#setMaxQueryTime
+     */
+    public ResultSet search(String query, String sortOrder,
+                            Searcher.Operator defaultOperator,
+                            Searcher.Grammar grammar,
+                            long maxQueryTime)
+            throws SearchEngineException;
+
+    /**
+     * Runs a batch of queries against the index, returning a set of results
+     * for each of them.  A term that is used by several of the queries is
+     * only looked up and has its postings read once in each partition, so
+     * running a large number of queries that share terms this way is
+     * cheaper than running them one at a time.
+     *
+     * @param queries the queries to run, in our query syntax
+     * @param sortOrder How the results should be sorted.  This is a set of
+     * comma-separated field names, each preceeded by a <code>+</code> (for
+     * increasing order) or by a <code>-</code> (for decreasing order).
+     * @return the sets of results for the queries, in the same order as the
+     * queries.
+     * @throws com.sun.labs.minion.SearchEngineException if there is any error
+     * parsing or evaluating any of the queries
+     */
+    public List<ResultSet> search(List<String> queries, String sortOrder)
+            throws SearchEngineException;
+
+    /**
+     * Runs a batch of queries against the index, returning a set of results
+     * for each of them.
+     *
+     * @param queries the queries to run
+     * @param sortOrder How the results should be sorted.
+     * @param defaultOperator specified the default operator to use when no
+     * other operator is provided between terms in the queries.
+     * @param grammar specifies the grammar to use to parse the queries.
+     * @return the sets of results for the queries, in the same order as the
+     * queries.
+     * @throws com.sun.labs.minion.SearchEngineException if there is any error
+     * parsing or evaluating any of the queries
+     * @see #search(List, String)
+     */
+    public List<ResultSet> search(List<String> queries, String sortOrder,
+                                  Searcher.Operator defaultOperator,
+                                  Searcher.Grammar grammar)
+            throws SearchEngineException;
+
     /**
      * Runs a query against the index, returning a set of results.
      * @param el the query, expressed using the programattic query API
@@ -387,6 +453,25 @@ public interface SearchEngine extends Searcher, Classifier {
      */
     ResultSet search(Element el, String sortOrder) throws SearchEngineException;
 
+    /**
+     * Describes the plan that will be used to evaluate a query against each
+     * of the partitions in the index.  The description includes the order in
+     * which the parts of the query will be evaluated, the estimated number of
+     * documents that each part will match and how much work it will take,
+     * and how terms will be intersected with the documents matched so far.
+     *
+     * @param query The query to explain, in our query syntax.
+     * @param defaultOperator the default operator to use when no other
+     * operator is provided between terms in the query.
+     * @param grammar the grammar to use to parse the query.
+     * @return a description of the plan for the query in each partition.
+     * @throws com.sun.labs.minion.SearchEngineException if there is any error
+     * parsing or planning the query.
+     */
+    public String explain(String query, Searcher.Operator defaultOperator,
+                          Searcher.Grammar grammar)
+            throws SearchEngineException;
+
     /**
      * Gets a set of results corresponding to the document keys passed in.
      * This is a convenience method to go from document keys to something upon which
@@ -469,6 +554,27 @@ public interface SearchEngine extends Searcher, Classifier {
      */
     public List<FieldFrequency> getTopFieldValues(String field, int n, boolean ignoreCase);
 
+    /**
+     * Gets a list of the top n most frequent field values for a given
+     * named field among the documents in a set of results.  If n is &lt; 1,
+     * all field values are returned, in order of their frequency from most
+     * to least frequent.
+     *
+     * @param field the name of the field to rank
+     * @param n the number of field values to return
+     * @param ignoreCase if <code>true</code>, values of a case sensitive
+     * string field that differ only in case are counted together
+     * @param rs a set of results generated by this engine
+     * @return a <code>List</code> containing field values of the appropriate
+     * type for the field, ordered by frequency.  The scores associated with the
+     * field values are the number of documents in the set that have them.
+     * @throws SearchEngineException if there is any error evaluating the
+     * query that generated the results
+     * @see ResultSet#facet(String, int)
+     */
+    public List<FieldFrequency> getTopFieldValues(String field, int n,
+            boolean ignoreCase, ResultSet rs) throws SearchEngineException;
+
     /**
      * Gets a document vector for the given key.
      *
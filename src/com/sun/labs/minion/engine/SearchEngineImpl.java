@@ -65,7 +65,11 @@ import com.sun.labs.minion.indexer.partition.PartitionManager;
 import com.sun.labs.minion.retrieval.CollectionStats;
 import com.sun.labs.minion.retrieval.ResultSetImpl;
 import com.sun.labs.minion.retrieval.QueryElement;
-import com.sun.labs.minion.retrieval.QueryOptimizer;
+import com.sun.labs.minion.retrieval.QueryPlanner;
+import com.sun.labs.minion.retrieval.QueryCache;
+import com.sun.labs.minion.retrieval.QueryKey;
+import com.sun.labs.minion.retrieval.ResultCache;
+import com.sun.labs.minion.retrieval.cache.EntryCache;
 import com.sun.labs.minion.classification.ClassifierMemoryPartition;
 import com.sun.labs.minion.classification.ClassifierManager;
 import com.sun.labs.minion.classification.ClusterManager;
@@ -91,6 +95,9 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.SortedSet;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import com.sun.labs.minion.classification.ClassifierModel;
 import com.sun.labs.minion.classification.WeightedFeature;
 import com.sun.labs.minion.indexer.entry.DocKeyEntry;
@@ -606,8 +613,48 @@ public class SearchEngineImpl implements SearchEngine,
 
         //
         // Try to optimize the query some.
-        QueryOptimizer opti = new QueryOptimizer();
-        return opti.optimize(qe);
+        return new QueryPlanner().optimize(qe);
+    }
+
+    /**
+     * Gets a parsed query that is ready to be evaluated, from the cache of
+     * parsed queries if it's there.
+     *
+     * @param key the key for the query, or <code>null</code> if parsed
+     * queries aren't being cached
+     * @param query the query to parse
+     * @param defaultOperator the default operator for the query
+     * @param grammar the grammar to use to parse the query
+     * @return the parsed query
+     * @throws com.sun.labs.minion.SearchEngineException if there is any
+     * error parsing the query
+     */
+    private QueryElement getQuery(QueryKey key, String query,
+            Searcher.Operator defaultOperator, Searcher.Grammar grammar)
+            throws SearchEngineException {
+        QueryElement qe;
+        if(key != null && queryCache != null) {
+            qe = queryCache.get(key);
+            if(qe != null) {
+                return qe;
+            }
+        }
+        qe = parseQuery(query, defaultOperator, grammar,
+                pipelineFactory.getQueryPipeline(this));
+        if(key != null && queryCache != null) {
+            queryCache.put(key, qe);
+        }
+        return qe;
+    }
+
+    public String explain(String query, Searcher.Operator defaultOperator,
+            Searcher.Grammar grammar) throws SearchEngineException {
+        QueryElement qe = getQuery(new QueryKey(query, defaultOperator,
+                grammar), query, defaultOperator, grammar);
+        QueryConfig cqc = (QueryConfig) queryConfig.clone();
+        cqc.setCollectionStats(new CollectionStats(invFilePartitionManager));
+        return new QueryPlanner().explain(qe, cqc,
+                invFilePartitionManager.getActivePartitions());
     }
 
     @Override
@@ -615,11 +662,68 @@ public class SearchEngineImpl implements SearchEngine,
             Searcher.Operator defaultOperator, Searcher.Grammar grammar)
             throws SearchEngineException {
 
-        QueryElement qe = parseQuery(query, defaultOperator, grammar, pipelineFactory.getQueryPipeline(this));
-        return search(qe, sortOrder);
+        return search(query, sortOrder, defaultOperator, grammar,
+                queryConfig.getMaxQueryTime());
     }
 
-    private ResultSet search(QueryElement qe, String sortOrder) throws SearchEngineException {
+    public ResultSet search(String query, String sortOrder,
+            Searcher.Operator defaultOperator, Searcher.Grammar grammar,
+            long maxQueryTime)
+            throws SearchEngineException {
+
+        QueryKey key = new QueryKey(query, defaultOperator, grammar);
+        QueryElement qe = getQuery(key, query, defaultOperator, grammar);
+        return search(qe, sortOrder, maxQueryTime, resultCache == null ? null
+                : new QueryKey(key, sortOrder, queryConfig));
+    }
+
+    public List<ResultSet> search(List<String> queries, String sortOrder)
+            throws SearchEngineException {
+        return search(queries, sortOrder,
+                Searcher.Operator.AND, Searcher.Grammar.STRICT);
+    }
+
+    public List<ResultSet> search(List<String> queries, String sortOrder,
+            Searcher.Operator defaultOperator, Searcher.Grammar grammar)
+            throws SearchEngineException {
+
+        //
+        // All of the queries share one set of dictionary entries, so a term
+        // used by several of them is looked up and has its postings read
+        // only once per partition.  Each query is still evaluated against
+        // the partitions in parallel.
+        EntryCache entries = new EntryCache();
+        List<ResultSet> ret = new ArrayList<ResultSet>(queries.size());
+        for(String query : queries) {
+            QueryKey key = new QueryKey(query, defaultOperator, grammar);
+            QueryElement qe = getQuery(key, query, defaultOperator, grammar);
+            ret.add(search(qe, sortOrder, queryConfig.getMaxQueryTime(),
+                    resultCache == null ? null
+                    : new QueryKey(key, sortOrder, queryConfig), entries));
+        }
+        return ret;
+    }
+
+    private ResultSet search(QueryElement qe, String sortOrder,
+            long maxQueryTime, QueryKey key)
+            throws SearchEngineException {
+        return search(qe, sortOrder, maxQueryTime, key, null);
+    }
+
+    /**
+     * Evaluates a parsed query.
+     *
+     * @param qe the query
+     * @param sortOrder the order in which to sort the results
+     * @param maxQueryTime the maximum time to spend on the query
+     * @param key the key for the query in the result cache, or
+     * <code>null</code> if the results shouldn't be cached
+     * @param entries a cache of dictionary entries shared with other queries,
+     * or <code>null</code> if the query isn't part of a batch
+     */
+    private ResultSet search(QueryElement qe, String sortOrder,
+            long maxQueryTime, QueryKey key, EntryCache entries)
+            throws SearchEngineException {
         try {
             CollectionStats cs =
                     new CollectionStats(invFilePartitionManager);
@@ -628,9 +732,12 @@ public class SearchEngineImpl implements SearchEngine,
             qe.setQueryConfig(cqc);
             cqc.setCollectionStats(cs);
             cqc.setSortSpec(sortOrder);
+            cqc.setMaxQueryTime(maxQueryTime);
+            cqc.setEntryCache(entries);
             QueryStats lqs = new QueryStats();
             qe.setQueryStats(lqs);
-            ResultSetImpl rsi = new ResultSetImpl(qe, cqc, lqs, parts, this);
+            ResultSetImpl rsi = new ResultSetImpl(qe, cqc, lqs, parts, this,
+                    key == null ? null : resultCache, key);
             qs.accumulate(lqs);
             return rsi;
         } catch(Exception e) {
@@ -649,7 +756,9 @@ public class SearchEngineImpl implements SearchEngine,
 
     public ResultSet search(Element el, String sortOrder) throws SearchEngineException {
         checkQuery(null, el);
-        return search(el.getQueryElement(pipelineFactory.getQueryPipeline(this)), sortOrder);
+        QueryElement qe = el.getQueryElement(pipelineFactory.getQueryPipeline(this));
+        return search(new QueryPlanner().optimize(qe), sortOrder,
+                queryConfig.getMaxQueryTime(), null);
     }
 
     /**
@@ -990,6 +1099,11 @@ public class SearchEngineImpl implements SearchEngine,
         return invFilePartitionManager.getTopFieldValues(field, n, ignoreCase);
     }
 
+    public List<FieldFrequency> getTopFieldValues(String field, int n,
+            boolean ignoreCase, ResultSet rs) throws SearchEngineException {
+        return ((ResultSetImpl) rs).facet(field, n, ignoreCase);
+    }
+
     public List<FieldValue> getSimilarClassifiers(String cname, int n) {
         if(classManager == null) {
             return new ArrayList<FieldValue>();
@@ -1332,6 +1446,12 @@ public class SearchEngineImpl implements SearchEngine,
             }
         }
 
+        //
+        // No more queries will be evaluated.
+        if(queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+
         //
         // Shutdown the dumper for our partitions.
         dumper.finish();
@@ -1759,6 +1879,33 @@ public class SearchEngineImpl implements SearchEngine,
         profilers = ps.getComponentList(PROP_PROFILERS);
         longIndexingRun = ps.getBoolean(PROP_LONG_INDEXING_RUN);
 
+        int resultCacheSize = ps.getInt(PROP_RESULT_CACHE_SIZE);
+        if(resultCacheSize > 0) {
+            resultCache = new ResultCache(resultCacheSize,
+                    ps.getInt(PROP_RESULT_CACHE_MAX_DOCS));
+        }
+        int queryCacheSize = ps.getInt(PROP_QUERY_CACHE_SIZE);
+        if(queryCacheSize > 0) {
+            queryCache = new QueryCache(queryCacheSize);
+        }
+
+        //
+        // Make the pool of threads for query evaluation, if we need one.
+        queryThreads = ps.getInt(PROP_QUERY_THREADS);
+        if(queryThreads > 1) {
+            queryExecutor = Executors.newFixedThreadPool(queryThreads,
+                    new ThreadFactory() {
+
+                private int n;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "query-" + n++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
 //        //
 //        // Dump the configuration into the index directory.
 //        try {
@@ -1792,9 +1939,46 @@ public class SearchEngineImpl implements SearchEngine,
         this.longIndexingRun = longIndexingRun;
     }
 
+    /**
+     * Gets the pool of threads that should be used to evaluate a query
+     * against several partitions at once.
+     *
+     * @return the pool of threads, or <code>null</code> if queries should be
+     * evaluated against one partition at a time.
+     * @see #PROP_QUERY_THREADS
+     */
+    public ExecutorService getQueryExecutor() {
+        return queryExecutor;
+    }
+
     public void setQueryConfig(QueryConfig queryConfig) {
         this.queryConfig = queryConfig;
         queryConfig.setEngine(this);
+        if(resultCache != null) {
+            resultCache.clear();
+        }
+    }
+
+    /**
+     * Gets the cache of query results.
+     *
+     * @return the cache, or <code>null</code> if results aren't being
+     * cached.
+     * @see #PROP_RESULT_CACHE_SIZE
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Gets the cache of parsed queries.
+     *
+     * @return the cache, or <code>null</code> if parsed queries aren't
+     * being cached.
+     * @see #PROP_QUERY_CACHE_SIZE
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
     public void export(PrintWriter o)
@@ -1875,6 +2059,60 @@ public class SearchEngineImpl implements SearchEngine,
 
     private int numPipelines;
 
+    /**
+     * The number of threads to use for evaluating queries against the
+     * partitions in the index.  If this is greater than 1, each query will
+     * be evaluated against several partitions at once, using a pool of
+     * this many threads shared by all of the queries run against the engine.
+     */
+    @ConfigInteger(defaultValue = 1)
+    public static final String PROP_QUERY_THREADS = "query_threads";
+
+    private int queryThreads;
+
+    /**
+     * The pool of threads used to evaluate queries against partitions, or
+     * <code>null</code> if partitions are evaluated one at a time.
+     */
+    private ExecutorService queryExecutor;
+
+    /**
+     * The number of queries whose results will be cached.  If this is 0, no
+     * results will be cached, which is the default.  Cached results are only
+     * used while the partitions in the index and their deleted documents
+     * stay the same.
+     */
+    @ConfigInteger(defaultValue = 0)
+    public static final String PROP_RESULT_CACHE_SIZE = "result_cache_size";
+
+    /**
+     * The largest number of documents that will be cached for a single
+     * query.  For queries that match more documents, only the top documents
+     * will be cached, if the query can be evaluated that way.
+     */
+    @ConfigInteger(defaultValue = 20000)
+    public static final String PROP_RESULT_CACHE_MAX_DOCS =
+            "result_cache_max_docs";
+
+    /**
+     * The cache of query results, or <code>null</code> if results are not
+     * being cached.
+     */
+    private ResultCache resultCache;
+
+    /**
+     * The number of parsed queries that will be cached.  If this is 0, every
+     * query will be parsed, which is the default.
+     */
+    @ConfigInteger(defaultValue = 0)
+    public static final String PROP_QUERY_CACHE_SIZE = "query_cache_size";
+
+    /**
+     * The cache of parsed queries, or <code>null</code> if parsed queries
+     * are not being cached.
+     */
+    private QueryCache queryCache;
+
     @ConfigInteger(defaultValue = 256)
     public static final String PROP_INDEXING_QUEUE_LENGTH =
             "indexing_queue_length";
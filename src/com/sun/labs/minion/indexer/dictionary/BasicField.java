@@ -27,8 +27,10 @@ import com.sun.labs.minion.FieldValue;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -47,6 +49,7 @@ import com.sun.labs.minion.indexer.entry.Entry;
 import com.sun.labs.minion.indexer.entry.CasedIDEntry;
 import com.sun.labs.minion.indexer.entry.IDEntry;
 import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.indexer.partition.DelMap;
 import com.sun.labs.minion.indexer.partition.DiskPartition;
 import com.sun.labs.minion.indexer.postings.Occurrence;
 import com.sun.labs.minion.indexer.postings.OccurrenceImpl;
@@ -56,7 +59,7 @@ import com.sun.labs.minion.retrieval.ArrayGroup.DocIterator;
 import com.sun.labs.minion.retrieval.ScoredGroup;
 import com.sun.labs.minion.retrieval.ScoredQuickOr;
 import com.sun.labs.minion.util.buffer.FileWriteableBuffer;
-import com.sun.labs.minion.util.buffer.NIOFileReadableBuffer;
+import com.sun.labs.minion.util.buffer.MappedReadableBuffer;
 import java.io.File;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -91,15 +94,51 @@ public class BasicField implements SavedField {
     protected int dvPos;
 
     /**
-     * A buffer containing the dtv offsets at query time.
+     * A buffer containing the dtv offsets at query time.  This is mapped,
+     * and the offsets have a fixed width, so they are read with absolute
+     * gets that any number of threads can do at once.
      */
     protected ReadableBuffer dtvOffsets;
 
     /**
-     * A buffer containing the actual dtv data at query time.
+     * A buffer containing the actual dtv data at query time.  This is mapped,
+     * so a reader can take a duplicate of it with its own position without
+     * copying any data.
      */
     protected ReadableBuffer dtvData;
 
+    /**
+     * The column of the first value for each document at query time, which
+     * is used when sorting results.  Fields dumped before we had columns
+     * won't have one.
+     */
+    protected DocValues docValues;
+
+    /**
+     * The histogram of our values at query time, as it was when the field
+     * was dumped or merged.  Fields dumped before we had histograms won't
+     * have one.
+     */
+    protected ValueHistogram histogram;
+
+    /**
+     * The histogram of our values, corrected for the documents that have
+     * been deleted from our partition.
+     */
+    private volatile ValueHistogram corrected;
+
+    /**
+     * The index of ranges of our values at query time.  Only numeric and
+     * date fields with enough values have one.
+     */
+    protected RangeIndex rangeIndex;
+
+    /**
+     * A map from the IDs of our values to the ID of the first value that is
+     * equal to each of them when case is ignored.
+     */
+    private volatile int[] caseMap;
+
     /**
      * A bigram dictionary that we can use for character fields.
      */
@@ -188,19 +227,51 @@ public class BasicField implements SavedField {
                     (DiskDictionary) values,
                     dictFile, postFiles[0], part);
             bigrams.setName(String.format("%s-bigrams", field.getName()));
+
+            //
+            // Fields dumped before we had transducers will do wildcard
+            // lookups using the bigrams.
+            if(header.fstOffset > 0) {
+                dictFile.seek(header.fstOffset);
+                ((DiskDictionary) values).setFST(new DictionaryFST(dictFile));
+            }
         }
 
         logger.finer("Loading docsToValues for field: " + field.getName());
 
         //
-        // Load the docs to vals data, using a file backed buffer.
-        dtvData = new NIOFileReadableBuffer(postFiles[0], header.dtvOffset, 8192);
+        // Map the docs to vals data.
+        dtvData = new MappedReadableBuffer(postFiles[0], header.dtvOffset,
+                header.dtvSize);
+
+        //
+        // Map the docs to vals offset data.
+        dtvOffsets = new MappedReadableBuffer(postFiles[0],
+                header.dtvOffsetOffset, header.dtvOffsetSize);
 
         //
-        // Load the docs to vals offset data, using a file backed buffer.
-        dtvOffsets =
-                new NIOFileReadableBuffer(postFiles[0], header.dtvOffsetOffset,
-                8192);
+        // Map the column of sort values, if there is one.  Documents without
+        // a value for a string field sort as the empty string.
+        if(header.dvOffset > 0) {
+            int missingOrd = 0;
+            if(field.getType() == FieldInfo.Type.STRING) {
+                QueryEntry e = ((DiskDictionary) values).get("");
+                if(e != null) {
+                    missingOrd = e.getID();
+                }
+            }
+            docValues = new DocValues(field, postFiles[0], header.dvOffset,
+                    header.nDocs, missingOrd);
+        }
+
+        if(header.histOffset > 0) {
+            histogram = new ValueHistogram(postFiles[0], header.histOffset);
+        }
+
+        if(header.rangeOffset > 0) {
+            rangeIndex = new RangeIndex(postFiles[0], header.rangeOffset,
+                    (DiskDictionary) values);
+        }
     }
 
     /**
@@ -367,6 +438,21 @@ public class BasicField implements SavedField {
         }
     }
 
+    /**
+     * Gets the value to store in the column of sort values for a document
+     * whose first value is the given entry.  The default saved values for
+     * all types of field are stored as 0.
+     *
+     * @param e the entry from the values dictionary, with its final ID
+     * @return the value to store
+     */
+    protected long getColumnValue(Entry e) {
+        if(field.getType() == FieldInfo.Type.STRING) {
+            return e.getID();
+        }
+        return DocValues.toLong(field.getType(), e.getName());
+    }
+
     /**
      * Writes the data to the provided stream.
      *
@@ -420,28 +506,48 @@ public class BasicField implements SavedField {
                     MemoryDictionary.Renumber.RENUMBER,
                     MemoryDictionary.IDMap.NONE, null);
             bg.clear();
+            header.fstOffset = dictFile.getFilePointer();
+            new DictionaryFST(vals).write(dictFile);
         }
 
         //
         // Dump the map from document IDs to field value IDs, remapping
         // them with the map we got when we dumped the values.
+        // We'll build the column of sort values, the histogram of values and
+        // the index of value ranges at the same time.
         int[] temp = new int[maxID];
         WriteableBuffer dtvBuff = new NIOBuffer(32768, true);
+        WriteableBuffer dvBuff = new NIOBuffer(32768, true);
+        FieldInfo.Type type = field.getType();
+        int[] valCounts = new int[vals.length + 1];
+        int[] last = new int[vals.length + 1];
+        RangeIndex.Builder ranges = RangeIndex.shouldIndex(type, vals.length)
+                ? new RangeIndex.Builder(vals.length) : null;
         for(int i = 1; i <= maxID; i++) {
             temp[i - 1] = dtvBuff.position();
 
             //
             // If there's no set here, or we're past the end of the array,
             // encode 0 for the count of items for this document ID.
-            if(i >= dv.length || dv[i] == null) {
+            if(i >= dv.length || dv[i] == null || dv[i].isEmpty()) {
                 dtvBuff.byteEncode(0);
+                DocValues.encode(type, dvBuff, 0);
                 continue;
             }
             List<IndexEntry> dvs = (List<IndexEntry>) dv[i];
             dtvBuff.byteEncode(dvs.size());
             for(IndexEntry e : dvs) {
-                dtvBuff.byteEncode(e.getID());
+                int id = e.getID();
+                dtvBuff.byteEncode(id);
+                if(last[id] != i) {
+                    last[id] = i;
+                    valCounts[id]++;
+                    if(ranges != null) {
+                        ranges.add(i, id);
+                    }
+                }
             }
+            DocValues.encode(type, dvBuff, getColumnValue(dvs.get(0)));
         }
 
         //
@@ -465,6 +571,19 @@ public class BasicField implements SavedField {
         header.dtvOffsetSize = dtvOffsetsOut.position();
         postOut[0].write(dtvOffsetsOut);
 
+        header.dvOffset = postOut[0].position();
+        postOut[0].write(dvBuff);
+
+        WriteableBuffer histBuff = new NIOBuffer(8 * vals.length + 4, true);
+        ValueHistogram.write(valCounts, vals.length, histBuff);
+        header.histOffset = postOut[0].position();
+        postOut[0].write(histBuff);
+
+        if(ranges != null) {
+            header.rangeOffset = postOut[0].position();
+            ranges.write(postOut[0]);
+        }
+
         //
         // Now zip back and write the header.
         long end = dictFile.getFilePointer();
@@ -495,11 +614,9 @@ public class BasicField implements SavedField {
         //
         // Check the number of stored values.  If it's 0, then there's no saved
         // data.
-        synchronized(dtvOffsets) {
-            int off = dtvOffsets.byteDecode(pos, header.offsetBytes);
-            dtvData.position(off);
-            return dtvData.byteDecode() != 0;
-        }
+        ReadableBuffer ldtv = dtvData.duplicate();
+        ldtv.position(dtvOffsets.byteDecode(pos, header.offsetBytes));
+        return ldtv.byteDecode() != 0;
     }
 
     /**
@@ -533,15 +650,12 @@ public class BasicField implements SavedField {
 
         //
         // Pull the IDs of the values that we want.
-        int[] vals = null;
-        synchronized(dtvOffsets) {
-            int off = dtvOffsets.byteDecode(pos, header.offsetBytes);
-            dtvData.position(off);
-            int n = dtvData.byteDecode();
-            vals = new int[n];
-            for(int i = 0; i < n; i++) {
-                vals[i] = dtvData.byteDecode();
-            }
+        ReadableBuffer ldtv = dtvData.duplicate();
+        ldtv.position(dtvOffsets.byteDecode(pos, header.offsetBytes));
+        int n = ldtv.byteDecode();
+        int[] vals = new int[n];
+        for(int i = 0; i < n; i++) {
+            vals[i] = ldtv.byteDecode();
         }
 
         //
@@ -597,6 +711,18 @@ public class BasicField implements SavedField {
         return (QueryEntry) values.get(name);
     }
 
+    /**
+     * Gets the value with a given ID from our values dictionary.
+     *
+     * @param id the ID of the value
+     * @return the value, or <code>null</code> if there is no value with that
+     * ID
+     */
+    public Object getValue(int id) {
+        QueryEntry e = ((DiskDictionary) values).getByID(id);
+        return e == null ? null : e.getName();
+    }
+
     /**
      * Gets a group of all the documents that do not have any values saved for
      * this field.
@@ -649,6 +775,157 @@ public class BasicField implements SavedField {
         return ret;
     }
 
+    /**
+     * Counts the number of documents in a group that have each of the values
+     * of this field.  A document that has more than one value is counted for
+     * each of its distinct values.
+     *
+     * @param ag the group of documents whose values we want to count
+     * @return the counts, indexed by the IDs of the values in our values
+     * dictionary
+     */
+    public int[] countValues(ArrayGroup ag) {
+        return countValues(ag, null);
+    }
+
+    /**
+     * Counts the number of documents in a group that have each of the values
+     * of this field, after mapping the IDs of the values.  A document is
+     * counted once for each distinct mapped ID of its values.
+     *
+     * @param ag the group of documents whose values we want to count
+     * @param idMap a map from the IDs of the values in our values dictionary
+     * to the IDs to count, or <code>null</code> if the IDs should be counted
+     * as they are
+     * @return the counts, indexed by the mapped IDs
+     * @see #getCaseMap
+     */
+    public int[] countValues(ArrayGroup ag, int[] idMap) {
+        int[] counts = new int[values.size() + 1];
+
+        //
+        // The last document that we counted each value for, so that we don't
+        // count a value twice for a document.  We only need this for documents
+        // with more than one value.
+        int[] last = null;
+
+        //
+        // Get local copies of the buffers.
+        ReadableBuffer ldtvo = dtvOffsets.duplicate();
+        ReadableBuffer ldtv = dtvData.duplicate();
+
+        for(DocIterator i = ag.iterator(); i.next();) {
+            int doc = i.getDoc();
+            int pos = header.offsetBytes * (doc - 1);
+            if(pos >= header.dtvOffsetSize) {
+                continue;
+            }
+            ldtv.position(ldtvo.byteDecode(pos, header.offsetBytes));
+            int n = ldtv.byteDecode();
+            if(n == 1) {
+                int id = ldtv.byteDecode();
+                counts[idMap == null ? id : idMap[id]]++;
+                continue;
+            }
+            if(n > 1 && last == null) {
+                last = new int[counts.length];
+            }
+            for(int j = 0; j < n; j++) {
+                int id = ldtv.byteDecode();
+                if(idMap != null) {
+                    id = idMap[id];
+                }
+                if(last[id] != doc) {
+                    last[id] = doc;
+                    counts[id]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Gets a map from the IDs of the values of this field to the ID of the
+     * first value that is equal to each of them when case is ignored, so that
+     * values can be counted without regard to case.
+     *
+     * @return the map, indexed by value ID
+     * @see #countValues(ArrayGroup, int[])
+     */
+    public int[] getCaseMap() {
+        int[] map = caseMap;
+        if(map != null) {
+            return map;
+        }
+        map = new int[values.size() + 1];
+        Map<Object, Integer> first = new HashMap<Object, Integer>();
+        for(int id = 1; id < map.length; id++) {
+            Object val = getValue(id);
+            if(val instanceof String) {
+                val = CharUtils.toLowerCase((String) val);
+            }
+            Integer f = first.get(val);
+            if(f == null) {
+                first.put(val, id);
+                map[id] = id;
+            } else {
+                map[id] = f;
+            }
+        }
+        caseMap = map;
+        return map;
+    }
+
+    /**
+     * Gets the histogram of the values of this field, corrected for the
+     * documents that have been deleted from our partition.  The correction is
+     * worked out when there are new deletions and is kept until there are
+     * more.
+     *
+     * @param dels the deletion map for our partition
+     * @return the corrected histogram, or <code>null</code> if this field
+     * was dumped without a histogram
+     */
+    public ValueHistogram getHistogram(DelMap dels) {
+        int nDeleted = dels == null ? 0 : dels.getNDeleted();
+        if(histogram == null || nDeleted == 0) {
+            return histogram;
+        }
+        ValueHistogram h = corrected;
+        if(h != null && h.getNDeleted() == nDeleted) {
+            return h;
+        }
+        h = histogram.subtract(countDeleted(dels, null), nDeleted);
+        corrected = h;
+        return h;
+    }
+
+    /**
+     * Counts the number of deleted documents that have each of the values of
+     * this field.
+     *
+     * @param dels the deletion map for our partition
+     * @param idMap a map from the IDs of the values in our values dictionary
+     * to the IDs to count, or <code>null</code> if the IDs should be counted
+     * as they are
+     * @return the counts, indexed by the mapped IDs, or <code>null</code> if
+     * no documents have been deleted
+     * @see #countValues(ArrayGroup, int[])
+     */
+    public int[] countDeleted(DelMap dels, int[] idMap) {
+        int nDeleted = dels == null ? 0 : dels.getNDeleted();
+        if(nDeleted == 0) {
+            return null;
+        }
+        ArrayGroup ag = new ArrayGroup(nDeleted);
+        for(int i = 1; i <= header.nDocs; i++) {
+            if(dels.isDeleted(i)) {
+                ag.addDoc(i);
+            }
+        }
+        return countValues(ag, idMap);
+    }
+
     @Override
     public void close() {
         if(bigrams != null) {
@@ -820,6 +1097,8 @@ public class BasicField implements SavedField {
         if(bgdicts[0] != null) {
             mHeader.bgOffset = dictFile.getFilePointer();
             bgdicts[0].merge(bgdicts, nnStarts, idMap, dictFile, mergeOut[0]);
+            mHeader.fstOffset = dictFile.getFilePointer();
+            DictionaryFST.merge(dicts, idMap).write(dictFile);
         }
 
         //
@@ -828,6 +1107,19 @@ public class BasicField implements SavedField {
         File mdtvFile = Util.getTempFile(path, "mdtv", ".dtv");
         RandomAccessFile mdtvRAF = new RandomAccessFile(mdtvFile, "rw");
         WriteableBuffer mdtvData = new FileWriteableBuffer(mdtvRAF, 32768);
+        File mdvFile = Util.getTempFile(path, "mdv", ".dv");
+        RandomAccessFile mdvRAF = new RandomAccessFile(mdvFile, "rw");
+        WriteableBuffer mdvData = new FileWriteableBuffer(mdvRAF, 32768);
+        FieldInfo.Type type = field.getType();
+
+        //
+        // The counts for the merged histogram, and the last document that
+        // we counted each value for.
+        int nValues = idMap[0][0];
+        int[] valCounts = new int[nValues + 1];
+        int[] last = new int[nValues + 1];
+        RangeIndex.Builder ranges = RangeIndex.shouldIndex(type, nValues)
+                ? new RangeIndex.Builder(nValues) : null;
 
         //
         // Go through all the fields.  Some may be null, but that doesn't
@@ -857,11 +1149,13 @@ public class BasicField implements SavedField {
                     // Note the position we're about to write at
                     temp[p] = mdtvData.position();
                     mdtvData.byteEncode(0);
+                    DocValues.encode(type, mdvData, 0);
                 }
                 continue;
             }
 
-            ReadableBuffer dtvDup = ((BasicField) fields[i]).dtvData.duplicate();
+            BasicField bf = (BasicField) fields[i];
+            ReadableBuffer dtvDup = bf.dtvData.duplicate();
             int[] docIDMap = docIDMaps[i];
             int[] valIDMap = idMap[currNonNullField++];
 
@@ -885,10 +1179,39 @@ public class BasicField implements SavedField {
                     // Re-encode the data, keeping in mind that the IDs for
                     // the values were remapped by the values merge above.
                     mdtvData.byteEncode(n);
+                    int first = 0;
                     for(int k = 0; k < n; k++) {
-                        int id = valIDMap[dtvDup.byteDecode()];
+                        int oldID = dtvDup.byteDecode();
+                        int id = valIDMap[oldID];
                         mdtvData.byteEncode(id);
+                        if(last[id] != p) {
+                            last[id] = p;
+                            valCounts[id]++;
+                            if(ranges != null) {
+                                ranges.add(p, id);
+                            }
+                        }
+                        if(k == 0) {
+                            first = oldID;
+                        }
+                    }
+
+                    //
+                    // String values in the column are the remapped IDs.
+                    // Other values can come from the old column, if there
+                    // is one.
+                    long v;
+                    if(n == 0) {
+                        v = 0;
+                    } else if(type == FieldInfo.Type.STRING) {
+                        v = valIDMap[first];
+                    } else if(bf.docValues != null) {
+                        v = bf.docValues.getLong(j + 1);
+                    } else {
+                        v = DocValues.toLong(type,
+                                ((DiskDictionary) bf.values).getByID(first).getName());
                     }
+                    DocValues.encode(type, mdvData, v);
                 }
             }
         }
@@ -913,6 +1236,19 @@ public class BasicField implements SavedField {
         mHeader.dtvOffsetSize = mdtvOffsets.position();
         postOut.write(mdtvOffsets);
 
+        mHeader.dvOffset = postOut.position();
+        postOut.write(mdvData);
+
+        WriteableBuffer histBuff = new NIOBuffer(8 * nValues + 4, true);
+        ValueHistogram.write(valCounts, nValues, histBuff);
+        mHeader.histOffset = postOut.position();
+        postOut.write(histBuff);
+
+        if(ranges != null) {
+            mHeader.rangeOffset = postOut.position();
+            ranges.write(postOut);
+        }
+
         mdtvRAF.close();
         if(!mdtvFile.delete()) {
             logger.severe(
@@ -923,6 +1259,11 @@ public class BasicField implements SavedField {
             logger.severe(
                     "Failed to delete docs to values offset buffer file after merge");
         }
+        mdvRAF.close();
+        if(!mdvFile.delete()) {
+            logger.severe(
+                    "Failed to delete sort values buffer file after merge");
+        }
 
         long end = dictFile.getFilePointer();
 
@@ -978,6 +1319,25 @@ public class BasicField implements SavedField {
         return new Fetcher();
     }
 
+    /**
+     * Gets the column of sort values for this field.
+     *
+     * @return the column, or <code>null</code> if this field was dumped
+     * without one
+     */
+    public DocValues getDocValues() {
+        return docValues;
+    }
+
+    /**
+     * Gets the index of ranges of the values of this field.
+     *
+     * @return the index, or <code>null</code> if this field doesn't have one
+     */
+    public RangeIndex getRangeIndex() {
+        return rangeIndex;
+    }
+
     /**
      * A class that can be used when you want to get a lot of field values for
      * a particular field, for example, when sorting or clustering results
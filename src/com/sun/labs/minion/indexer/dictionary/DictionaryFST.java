@@ -0,0 +1,922 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.indexer.entry.Entry;
+import com.sun.labs.minion.pipeline.ShingleStage;
+import com.sun.labs.minion.util.CharUtils;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A finite state transducer that maps the names in a dictionary of strings
+ * to the IDs of the entries with those names.  The transducer is a minimal
+ * acyclic automaton that accepts exactly the names in the dictionary, where
+ * each arc carries the number of names that sort before the names reached
+ * through it.  Summing these along the path for a name gives the name's
+ * rank, which is mapped to the entry ID.
+ *
+ * <p>
+ *
+ * A wildcard pattern or substring is matched by running the automaton for
+ * the pattern alongside the transducer, following only those arcs that keep
+ * the pattern alive, so only the names that match are ever visited.  This
+ * replaces looking up candidates in the bigram dictionary and checking
+ * each of them against the pattern, which is slow for patterns that have
+ * few bigrams to narrow things down with, like those with a leading
+ * wildcard.  Spelling variants are found in the same way, using an
+ * automaton that accepts the words within a few edits of a given word.
+ *
+ * <p>
+ *
+ * The transducer is built from names provided in increasing order, which
+ * is how dictionaries are dumped and merged.  Shingles added by the {@link
+ * ShingleStage} are left out, since they can never match a pattern for a
+ * word.
+ */
+public class DictionaryFST {
+
+    /**
+     * A pattern element that matches any single character.
+     */
+    private static final int ANY = -1;
+
+    /**
+     * A pattern element that matches any sequence of characters.
+     */
+    private static final int STAR = -2;
+
+    /**
+     * The longest pattern, in elements, that we'll handle, so that the
+     * states of the pattern automaton fit in a long.
+     */
+    private static final int MAX_PATTERN = 63;
+
+    /**
+     * The start state.
+     */
+    private int root;
+
+    /**
+     * The number of states.
+     */
+    private int nStates;
+
+    /**
+     * The index of the first arc for each state.  The arcs for state
+     * <em>s</em> run from <code>first[s]</code> up to
+     * <code>first[s+1]</code>.
+     */
+    private int[] first;
+
+    /**
+     * Whether each state is final.
+     */
+    private boolean[] fin;
+
+    /**
+     * The labels on the arcs, in increasing order for each state.
+     */
+    private char[] labels;
+
+    /**
+     * The states that the arcs lead to.
+     */
+    private int[] targets;
+
+    /**
+     * The output for each arc, which is the number of names accepted from
+     * the arc's state that come before the names reached through the arc.
+     */
+    private int[] outs;
+
+    /**
+     * The entry IDs, indexed by the rank of their names.
+     */
+    private int[] ids;
+
+    /**
+     * Builds a transducer for a sorted array of entries, such as the one
+     * returned when a dictionary is dumped.
+     *
+     * @param sorted the entries, in increasing order of name
+     */
+    public DictionaryFST(Entry[] sorted) {
+        Builder b = new Builder();
+        for(Entry e : sorted) {
+            b.add(e.getName().toString(), e.getID());
+        }
+        b.finish(this);
+    }
+
+    /**
+     * Reads a transducer from a file, starting at the current position.
+     * When this returns, the file will be positioned after the data for the
+     * transducer.
+     *
+     * @param f the file to read from
+     * @throws java.io.IOException if there is any error reading the file
+     */
+    public DictionaryFST(RandomAccessFile f) throws java.io.IOException {
+        root = f.readInt();
+        nStates = f.readInt();
+        int nArcs = f.readInt();
+        int nIDs = f.readInt();
+        ByteBuffer b = ByteBuffer.allocate((nStates + 1) * 4 + nStates +
+                nArcs * 10 + nIDs * 4);
+        FileChannel chan = f.getChannel();
+        long pos = f.getFilePointer();
+        while(b.hasRemaining()) {
+            if(chan.read(b, pos + b.position()) < 0) {
+                throw new java.io.EOFException("Short transducer data");
+            }
+        }
+        b.flip();
+        first = new int[nStates + 1];
+        b.asIntBuffer().get(first);
+        b.position(b.position() + first.length * 4);
+        fin = new boolean[nStates];
+        for(int i = 0; i < nStates; i++) {
+            fin[i] = b.get() != 0;
+        }
+        labels = new char[nArcs];
+        b.asCharBuffer().get(labels);
+        b.position(b.position() + nArcs * 2);
+        targets = new int[nArcs];
+        b.asIntBuffer().get(targets);
+        b.position(b.position() + nArcs * 4);
+        outs = new int[nArcs];
+        b.asIntBuffer().get(outs);
+        b.position(b.position() + nArcs * 4);
+        ids = new int[nIDs];
+        b.asIntBuffer().get(ids);
+        f.seek(pos + b.limit());
+    }
+
+    private DictionaryFST() {
+    }
+
+    /**
+     * Builds a transducer for the dictionary that results from merging a
+     * number of dictionaries.
+     *
+     * @param dicts the dictionaries that were merged.  Elements may be
+     * <code>null</code>.
+     * @param idMaps the maps from the entry IDs in each of the
+     * dictionaries to the entry IDs in the merged dictionary, as returned
+     * by {@link DiskDictionary#merge}.  Entries that map to an ID less
+     * than 1 were not written to the merged dictionary.
+     * @return a transducer for the merged dictionary
+     */
+    public static DictionaryFST merge(DiskDictionary[] dicts, int[][] idMaps) {
+        PriorityQueue<HE> h = new PriorityQueue<HE>();
+        for(int i = 0; i < dicts.length; i++) {
+            if(dicts[i] != null) {
+                HE he = new HE(dicts[i].literator(), idMaps[i]);
+                if(he.next()) {
+                    h.offer(he);
+                }
+            }
+        }
+
+        Builder b = new Builder();
+        while(h.size() > 0) {
+            HE top = h.poll();
+            String name = top.name;
+            int id = top.id;
+            if(top.next()) {
+                h.offer(top);
+            }
+
+            //
+            // The same name in the other dictionaries maps to the same ID.
+            while(h.size() > 0 && h.peek().name.equals(name)) {
+                HE he = h.poll();
+                if(id <= 0) {
+                    id = he.id;
+                }
+                if(he.next()) {
+                    h.offer(he);
+                }
+            }
+            if(id > 0) {
+                b.add(name, id);
+            }
+        }
+        DictionaryFST ret = new DictionaryFST();
+        b.finish(ret);
+        return ret;
+    }
+
+    /**
+     * Writes the transducer to a file at the current position.  When this
+     * returns, the file will be positioned after the data for the
+     * transducer.
+     *
+     * @param f the file to write to
+     * @throws java.io.IOException if there is any error writing the file
+     */
+    public void write(RandomAccessFile f) throws java.io.IOException {
+        int nArcs = labels.length;
+        ByteBuffer b = ByteBuffer.allocate(16 + (nStates + 1) * 4 + nStates +
+                nArcs * 10 + ids.length * 4);
+        b.putInt(root);
+        b.putInt(nStates);
+        b.putInt(nArcs);
+        b.putInt(ids.length);
+        b.asIntBuffer().put(first, 0, nStates + 1);
+        b.position(b.position() + (nStates + 1) * 4);
+        for(int i = 0; i < nStates; i++) {
+            b.put((byte) (fin[i] ? 1 : 0));
+        }
+        b.asCharBuffer().put(labels);
+        b.position(b.position() + nArcs * 2);
+        b.asIntBuffer().put(targets);
+        b.position(b.position() + nArcs * 4);
+        b.asIntBuffer().put(outs);
+        b.position(b.position() + nArcs * 4);
+        b.asIntBuffer().put(ids);
+        b.position(b.position() + ids.length * 4);
+        b.flip();
+        FileChannel chan = f.getChannel();
+        long pos = f.getFilePointer();
+        while(b.hasRemaining()) {
+            chan.write(b, pos + b.position());
+        }
+        f.seek(pos + b.limit());
+    }
+
+    /**
+     * Gets the number of names in the transducer.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Gets the ID of the entry with a given name.
+     *
+     * @param name the name to look up
+     * @return the ID of the entry with the given name, or 0 if there is no
+     * such name.
+     */
+    public int getID(String name) {
+        int s = root;
+        int rank = 0;
+        for(int i = 0; i < name.length(); i++) {
+            int a = findArc(s, name.charAt(i));
+            if(a < 0) {
+                return 0;
+            }
+            rank += outs[a];
+            s = targets[a];
+        }
+        return fin[s] ? ids[rank] : 0;
+    }
+
+    /**
+     * Gets the IDs of the entries whose names match a wildcard pattern.
+     * Patterns may use <code>*</code> to match any number of characters and
+     * <code>?</code> to match a single character.
+     *
+     * @param pat the pattern to match.
+     * @param caseSensitive if <code>true</code>, the case of the names must
+     * match the case of the pattern.
+     * @param maxEntries the maximum number of IDs to return.  If zero or
+     * negative, all matching IDs are returned.
+     * @param qtt a timer for the lookup.  If the timer goes off, the IDs
+     * matched so far are returned.
+     * @return the IDs of the matching entries, in order of increasing name,
+     * or <code>null</code> if the pattern is too long for us to handle.
+     */
+    public int[] getMatching(String pat, boolean caseSensitive,
+            int maxEntries, QueryTimerTask qtt) {
+        int[] elems = new int[pat.length()];
+        int n = 0;
+        for(int i = 0; i < pat.length(); i++) {
+            char c = pat.charAt(i);
+            if(c == '*') {
+                if(n > 0 && elems[n - 1] == STAR) {
+                    continue;
+                }
+                elems[n++] = STAR;
+            } else if(c == '?') {
+                elems[n++] = ANY;
+            } else {
+                elems[n++] = caseSensitive ? c : CharUtils.toLowerCase(c);
+            }
+        }
+        return getMatching(Arrays.copyOf(elems, n), caseSensitive, maxEntries,
+                qtt);
+    }
+
+    /**
+     * Gets the IDs of the entries whose names contain a substring.
+     *
+     * @param substring the substring to look for.  Wildcard characters in
+     * the substring have no special meaning.
+     * @param caseSensitive if <code>true</code>, the case of the names must
+     * match the case of the substring.
+     * @param starts if <code>true</code>, the names must start with the
+     * substring.
+     * @param ends if <code>true</code>, the names must end with the
+     * substring.
+     * @param maxEntries the maximum number of IDs to return.  If zero or
+     * negative, all matching IDs are returned.
+     * @param qtt a timer for the lookup.  If the timer goes off, the IDs
+     * matched so far are returned.
+     * @return the IDs of the matching entries, in order of increasing name,
+     * or <code>null</code> if the substring is too long for us to handle.
+     */
+    public int[] getSubstring(String substring, boolean caseSensitive,
+            boolean starts, boolean ends, int maxEntries, QueryTimerTask qtt) {
+        int[] elems = new int[substring.length() + 2];
+        int n = 0;
+        if(!starts) {
+            elems[n++] = STAR;
+        }
+        for(int i = 0; i < substring.length(); i++) {
+            char c = substring.charAt(i);
+            elems[n++] = caseSensitive ? c : CharUtils.toLowerCase(c);
+        }
+        if(!ends) {
+            elems[n++] = STAR;
+        }
+        return getMatching(Arrays.copyOf(elems, n), caseSensitive, maxEntries,
+                qtt);
+    }
+
+    /**
+     * Finds the names accepted by both the transducer and the automaton for
+     * a pattern.  The states of the pattern automaton are the number of
+     * pattern elements matched so far, and we keep the set of states that
+     * we could be in as bits in a long.
+     */
+    private int[] getMatching(int[] elems, boolean caseSensitive,
+            int maxEntries, QueryTimerTask qtt) {
+        int m = elems.length;
+        if(m > MAX_PATTERN) {
+            return null;
+        }
+
+        //
+        // Masks for the pattern states that have a star or a wildcard
+        // character, and the literal characters with their states.
+        long starMask = 0;
+        long anyMask = 0;
+        char[] lits = new char[m];
+        long[] litMasks = new long[m];
+        int nLits = 0;
+        for(int i = 0; i < m; i++) {
+            if(elems[i] == STAR) {
+                starMask |= 1L << i;
+            } else if(elems[i] == ANY) {
+                anyMask |= 1L << i;
+            } else {
+                int j = 0;
+                while(j < nLits && lits[j] != elems[i]) {
+                    j++;
+                }
+                if(j == nLits) {
+                    lits[nLits++] = (char) elems[i];
+                }
+                litMasks[j] |= 1L << i;
+            }
+        }
+        long accept = 1L << m;
+
+        int[] ret = new int[16];
+        int nRet = 0;
+
+        //
+        // Pairs of transducer state and pattern states from which we know
+        // that no name can be matched.  Pattern state sets are given small
+        // numbers so that a pair fits in a long.
+        Set<Long> dead = new HashSet<Long>();
+        Map<Long, Integer> setNums = new HashMap<Long, Integer>();
+
+        //
+        // A depth first search, with an explicit stack.
+        int depth = 16;
+        int[] stState = new int[depth];
+        long[] stSet = new long[depth];
+        int[] stArc = new int[depth];
+        int[] stRank = new int[depth];
+        int[] stFound = new int[depth];
+        int sp = 0;
+        stState[0] = root;
+        stSet[0] = 1L | ((1L & starMask) << 1);
+        stArc[0] = -1;
+        stRank[0] = 0;
+        stFound[0] = 0;
+        sp = 1;
+        int steps = 0;
+        while(sp > 0) {
+            int top = sp - 1;
+            int s = stState[top];
+            long set = stSet[top];
+
+            if(stArc[top] < 0) {
+                stArc[top] = first[s];
+                stFound[top] = nRet;
+                if(fin[s] && (set & accept) != 0) {
+                    if(nRet == ret.length) {
+                        ret = Arrays.copyOf(ret, nRet * 2);
+                    }
+                    ret[nRet++] = ids[stRank[top]];
+                    if(maxEntries > 0 && nRet >= maxEntries) {
+                        break;
+                    }
+                }
+            }
+
+            if((++steps & 1023) == 0 && qtt != null && qtt.timedOut) {
+                break;
+            }
+
+            int a = stArc[top];
+            if(a < first[s + 1]) {
+                stArc[top]++;
+                char c = caseSensitive ? labels[a] : CharUtils.toLowerCase(
+                        labels[a]);
+                long moved = anyMask;
+                for(int j = 0; j < nLits; j++) {
+                    if(lits[j] == c) {
+                        moved |= litMasks[j];
+                    }
+                }
+                long next = (set & starMask) | ((set & moved) << 1);
+                next |= (next & starMask) << 1;
+                if(next == 0) {
+                    continue;
+                }
+                int t = targets[a];
+                Integer num = setNums.get(next);
+                if(num == null) {
+                    num = setNums.size();
+                    setNums.put(next, num);
+                }
+                if(dead.contains(((long) num << 32) | t)) {
+                    continue;
+                }
+                if(sp == depth) {
+                    depth *= 2;
+                    stState = Arrays.copyOf(stState, depth);
+                    stSet = Arrays.copyOf(stSet, depth);
+                    stArc = Arrays.copyOf(stArc, depth);
+                    stRank = Arrays.copyOf(stRank, depth);
+                    stFound = Arrays.copyOf(stFound, depth);
+                }
+                stState[sp] = t;
+                stSet[sp] = next;
+                stArc[sp] = -1;
+                stRank[sp] = stRank[top] + outs[a];
+                sp++;
+            } else {
+
+                //
+                // If nothing was found below here, then nothing will be
+                // found the next time we get here with the same pattern
+                // states.
+                if(stFound[top] == nRet && top > 0) {
+                    dead.add(((long) setNums.get(set) << 32) | s);
+                }
+                sp--;
+            }
+        }
+        return Arrays.copyOf(ret, nRet);
+    }
+
+    /**
+     * Gets the largest number of edits that we'll allow when looking for
+     * spelling variants of a word.  Short words have few letters to go
+     * on, so we allow fewer edits for them.
+     *
+     * @param word the word
+     * @return the largest edit distance for variants of the word
+     */
+    public static int maxEdits(String word) {
+        return word.length() <= 4 ? 1 : 2;
+    }
+
+    /**
+     * Gets the entries whose names are within a given edit distance of a
+     * word.  The names are found by running a Levenshtein automaton for the
+     * word alongside the transducer.  The state of the automaton after
+     * reading a prefix of a name is the row of edit distances between that
+     * prefix and each prefix of the word, and we stop following a path as
+     * soon as every distance in the row is more than the allowed distance.
+     *
+     * @param word the word to find variants for
+     * @param caseSensitive if <code>false</code>, differences in case are
+     * not counted as edits.
+     * @param maxDist the largest edit distance for a variant
+     * @param qtt a timer for the lookup.  If the timer goes off, the
+     * variants found so far are returned.
+     * @return the variants, in order of increasing name.
+     */
+    public List<Variant> getVariants(String word, boolean caseSensitive,
+            int maxDist, QueryTimerTask qtt) {
+        int m = word.length();
+        char[] w = word.toCharArray();
+        if(!caseSensitive) {
+            for(int i = 0; i < m; i++) {
+                w[i] = CharUtils.toLowerCase(w[i]);
+            }
+        }
+
+        List<Variant> ret = new ArrayList<Variant>();
+        int depth = 16;
+        int[][] rows = new int[depth][];
+        int[] stState = new int[depth];
+        int[] stArc = new int[depth];
+        int[] stRank = new int[depth];
+        rows[0] = new int[m + 1];
+        for(int j = 0; j <= m; j++) {
+            rows[0][j] = j;
+        }
+        stState[0] = root;
+        stArc[0] = -1;
+        int sp = 1;
+        int steps = 0;
+        while(sp > 0) {
+            int top = sp - 1;
+            int s = stState[top];
+            int[] row = rows[top];
+            if(stArc[top] < 0) {
+                stArc[top] = first[s];
+                if(fin[s] && row[m] <= maxDist) {
+                    ret.add(new Variant(ids[stRank[top]], row[m]));
+                }
+            }
+
+            if((++steps & 1023) == 0 && qtt != null && qtt.timedOut) {
+                break;
+            }
+
+            int a = stArc[top];
+            if(a >= first[s + 1]) {
+                sp--;
+                continue;
+            }
+            stArc[top]++;
+            if(sp == depth) {
+                depth *= 2;
+                rows = Arrays.copyOf(rows, depth);
+                stState = Arrays.copyOf(stState, depth);
+                stArc = Arrays.copyOf(stArc, depth);
+                stRank = Arrays.copyOf(stRank, depth);
+            }
+            if(rows[sp] == null) {
+                rows[sp] = new int[m + 1];
+            }
+            char c = caseSensitive ? labels[a] : CharUtils.toLowerCase(
+                    labels[a]);
+            int[] next = rows[sp];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for(int j = 1; j <= m; j++) {
+                int d = row[j - 1] + (w[j - 1] == c ? 0 : 1);
+                d = Math.min(d, row[j] + 1);
+                d = Math.min(d, next[j - 1] + 1);
+                next[j] = d;
+                min = Math.min(min, d);
+            }
+            if(min > maxDist) {
+                continue;
+            }
+            stState[sp] = targets[a];
+            stArc[sp] = -1;
+            stRank[sp] = stRank[top] + outs[a];
+            sp++;
+        }
+        return ret;
+    }
+
+    /**
+     * Finds the arc leaving a state with a given label.
+     *
+     * @return the index of the arc, or -1 if there is no such arc.
+     */
+    private int findArc(int s, char c) {
+        int lo = first[s];
+        int hi = first[s + 1] - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if(labels[mid] < c) {
+                lo = mid + 1;
+            } else if(labels[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A spelling variant of a word.
+     */
+    public static class Variant {
+
+        /**
+         * The ID of the entry for the variant.
+         */
+        public final int id;
+
+        /**
+         * The edit distance between the word and the variant.
+         */
+        public final int dist;
+
+        public Variant(int id, int dist) {
+            this.id = id;
+            this.dist = dist;
+        }
+    }
+
+    /**
+     * Builds a minimal transducer from names added in increasing order,
+     * freezing states as soon as no more names can pass through them and
+     * replacing each frozen state with an equivalent one that has already
+     * been frozen, if there is one.
+     */
+    private static class Builder {
+
+        /**
+         * The unfrozen states along the path for the last name added.
+         * The last arc of each of these leads to the next one.
+         */
+        private Node[] path = new Node[16];
+
+        private String prev;
+
+        /**
+         * The frozen states, keyed by their contents.
+         */
+        private Map<Node, Integer> register = new HashMap<Node, Integer>();
+
+        private int nStates;
+
+        private int[] first = new int[1024];
+
+        private boolean[] fin = new boolean[1024];
+
+        private int[] count = new int[1024];
+
+        private int nArcs;
+
+        private char[] labels = new char[1024];
+
+        private int[] targets = new int[1024];
+
+        private int[] outs = new int[1024];
+
+        private int nIDs;
+
+        private int[] ids = new int[1024];
+
+        Builder() {
+            path[0] = new Node();
+        }
+
+        /**
+         * Adds a name.
+         *
+         * @throws IllegalArgumentException if the name does not sort after
+         * the last name added.
+         */
+        void add(String name, int id) {
+            if(ShingleStage.isShingle(name)) {
+                return;
+            }
+            int common = 0;
+            if(prev != null) {
+                if(name.compareTo(prev) <= 0) {
+                    throw new IllegalArgumentException("Name " + name +
+                            " added after " + prev);
+                }
+                int l = Math.min(name.length(), prev.length());
+                while(common < l && name.charAt(common) ==
+                        prev.charAt(common)) {
+                    common++;
+                }
+                freeze(common);
+            }
+            if(name.length() >= path.length) {
+                path = Arrays.copyOf(path, name.length() * 2);
+            }
+            for(int i = common; i < name.length(); i++) {
+                path[i].add(name.charAt(i));
+                if(path[i + 1] == null) {
+                    path[i + 1] = new Node();
+                } else {
+                    path[i + 1].clear();
+                }
+            }
+            path[name.length()].fin = true;
+            if(nIDs == ids.length) {
+                ids = Arrays.copyOf(ids, nIDs * 2);
+            }
+            ids[nIDs++] = id;
+            prev = name;
+        }
+
+        /**
+         * Freezes the states on the path for the last name that are deeper
+         * than the given depth.
+         */
+        private void freeze(int depth) {
+            int l = prev == null ? 0 : prev.length();
+            for(int i = l; i > depth; i--) {
+                path[i - 1].setLastTarget(freeze(path[i]));
+            }
+        }
+
+        /**
+         * Freezes a state, returning the number of the frozen state.
+         */
+        private int freeze(Node n) {
+            Integer s = register.get(n);
+            if(s != null) {
+                return s;
+            }
+            if(nStates + 1 >= first.length) {
+                first = Arrays.copyOf(first, first.length * 2);
+                fin = Arrays.copyOf(fin, first.length);
+                count = Arrays.copyOf(count, first.length);
+            }
+            if(nArcs + n.nArcs >= labels.length) {
+                int nl = Math.max(labels.length * 2, nArcs + n.nArcs + 1);
+                labels = Arrays.copyOf(labels, nl);
+                targets = Arrays.copyOf(targets, nl);
+                outs = Arrays.copyOf(outs, nl);
+            }
+            s = nStates++;
+            first[s] = nArcs;
+            fin[s] = n.fin;
+            int c = n.fin ? 1 : 0;
+            for(int i = 0; i < n.nArcs; i++) {
+                labels[nArcs] = n.labels[i];
+                targets[nArcs] = n.targets[i];
+                outs[nArcs] = c;
+                c += count[n.targets[i]];
+                nArcs++;
+            }
+            count[s] = c;
+            first[s + 1] = nArcs;
+            register.put(n.copy(), s);
+            return s;
+        }
+
+        /**
+         * Finishes the transducer, filling in the given one.
+         */
+        void finish(DictionaryFST fst) {
+            freeze(0);
+            fst.root = freeze(path[0]);
+            fst.nStates = nStates;
+            fst.first = Arrays.copyOf(first, nStates + 1);
+            fst.fin = Arrays.copyOf(fin, nStates);
+            fst.labels = Arrays.copyOf(labels, nArcs);
+            fst.targets = Arrays.copyOf(targets, nArcs);
+            fst.outs = Arrays.copyOf(outs, nArcs);
+            fst.ids = Arrays.copyOf(ids, nIDs);
+            register = null;
+        }
+    }
+
+    /**
+     * A state that is being built.
+     */
+    private static class Node {
+
+        boolean fin;
+
+        int nArcs;
+
+        char[] labels = new char[4];
+
+        int[] targets = new int[4];
+
+        void add(char c) {
+            if(nArcs == labels.length) {
+                labels = Arrays.copyOf(labels, nArcs * 2);
+                targets = Arrays.copyOf(targets, nArcs * 2);
+            }
+            labels[nArcs] = c;
+            targets[nArcs++] = -1;
+        }
+
+        void setLastTarget(int t) {
+            targets[nArcs - 1] = t;
+        }
+
+        void clear() {
+            fin = false;
+            nArcs = 0;
+        }
+
+        Node copy() {
+            Node n = new Node();
+            n.fin = fin;
+            n.nArcs = nArcs;
+            n.labels = Arrays.copyOf(labels, nArcs);
+            n.targets = Arrays.copyOf(targets, nArcs);
+            return n;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = fin ? 1 : 0;
+            for(int i = 0; i < nArcs; i++) {
+                h = 31 * (31 * h + labels[i]) + targets[i];
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Node)) {
+                return false;
+            }
+            Node n = (Node) o;
+            if(fin != n.fin || nArcs != n.nArcs) {
+                return false;
+            }
+            for(int i = 0; i < nArcs; i++) {
+                if(labels[i] != n.labels[i] || targets[i] != n.targets[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An element of the heap used when merging the names from a number of
+     * dictionaries.
+     */
+    private static class HE implements Comparable<HE> {
+
+        LightIterator li;
+
+        int[] idMap;
+
+        String name;
+
+        int id;
+
+        HE(LightIterator li, int[] idMap) {
+            this.li = li;
+            this.idMap = idMap;
+        }
+
+        boolean next() {
+            if(!li.next()) {
+                return false;
+            }
+            name = li.getName().toString();
+            int old = li.getID();
+            id = idMap == null ? old : (old < idMap.length ? idMap[old] : -1);
+            return true;
+        }
+
+        public int compareTo(HE o) {
+            return name.compareTo(o.name);
+        }
+    }
+} // DictionaryFST
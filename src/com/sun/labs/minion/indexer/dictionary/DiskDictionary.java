@@ -48,12 +48,15 @@ import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
 import com.sun.labs.minion.indexer.postings.io.FilePostingsInput;
 import com.sun.labs.minion.indexer.postings.io.FileBackedPostingsInput;
 import com.sun.labs.minion.indexer.postings.io.ChannelPostingsInput;
+import com.sun.labs.minion.indexer.postings.io.MappedPostingsInput;
 import com.sun.labs.minion.indexer.postings.io.PostingsInput;
 import com.sun.labs.minion.indexer.postings.io.PostingsOutput;
 import com.sun.labs.minion.indexer.postings.io.StreamPostingsInput;
+import com.sun.labs.minion.pipeline.ShingleStage;
 import com.sun.labs.minion.util.CharUtils;
 import com.sun.labs.minion.util.Util;
 import com.sun.labs.minion.util.buffer.FileReadableBuffer;
+import com.sun.labs.minion.util.buffer.MappedReadableBuffer;
 import com.sun.labs.minion.util.buffer.NIOFileReadableBuffer;
 import com.sun.labs.minion.util.buffer.ReadableBuffer;
 import java.util.WeakHashMap;
@@ -176,7 +179,12 @@ public class DiskDictionary implements Dictionary {
         /**
          * Random access file and partially load postings.
          */
-        FILE_PART_POST
+        FILE_PART_POST,
+        /**
+         * Map the postings file into memory, and return postings as views
+         * on the mapped file.
+         */
+        MAPPED_POST
 
     }
 
@@ -187,11 +195,27 @@ public class DiskDictionary implements Dictionary {
     public enum BufferType {
 
         FILEBUFFER,
-        NIOFILEBUFFER
+        NIOFILEBUFFER,
+        /**
+         * Map the dictionary file into memory.  The buffer size parameters
+         * are ignored for this type.
+         */
+        MAPPEDBUFFER
 
     }
     private BufferType fileBufferType;
 
+    /**
+     * The mapped dictionary file, if we're using mapped buffers.
+     */
+    private MappedReadableBuffer mappedDict;
+
+    /**
+     * A transducer from the names in this dictionary to their IDs, used for
+     * wildcard and substring lookups, if one was built for the dictionary.
+     */
+    protected DictionaryFST fst;
+
     /**
      * Creates an dict
      */
@@ -322,13 +346,24 @@ public class DiskDictionary implements Dictionary {
                     postIn[i] =
                             new FilePostingsInput(postFiles[i], false);
                     break;
+                case MAPPED_POST:
+                    postIn[i] = new MappedPostingsInput(postFiles[i]);
+                    break;
             }
         }
 
+        if(fileBufferType == BufferType.MAPPEDBUFFER) {
+            mappedDict = new MappedReadableBuffer(dictFile);
+        }
+
         if(dh.idToPosnSize > 0) {
-            idToPosn =
-                    new NIOFileReadableBuffer(dictFile, dh.idToPosnPos,
-                                           dh.idToPosnSize);
+            if(mappedDict != null) {
+                idToPosn = mappedDict.view(dh.idToPosnPos, dh.idToPosnSize);
+            } else {
+                idToPosn =
+                        new NIOFileReadableBuffer(dictFile, dh.idToPosnPos,
+                                               dh.idToPosnSize);
+            }
         }
 
         setUpBuffers(nameBufferSize, offsetsBufferSize, infoBufferSize,
@@ -348,6 +383,25 @@ public class DiskDictionary implements Dictionary {
         this.name = name;
     }
 
+    /**
+     * Gets the transducer for the names in this dictionary.
+     *
+     * @return the transducer, or <code>null</code> if there isn't one.
+     */
+    public DictionaryFST getFST() {
+        return fst;
+    }
+
+    /**
+     * Sets the transducer to use for wildcard and substring lookups in
+     * this dictionary.
+     *
+     * @param fst a transducer built from the names in this dictionary
+     */
+    public void setFST(DictionaryFST fst) {
+        this.fst = fst;
+    }
+
     protected void setUpBuffers(int nameBufferSize, int offsetsBufferSize,
                                 int infoBufferSize, int infoOffsetsBufferSize)
             throws java.io.IOException {
@@ -388,6 +442,14 @@ public class DiskDictionary implements Dictionary {
                                                   dh.entryInfoOffsetsSize,
                                                   infoOffsetsBufferSize);
                 break;
+            case MAPPEDBUFFER:
+                names = mappedDict.view(dh.namesPos, dh.namesSize);
+                nameOffsets = mappedDict.view(dh.nameOffsetsPos,
+                                              dh.nameOffsetsSize);
+                entryInfo = mappedDict.view(dh.entryInfoPos, dh.entryInfoSize);
+                entryInfoOffsets = mappedDict.view(dh.entryInfoOffsetsPos,
+                                                   dh.entryInfoOffsetsSize);
+                break;
         }
 
 
@@ -865,6 +927,16 @@ public class DiskDictionary implements Dictionary {
             part.getManager().getQueryTimer().schedule(qtt, timeLimit);
         }
 
+        //
+        // If we have a transducer, it will only visit the matching names.
+        if(fst != null) {
+            QueryEntry[] ret = getByIDs(fst.getMatching(pat, caseSensitive,
+                    maxEntries, qtt));
+            if(ret != null) {
+                return ret;
+            }
+        }
+
         //
         // First, get the matching entry IDs from the bigram dictionary.
         int[] entryIds = biDict.getMatching(pat);
@@ -897,6 +969,9 @@ public class DiskDictionary implements Dictionary {
             while((entryIt.hasNext()) && (!qtt.timedOut) &&
                     ((maxEntries <= 0) || (res.size() < maxEntries))) {
                 QueryEntry curr = (QueryEntry) entryIt.next();
+                if(ShingleStage.isShingle(curr.toString())) {
+                    continue;
+                }
                 if(Util.match(patArray, curr.toString().toCharArray(),
                               caseSensitive)) {
                     res.add(curr);
@@ -925,7 +1000,10 @@ public class DiskDictionary implements Dictionary {
 
     /**
      * Gets the list of possible spelling corrections, based on terms
-     * in the index, for the string that is passed in.
+     * in the index, for the string that is passed in.  If the dictionary
+     * has a transducer, it is used to find the terms within a small edit
+     * distance of the string, otherwise the bigrams are used to find
+     * candidates.
      *
      * @param biDict The bigrams to use to do the candidate entry
      * selection.
@@ -965,6 +1043,13 @@ public class DiskDictionary implements Dictionary {
             part.getManager().getQueryTimer().schedule(qtt, timeLimit);
         }
 
+        //
+        // If we have a transducer, we can find exactly the terms that are
+        // within a few edits of the word.
+        if(fst != null) {
+            return getSpellingVariants(word, caseSensitive, maxEntries, qtt);
+        }
+
         //
         // First, get the matching entry IDs from the bigram dictionary.
         int[] entryIds = biDict.getAllVariants(word, false);
@@ -1044,6 +1129,47 @@ public class DiskDictionary implements Dictionary {
         return res.toArray(new QueryEntry[0]);
     }
 
+    /**
+     * Gets the spelling variants of a word using our transducer.  The
+     * variants are the terms within {@link DictionaryFST#maxEdits} edits of
+     * the word, ordered by edit distance and then by decreasing document
+     * frequency, so that the more common of two equally close terms is
+     * suggested first.
+     */
+    private QueryEntry[] getSpellingVariants(String word,
+                                             boolean caseSensitive,
+                                             int maxEntries,
+                                             QueryTimerTask qtt) {
+        List<DictionaryFST.Variant> vars =
+                fst.getVariants(word, caseSensitive,
+                                DictionaryFST.maxEdits(word), qtt);
+        final HashMap<QueryEntry, Integer> dist =
+                new HashMap<QueryEntry, Integer>();
+        List<QueryEntry> res = new ArrayList<QueryEntry>();
+        for(DictionaryFST.Variant v : vars) {
+            QueryEntry curr = getByID(v.id);
+            if(curr != null) {
+                res.add(curr);
+                dist.put(curr, v.dist);
+            }
+        }
+
+        Collections.sort(res, new Comparator<QueryEntry>() {
+
+            public int compare(QueryEntry e1, QueryEntry e2) {
+                int cmp = dist.get(e1) - dist.get(e2);
+                if(cmp != 0) {
+                    return cmp;
+                }
+                return e2.getN() - e1.getN();
+            }
+        });
+        if(maxEntries > 0 && maxEntries < res.size()) {
+            res = res.subList(0, maxEntries);
+        }
+        return res.toArray(new QueryEntry[0]);
+    }
+
     /**
      * Gets the entries matching the given pattern from the given
      * dictionary.   This can be used by anyone with a dictionary and some
@@ -1088,6 +1214,14 @@ public class DiskDictionary implements Dictionary {
             substring = CharUtils.toLowerCase(substring);
         }
 
+        if(fst != null) {
+            QueryEntry[] ret = getByIDs(fst.getSubstring(substring,
+                    caseSensitive, starts, ends, maxEntries, qtt));
+            if(ret != null) {
+                return ret;
+            }
+        }
+
         //
         // First, get the matching entry IDs from the bigram dictionary.
         int[] entryIds = biDict.getMatching(substring, starts, ends);
@@ -1140,6 +1274,27 @@ public class DiskDictionary implements Dictionary {
         return res.toArray(new QueryEntry[0]);
     }
 
+    /**
+     * Gets the entries for a number of IDs.
+     *
+     * @param ids the IDs, or <code>null</code>
+     * @return the entries for the IDs, or <code>null</code> if the IDs were
+     * <code>null</code>.  IDs for which there is no entry are skipped.
+     */
+    private QueryEntry[] getByIDs(int[] ids) {
+        if(ids == null) {
+            return null;
+        }
+        List<QueryEntry> ret = new ArrayList<QueryEntry>(ids.length);
+        for(int i = 0; i < ids.length; i++) {
+            QueryEntry e = getByID(ids[i]);
+            if(e != null) {
+                ret.add(e);
+            }
+        }
+        return ret.toArray(new QueryEntry[0]);
+    }
+
     /**
      * Gets the size of the dictionary.
      *
@@ -2135,6 +2290,22 @@ public class DiskDictionary implements Dictionary {
         public int getNEntries() {
             return stopPos - startPos;
         }
+
+        /**
+         * Gets the position in the dictionary of the first entry in the
+         * range of this iterator, counting from 0.
+         */
+        public int getStartPos() {
+            return startPos;
+        }
+
+        /**
+         * Gets the position in the dictionary just after the last entry in
+         * the range of this iterator, counting from 0.
+         */
+        public int getStopPos() {
+            return stopPos;
+        }
     }
 
     /**
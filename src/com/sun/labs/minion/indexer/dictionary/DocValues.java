@@ -0,0 +1,206 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.util.buffer.MappedReadableBuffer;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+/**
+ * A column of the values of a saved field, with one fixed-width value for
+ * each document in a partition.  The value for a document is the first value
+ * saved for that document, which is the value that is used when sorting
+ * results by the field.
+ *
+ * <p>
+ *
+ * Integer and date values are stored as longs (dates in milliseconds), and
+ * float values are stored as the bits of a double.  String values are
+ * stored as the ID of the value in the field's values dictionary.  Since
+ * those IDs are assigned in sorted order, comparing the IDs of two values
+ * from the same partition is the same as comparing the values.  Documents
+ * that have no value for the field get the default saved value for the
+ * field.
+ *
+ * <p>
+ *
+ * The column is memory mapped and is only read using absolute gets, so it
+ * may be used by any number of threads at once.
+ */
+public class DocValues {
+
+    /**
+     * The type of the field whose values we hold.
+     */
+    private FieldInfo.Type type;
+
+    /**
+     * The number of documents that we have values for.
+     */
+    private int nDocs;
+
+    /**
+     * The ID to use for documents that have no value for a string field.
+     */
+    private int missingOrd;
+
+    /**
+     * The mapped values.
+     */
+    private ReadableBuffer vals;
+
+    /**
+     * Creates a column from a region of a file.
+     *
+     * @param field the field whose values are in the column
+     * @param f the file containing the column
+     * @param offset the offset of the column in the file
+     * @param nDocs the number of documents in the column
+     * @param missingOrd for a string field, the ID of the empty string in
+     * the values dictionary, or 0 if the empty string isn't a value of the
+     * field.
+     * @throws java.io.IOException if there is any error mapping the column
+     */
+    public DocValues(FieldInfo field, RandomAccessFile f, long offset,
+            int nDocs, int missingOrd) throws java.io.IOException {
+        type = field.getType();
+        this.nDocs = nDocs;
+        this.missingOrd = missingOrd;
+        vals = new MappedReadableBuffer(f, offset, (long) nDocs * width(type));
+    }
+
+    /**
+     * Gets the number of bytes used for each value in a column for a field
+     * of the given type.
+     */
+    protected static int width(FieldInfo.Type type) {
+        return type == FieldInfo.Type.STRING ? 4 : 8;
+    }
+
+    /**
+     * Encodes a value for a document onto a column that is being written.
+     *
+     * @param type the type of the field
+     * @param b the buffer holding the column
+     * @param v the value, as returned by {@link #toLong}
+     */
+    protected static void encode(FieldInfo.Type type, WriteableBuffer b,
+            long v) {
+        b.byteEncode(v, width(type));
+    }
+
+    /**
+     * Converts the name of an entry in the values dictionary for a numeric or
+     * date field into the value that we store in a column.
+     *
+     * @param type the type of the field
+     * @param name the name of the entry
+     * @return the value to store
+     */
+    protected static long toLong(FieldInfo.Type type, Object name) {
+        switch(type) {
+            case INTEGER:
+                return ((Long) name).longValue();
+            case FLOAT:
+                return Double.doubleToLongBits(((Double) name).doubleValue());
+            case DATE:
+                return ((Date) name).getTime();
+            default:
+                throw new IllegalArgumentException("No long value for " + type);
+        }
+    }
+
+    public FieldInfo.Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the value for a document in an integer or date column.
+     *
+     * @param docID the document
+     * @return the value for the document, or 0 if there is no such document
+     */
+    public long getLong(int docID) {
+        if(docID < 1 || docID > nDocs) {
+            return 0;
+        }
+        return vals.byteDecodeLong((docID - 1) << 3, 8);
+    }
+
+    /**
+     * Gets the value for a document in a float column.
+     *
+     * @param docID the document
+     * @return the value for the document, or 0 if there is no such document
+     */
+    public double getDouble(int docID) {
+        return Double.longBitsToDouble(getLong(docID));
+    }
+
+    /**
+     * Gets the ID of the value for a document in a string column.
+     *
+     * @param docID the document
+     * @return the ID of the value for the document in the values dictionary
+     */
+    public int getOrd(int docID) {
+        if(docID < 1 || docID > nDocs) {
+            return missingOrd;
+        }
+        int ord = vals.byteDecode((docID - 1) << 2, 4);
+        return ord == 0 ? missingOrd : ord;
+    }
+
+    /**
+     * Compares the values for two documents.  If the columns are for string
+     * fields, they must be the same column.
+     *
+     * @param docID the first document
+     * @param o the column containing the second document
+     * @param oDocID the second document
+     * @return a value less than, equal to, or greater than zero as the value
+     * of the first document is less than, equal to, or greater than the
+     * value of the second document.
+     */
+    public int compare(int docID, DocValues o, int oDocID) {
+        switch(type) {
+            case STRING:
+                return compare(getOrd(docID), o.getOrd(oDocID));
+            case FLOAT:
+                return Double.compare(getDouble(docID), o.getDouble(oDocID));
+            default:
+                long v1 = getLong(docID);
+                long v2 = o.getLong(oDocID);
+                return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+        }
+    }
+
+    private static int compare(int v1, int v2) {
+        return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+    }
+}
@@ -33,6 +33,7 @@ import com.sun.labs.minion.indexer.entry.IDFreqEntry;
 import com.sun.labs.minion.indexer.entry.IndexEntry;
 
 import com.sun.labs.minion.indexer.postings.OccurrenceImpl;
+import com.sun.labs.minion.pipeline.ShingleStage;
 
 public class MemoryBiGramDictionary extends MemoryDictionary {
     
@@ -65,6 +66,13 @@ public class MemoryBiGramDictionary extends MemoryDictionary {
                     !((CasedPostingsEntry) x).nameOccurred()) {
                 continue;
             }
+            
+            //
+            // Shingles aren't words, so they shouldn't turn up when
+            // expanding wildcards or finding spelling variants.
+            if(ShingleStage.isShingle(x.getName().toString())) {
+                continue;
+            }
             add(x);
         }
     } // MemoryBiGramDictionary constructor
@@ -27,11 +27,15 @@ package com.sun.labs.minion.indexer.dictionary;
 import java.util.TimerTask;
 
 /**
- * A class to time dictionary lookup operations.
+ * A class to time dictionary lookup operations and whole queries.
  */
 public class QueryTimerTask extends TimerTask {
 
-    public boolean timedOut = false;
+    /**
+     * Whether the time has run out.  This is set by the timer thread and
+     * read by the threads doing the work being timed.
+     */
+    public volatile boolean timedOut = false;
 
     public void run() {
         timedOut = true;
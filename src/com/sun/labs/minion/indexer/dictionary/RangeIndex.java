@@ -0,0 +1,451 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.indexer.entry.QueryEntry;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
+import com.sun.labs.minion.indexer.postings.io.PostingsOutput;
+import com.sun.labs.minion.retrieval.ArrayGroup;
+import com.sun.labs.minion.retrieval.QuickOr;
+import com.sun.labs.minion.util.Util;
+import com.sun.labs.minion.util.buffer.MappedReadableBuffer;
+import com.sun.labs.minion.util.buffer.NIOBuffer;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An index of the documents that have values in ranges of the values of a
+ * saved numeric or date field in a partition.  Since the IDs of the values
+ * in a field's values dictionary are assigned in the order of the values, a
+ * range of values is a range of value IDs.
+ *
+ * <p>
+ *
+ * The index is a trie over the value IDs.  At level <em>k</em>, the values
+ * are divided into blocks of 16<sup><em>k</em></sup> consecutive IDs, and
+ * the index stores the list of documents that have any value in each block.
+ * Level 0 is the postings for the individual values, which are kept in the
+ * values dictionary.  A range of values is covered by at most 30 blocks at
+ * each level, so the documents for a range can be found by unioning a
+ * small number of lists, no matter how many values are in the range.
+ *
+ * <p>
+ *
+ * The index is written when a field is dumped or merged and is memory
+ * mapped at query time.  It is only read using absolute gets, so it may be
+ * used by any number of threads at once.  Like the postings for the values,
+ * the lists include documents that were deleted after the index was written.
+ */
+public class RangeIndex {
+
+    /**
+     * The number of bits of a value ID that each level of the trie covers.
+     */
+    private static final int BITS = 4;
+
+    /**
+     * The number of blocks at one level that make up a block at the next
+     * level up.
+     */
+    private static final int FANOUT = 1 << BITS;
+
+    /**
+     * The smallest number of values that a field must have before we'll
+     * build an index for it.
+     */
+    protected static final int MIN_VALUES = 64;
+
+    /**
+     * The number of values in the field.
+     */
+    private int nValues;
+
+    /**
+     * The number of levels above level 0.
+     */
+    private int nLevels;
+
+    /**
+     * The index of the first block of each level in the offsets, indexed by
+     * level.
+     */
+    private int[] levelStart;
+
+    /**
+     * The number of bytes used for each offset.
+     */
+    private int offsetBytes;
+
+    /**
+     * The offsets of the document lists for the blocks, relative to the
+     * start of the lists.
+     */
+    private ReadableBuffer offsets;
+
+    /**
+     * The document lists for the blocks.
+     */
+    private ReadableBuffer lists;
+
+    /**
+     * The values dictionary of the field, which holds the postings for
+     * level 0.
+     */
+    private DiskDictionary values;
+
+    /**
+     * Creates a range index from a region of a file.
+     *
+     * @param f the file containing the index
+     * @param offset the offset of the index in the file
+     * @param values the values dictionary for the field that was indexed
+     * @throws java.io.IOException if there is any error mapping the index
+     */
+    public RangeIndex(RandomAccessFile f, long offset, DiskDictionary values)
+            throws java.io.IOException {
+        this.values = values;
+        ReadableBuffer h = new MappedReadableBuffer(f, offset, 12);
+        nValues = h.byteDecode(4);
+        nLevels = h.byteDecode(4);
+        offsetBytes = h.byteDecode(4);
+        levelStart = new int[nLevels + 2];
+        for(int k = 1; k <= nLevels; k++) {
+            levelStart[k + 1] = levelStart[k] + nBlocks(nValues, k);
+        }
+        int nOffsets = levelStart[nLevels + 1] + 1;
+        offsets = new MappedReadableBuffer(f, offset + 12,
+                (long) nOffsets * offsetBytes);
+        long size = getOffset(nOffsets - 1);
+        lists = new MappedReadableBuffer(f,
+                offset + 12 + (long) nOffsets * offsetBytes, size);
+    }
+
+    /**
+     * Indicates whether we should build a range index for a field.
+     *
+     * @param type the type of the field
+     * @param nValues the number of values in the field
+     * @return <code>true</code> if the field is a numeric or date field with
+     * enough values to make an index worthwhile
+     */
+    protected static boolean shouldIndex(FieldInfo.Type type, int nValues) {
+        return (type == FieldInfo.Type.INTEGER ||
+                type == FieldInfo.Type.FLOAT ||
+                type == FieldInfo.Type.DATE) && nValues >= MIN_VALUES;
+    }
+
+    /**
+     * Gets the number of blocks at a level of the trie.
+     */
+    private static int nBlocks(int nValues, int level) {
+        return ((nValues - 1) >> (BITS * level)) + 1;
+    }
+
+    /**
+     * Gets the number of levels above level 0 that we'll build for a field.
+     * We keep adding levels until the top level has no more than
+     * {@link #FANOUT} blocks.
+     */
+    private static int nLevels(int nValues) {
+        int k = 0;
+        while(nBlocks(nValues, k) > FANOUT) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Gets the number of values in the field that was indexed.
+     */
+    public int getNValues() {
+        return nValues;
+    }
+
+    /**
+     * Gets the number of document lists that will be unioned to find the
+     * documents with values in a range.
+     *
+     * @param lo the ID of the first value in the range
+     * @param hi the ID of the last value in the range
+     * @return the number of lists covering the range
+     */
+    public int getNLists(int lo, int hi) {
+        return cover(lo, hi, new int[maxBlocks()]) / 2;
+    }
+
+    /**
+     * Estimates the number of documents with values in a range.
+     *
+     * @param lo the ID of the first value in the range
+     * @param hi the ID of the last value in the range
+     * @return the total size of the lists covering the range, which is the
+     * number of documents for a field with one value per document
+     */
+    public int estimateSize(int lo, int hi) {
+        int[] blocks = new int[maxBlocks()];
+        int n = cover(lo, hi, blocks);
+        int size = 0;
+        for(int i = 0; i < n; i += 2) {
+            if(blocks[i] == 0) {
+                QueryEntry e = values.getByID(blocks[i + 1] + 1);
+                size += e == null ? 0 : e.getN();
+            } else {
+                size += getList(blocks[i], blocks[i + 1]).byteDecode();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the documents that have values in a range.
+     *
+     * @param lo the ID of the first value in the range
+     * @param hi the ID of the last value in the range
+     * @param feat the features to use for the postings of single values
+     * @return the documents that have at least one value in the range
+     */
+    public ArrayGroup getGroup(int lo, int hi, PostingsIteratorFeatures feat) {
+        int[] blocks = new int[maxBlocks()];
+        int n = cover(lo, hi, blocks);
+
+        //
+        // Get the entries and decode the lists for the blocks before making
+        // the union, so that we know how big it will be.
+        List<QueryEntry> entries = new ArrayList<QueryEntry>();
+        List<int[]> docLists = new ArrayList<int[]>();
+        int size = 0;
+        for(int i = 0; i < n; i += 2) {
+            if(blocks[i] == 0) {
+                QueryEntry e = values.getByID(blocks[i + 1] + 1);
+                if(e != null) {
+                    entries.add(e);
+                    size += e.getN();
+                }
+            } else {
+                int[] docs = getDocs(blocks[i], blocks[i + 1]);
+                docLists.add(docs);
+                size += docs.length;
+            }
+        }
+        QuickOr or = new QuickOr((DiskPartition) values.getPartition(), size);
+        for(QueryEntry e : entries) {
+            or.add(e.iterator(feat));
+        }
+        for(int[] docs : docLists) {
+            or.add(docs, null, 1);
+        }
+        return or.getGroup();
+    }
+
+    /**
+     * Gets the largest number of blocks that can cover a range, times two.
+     */
+    private int maxBlocks() {
+        return 2 * (2 * (FANOUT - 1) * nLevels + FANOUT);
+    }
+
+    /**
+     * Finds the blocks that exactly cover a range of value IDs.  At each
+     * level, the blocks at the ends of the range that don't make up a whole
+     * block at the next level are used, and the rest of the range is moved
+     * up a level.
+     *
+     * @param lo the ID of the first value in the range
+     * @param hi the ID of the last value in the range
+     * @param blocks a place to put the level and index of each of the blocks
+     * @return the number of elements of <code>blocks</code> that were used
+     */
+    private int cover(int lo, int hi, int[] blocks) {
+        int n = 0;
+        lo = Math.max(lo, 1) - 1;
+        hi = Math.min(hi, nValues) - 1;
+        for(int k = 0; lo <= hi; k++) {
+            if(k == nLevels) {
+                for(int b = lo; b <= hi; b++) {
+                    blocks[n++] = k;
+                    blocks[n++] = b;
+                }
+                break;
+            }
+            while(lo <= hi && lo % FANOUT != 0) {
+                blocks[n++] = k;
+                blocks[n++] = lo++;
+            }
+            while(lo <= hi && (hi + 1) % FANOUT != 0) {
+                blocks[n++] = k;
+                blocks[n++] = hi--;
+            }
+            lo >>= BITS;
+            hi = ((hi + 1) >> BITS) - 1;
+        }
+        return n;
+    }
+
+    private long getOffset(int i) {
+        return offsets.byteDecodeLong(i * offsetBytes, offsetBytes);
+    }
+
+    /**
+     * Gets a buffer positioned at the start of the document list for a
+     * block.  The buffer is a duplicate of the lists, so concurrent queries
+     * don't share a position.
+     */
+    private ReadableBuffer getList(int level, int block) {
+        ReadableBuffer b = lists.duplicate();
+        b.position((int) getOffset(levelStart[level] + block));
+        return b;
+    }
+
+    /**
+     * Decodes the documents in the list for a block.
+     */
+    private int[] getDocs(int level, int block) {
+        ReadableBuffer b = getList(level, block);
+        int n = b.byteDecode();
+        int[] docs = new int[n];
+        int prev = 0;
+        for(int i = 0; i < n; i++) {
+            prev += b.byteDecode();
+            docs[i] = prev;
+        }
+        return docs;
+    }
+
+    /**
+     * Collects the values of the documents in a field as the field is dumped
+     * or merged, and writes the range index for them.
+     */
+    protected static class Builder {
+
+        private int nValues;
+
+        private int[] docs = new int[1024];
+
+        private int[] ids = new int[1024];
+
+        private int n;
+
+        /**
+         * Creates a builder.
+         *
+         * @param nValues the number of values in the field
+         */
+        public Builder(int nValues) {
+            this.nValues = nValues;
+        }
+
+        /**
+         * Adds a value for a document.  Documents must be added in increasing
+         * order of document ID.
+         *
+         * @param doc the ID of the document
+         * @param id the ID of the value
+         */
+        public void add(int doc, int id) {
+            if(n == docs.length) {
+                docs = Util.expandInt(docs, n * 2);
+                ids = Util.expandInt(ids, n * 2);
+            }
+            docs[n] = doc;
+            ids[n++] = id;
+        }
+
+        /**
+         * Writes the index.
+         *
+         * @param out the output to write the index to
+         * @throws java.io.IOException if there is any error writing the index
+         */
+        public void write(PostingsOutput out) throws java.io.IOException {
+            int nl = nLevels(nValues);
+            int total = 0;
+            for(int k = 1; k <= nl; k++) {
+                total += nBlocks(nValues, k);
+            }
+            int[] blockOffsets = new int[total + 1];
+            WriteableBuffer data = new NIOBuffer(n * nl + 1024, true);
+            int[] sorted = new int[n];
+            for(int k = 1, start = 0; k <= nl; k++) {
+                int shift = BITS * k;
+                int nb = nBlocks(nValues, k);
+
+                //
+                // Count the distinct documents in each block, then sort the
+                // documents by block.  Since the documents were added in
+                // order, they stay in order within each block.
+                int[] counts = new int[nb + 1];
+                int[] last = new int[nb];
+                for(int i = 0; i < n; i++) {
+                    int b = (ids[i] - 1) >> shift;
+                    if(last[b] != docs[i]) {
+                        last[b] = docs[i];
+                        counts[b + 1]++;
+                    }
+                }
+                for(int b = 0; b < nb; b++) {
+                    counts[b + 1] += counts[b];
+                }
+                int[] fill = counts.clone();
+                Arrays.fill(last, 0);
+                for(int i = 0; i < n; i++) {
+                    int b = (ids[i] - 1) >> shift;
+                    if(last[b] != docs[i]) {
+                        last[b] = docs[i];
+                        sorted[fill[b]++] = docs[i];
+                    }
+                }
+
+                for(int b = 0; b < nb; b++) {
+                    blockOffsets[start + b] = data.position();
+                    data.byteEncode(counts[b + 1] - counts[b]);
+                    int prev = 0;
+                    for(int i = counts[b]; i < counts[b + 1]; i++) {
+                        data.byteEncode(sorted[i] - prev);
+                        prev = sorted[i];
+                    }
+                }
+                start += nb;
+            }
+            blockOffsets[total] = data.position();
+
+            int ob = NIOBuffer.bytesRequired(data.position());
+            WriteableBuffer head = new NIOBuffer(12 + (total + 1) * ob, true);
+            head.byteEncode(nValues, 4);
+            head.byteEncode(nl, 4);
+            head.byteEncode(ob, 4);
+            for(int i = 0; i <= total; i++) {
+                head.byteEncode(blockOffsets[i], ob);
+            }
+            out.write(head);
+            out.write(data);
+        }
+    }
+}
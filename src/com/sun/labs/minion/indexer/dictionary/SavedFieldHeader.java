@@ -48,6 +48,12 @@ class SavedFieldHeader {
      */
     protected long bgOffset;
 
+    /**
+     * The offset of the transducer for a character field, or 0 if the
+     * field doesn't have one.
+     */
+    protected long fstOffset;
+
     /**
      * The offset of the docs to values offsets.
      */
@@ -73,6 +79,44 @@ class SavedFieldHeader {
      */
     protected int dtvSize;
 
+    /**
+     * The offset of the column of sort values, or 0 if the field doesn't
+     * have one.
+     */
+    protected long dvOffset;
+
+    /**
+     * The offset of the histogram of values, or 0 if the field doesn't
+     * have one.
+     */
+    protected long histOffset;
+
+    /**
+     * The offset of the index of value ranges, or 0 if the field doesn't
+     * have one.
+     */
+    protected long rangeOffset;
+
+    /**
+     * The size of a header written before we had transducers.
+     */
+    private static final int OLD_SIZE = 44;
+
+    /**
+     * The size of a header written before we had columns of sort values.
+     */
+    private static final int FST_SIZE = OLD_SIZE + 8;
+
+    /**
+     * The size of a header written before we had histograms of values.
+     */
+    private static final int DV_SIZE = FST_SIZE + 8;
+
+    /**
+     * The size of a header written before we had indices of value ranges.
+     */
+    private static final int HIST_SIZE = DV_SIZE + 8;
+
     /**
      * Creates a header.
      */
@@ -92,6 +136,7 @@ class SavedFieldHeader {
      */
     public void read(RandomAccessFile f)
         throws java.io.IOException {
+        long start      = f.getFilePointer();
         nDocs           = f.readInt();
         valOffset       = f.readLong();
         bgOffset        = f.readLong();
@@ -100,6 +145,22 @@ class SavedFieldHeader {
         dtvOffset       = f.readLong();
         dtvSize         = f.readInt();
         offsetBytes     = StdBufferImpl.bytesRequired(dtvSize);
+
+        //
+        // The values dictionary follows the header, so we can tell whether
+        // this header was written with a transducer offset.
+        if(valOffset - start > OLD_SIZE) {
+            fstOffset   = f.readLong();
+        }
+        if(valOffset - start > FST_SIZE) {
+            dvOffset    = f.readLong();
+        }
+        if(valOffset - start > DV_SIZE) {
+            histOffset  = f.readLong();
+        }
+        if(valOffset - start > HIST_SIZE) {
+            rangeOffset = f.readLong();
+        }
     }
     
     /**
@@ -114,5 +175,9 @@ class SavedFieldHeader {
         f.writeInt(dtvOffsetSize);
         f.writeLong(dtvOffset);
         f.writeInt(dtvSize);
+        f.writeLong(fstOffset);
+        f.writeLong(dvOffset);
+        f.writeLong(histOffset);
+        f.writeLong(rangeOffset);
     }
 } // SavedFieldHeader
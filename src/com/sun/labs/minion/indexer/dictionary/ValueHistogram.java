@@ -0,0 +1,202 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A histogram of the values of a saved field in a partition: the number of
+ * documents that have each of the values, and the IDs of the values ordered
+ * from most to least frequent.  A document that has a value more than once
+ * is only counted once for that value.
+ *
+ * <p>
+ *
+ * The histogram is written when a field is dumped or merged, so the counts
+ * that are stored include documents that were deleted afterwards.  A
+ * histogram can be corrected for deletions with {@link #subtract}, in which
+ * case the stored counts are upper bounds for the corrected counts.  The
+ * stored order is still useful for finding the most frequent values, since
+ * a value can't be more frequent than its stored count.
+ *
+ * <p>
+ *
+ * The histogram is memory mapped and is only read using absolute gets, so it
+ * may be used by any number of threads at once.
+ */
+public class ValueHistogram {
+
+    /**
+     * The number of values in the histogram.
+     */
+    private int nValues;
+
+    /**
+     * The stored counts, indexed by value ID - 1.
+     */
+    private IntBuffer counts;
+
+    /**
+     * The value IDs, ordered by decreasing stored count.
+     */
+    private IntBuffer order;
+
+    /**
+     * The number of deleted documents with each value, indexed by value ID,
+     * or <code>null</code> if the counts haven't been corrected.
+     */
+    private int[] deleted;
+
+    /**
+     * The number of deleted documents that the counts were corrected for.
+     */
+    private int nDeleted;
+
+    /**
+     * Creates a histogram from a region of a file.
+     *
+     * @param f the file containing the histogram
+     * @param offset the offset of the histogram in the file
+     * @throws java.io.IOException if there is any error mapping the histogram
+     */
+    public ValueHistogram(RandomAccessFile f, long offset)
+            throws java.io.IOException {
+        FileChannel chan = f.getChannel();
+        nValues = chan.map(FileChannel.MapMode.READ_ONLY, offset, 4).order(
+                ByteOrder.LITTLE_ENDIAN).getInt(0);
+        ByteBuffer b = chan.map(FileChannel.MapMode.READ_ONLY, offset + 4,
+                (long) nValues * 8);
+        counts = b.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        b.position(nValues * 4);
+        order = b.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private ValueHistogram(ValueHistogram h, int[] deleted, int nDeleted) {
+        nValues = h.nValues;
+        counts = h.counts;
+        order = h.order;
+        this.deleted = deleted;
+        this.nDeleted = nDeleted;
+    }
+
+    /**
+     * Writes a histogram onto a buffer.
+     *
+     * @param counts the number of documents with each value, indexed by value
+     * ID.  Element 0 is ignored.
+     * @param nValues the number of values
+     * @param b the buffer to write the histogram to
+     */
+    protected static void write(int[] counts, int nValues, WriteableBuffer b) {
+
+        //
+        // Sort by decreasing count, breaking ties by ID, which is the order
+        // of the values.
+        long[] keys = new long[nValues];
+        for(int id = 1; id <= nValues; id++) {
+            int c = id < counts.length ? counts[id] : 0;
+            keys[id - 1] = ((long) (Integer.MAX_VALUE - c) << 32) | id;
+        }
+        Arrays.sort(keys);
+        b.byteEncode(nValues, 4);
+        for(int id = 1; id <= nValues; id++) {
+            b.byteEncode(id < counts.length ? counts[id] : 0, 4);
+        }
+        for(int i = 0; i < nValues; i++) {
+            b.byteEncode((int) keys[i], 4);
+        }
+    }
+
+    /**
+     * Gets a copy of this histogram with counts corrected for a number of
+     * deleted documents.
+     *
+     * @param deleted the number of deleted documents with each value, indexed
+     * by value ID
+     * @param nDeleted the number of deleted documents
+     * @return the corrected histogram
+     */
+    protected ValueHistogram subtract(int[] deleted, int nDeleted) {
+        return new ValueHistogram(this, deleted, nDeleted);
+    }
+
+    /**
+     * Gets the number of deleted documents that the counts in this histogram
+     * have been corrected for.
+     */
+    public int getNDeleted() {
+        return nDeleted;
+    }
+
+    /**
+     * Gets the number of values in the histogram.
+     */
+    public int size() {
+        return nValues;
+    }
+
+    /**
+     * Gets the ID of the value at a given rank in the stored order.
+     *
+     * @param rank the rank, starting from 0
+     * @return the ID of the value
+     */
+    public int getID(int rank) {
+        return order.get(rank);
+    }
+
+    /**
+     * Gets the stored count for the value at a given rank.  No value at this
+     * or any later rank has a greater count, even after correcting for
+     * deletions.
+     *
+     * @param rank the rank, starting from 0
+     * @return the stored count of the value at that rank
+     */
+    public int getMaxFreq(int rank) {
+        return counts.get(order.get(rank) - 1);
+    }
+
+    /**
+     * Gets the number of undeleted documents with a value.
+     *
+     * @param id the ID of the value
+     * @return the number of documents with the value, or 0 if there is no
+     * such value
+     */
+    public int getFreq(int id) {
+        if(id < 1 || id > nValues) {
+            return 0;
+        }
+        int c = counts.get(id - 1);
+        return deleted == null ? c : c - deleted[id];
+    }
+}
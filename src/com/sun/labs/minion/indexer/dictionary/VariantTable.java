@@ -0,0 +1,216 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.knowledge.KnowledgeSource;
+import com.sun.labs.minion.pipeline.ShingleStage;
+import com.sun.labs.minion.util.CharUtils;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A table that maps the IDs of the terms in a main dictionary to the IDs of
+ * their morphological variants in the same dictionary, as given by a
+ * knowledge source.  The table is built when partitions are merged, so that
+ * expanding a query term in a merged partition takes a single lookup
+ * rather than running the morphology rules for the term and looking up
+ * each of the variants in the dictionary.
+ *
+ * <p>
+ *
+ * Only lowercase terms are in the table, since morphological expansion
+ * of a term that is not case sensitive looks up the lowercase variants.
+ * The table records the class of the knowledge source that was used to
+ * build it, so that it isn't used for queries that use a different
+ * knowledge source.
+ */
+public class VariantTable {
+
+    /**
+     * The name of the class of the knowledge source used to build the
+     * table.
+     */
+    private String source;
+
+    /**
+     * The start of the variants for each term ID in {@link #vars}.
+     */
+    private int[] offsets;
+
+    /**
+     * The variant IDs.
+     */
+    private int[] vars;
+
+    private VariantTable() {
+    }
+
+    /**
+     * Builds a variant table for the dictionary that results from merging
+     * a number of dictionaries.
+     *
+     * @param dicts the dictionaries that were merged.  Elements may be
+     * <code>null</code>.
+     * @param idMaps the maps from the entry IDs in each of the
+     * dictionaries to the entry IDs in the merged dictionary, as returned
+     * by {@link DiskDictionary#merge}.
+     * @param fst a transducer for the merged dictionary, used to look up
+     * the variants
+     * @param ks the knowledge source that provides the variants
+     * @return the table for the merged dictionary
+     */
+    public static VariantTable merge(DiskDictionary[] dicts, int[][] idMaps,
+            DictionaryFST fst, KnowledgeSource ks) {
+        int maxID = idMaps[0][0];
+        int[][] perID = new int[maxID + 1][];
+        int[] tmp = new int[16];
+        int nVars = 0;
+        for(int i = 0; i < dicts.length; i++) {
+            if(dicts[i] == null) {
+                continue;
+            }
+            for(LightIterator li = dicts[i].literator(); li.next();) {
+                int old = li.getID();
+                int id = old < idMaps[i].length ? idMaps[i][old] : -1;
+                if(id <= 0 || id > maxID || perID[id] != null) {
+                    continue;
+                }
+                String name = li.getName().toString();
+                if(ShingleStage.isShingle(name) ||
+                        !name.equals(CharUtils.toLowerCase(name))) {
+                    continue;
+                }
+                Set<String> vs = ks.variantsOf(name);
+                int n = 0;
+                for(String v : vs) {
+                    int vid = fst.getID(CharUtils.toLowerCase(v));
+                    if(vid > 0 && vid != id) {
+                        if(n == tmp.length) {
+                            tmp = Arrays.copyOf(tmp, n * 2);
+                        }
+                        tmp[n++] = vid;
+                    }
+                }
+                Arrays.sort(tmp, 0, n);
+                perID[id] = Arrays.copyOf(tmp, n);
+                nVars += n;
+            }
+        }
+
+        VariantTable ret = new VariantTable();
+        ret.source = ks.getClass().getName();
+        ret.offsets = new int[maxID + 2];
+        ret.vars = new int[nVars];
+        int p = 0;
+        for(int id = 0; id <= maxID; id++) {
+            ret.offsets[id] = p;
+            if(perID[id] != null) {
+                System.arraycopy(perID[id], 0, ret.vars, p, perID[id].length);
+                p += perID[id].length;
+            }
+        }
+        ret.offsets[maxID + 1] = p;
+        return ret;
+    }
+
+    /**
+     * Reads a variant table from a file, starting at the current position.
+     *
+     * @param f the file to read from
+     * @throws java.io.IOException if there is any error reading the file
+     */
+    public VariantTable(RandomAccessFile f) throws java.io.IOException {
+        source = f.readUTF();
+        int nOffsets = f.readInt();
+        int nVars = f.readInt();
+        ByteBuffer b = ByteBuffer.allocate((nOffsets + nVars) * 4);
+        FileChannel chan = f.getChannel();
+        long pos = f.getFilePointer();
+        while(b.hasRemaining()) {
+            if(chan.read(b, pos + b.position()) < 0) {
+                throw new java.io.EOFException("Short variant table");
+            }
+        }
+        b.flip();
+        offsets = new int[nOffsets];
+        b.asIntBuffer().get(offsets);
+        b.position(nOffsets * 4);
+        vars = new int[nVars];
+        b.asIntBuffer().get(vars);
+        f.seek(pos + b.limit());
+    }
+
+    /**
+     * Writes the table to a file at the current position.
+     *
+     * @param f the file to write to
+     * @throws java.io.IOException if there is any error writing the file
+     */
+    public void write(RandomAccessFile f) throws java.io.IOException {
+        f.writeUTF(source);
+        f.writeInt(offsets.length);
+        f.writeInt(vars.length);
+        ByteBuffer b = ByteBuffer.allocate((offsets.length + vars.length) * 4);
+        b.asIntBuffer().put(offsets);
+        b.position(offsets.length * 4);
+        b.asIntBuffer().put(vars);
+        FileChannel chan = f.getChannel();
+        long pos = f.getFilePointer();
+        b.position(0);
+        while(b.hasRemaining()) {
+            chan.write(b, pos + b.position());
+        }
+        f.seek(pos + b.limit());
+    }
+
+    /**
+     * Tells whether this table was built with a given knowledge source.
+     *
+     * @param ks the knowledge source
+     * @return <code>true</code> if the table was built using a knowledge
+     * source of the same class.
+     */
+    public boolean builtWith(KnowledgeSource ks) {
+        return ks != null && source.equals(ks.getClass().getName());
+    }
+
+    /**
+     * Gets the IDs of the variants of a term.
+     *
+     * @param id the ID of a lowercase term
+     * @return the IDs of the variants of the term, not including the term
+     * itself.  The array will be empty if the term has no variants in
+     * this dictionary.
+     */
+    public int[] getVariants(int id) {
+        if(id <= 0 || id >= offsets.length - 1) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(vars, offsets[id], offsets[id + 1]);
+    }
+}
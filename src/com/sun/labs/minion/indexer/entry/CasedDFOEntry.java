@@ -318,10 +318,12 @@ public class CasedDFOEntry extends CasedEntry {
         if(size[pos] == 0) {
             return;
         }
-        if(p[pos] == null) {
+        if(p[pos] == null ||
+                !((DFOPostings) p[pos]).hasFieldsAndPositions()) {
 
             //
-            // Create the postings with both buffers.
+            // Create the postings with both buffers, replacing any
+            // postings that were read for just the document IDs.
             p[pos] = new DFOPostings(postIn[0].read(offset[pos],
                                                     fnpSize[pos]),
                                      0, size[pos], fnpSize[pos]);
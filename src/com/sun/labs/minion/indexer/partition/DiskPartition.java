@@ -148,6 +148,12 @@ public class DiskPartition extends Partition implements Closeable {
      */
     private long closeTime;
 
+    /**
+     * The number of result sets that still need to evaluate a query against
+     * this partition.
+     */
+    private int pins;
+
     /**
      * Buffer size for merging.
      */
@@ -419,6 +425,22 @@ public class DiskPartition extends Partition implements Closeable {
         return dvl.getVectorLength(docID, fieldID);
     }
 
+    /**
+     * Gets the smallest non-zero document vector length in this partition.
+     *
+     * @param fieldID the ID of the field for which we want the length.  If
+     * this value is less than 0, the length for all vectored fields is used.
+     * @return the minimum length, or 1 if there are no lengths for the field,
+     * or <code>NaN</code> if the lengths can't be used to bound scores.
+     * @see DocumentVectorLengths#getMinVectorLength
+     */
+    public float getMinDocumentVectorLength(int fieldID) {
+        if(dvl == null) {
+            return Float.NaN;
+        }
+        return dvl.getMinVectorLength(fieldID < 0 ? -1 : fieldID);
+    }
+
     public void normalize(int[] docs, float[] scores, int p, float qw, int field) {
         dvl.normalize(docs, scores, p, qw, field);
     }
@@ -449,8 +471,9 @@ public class DiskPartition extends Partition implements Closeable {
 
         //
         // Check if enough time has passed for this close
-        // to succeed.
-        if(closeTime > currTime) {
+        // to succeed.  A partition that a result set is still waiting to
+        // evaluate against stays open unless we're forced to close it.
+        if(closeTime > currTime || (pins > 0 && currTime < Long.MAX_VALUE)) {
             return false;
         }
         closed = true;
@@ -501,6 +524,32 @@ public class DiskPartition extends Partition implements Closeable {
         return closed;
     }
 
+    /**
+     * Keeps this partition open until a matching call to {@link #unpin},
+     * so that a query whose evaluation has been put off will still see
+     * this partition if it is merged away in the meantime.
+     *
+     * @return <code>true</code> if the partition was pinned,
+     * <code>false</code> if it has already been closed.
+     */
+    public synchronized boolean pin() {
+        if(closed) {
+            return false;
+        }
+        pins++;
+        return true;
+    }
+
+    /**
+     * Releases a pin taken with {@link #pin}.  The partition will be closed
+     * the next time that the partition manager tries to close it.
+     */
+    public synchronized void unpin() {
+        if(pins > 0) {
+            pins--;
+        }
+    }
+
     /**
      * Deletes the files associated with this partition.
      */
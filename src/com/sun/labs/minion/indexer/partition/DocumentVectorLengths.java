@@ -37,6 +37,7 @@ import com.sun.labs.minion.indexer.postings.PostingsIterator;
 import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
 import com.sun.labs.minion.retrieval.TermStatsImpl;
 import com.sun.labs.minion.retrieval.WeightingComponents;
+import com.sun.labs.minion.pipeline.ShingleStage;
 import com.sun.labs.minion.retrieval.WeightingFunction;
 import com.sun.labs.minion.util.FileLock;
 import com.sun.labs.minion.util.FileLockException;
@@ -86,6 +87,17 @@ public class DocumentVectorLengths {
      */
     protected ReadableBuffer[] fieldLens;
 
+    /**
+     * The smallest non-zero vector length for the whole document, or a
+     * negative value if it hasn't been computed yet.
+     */
+    protected float minLen = -1;
+
+    /**
+     * The smallest non-zero vector lengths for the vectored fields.
+     */
+    protected float[] minFieldLens;
+
     /**
      * A standard buffer size to use, in bytes.
      */
@@ -245,10 +257,7 @@ public class DocumentVectorLengths {
 
         //
         // Get the first entries from the dictionaries.
-        QueryEntry mde = null;
-        if(mdi.hasNext()) {
-            mde = mdi.next();
-        }
+        QueryEntry mde = nextWord(mdi);
 
         TermStatsEntry gte = null;
         if(gti.hasNext()) {
@@ -312,8 +321,8 @@ public class DocumentVectorLengths {
                 gte = (TermStatsEntry) gti.next();
             }
 
-            if(mde == null && mdi.hasNext()) {
-                mde = mdi.next();
+            if(mde == null) {
+                mde = nextWord(mdi);
             }
         }
 
@@ -385,6 +394,23 @@ public class DocumentVectorLengths {
         ((FileWriteableBuffer) b).flush();
     }
 
+    /**
+     * Gets the next entry from the main dictionary that is a word.  Shingles
+     * don't contribute to the vector lengths or the term statistics, since
+     * they aren't in the document vectors.
+     *
+     * @return the next word, or <code>null</code> if there are no more.
+     */
+    private static QueryEntry nextWord(DictionaryIterator mdi) {
+        while(mdi.hasNext()) {
+            QueryEntry e = mdi.next();
+            if(!ShingleStage.isShingle(e.getName().toString())) {
+                return e;
+            }
+        }
+        return null;
+    }
+
     private static void addPostings(DiskPartition p,
             PostingsIterator pi, TermStatsImpl ts, int[] vectored,
             float[][] fvl, float[] vl) {
@@ -495,6 +521,55 @@ public class DocumentVectorLengths {
         }
     }
 
+    /**
+     * Gets the smallest non-zero vector length of any document in the
+     * partition.  Dividing a score by this value gives an upper bound for
+     * the normalized score, which can be used for pruning during query
+     * evaluation.  The lengths are scanned the first time that this method
+     * is called for a given field.
+     *
+     * @param fieldID the ID of the vectored field for which we want the
+     * minimum length.  A field ID of -1 is interpreted as a request for the
+     * minimum length using all vectored fields.
+     * @return the minimum non-zero length.  If the field was not vectored, or
+     * there are no documents with a non-zero length, 1 is returned, in keeping
+     * with {@link #getVectorLength(int, int)}.  If any of the lengths is not
+     * a number, then no bound can be given and <code>NaN</code> is returned.
+     */
+    public synchronized float getMinVectorLength(int fieldID) {
+        if(fieldID == -1) {
+            if(minLen < 0) {
+                minLen = minLength(vecLens.duplicate());
+            }
+            return minLen;
+        }
+        if(fieldLens == null || fieldLens[fieldID] == null) {
+            return 1;
+        }
+        if(minFieldLens == null) {
+            minFieldLens = new float[fieldLens.length];
+        }
+        if(minFieldLens[fieldID] == 0) {
+            minFieldLens[fieldID] = minLength(fieldLens[fieldID].duplicate());
+        }
+        return minFieldLens[fieldID];
+    }
+
+    private float minLength(ReadableBuffer b) {
+        float min = Float.MAX_VALUE;
+        b.position(0);
+        for(int i = 1; i <= part.getMaxDocumentID(); i++) {
+            float l = b.decodeFloat();
+            if(Float.isNaN(l)) {
+                return Float.NaN;
+            }
+            if(l > 0 && l < min) {
+                min = l;
+            }
+        }
+        return min == Float.MAX_VALUE ? 1 : min;
+    }
+
     /**
      * Closes the file associated with the document lengths.
      * @throws java.io.IOException if there is any error closing the file
@@ -28,9 +28,13 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 import java.util.PriorityQueue;
+import com.sun.labs.minion.indexer.dictionary.BasicField;
+import com.sun.labs.minion.indexer.dictionary.SavedField;
+import com.sun.labs.minion.indexer.dictionary.ValueHistogram;
 import com.sun.labs.minion.indexer.entry.CasedIDEntry;
 import com.sun.labs.minion.indexer.entry.QueryEntry;
 import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -65,6 +69,24 @@ public class FieldIterator implements Iterator {
             }
         }
     } // FieldIterator constructor
+
+    /**
+     * Creates an iterator for all of the unique values of a field with a
+     * non-zero frequency, where the frequencies of the values come from the
+     * histograms of the field's values in each partition.
+     *
+     * @param fields The field in each partition.
+     * @param hists The histogram of the field's values in each partition.
+     */
+    public FieldIterator(List<BasicField> fields, List<ValueHistogram> hists) {
+        h = new PriorityQueue<HE>();
+        for(int i = 0; i < fields.size(); i++) {
+            HE e = new HE(fields.get(i), hists.get(i));
+            if(e.next()) {
+                h.offer(e);
+            }
+        }
+    }
     
     // Implementation of java.util.Iterator
 
@@ -135,10 +157,45 @@ public class FieldIterator implements Iterator {
         protected int freq;
 
         protected boolean ignoreCase;
+
+        /**
+         * The histogram that the frequencies come from, if there is one.
+         */
+        protected ValueHistogram hist;
+
+        /**
+         * The number of deleted documents having each value, indexed by the
+         * (possibly case mapped) ID of the value, or <code>null</code> if
+         * there are no deleted documents.
+         */
+        protected int[] deleted;
+
+        /**
+         * A map from value IDs to the IDs in {@link #deleted}, or
+         * <code>null</code> if the IDs are used as they are.
+         */
+        protected int[] idMap;
         
         protected HE(InvFileDiskPartition p, String field, boolean ignoreCase) {
             this.ignoreCase = ignoreCase;
             iter = p.getFieldIterator(field);
+
+            //
+            // The frequencies of the values include the deleted documents,
+            // so work out how many to take off.
+            SavedField sf = p.getFieldStore().getSavedField(field);
+            if(sf instanceof BasicField && p.getDelMap().getNDeleted() > 0) {
+                BasicField bf = (BasicField) sf;
+                if(ignoreCase) {
+                    idMap = bf.getCaseMap();
+                }
+                deleted = bf.countDeleted(p.getDelMap(), idMap);
+            }
+        }
+
+        protected HE(BasicField field, ValueHistogram hist) {
+            this.hist = hist;
+            iter = field.iterator(null, false, null, false);
         }
 
         /**
@@ -154,7 +211,13 @@ public class FieldIterator implements Iterator {
             
             while(iter.hasNext()) {
                 QueryEntry e = (QueryEntry) iter.next();
-                if(ignoreCase && e instanceof CasedIDEntry) {
+                if(hist != null) {
+                    freq = hist.getFreq(e.getID());
+                    if(freq <= 0) {
+                        continue;
+                    }
+                    value = e.getName();
+                } else if(ignoreCase && e instanceof CasedIDEntry) {
                     freq = ((CasedIDEntry) e).getNCaseInsensitive();
                     if(freq == 0) {
                         //
@@ -167,6 +230,12 @@ public class FieldIterator implements Iterator {
                     value = e.getName();
                     freq = e.getN();
                 }
+                if(deleted != null) {
+                    freq -= deleted[idMap == null ? e.getID() : idMap[e.getID()]];
+                    if(freq <= 0) {
+                        continue;
+                    }
+                }
                 return true;
             }
             return false;
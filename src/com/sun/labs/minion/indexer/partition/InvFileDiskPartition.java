@@ -35,17 +35,20 @@ import java.util.Map;
 import java.util.Set;
 import com.sun.labs.minion.engine.DocumentImpl;
 import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.indexer.dictionary.DictionaryFST;
 import com.sun.labs.minion.indexer.dictionary.DictionaryIterator;
 import com.sun.labs.minion.indexer.dictionary.DiskBiGramDictionary;
 import com.sun.labs.minion.indexer.dictionary.DiskDictionary;
 import com.sun.labs.minion.indexer.dictionary.DictionaryFactory;
 import com.sun.labs.minion.indexer.dictionary.DiskFieldStore;
+import com.sun.labs.minion.indexer.dictionary.VariantTable;
 import com.sun.labs.minion.indexer.entry.DocKeyEntry;
 import com.sun.labs.minion.indexer.entry.Entry;
 import com.sun.labs.minion.indexer.entry.QueryEntry;
 import com.sun.labs.minion.indexer.postings.PostingsIterator;
 import com.sun.labs.minion.indexer.postings.io.PostingsOutput;
 import com.sun.labs.minion.indexer.postings.io.StreamPostingsOutput;
+import com.sun.labs.minion.knowledge.KnowledgeSource;
 import com.sun.labs.minion.lextax.DiskTaxonomy;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -116,6 +119,12 @@ public class InvFileDiskPartition extends DiskPartition {
      */
     protected RandomAccessFile fieldPostFile;
 
+    /**
+     * The morphological variants of the terms in the main dictionary, if
+     * this partition was built by a merge.
+     */
+    protected VariantTable variantTable;
+
     protected static String logTag = "IFDP";
 
     /**
@@ -162,6 +171,31 @@ public class InvFileDiskPartition extends DiskPartition {
                                                            bigramPostFile, this);
         bigramDict.setName("main-bigram");
 
+        //
+        // Load the transducer for the main dictionary, if there is one.
+        // Partitions dumped before we had them will do wildcard lookups
+        // using the bigrams.
+        File fstFile = InvFilePartitionUtils.getFSTFile(manager, partNumber);
+        if(fstFile.exists()) {
+            RandomAccessFile raf = new RandomAccessFile(fstFile, "r");
+            try {
+                mainDict.setFST(new DictionaryFST(raf));
+            } finally {
+                raf.close();
+            }
+        }
+
+        File varFile = InvFilePartitionUtils.getVariantFile(manager,
+                partNumber);
+        if(varFile.exists()) {
+            RandomAccessFile raf = new RandomAccessFile(varFile, "r");
+            try {
+                variantTable = new VariantTable(raf);
+            } finally {
+                raf.close();
+            }
+        }
+
         //
         // Load the field store.
         files = getFieldFiles();
@@ -452,6 +486,30 @@ public class InvFileDiskPartition extends DiskPartition {
         mDictFile.close();
         mPostStream.close();
 
+        //
+        // Build the transducer for the merged main dictionary.
+        logger.fine("Merging main dictionary transducers");
+        DiskDictionary[] mds = new DiskDictionary[sortedParts.length];
+        for(int i = 0; i < sortedParts.length; i++) {
+            mds[i] = sortedParts[i].mainDict;
+        }
+        DictionaryFST fst = DictionaryFST.merge(mds, idMaps);
+        InvFilePartitionUtils.writeFST(fst, manager, newPartNumber);
+
+        //
+        // Work out the morphological variants of the merged terms now, so
+        // that queries don't have to.
+        KnowledgeSource ks = manager.getEngine() == null ? null
+                : manager.getQueryConfig().getKnowledgeSource();
+        if(ks != null) {
+            logger.fine("Building variant table");
+            RandomAccessFile varFile = new RandomAccessFile(
+                    InvFilePartitionUtils.getVariantFile(manager,
+                    newPartNumber), "rw");
+            VariantTable.merge(mds, idMaps, fst, ks).write(varFile);
+            varFile.close();
+        }
+
         //
         // Merge the field store
         //
@@ -558,6 +616,17 @@ public class InvFileDiskPartition extends DiskPartition {
                 caseSensitive, maxEntries, timeLimit);
     }
 
+    /**
+     * Gets the table of morphological variants for the terms in the main
+     * dictionary.
+     *
+     * @return the variant table, or <code>null</code> if this partition
+     * doesn't have one.
+     */
+    public VariantTable getVariantTable() {
+        return variantTable;
+    }
+
     /**
      * Gets the entries containing the given substring.
      *
@@ -47,6 +47,7 @@ import com.sun.labs.minion.indexer.entry.Entry;
 import com.sun.labs.minion.indexer.entry.DocKeyEntry;
 import com.sun.labs.minion.indexer.entry.CasedPostingsEntry;
 import com.sun.labs.minion.indexer.dictionary.MemoryFieldStore;
+import com.sun.labs.minion.indexer.dictionary.DictionaryFST;
 import com.sun.labs.minion.indexer.dictionary.MemoryBiGramDictionary;
 import com.sun.labs.minion.indexer.postings.io.PostingsOutput;
 import com.sun.labs.minion.indexer.postings.io.StreamPostingsOutput;
@@ -195,7 +196,8 @@ public class InvFileMemoryPartition extends MemoryPartition implements Stage {
                 //
                 // If we have a taxonomy, and the token shouldn't be ignored, then analyze the current word and add
                 // it to the taxonomy.
-                if(taxonomy != null && !taxonomy.shouldIgnore(token)) {
+                if(taxonomy != null && token.getType() != Token.SHINGLE &&
+                        !taxonomy.shouldIgnore(token)) {
                     taxonomy.classify(name.toLowerCase());
                 }
             }
@@ -225,8 +227,9 @@ public class InvFileMemoryPartition extends MemoryPartition implements Stage {
             // terms.
             //
             // We do, however, need to watch out for "uncased" terms that
-            // have the same upper and lower case.
-            if(fields.shouldVector()) {
+            // have the same upper and lower case.  Shingles are only there
+            // to speed up phrase queries, so they stay out of the vectors.
+            if(fields.shouldVector() && token.getType() != Token.SHINGLE) {
                 if(mde instanceof CasedPostingsEntry) {
                     Entry cie =
                             ((CasedPostingsEntry) mde).getCaseInsensitiveEntry();
@@ -450,6 +453,15 @@ public class InvFileMemoryPartition extends MemoryPartition implements Stage {
             sw.stop();
             logger.fine("main bigram dump: " + sw.getTime());
 
+            //
+            // And a transducer for wildcard lookups.
+            sw.reset();
+            sw.start();
+            InvFilePartitionUtils.writeFST(new DictionaryFST(sorted), manager,
+                    partNumber);
+            sw.stop();
+            logger.fine("main fst dump: " + sw.getTime());
+
             partDocs = 0;
 
             if(taxonomy != null) {
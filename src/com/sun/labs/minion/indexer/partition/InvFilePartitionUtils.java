@@ -29,6 +29,7 @@ import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 
+import com.sun.labs.minion.indexer.dictionary.DictionaryFST;
 import com.sun.labs.minion.indexer.dictionary.MemoryBiGramDictionary;
 import com.sun.labs.minion.indexer.dictionary.MemoryDictionary;
 import com.sun.labs.minion.indexer.dictionary.StringNameHandler;
@@ -87,6 +88,30 @@ public class InvFilePartitionUtils {
                     manager.makePostingsFile(partNumber, "bi"),};
     }
 
+    /**
+     * Gets the file holding the transducer for the main dictionary of a
+     * partition.
+     *
+     * @param partNumber the partition number for which we want the file.
+     * @return the file for the transducer.
+     */
+    protected static File getFSTFile(PartitionManager manager,
+            int partNumber) {
+        return manager.makeDictionaryFile(partNumber, "fst");
+    }
+
+    /**
+     * Gets the file holding the table of morphological variants for the
+     * main dictionary of a partition.
+     *
+     * @param partNumber the partition number for which we want the file.
+     * @return the file for the variant table.
+     */
+    protected static File getVariantFile(PartitionManager manager,
+            int partNumber) {
+        return manager.makeDictionaryFile(partNumber, "mv");
+    }
+
     /**
      * Gets the files associated with the taxonomy postings for a partition.
      *
@@ -125,7 +150,7 @@ public class InvFilePartitionUtils {
         File[] ngFiles = getNGramFiles(manager, partNumber);
 
         File[] result = new File[commonFiles.length + fieldFiles.length +
-                biFiles.length + taxFiles.length + ngFiles.length];
+                biFiles.length + taxFiles.length + ngFiles.length + 2];
         int insert = 0;
         System.arraycopy(commonFiles, 0, result, insert, commonFiles.length);
         insert += commonFiles.length;
@@ -140,6 +165,10 @@ public class InvFilePartitionUtils {
         insert += taxFiles.length;
 
         System.arraycopy(ngFiles, 0, result, insert, ngFiles.length);
+        insert += ngFiles.length;
+
+        result[insert++] = getFSTFile(manager, partNumber);
+        result[insert] = getVariantFile(manager, partNumber);
         return result;
     }
 
@@ -192,4 +221,22 @@ public class InvFilePartitionUtils {
             logger.log(Level.SEVERE, "Error dumping partition", ioe);
         }
     }
+
+    /**
+     * Writes the transducer for a main dictionary out to disk using the
+     * provided partition manager and for the specified partition number.
+     *
+     * @param fst the transducer to write
+     * @param manager the partition manager to use
+     * @param partNumber the partition number that this transducer is a part
+     * of
+     */
+    protected static void writeFST(DictionaryFST fst,
+            PartitionManager manager,
+            int partNumber) throws java.io.IOException {
+        RandomAccessFile fstFile =
+                new RandomAccessFile(getFSTFile(manager, partNumber), "rw");
+        fst.write(fstFile);
+        fstFile.close();
+    }
 }
@@ -31,9 +31,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import com.sun.labs.minion.DocumentVector;
 import com.sun.labs.minion.FieldFrequency;
@@ -56,7 +58,10 @@ import java.util.TreeSet;
 import com.sun.labs.minion.engine.SearchEngineImpl;
 import com.sun.labs.minion.indexer.Closeable;
 import com.sun.labs.minion.indexer.MetaFile;
+import com.sun.labs.minion.indexer.dictionary.BasicField;
+import com.sun.labs.minion.indexer.dictionary.SavedField;
 import com.sun.labs.minion.indexer.dictionary.UncachedTermStatsDictionary;
+import com.sun.labs.minion.indexer.dictionary.ValueHistogram;
 import com.sun.labs.minion.retrieval.CollectionStats;
 import com.sun.labs.minion.retrieval.DocumentVectorImpl;
 import com.sun.labs.minion.retrieval.ScoredGroup;
@@ -81,6 +86,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Queue;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -173,6 +179,13 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
      */
     private boolean noMoreMerges;
 
+    /**
+     * The most frequent values of the fields that we've been asked about,
+     * as of the last time that we were asked.
+     */
+    private Map<String, TopValues> topValues =
+            new ConcurrentHashMap<String, TopValues>();
+
     /**
      * Instantiates a <code>PartitionManager</code> with the given index
      * configuration.
@@ -940,6 +953,17 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
      * named field.  If n is &lt; 1, all field values are returned, in order
      * of their frequency from most to least frequent.
      *
+     * <p>
+     *
+     * The frequencies come from the histograms of field values that are
+     * stored with each partition, corrected for deleted documents, so deleted
+     * documents aren't counted.  The values are kept until the partitions
+     * change or documents are deleted, so asking for the same field again is
+     * cheap.  Partitions written before we had histograms and case
+     * insensitive values of case sensitive fields are counted by iterating
+     * through all of the field values, and the values of the deleted
+     * documents are taken off those counts.
+     *
      * @param field the name of the field to rank
      * @param n the number of field values to return
      * @return a <code>List</code> containing field values of the appropriate
@@ -947,12 +971,68 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
      */
     public List<FieldFrequency> getTopFieldValues(String field, int n,
                                                   boolean ignoreCase) {
+        FieldInfo fi = getFieldInfo(field);
+        if(fi != null && fi.isSaved() &&
+                !(ignoreCase && fi.getType() == FieldInfo.Type.STRING &&
+                fi.isCaseSensitive())) {
+            //
+            // The state of the index is the number of each partition and the
+            // number of documents deleted from it.
+            List<DiskPartition> parts = getActivePartitions();
+            int[] state = new int[parts.size() * 2];
+            for(int i = 0; i < parts.size(); i++) {
+                state[2 * i] = parts.get(i).getPartitionNumber();
+                state[2 * i + 1] = parts.get(i).getDelMap().getNDeleted();
+            }
+            TopValues tv = topValues.get(field);
+            if(tv != null && tv.matches(state, n)) {
+                return tv.get(n);
+            }
+
+            List<BasicField> fields = new ArrayList<BasicField>();
+            List<ValueHistogram> hists = new ArrayList<ValueHistogram>();
+            boolean all = true;
+            for(DiskPartition p : parts) {
+                SavedField sf = ((InvFileDiskPartition) p).getFieldStore().
+                        getSavedField(fi);
+                if(sf == null) {
+                    continue;
+                }
+                ValueHistogram h = sf instanceof BasicField
+                        ? ((BasicField) sf).getHistogram(p.getDelMap()) : null;
+                if(h == null) {
+                    all = false;
+                    break;
+                }
+                fields.add((BasicField) sf);
+                hists.add(h);
+            }
+            if(all) {
+                tv = new TopValues(state, n,
+                        getTopFieldValues(fields, hists, n));
+                topValues.put(field, tv);
+                return tv.get(n);
+            }
+        }
+
+        return getTopFieldValues(getFieldIterator(field, ignoreCase), n);
+    }
+
+    /**
+     * Gets the top n most frequent field values returned by a field iterator.
+     *
+     * @param it the iterator
+     * @param n the number of field values to return, or a number less than 1
+     * to return all of the values
+     * @return the values, ordered by frequency
+     */
+    private List<FieldFrequency> getTopFieldValues(FieldIterator it, int n) {
         //
         // Make a heap to store the top n values (ranked by freq), and
         // iterate across all values to fill in the heap
         PriorityQueue<FieldFrequency> sorter =
                 new PriorityQueue<FieldFrequency>();
-        for(FieldIterator it = getFieldIterator(field, ignoreCase); it.hasNext();) {
+        while(it.hasNext()) {
             Object val = it.next();
             int freq = it.getFreq();
 
@@ -960,7 +1040,7 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
             //
             // See if we should keep this field of throw it away. We'll only
             // generate an element for the queue when we need to!
-            if(n < 0 || sorter.size() < n) {
+            if(n < 1 || sorter.size() < n) {
                 sorter.offer(new FieldFrequency(val, freq));
             } else {
                 if(sorter.peek().getFreq() < freq) {
@@ -972,15 +1052,111 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
 
         //
         // Now we have the heap of the top results (lowest freq of the top
-        // frequencies at the top of the heap).
+        // frequencies at the top of the heap), so we reverse the order that
+        // they come off the heap.
         List<FieldFrequency> res = new ArrayList<FieldFrequency>(sorter.size());
         while(sorter.size() > 0) {
-            res.add(0, sorter.poll());
+            res.add(sorter.poll());
         }
+        Collections.reverse(res);
 
         return res;
     }
 
+    /**
+     * Gets the top n most frequent values of a field from the histograms of
+     * the field's values in a number of partitions.
+     *
+     * <p>
+     *
+     * We walk down the values of each partition in order of their stored
+     * frequency, a value from each partition in turn, and look up the total
+     * frequency of each value that we haven't seen yet in all of the
+     * partitions.  Since the stored frequencies are upper bounds for the
+     * frequencies once deletions are taken into account, no value that we
+     * haven't seen yet can have a total frequency greater than the sum of the
+     * stored frequencies at the current position in each partition.  Once the
+     * n-th most frequent value that we've seen is at least that frequent, we
+     * can stop.  For fields where most values have about the same frequency,
+     * this can take a lot of lookups, and looking up a value costs much more
+     * than reading the next value when iterating through all of them.  So if
+     * we've looked at too many values we just add up the frequencies of all
+     * of the values.
+     *
+     * @param fields the field in each partition
+     * @param hists the histogram of the field's values in each partition
+     * @param n the number of values to return, or a number less than 1 to
+     * return all of the values
+     * @return the values, ordered from most to least frequent
+     */
+    private List<FieldFrequency> getTopFieldValues(List<BasicField> fields,
+            List<ValueHistogram> hists, int n) {
+        int np = fields.size();
+        int total = 0;
+        for(ValueHistogram h : hists) {
+            total += h.size();
+        }
+        int maxSeen = np == 1 ? total / 16 : total / (64 * np);
+        if(n < 1 || n >= maxSeen) {
+            return getTopFieldValues(new FieldIterator(fields, hists), n);
+        }
+
+        //
+        // The position in the stored order of each partition, the values that
+        // we've seen with a non-zero frequency, and the n highest frequencies
+        // that we've seen, with the lowest on top.
+        int[] ranks = new int[np];
+        Set<Object> seen = new HashSet<Object>();
+        List<FieldFrequency> found = new ArrayList<FieldFrequency>();
+        PriorityQueue<Integer> best = new PriorityQueue<Integer>(n + 1);
+        while(true) {
+            int threshold = 0;
+            for(int i = 0; i < np; i++) {
+                if(ranks[i] < hists.get(i).size()) {
+                    threshold += hists.get(i).getMaxFreq(ranks[i]);
+                }
+            }
+            if(threshold == 0 ||
+                    (best.size() == n && best.peek() >= threshold)) {
+                break;
+            }
+            if(seen.size() > maxSeen) {
+                return getTopFieldValues(new FieldIterator(fields, hists), n);
+            }
+            for(int i = 0; i < np; i++) {
+                ValueHistogram h = hists.get(i);
+                if(ranks[i] >= h.size()) {
+                    continue;
+                }
+                int id = h.getID(ranks[i]++);
+                Object val = fields.get(i).getValue(id);
+                if(val == null || !seen.add(val)) {
+                    continue;
+                }
+                int freq = h.getFreq(id);
+                for(int j = 0; j < np; j++) {
+                    if(j != i) {
+                        QueryEntry e = fields.get(j).get(val, true);
+                        if(e != null) {
+                            freq += hists.get(j).getFreq(e.getID());
+                        }
+                    }
+                }
+                if(freq <= 0) {
+                    continue;
+                }
+                found.add(new FieldFrequency(val, freq));
+                if(best.size() < n) {
+                    best.offer(freq);
+                } else if(best.peek() < freq) {
+                    best.poll();
+                    best.offer(freq);
+                }
+            }
+        }
+        return ResultSetImpl.topValues(found, n);
+    }
+
     /**
      * Handles the case where we've exceeded the high water mark for partitions.
      * The resolution is to run a merge of the smaller partitions in the index,
@@ -2413,6 +2589,58 @@ public class PartitionManager implements com.sun.labs.util.props.Configurable {
 
     }
 
+    /**
+     * The most frequent values of a field, along with what the index looked
+     * like when they were counted.
+     */
+    private static class TopValues {
+
+        /**
+         * The number of each partition that the values were counted in and
+         * the number of documents that had been deleted from it.
+         */
+        private int[] state;
+
+        /**
+         * The values, ordered by frequency.
+         */
+        private List<FieldFrequency> vals;
+
+        /**
+         * Whether we have all of the values, rather than just the most
+         * frequent ones.
+         */
+        private boolean complete;
+
+        public TopValues(int[] state, int n, List<FieldFrequency> vals) {
+            this.state = state;
+            this.vals = vals;
+            complete = n < 1 || vals.size() < n;
+        }
+
+        /**
+         * Indicates whether these values can be used to get the top n values
+         * for the given state of the index.
+         */
+        public boolean matches(int[] state, int n) {
+            return Arrays.equals(state, this.state) &&
+                    (complete || (n >= 1 && n <= vals.size()));
+        }
+
+        /**
+         * Gets copies of the top n values.
+         */
+        public List<FieldFrequency> get(int n) {
+            int size = n < 1 ? vals.size() : Math.min(n, vals.size());
+            List<FieldFrequency> ret = new ArrayList<FieldFrequency>(size);
+            for(int i = 0; i < size; i++) {
+                FieldFrequency ff = vals.get(i);
+                ret.add(new FieldFrequency(ff.getVal(), ff.getFreq()));
+            }
+            return ret;
+        }
+    }
+
     /**
      * An inner class that does housekeeping duties during querying.  These
      * duties include keeping up with changes to the active file, closing
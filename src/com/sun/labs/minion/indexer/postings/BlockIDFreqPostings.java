@@ -0,0 +1,380 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.indexer.postings;
+
+import java.util.Arrays;
+
+import com.sun.labs.minion.retrieval.WeightingComponents;
+import com.sun.labs.minion.retrieval.WeightingFunction;
+import com.sun.labs.minion.util.Util;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+
+/**
+ * A block encoded postings class for IDs that have frequencies associated
+ * with them.
+ *
+ * <p>
+ *
+ * The format is just like that for {@link BlockIDPostings}, except that:
+ *
+ * <ol>
+ *
+ * <li>The maximum frequency and the total number of occurrences are byte
+ * encoded after the last ID in the header.</li>
+ *
+ * <li>The maximum frequency in each block is byte encoded in the block
+ * table after the size of the block.</li>
+ *
+ * <li>Each block of IDs is followed by a block containing the frequencies
+ * of those IDs, less one, encoded using {@link PForDelta}.  Since most
+ * frequencies are 1, these blocks are typically very small.</li>
+ *
+ * </ol>
+ */
+public class BlockIDFreqPostings extends BlockIDPostings {
+
+    /**
+     * The uncompressed frequencies, used while indexing and appending.
+     */
+    protected int[] freqs;
+
+    /**
+     * The total number of occurrences in the postings list.
+     */
+    protected long to;
+
+    /**
+     * The maximum frequency.
+     */
+    protected int maxfdt;
+
+    /**
+     * The maximum frequency in each block.
+     */
+    protected int[] blockMax;
+
+    protected static String logTag = "BIDFP";
+
+    /**
+     * Makes a postings entry that is useful during indexing.
+     */
+    public BlockIDFreqPostings() {
+        super();
+        freqs = new int[ids.length];
+    }
+
+    /**
+     * Makes a postings entry that is useful during querying.
+     *
+     * @param b the data read from a postings file.
+     */
+    public BlockIDFreqPostings(ReadableBuffer b) {
+        super(b);
+    }
+
+    protected void decodeHeader(ReadableBuffer b) {
+        maxfdt = b.byteDecode();
+        to = b.byteDecodeLong();
+    }
+
+    protected void encodeHeader(WriteableBuffer b) {
+        b.byteEncode(maxfdt);
+        b.byteEncode(to);
+    }
+
+    protected void decodeBlockInfo(ReadableBuffer b, int block) {
+        if(blockMax == null) {
+            blockMax = new int[nBlocks];
+        }
+        blockMax[block] = b.byteDecode();
+    }
+
+    protected void encodeBlockInfo(WriteableBuffer b, int block) {
+        b.byteEncode(blockMax[block]);
+    }
+
+    protected void encodeBlockData(int off, int n, WriteableBuffer b) {
+        int block = off / PForDelta.BLOCK_SIZE;
+        if(blockMax == null) {
+            blockMax = new int[nBlocks];
+        }
+        int[] f = new int[n];
+        for(int i = 0; i < n; i++) {
+            f[i] = freqs[off + i] - 1;
+            blockMax[block] = Math.max(blockMax[block], freqs[off + i]);
+        }
+        PForDelta.encode(f, 0, n, b);
+    }
+
+    protected void addID(int id) {
+        super.addID(id);
+        if(freqs.length < ids.length) {
+            freqs = Util.expandInt(freqs, ids.length);
+        }
+    }
+
+    /**
+     * Adds a frequency to the last ID added to the postings.
+     */
+    protected void addFreq(int freq) {
+        freqs[nIDs - 1] += freq;
+        maxfdt = Math.max(freqs[nIDs - 1], maxfdt);
+        to += freq;
+    }
+
+    /**
+     * Adds an occurrence to the postings list.
+     *
+     * @param o The occurrence to add.
+     */
+    public void add(Occurrence o) {
+        super.add(o);
+        addFreq(o.getCount());
+    }
+
+    protected void appendID(int id, PostingsIterator pi) {
+        addID(id);
+        addFreq(pi.getFreq());
+    }
+
+    public void merge(MergeablePostings mp, int[] map) {
+        Postings op = (Postings) mp;
+        int n = op.getN();
+        int[] tid = new int[Math.max(n, nIDs) + 1];
+        int[] tf = new int[tid.length];
+        PostingsIterator pi = op.iterator(null);
+        int np = 0;
+        int p2 = 0;
+        boolean more = pi.next();
+        while(more || p2 < nIDs) {
+            int pid = more ? map[pi.getID()] : Integer.MAX_VALUE;
+            if(more && pid < 0) {
+                more = pi.next();
+                continue;
+            }
+            int mid = p2 < nIDs ? ids[p2] : Integer.MAX_VALUE;
+            if(pid < mid) {
+                tid = Util.addExpand(tid, np, pid);
+                tf = Util.addExpand(tf, np++, pi.getFreq());
+                to += pi.getFreq();
+                more = pi.next();
+            } else if(pid > mid) {
+                tid = Util.addExpand(tid, np, mid);
+                tf = Util.addExpand(tf, np++, freqs[p2++]);
+            } else {
+                tid = Util.addExpand(tid, np, mid);
+                tf = Util.addExpand(tf, np++, freqs[p2++] + pi.getFreq());
+                to += pi.getFreq();
+                more = pi.next();
+            }
+            maxfdt = Math.max(tf[np - 1], maxfdt);
+        }
+        ids = tid;
+        freqs = tf;
+        nIDs = np;
+        lastID = np > 0 ? ids[np - 1] : 0;
+    }
+
+    /**
+     * Gets the maximum frequency in the postings list.
+     */
+    public int getMaxFDT() {
+        return maxfdt;
+    }
+
+    /**
+     * Gets the total number of occurrences in this postings list.
+     */
+    public long getTotalOccurrences() {
+        return to;
+    }
+
+    /**
+     * Gets an iterator for the postings.
+     *
+     * @param features A set of features that the iterator must support.
+     * @return A postings iterator.  The iterators for these postings only
+     * support the weighting function feature.  If any extra features are
+     * requested, a warning will be logged and <code>null</code> will be
+     * returned.
+     */
+    public PostingsIterator iterator(PostingsIteratorFeatures features) {
+        if(features != null &&
+                (features.getMult() != null ||
+                features.getPositions())) {
+            logger.warning("Requested unsupported features for " +
+                    "BlockIDFreqPostings");
+            return null;
+        }
+        return new BlockIDFreqIterator(features);
+    }
+
+    public class BlockIDFreqIterator extends BlockIDIterator
+            implements BlockMaxPostingsIterator {
+
+        /**
+         * The frequencies in the current block.
+         */
+        protected int[] bfreqs = new int[PForDelta.BLOCK_SIZE];
+
+        /**
+         * The block selected by the last call to advanceShallow.
+         */
+        protected int sb;
+
+        /**
+         * The weighting function.
+         */
+        protected WeightingFunction wf;
+
+        /**
+         * A set of weighting components.
+         */
+        protected WeightingComponents wc;
+
+        public BlockIDFreqIterator(PostingsIteratorFeatures features) {
+            super(features);
+            if(features != null) {
+                wf = features.getWeightingFunction();
+                wc = features.getWeightingComponents();
+            }
+        }
+
+        protected void decodeBlockData(int n) {
+            PForDelta.decode(rp, bfreqs, n, scratch);
+            for(int i = 0; i < n; i++) {
+                bfreqs[i]++;
+            }
+        }
+
+        /**
+         * Gets the weight of the term for the current ID, as generated by
+         * some weighting function.
+         *
+         * @return the term weight for this ID.  If the weighting function
+         * is null, the raw frequency will be returned.
+         */
+        public float getWeight() {
+            if(wf == null) {
+                return getFreq();
+            }
+            wc.fdt = getFreq();
+            return wf.termWeight(wc);
+        }
+
+        /**
+         * Gets the frequency of the term in the current document.
+         */
+        public int getFreq() {
+            return bp < 0 ? 0 : bfreqs[bp];
+        }
+
+        public int advanceShallow(int id) {
+            if(id > lastID) {
+                return -1;
+            }
+            int b = Arrays.binarySearch(blockLast, id);
+            sb = b < 0 ? -b - 1 : b;
+            return blockLast[sb];
+        }
+
+        public int getBlockMaxFreq() {
+            return blockMax[sb];
+        }
+
+        public float getBlockMaxWeight() {
+            return boundWeight(blockMax[sb]);
+        }
+
+        public float getMaxWeight() {
+            return boundWeight(maxfdt);
+        }
+
+        /**
+         * Gets an upper bound for the weight of a term with the given
+         * frequency.  The document length is taken to be zero so that the
+         * bound holds for weighting functions that normalize by length.
+         */
+        protected float boundWeight(int f) {
+            if(wf == null) {
+                return f;
+            }
+            int ofdt = wc.fdt;
+            long old = wc.ld;
+            wc.fdt = f;
+            wc.ld = 0;
+            float w = wf.termWeight(wc);
+            wc.fdt = ofdt;
+            wc.ld = old;
+            return w;
+        }
+
+        public int get(int[] ids, int[] freq) {
+            int p = 0;
+            while(p < ids.length) {
+                if(cb < 0 || bp + 1 >= bn) {
+                    if(cb + 1 >= nBlocks) {
+                        break;
+                    }
+                    decodeBlock(cb + 1);
+                }
+                int n = Math.min(bn - bp - 1, ids.length - p);
+                System.arraycopy(bids, bp + 1, ids, p, n);
+                System.arraycopy(bfreqs, bp + 1, freq, p, n);
+                p += n;
+                bp += n;
+                curr = bids[bp];
+            }
+            return p;
+        }
+
+        public int get(int[] ids, float[] weights) {
+            int p = 0;
+            while(p < ids.length) {
+                if(cb < 0 || bp + 1 >= bn) {
+                    if(cb + 1 >= nBlocks) {
+                        break;
+                    }
+                    decodeBlock(cb + 1);
+                }
+                int n = Math.min(bn - bp - 1, ids.length - p);
+                System.arraycopy(bids, bp + 1, ids, p, n);
+                for(int i = 0; i < n; i++) {
+                    int f = bfreqs[bp + 1 + i];
+                    if(wf == null) {
+                        weights[p + i] = f;
+                    } else {
+                        wc.fdt = f;
+                        weights[p + i] = wf.termWeight(wc);
+                    }
+                }
+                p += n;
+                bp += n;
+                curr = bids[bp];
+            }
+            return p;
+        }
+    }
+} // BlockIDFreqPostings
@@ -0,0 +1,644 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.indexer.postings;
+
+import java.util.Arrays;
+
+import com.sun.labs.minion.util.Util;
+import com.sun.labs.minion.util.buffer.ArrayBuffer;
+import com.sun.labs.minion.util.buffer.Buffer;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+import java.util.logging.Logger;
+
+/**
+ * A postings class for ID only postings that stores the IDs in bit-packed
+ * blocks of {@link PForDelta#BLOCK_SIZE} IDs, rather than byte encoding
+ * each ID separately.  Decoding a block unpacks all of the IDs in the
+ * block in a single loop, which is considerably faster than byte decoding
+ * them one at a time.
+ *
+ * <p>
+ *
+ * The structure of the encoded data is as follows:
+ *
+ * <ol>
+ *
+ * <li>A single zero byte.  Since the byte encoded postings (e.g., {@link
+ * IDPostings}) always start with a non-zero ID count, this marker allows
+ * the two encodings to be told apart when reading.  See {@link
+ * #isBlockEncoded}.</li>
+ *
+ * <li>The number of IDs in the postings is byte encoded.</li>
+ *
+ * <li>The last ID in the postings list is byte encoded.</li>
+ *
+ * <li>The number of blocks is byte encoded.</li>
+ *
+ * <li>The block table.  For each block we encode:
+ *
+ * <ol>
+ *
+ * <li>The last ID in the block, byte encoded as a delta from the last ID in
+ * the previous block.</li>
+ *
+ * <li>The number of bytes used to encode the block, byte encoded.</li>
+ *
+ * </ol>
+ *
+ * <li>The blocks.  Each block contains the gaps between the IDs, less one,
+ * encoded using {@link PForDelta}.</li>
+ *
+ * </ol>
+ *
+ * Subclasses may add data to the header and to each block.
+ */
+public class BlockIDPostings implements Postings, MergeablePostings {
+
+    /**
+     * The compressed postings.
+     */
+    protected Buffer post;
+
+    /**
+     * The uncompressed IDs, used while indexing and appending.
+     */
+    protected int[] ids;
+
+    /**
+     * The number of IDs in the postings.
+     */
+    protected int nIDs;
+
+    /**
+     * The last ID in this postings list.
+     */
+    protected int lastID;
+
+    /**
+     * The number of blocks in the postings.
+     */
+    protected int nBlocks;
+
+    /**
+     * The last ID in each block.
+     */
+    protected int[] blockLast;
+
+    /**
+     * The position in the buffer where each block starts.
+     */
+    protected int[] blockPos;
+
+    /**
+     * The size of each block in bytes, used when writing the block table.
+     */
+    protected int[] blockSize;
+
+    static Logger logger = Logger.getLogger(BlockIDPostings.class.getName());
+
+    protected static String logTag = "BIDP";
+
+    /**
+     * Makes a postings entry that is useful during indexing.
+     */
+    public BlockIDPostings() {
+        ids = new int[4];
+    }
+
+    /**
+     * Makes a postings entry that is useful during querying.
+     *
+     * @param b the data read from a postings file.
+     */
+    public BlockIDPostings(ReadableBuffer b) {
+        post = b;
+        if(b.byteDecode() != 0) {
+            throw new IllegalArgumentException("Postings are not block encoded");
+        }
+        nIDs = b.byteDecode();
+        lastID = b.byteDecode();
+        decodeHeader(b);
+        nBlocks = b.byteDecode();
+        blockLast = new int[nBlocks];
+        blockPos = new int[nBlocks];
+        int prevLast = 0;
+        int[] sizes = new int[nBlocks];
+        for(int i = 0; i < nBlocks; i++) {
+            prevLast += b.byteDecode();
+            blockLast[i] = prevLast;
+            sizes[i] = b.byteDecode();
+            decodeBlockInfo(b, i);
+        }
+
+        //
+        // Turn the block sizes into absolute positions in the buffer.
+        int pos = b.position();
+        for(int i = 0; i < nBlocks; i++) {
+            blockPos[i] = pos;
+            pos += sizes[i];
+        }
+    }
+
+    /**
+     * Tests whether the postings at the current position of a buffer were
+     * encoded by this class (or a subclass) rather than by one of the byte
+     * encoded postings classes.  The position of the buffer is not changed.
+     *
+     * @param b a buffer containing postings
+     * @return <code>true</code> if the postings are block encoded.
+     */
+    public static boolean isBlockEncoded(ReadableBuffer b) {
+        return b.get(b.position()) == 0;
+    }
+
+    /**
+     * Decodes any extra header information written by {@link #encodeHeader}.
+     */
+    protected void decodeHeader(ReadableBuffer b) {
+    }
+
+    /**
+     * Encodes any extra header information after the number of IDs and the
+     * last ID.
+     */
+    protected void encodeHeader(WriteableBuffer b) {
+    }
+
+    /**
+     * Decodes any extra information stored in the block table for the given
+     * block.
+     */
+    protected void decodeBlockInfo(ReadableBuffer b, int block) {
+    }
+
+    /**
+     * Encodes any extra information stored in the block table for the given
+     * block.
+     */
+    protected void encodeBlockInfo(WriteableBuffer b, int block) {
+    }
+
+    /**
+     * Encodes any extra data for the IDs in a block, after the IDs have been
+     * encoded.
+     *
+     * @param off the index of the first ID in the block
+     * @param n the number of IDs in the block
+     * @param b the buffer onto which the data should be encoded
+     */
+    protected void encodeBlockData(int off, int n, WriteableBuffer b) {
+    }
+
+    /**
+     * Sets the skip size.  The size of the blocks is fixed, so this is
+     * ignored.
+     */
+    public void setSkipSize(int size) {
+    }
+
+    /**
+     * Adds an ID to the uncompressed data.
+     */
+    protected void addID(int id) {
+        if(nIDs >= ids.length) {
+            ids = Util.expandInt(ids, ids.length * 2);
+        }
+        ids[nIDs++] = id;
+        lastID = id;
+    }
+
+    /**
+     * Adds an occurrence to the postings list.
+     *
+     * @param o The occurrence.
+     */
+    public void add(Occurrence o) {
+        if(nIDs == 0 || o.getID() != lastID) {
+            addID(o.getID());
+        }
+    }
+
+    public int getN() {
+        return nIDs;
+    }
+
+    public int getLastID() {
+        return lastID;
+    }
+
+    /**
+     * Gets the maximum frequency in the postings associated with this
+     * entry.  For ID only postings, this value is always 1.
+     *
+     * @return 1.
+     */
+    public int getMaxFDT() {
+        return 1;
+    }
+
+    /**
+     * Gets the total number of occurrences in this postings list, which is
+     * always the number of postings, since we don't encode any frequencies.
+     */
+    public long getTotalOccurrences() {
+        return nIDs;
+    }
+
+    /**
+     * Encodes the collected IDs into blocks.
+     */
+    public void finish() {
+        if(post != null) {
+            return;
+        }
+
+        WriteableBuffer temp = new ArrayBuffer(nIDs * 2 + 16);
+        nBlocks = (nIDs + PForDelta.BLOCK_SIZE - 1) / PForDelta.BLOCK_SIZE;
+        blockLast = new int[nBlocks];
+        blockPos = new int[nBlocks];
+        blockSize = new int[nBlocks];
+        int[] gaps = new int[PForDelta.BLOCK_SIZE];
+        int prevID = 0;
+        for(int i = 0, block = 0; i < nIDs; i += PForDelta.BLOCK_SIZE, block++) {
+            int n = Math.min(PForDelta.BLOCK_SIZE, nIDs - i);
+            for(int j = 0; j < n; j++) {
+                gaps[j] = ids[i + j] - prevID - 1;
+                prevID = ids[i + j];
+            }
+            int start = temp.position();
+            PForDelta.encode(gaps, 0, n, temp);
+            encodeBlockData(i, n, temp);
+            blockLast[block] = prevID;
+            blockPos[block] = start;
+            blockSize[block] = temp.position() - start;
+        }
+        post = temp;
+    }
+
+    /**
+     * Gets the size of the postings, in bytes.
+     */
+    public int size() {
+        return post.position();
+    }
+
+    /**
+     * Gets the buffers that make up the encoded postings.
+     *
+     * @return the header and block table, followed by the blocks.
+     */
+    public WriteableBuffer[] getBuffers() {
+        WriteableBuffer temp = new ArrayBuffer(nBlocks * 6 + 32);
+        temp.byteEncode(0);
+        temp.byteEncode(nIDs);
+        temp.byteEncode(lastID);
+        encodeHeader(temp);
+        temp.byteEncode(nBlocks);
+        int prevLast = 0;
+        for(int i = 0; i < nBlocks; i++) {
+            temp.byteEncode(blockLast[i] - prevLast);
+            temp.byteEncode(blockSize[i]);
+            encodeBlockInfo(temp, i);
+            prevLast = blockLast[i];
+        }
+        return new WriteableBuffer[]{
+                    temp,
+                    (WriteableBuffer) post
+                };
+    }
+
+    /**
+     * Remaps the IDs in this postings list.  Remapping is handled at
+     * append time, so this does nothing.
+     */
+    public void remap(int[] idMap) {
+    }
+
+    /**
+     * Appends another set of postings to this one.
+     *
+     * @param p The postings to append.  These can be any type of postings,
+     * which allows byte encoded postings from older partitions to be
+     * converted to block encoded postings when partitions are merged.
+     * @param start The new starting document ID for the partition
+     * that the entry was drawn from.
+     */
+    public void append(Postings p, int start) {
+        append(p, start, null);
+    }
+
+    /**
+     * Appends another set of postings to this one, removing any data
+     * associated with deleted documents.
+     *
+     * @param p The postings to append.  These can be any type of postings.
+     * @param start The new starting document ID for the partition
+     * that the entry was drawn from.
+     * @param idMap A map from old IDs in the given postings to new IDs
+     * with gaps removed for deleted data.  If this is null, then there are
+     * no deleted documents.
+     */
+    public void append(Postings p, int start, int[] idMap) {
+        PostingsIterator pi = p.iterator(null);
+        if(pi == null) {
+            return;
+        }
+        while(pi.next()) {
+            int id = pi.getID();
+            if(idMap != null) {
+                id = idMap[id];
+                if(id < 0) {
+                    continue;
+                }
+            }
+            appendID(id + start - 1, pi);
+        }
+    }
+
+    /**
+     * Adds a single ID taken from another postings list.
+     *
+     * @param id the ID to add, already mapped into our ID space
+     * @param pi an iterator positioned at the ID in the other postings
+     */
+    protected void appendID(int id, PostingsIterator pi) {
+        addID(id);
+    }
+
+    public void merge(MergeablePostings mp, int[] map) {
+        Postings op = (Postings) mp;
+        int n = op.getN();
+        int[] temp = new int[Math.max(n, nIDs) + 1];
+        PostingsIterator pi = op.iterator(null);
+        int np = 0;
+        int p2 = 0;
+        boolean more = pi.next();
+        while(more || p2 < nIDs) {
+            int pid = more ? map[pi.getID()] : Integer.MAX_VALUE;
+            if(more && pid < 0) {
+                more = pi.next();
+                continue;
+            }
+            int mid = p2 < nIDs ? ids[p2] : Integer.MAX_VALUE;
+            if(pid < mid) {
+                temp = Util.addExpand(temp, np++, pid);
+                more = pi.next();
+            } else if(pid > mid) {
+                temp = Util.addExpand(temp, np++, mid);
+                p2++;
+            } else {
+                temp = Util.addExpand(temp, np++, mid);
+                p2++;
+                more = pi.next();
+            }
+        }
+        ids = temp;
+        nIDs = np;
+        lastID = np > 0 ? ids[np - 1] : 0;
+    }
+
+    /**
+     * Gets an iterator for the postings.
+     *
+     * @param features A set of features that the iterator must support.
+     * @return A postings iterator.  The iterators for these postings do
+     * not support any of the extra features available.  If any extra
+     * features are requested, a warning will be logged and
+     * <code>null</code> will be returned.
+     */
+    public PostingsIterator iterator(PostingsIteratorFeatures features) {
+        if(features == null ||
+                (features.getFields() == null &&
+                features.getMult() == null &&
+                features.getWeightingFunction() == null &&
+                !features.getPositions())) {
+            return new BlockIDIterator(features);
+        } else {
+            logger.warning("Requested unsupported features for BlockIDPostings");
+            return null;
+        }
+    }
+
+    /**
+     * An iterator for block encoded postings.  The iterator decodes a whole
+     * block at a time into arrays, and uses the block table to jump directly
+     * to the block that may contain a given ID.
+     */
+    public class BlockIDIterator implements PostingsIterator {
+
+        /**
+         * A readable buffer for the postings.
+         */
+        protected ReadableBuffer rp;
+
+        /**
+         * The IDs in the current block.
+         */
+        protected int[] bids = new int[PForDelta.BLOCK_SIZE];
+
+        /**
+         * A scratch array for unpacking blocks.
+         */
+        protected byte[] scratch = new byte[PForDelta.BLOCK_SIZE * 4];
+
+        /**
+         * The current block, or -1 if no block has been decoded.
+         */
+        protected int cb;
+
+        /**
+         * The number of IDs in the current block.
+         */
+        protected int bn;
+
+        /**
+         * Our position in the current block.
+         */
+        protected int bp;
+
+        /**
+         * The current ID.
+         */
+        protected int curr;
+
+        private PostingsIteratorFeatures features;
+
+        public BlockIDIterator(PostingsIteratorFeatures features) {
+            this.features = features;
+            rp = ((ReadableBuffer) post).duplicate();
+            cb = -1;
+        }
+
+        public int getN() {
+            return nIDs;
+        }
+
+        public PostingsIteratorFeatures getFeatures() {
+            return features;
+        }
+
+        /**
+         * Decodes a block of postings.
+         *
+         * @param block the block to decode
+         */
+        protected void decodeBlock(int block) {
+            rp.position(blockPos[block]);
+            bn = block == nBlocks - 1 ? nIDs - block * PForDelta.BLOCK_SIZE : PForDelta.BLOCK_SIZE;
+            PForDelta.decode(rp, bids, bn, scratch);
+            int prev = block == 0 ? 0 : blockLast[block - 1];
+            for(int i = 0; i < bn; i++) {
+                prev += bids[i] + 1;
+                bids[i] = prev;
+            }
+            decodeBlockData(bn);
+            cb = block;
+            bp = -1;
+        }
+
+        /**
+         * Decodes any extra data stored for the IDs in the block that was
+         * just decoded.  The buffer is positioned just after the IDs.
+         *
+         * @param n the number of IDs in the block
+         */
+        protected void decodeBlockData(int n) {
+        }
+
+        public boolean next() {
+            if(cb < 0 || bp + 1 >= bn) {
+                if(cb + 1 >= nBlocks) {
+                    return false;
+                }
+                decodeBlock(cb + 1);
+            }
+            curr = bids[++bp];
+            return true;
+        }
+
+        /**
+         * Finds the given ID in the entry we're iterating through, if it
+         * exists.  The block table is used to find the block that might
+         * contain the ID and then the block is binary searched.
+         *
+         * @param id The ID that we want to find.
+         * @return <code>true</code> if the ID occurs in this entry,
+         * <code>false</code> otherwise.
+         */
+        public boolean findID(int id) {
+            if(nIDs == 0 || id > lastID) {
+                return false;
+            }
+
+            if(cb < 0 || id > blockLast[cb] || (bn > 0 && id < bids[0])) {
+                int b = Arrays.binarySearch(blockLast, id);
+                if(b < 0) {
+                    b = -b - 1;
+                }
+                decodeBlock(b);
+                bp = 0;
+            } else if(bp < 0) {
+                bp = 0;
+            }
+
+            int p = Arrays.binarySearch(bids, bp <= 0 || bids[bp] > id ? 0 : bp, bn, id);
+            if(p < 0) {
+                p = -p - 1;
+            }
+            bp = p;
+            curr = bids[bp];
+            return curr == id;
+        }
+
+        public void reset() {
+            cb = -1;
+            bn = 0;
+            bp = -1;
+            curr = 0;
+        }
+
+        public int getID() {
+            return curr;
+        }
+
+        public float getWeight() {
+            return 1;
+        }
+
+        public int getFreq() {
+            return 1;
+        }
+
+        public int compareTo(Object o) {
+            return getID() - ((PostingsIterator) o).getID();
+        }
+
+        public boolean equals(Object o) {
+            if(o instanceof PostingsIterator) {
+                return getID() == ((PostingsIterator) o).getID();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return getID();
+        }
+
+        public int get(int[] ids) {
+            int p = 0;
+            while(p < ids.length) {
+                if(cb < 0 || bp + 1 >= bn) {
+                    if(cb + 1 >= nBlocks) {
+                        break;
+                    }
+                    decodeBlock(cb + 1);
+                }
+                int n = Math.min(bn - bp - 1, ids.length - p);
+                System.arraycopy(bids, bp + 1, ids, p, n);
+                p += n;
+                bp += n;
+                curr = bids[bp];
+            }
+            return p;
+        }
+
+        public int get(int[] ids, int[] freq) {
+            int n = get(ids);
+            for(int i = 0; i < n; i++) {
+                freq[i] = 1;
+            }
+            return n;
+        }
+
+        public int get(int[] ids, float[] weights) {
+            int n = get(ids);
+            for(int i = 0; i < n; i++) {
+                weights[i] = 1;
+            }
+            return n;
+        }
+    }
+} // BlockIDPostings
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.indexer.postings;
+
+/**
+ * An interface for postings iterators that can report an upper bound on the
+ * frequency and weight of the IDs in a block of postings without decoding
+ * the block.  Top-k query evaluators can use these bounds to skip entire
+ * blocks of postings that cannot contain a document whose score would reach
+ * the current threshold.
+ */
+public interface BlockMaxPostingsIterator extends PostingsIterator {
+
+    /**
+     * Moves the block bounds to the block of postings that would contain the
+     * given ID, without decoding any postings.  The current ID of the
+     * iterator is not changed.
+     *
+     * @param id the ID whose block we want the bounds for
+     * @return the last ID covered by the block, or -1 if the given ID is past
+     * the end of the postings.  The bounds returned by {@link
+     * #getBlockMaxFreq} and {@link #getBlockMaxWeight} apply to all of the
+     * IDs up to and including this one.
+     */
+    public int advanceShallow(int id);
+
+    /**
+     * Gets the maximum frequency of any ID in the block selected by the last
+     * call to {@link #advanceShallow}.
+     */
+    public int getBlockMaxFreq();
+
+    /**
+     * Gets an upper bound on the weight of any ID in the block selected by
+     * the last call to {@link #advanceShallow}, as generated by the weighting
+     * function for this iterator.  If there is no weighting function, this
+     * is the maximum frequency in the block.
+     */
+    public float getBlockMaxWeight();
+
+    /**
+     * Gets an upper bound on the weight of any ID in the postings.
+     */
+    public float getMaxWeight();
+
+}// BlockMaxPostingsIterator
@@ -49,12 +49,21 @@ import java.util.logging.Logger;
  *
  * <ol>
  *
+ * <li>A single zero byte, which marks postings that include the block
+ * maximum frequencies described below.  Postings written before these were
+ * added start directly with the number of IDs, which is never zero.</li>
+ *
  * <li>The number of IDs in the postings is byte encoded.</li>
  *
  * <li>The last ID in the postings list is byte encoded.</li>
  *
  * <li>The last offset in the postings list is byte encoded.</li>
  *
+ * <li>The maximum frequency in the postings list is byte encoded.</li>
+ *
+ * <li>The total number of occurrences in the postings list is byte
+ * encoded.</li>
+ *
  * <li>The number of skips in the skip table is byte encoded.</li>
  *
  * <li>The skip table.  The number of entries per skip is dependent on the
@@ -77,8 +86,14 @@ import java.util.logging.Logger;
  *
  * <li>The offset into the second buffer for this document.</li>
  *
+ * <li>The maximum frequency of the IDs in the block of postings that ends
+ * just before this skip, byte encoded.</li>
+ *
  * </ol>
  *
+ * <li>The maximum frequency of the IDs in the last block of postings, byte
+ * encoded.</li>
+ *
  * </ol>
  *
  * <li>For each document we encode:
@@ -216,6 +231,29 @@ public class DFOPostings implements Postings {
      */
     protected int[] skipPos;
     
+    /**
+     * The maximum frequency in each block of postings.  Block 0 runs from
+     * the start of the postings to the first skip, and block <em>i</em> runs
+     * from skip <em>i</em> to the next skip or the end of the postings.
+     */
+    protected int[] blockMax;
+
+    /**
+     * The maximum frequency in the block of postings currently being
+     * encoded.
+     */
+    protected int currBlockMax;
+
+    /**
+     * Whether the block maximum frequencies, the maximum frequency and the
+     * total number of occurrences are known.  This will be false for
+     * postings read from a partition written before they were encoded,
+     * until they are computed by {@link #computeBlockMax}.  This is
+     * volatile and is set after the values themselves, so that a thread that
+     * sees it set without holding the lock also sees the values.
+     */
+    protected volatile boolean hasBlockMax = true;
+
     /**
      * The number of skips in the skip table.
      */
@@ -295,14 +333,26 @@ public class DFOPostings implements Postings {
         fnp = b2;
         
         //
-        // Get the initial data.
+        // Get the initial data.  A leading zero tells us that we have the
+        // maximum frequencies.
         nIDs = ((ReadableBuffer) dfo).byteDecode();
+        hasBlockMax = nIDs == 0;
+        if(hasBlockMax) {
+            nIDs = ((ReadableBuffer) dfo).byteDecode();
+        }
         lastID = ((ReadableBuffer) dfo).byteDecode();
         lastOff = ((ReadableBuffer) dfo).byteDecode();
+        if(hasBlockMax) {
+            maxfdt = ((ReadableBuffer) dfo).byteDecode();
+            to = ((ReadableBuffer) dfo).byteDecodeLong();
+        }
         
         //
         // Decode the skip table.
         nSkips = ((ReadableBuffer) dfo).byteDecode();
+        if(hasBlockMax) {
+            blockMax = new int[nSkips + 1];
+        }
         if(nSkips > 0) {
             
             skipID = new int[nSkips+1];
@@ -318,6 +368,12 @@ public class DFOPostings implements Postings {
                 skipID[i] = ci;
                 skipPos[i] = cp;
                 skipOff[i] = co;
+                if(hasBlockMax) {
+                    blockMax[i - 1] = ((ReadableBuffer) dfo).byteDecode();
+                }
+            }
+            if(hasBlockMax) {
+                blockMax[nSkips] = ((ReadableBuffer) dfo).byteDecode();
             }
             
             //
@@ -331,12 +387,53 @@ public class DFOPostings implements Postings {
                 skipPos[i] += dataStart;
             }
         } else {
+            if(hasBlockMax) {
+                blockMax[0] = ((ReadableBuffer) dfo).byteDecode();
+            }
             dataStart = dfo.position();
         }
     }
     
     /**
-     * Adds a skip to the skip table.
+     * Computes the block maximum frequencies, the maximum frequency and the
+     * total number of occurrences for postings that were read from a
+     * partition that didn't store them.  This requires decoding the IDs and
+     * frequencies for the whole postings list.
+     */
+    protected synchronized void computeBlockMax() {
+        if(hasBlockMax) {
+            return;
+        }
+        int[] bm = new int[nSkips + 1];
+        ReadableBuffer b = ((ReadableBuffer) dfo).duplicate();
+        b.position(dataStart);
+        int id = 0;
+        int block = 0;
+        int mf = 0;
+        long t = 0;
+        for(int i = 0; i < nIDs; i++) {
+            id += b.byteDecode();
+            int f = b.byteDecode();
+            b.byteDecode();
+            while(block < nSkips && id >= skipID[block + 1]) {
+                block++;
+            }
+            bm[block] = Math.max(bm[block], f);
+            mf = Math.max(mf, f);
+            t += f;
+        }
+        blockMax = bm;
+        maxfdt = mf;
+        to = t;
+
+        //
+        // This has to come last: readers check it without the lock.
+        hasBlockMax = true;
+    }
+    
+    /**
+     * Adds a skip to the skip table.  The maximum frequency for the block
+     * that the skip ends is recorded.
      *
      * @param id The ID that the skip is pointing to.
      * @param pos The position in the postings to skip to.
@@ -346,11 +443,15 @@ public class DFOPostings implements Postings {
             skipID = new int[4];
             skipPos = new int[4];
             skipOff = new int[4];
+            blockMax = new int[5];
         } else if(nSkips + 1 >= skipID.length) {
             skipID = Util.expandInt(skipID, skipID.length*2);
             skipPos = Util.expandInt(skipPos, skipID.length);
             skipOff = Util.expandInt(skipOff, skipID.length);
+            blockMax = Util.expandInt(blockMax, skipID.length + 1);
         }
+        blockMax[nSkips] = currBlockMax;
+        currBlockMax = 0;
         skipID[nSkips] = id;
         skipPos[nSkips] = pos;
         skipOff[nSkips++] = off;
@@ -361,6 +462,7 @@ public class DFOPostings implements Postings {
         //
         // Keep track of the postings stats.
         maxfdt = Math.max(freq, maxfdt);
+        currBlockMax = Math.max(freq, currBlockMax);
         to += freq;
         
         //
@@ -519,10 +621,25 @@ public class DFOPostings implements Postings {
         return lastID;
     }
     
+    /**
+     * Tells whether these postings have their field and position
+     * information, which will not be the case if they were read with only
+     * the document IDs and frequencies.
+     *
+     * @return <code>true</code> if the field and position information is
+     * available.
+     */
+    public boolean hasFieldsAndPositions() {
+        return fnp != null;
+    }
+    
     /**
      * Gets the maximum frequency in the postings list.
      */
     public int getMaxFDT() {
+        if(!hasBlockMax) {
+            computeBlockMax();
+        }
         return maxfdt;
     }
     
@@ -530,6 +647,9 @@ public class DFOPostings implements Postings {
      * Gets the total number of occurrences in the postings list.
      */
     public long getTotalOccurrences() {
+        if(!hasBlockMax) {
+            computeBlockMax();
+        }
         return to;
     }
     
@@ -558,20 +678,23 @@ public class DFOPostings implements Postings {
      * postings.  These buffers can safely be written to streams.
      *
      * The format is as follows:
-     * NumIDs:LastID:NumSkipEntries[:skipID:skipPos]*:<PostingsData>
+     * 0:NumIDs:LastID:LastOff:MaxFDT:TotalOccurrences:NumSkipEntries[:skipID:skipPos:skipOff:blockMax]*:lastBlockMax:<PostingsData>
      *
      * @return A <code>ByteBuffer</code> containing the encoded postings
      * data.
      */
     public WriteableBuffer[] getBuffers() {
         
-        WriteableBuffer temp = new ArrayBuffer((nSkips+1)*4 + 16);
+        WriteableBuffer temp = new ArrayBuffer((nSkips+1)*5 + 32);
         
         //
-        // Encode the number of IDs and the last ID
+        // Encode the marker, the number of IDs and the last ID
+        temp.byteEncode(0);
         temp.byteEncode(nIDs);
         temp.byteEncode(lastID);
         temp.byteEncode(lastOff);
+        temp.byteEncode(maxfdt);
+        temp.byteEncode(to);
         
         //
         // Encode the skip table.
@@ -584,10 +707,12 @@ public class DFOPostings implements Postings {
             temp.byteEncode(skipID[i] - pi);
             temp.byteEncode(skipPos[i] - pp);
             temp.byteEncode(skipOff[i] - po);
+            temp.byteEncode(blockMax[i]);
             pi = skipID[i];
             pp = skipPos[i];
             po = skipOff[i];
         }
+        temp.byteEncode(currBlockMax);
         
         return new WriteableBuffer[] {
             temp,
@@ -632,6 +757,10 @@ public class DFOPostings implements Postings {
             return;
         }
         
+        //
+        // We need the block maximums from the other postings.
+        other.computeBlockMax();
+        
         //
         // What's the index of the next byte to be written to the postings?
         int dfoPos = dfo.position();
@@ -683,6 +812,11 @@ public class DFOPostings implements Postings {
             addSkip(newID, dfoPos, fnpPos);
         }
         
+        //
+        // The first block of the other postings is joined onto our current
+        // block.
+        currBlockMax = Math.max(currBlockMax, other.blockMax[0]);
+        
         //
         // Now, reencode the data, noting how many bytes it takes to encode
         // the new ID and new offset.
@@ -723,9 +857,15 @@ public class DFOPostings implements Postings {
                 addSkip(other.skipID[i] + start - 1,
                         other.skipPos[i] - other.dataStart + dfoPos + dadj + padj,
                         other.skipOff[i] + fnpPos);
+                currBlockMax = other.blockMax[i];
             }
         }
         
+        //
+        // Keep track of the postings stats.
+        maxfdt = Math.max(maxfdt, other.maxfdt);
+        to += other.to;
+        
         //
         // The new last offset is derived from the last offset for the data
         // that we just added.
@@ -814,6 +954,7 @@ public class DFOPostings implements Postings {
             //
             // Keep track of the postings stats.
             maxfdt = Math.max(maxfdt, freq);
+            currBlockMax = Math.max(currBlockMax, freq);
             to += freq;
             
             //
@@ -844,7 +985,8 @@ public class DFOPostings implements Postings {
         return new DFOIterator(features);
     }
 
-    public class DFOIterator implements PosPostingsIterator, FieldedPostingsIterator {
+    public class DFOIterator implements PosPostingsIterator,
+            FieldedPostingsIterator, BlockMaxPostingsIterator {
         
         /**
          * Our postings as a readable buffer.
@@ -891,6 +1033,11 @@ public class DFOPostings implements Postings {
          */
         protected int cb;
         
+        /**
+         * The block selected by the last call to advanceShallow.
+         */
+        protected int sb;
+        
         /**
          * A weighting function to use for the frequencies.
          */
@@ -951,8 +1098,8 @@ public class DFOPostings implements Postings {
         public DFOIterator(PostingsIteratorFeatures features) {
         
             this.features = features;
-            rdfo = (ReadableBuffer) dfo;
-            rfnp = (ReadableBuffer) fnp;
+            rdfo = ((ReadableBuffer) dfo).duplicate();
+            rfnp = fnp == null ? null : ((ReadableBuffer) fnp).duplicate();
             
             //
             // If we have fnp data, then clone it and prepare for field
@@ -1080,10 +1227,11 @@ public class DFOPostings implements Postings {
          * postings iterator features?
          */
         protected boolean satisfies() {
-            if(fnp == null) {
+            if(fnp == null || searchFields == null) {
                 
                 //
-                // There's nothing to satisfy.
+                // There's nothing to satisfy, so we'll leave the field
+                // and position information until someone asks for it.
                 return true;
             }
             
@@ -1205,7 +1353,11 @@ public class DFOPostings implements Postings {
         
         /**
          * Decodes the field information, leaving the pointer in the buffer
-         * at the position information.
+         * at the position information.  This is only done when the fields
+         * are needed to check the search fields or when the field
+         * frequencies or positions for the current document are asked for,
+         * so documents that are skipped over during an intersection never
+         * have their field information decoded.
          */
         public void decodeFields() {
             
@@ -1311,7 +1463,15 @@ public class DFOPostings implements Postings {
                 int ff = fields[i];
                 if(ff > 0) {
                     if(!allFields &&
-                            searchFields[i] == 0) {
+                            (i >= searchFields.length ||
+                            searchFields[i] == 0)) {
+                        
+                        //
+                        // We still need to get past this field's positions
+                        // to get to the ones for the following fields.
+                        for(int j = 0; j < ff; j++) {
+                            rfnp.byteDecode();
+                        }
                         continue;
                     }
                     
@@ -1393,11 +1553,73 @@ public class DFOPostings implements Postings {
             return p;
         }
         
+        public int advanceShallow(int id) {
+            if(id > lastID) {
+                return -1;
+            }
+            if(!hasBlockMax) {
+                computeBlockMax();
+            }
+            if(nSkips == 0) {
+                sb = 0;
+                return lastID;
+            }
+            int p = Arrays.binarySearch(skipID, id);
+            if(p < 0) {
+                p = -p - 2;
+            }
+            sb = p;
+            return p < nSkips ? skipID[p + 1] - 1 : lastID;
+        }
+        
+        public int getBlockMaxFreq() {
+            if(!hasBlockMax) {
+                computeBlockMax();
+            }
+            return blockMax[sb];
+        }
+        
+        public float getBlockMaxWeight() {
+            return boundWeight(getBlockMaxFreq());
+        }
+        
+        public float getMaxWeight() {
+            if(!hasBlockMax) {
+                computeBlockMax();
+            }
+            return boundWeight(maxfdt);
+        }
+        
+        /**
+         * Gets an upper bound for the weight of a term with the given
+         * frequency.  The document length is taken to be zero so that the
+         * bound holds for weighting functions that normalize by length.
+         */
+        protected float boundWeight(int f) {
+            if(wf == null) {
+                return f;
+            }
+            int ofdt = wc.fdt;
+            long old = wc.ld;
+            wc.fdt = f;
+            wc.ld = 0;
+            float w = wf.termWeight(wc);
+            wc.fdt = ofdt;
+            wc.ld = old;
+            return w;
+        }
+        
         public int[] getFieldFreq() {
+            if(fnp != null) {
+                decodeFields();
+            }
             return fields;
         }
         
         public float[] getFieldWeights() {
+            if(fnp != null) {
+                decodeFields();
+            }
             for(int i = 0; i < fields.length; i++) {
                 if(fields[i] > 0) {
                     wc.fdt = fields[i];
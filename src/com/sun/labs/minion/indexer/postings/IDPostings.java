@@ -640,7 +640,7 @@ public class IDPostings implements Postings, MergeablePostings {
          */
         public IDIterator(PostingsIteratorFeatures features) {
             this.features = features;
-            rp = (ReadableBuffer) post;
+            rp = ((ReadableBuffer) post).duplicate();
             rp.position(dataStart);
             done = nIDs == 0;
         }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.indexer.postings;
+
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+
+/**
+ * A patched frame-of-reference coder for blocks of non-negative integers.
+ * A block of integers is encoded by choosing a bit width that covers most
+ * of the values in the block and packing all of the values into that many
+ * bits.  The values that don't fit (the <em>exceptions</em>) have their
+ * high order bits stored after the packed data, so that they can be patched
+ * back in after the block has been unpacked.
+ *
+ * <p>
+ *
+ * The structure of an encoded block is as follows:
+ *
+ * <ol>
+ *
+ * <li>The bit width used for the packed values is stored in a single byte.</li>
+ *
+ * <li>The number of exceptions is byte encoded.</li>
+ *
+ * <li>The low order bits of every value, packed little-endian into
+ * <code>(n * width + 7) / 8</code> bytes.</li>
+ *
+ * <li>For each exception, its index in the block is stored in a single byte
+ * and the bits of the value above the bit width are byte encoded.</li>
+ *
+ * </ol>
+ *
+ * The number of values in a block is not encoded, so the caller needs to
+ * keep track of it.  Blocks may contain at most {@link #BLOCK_SIZE} values.
+ */
+public class PForDelta {
+
+    /**
+     * The maximum number of values in a block.
+     */
+    public static final int BLOCK_SIZE = 128;
+
+    private PForDelta() {
+    }
+
+    /**
+     * Gets the number of bits needed to represent a value.
+     */
+    private static int width(int v) {
+        return 32 - Integer.numberOfLeadingZeros(v);
+    }
+
+    /**
+     * Gets the number of bytes needed to byte encode a value.
+     */
+    private static int byteEncodedSize(int v) {
+        return v < (1 << 7) ? 1 : v < (1 << 14) ? 2 : v < (1 << 21) ? 3 : v < (1 << 28) ? 4 : 5;
+    }
+
+    /**
+     * Encodes a block of values onto a buffer.
+     *
+     * @param vals the values to encode.  All values must be non-negative.
+     * @param off the offset in <code>vals</code> of the first value to encode
+     * @param n the number of values to encode, which must be no greater than
+     * {@link #BLOCK_SIZE}
+     * @param b the buffer onto which the block will be encoded
+     * @return the number of bytes used to encode the block
+     */
+    public static int encode(int[] vals, int off, int n, WriteableBuffer b) {
+
+        //
+        // Find the bit width that minimizes the encoded size of the block,
+        // taking into account the cost of the exceptions.
+        int[] hist = new int[33];
+        for(int i = off; i < off + n; i++) {
+            hist[width(vals[i])]++;
+        }
+        int maxWidth = 32;
+        while(maxWidth > 0 && hist[maxWidth] == 0) {
+            maxWidth--;
+        }
+        int bestWidth = maxWidth;
+        int bestSize = (n * maxWidth + 7) >>> 3;
+        int nOver = 0;
+        for(int w = maxWidth - 1; w >= 0; w--) {
+            nOver += hist[w + 1];
+            if(nOver == 0) {
+                continue;
+            }
+            int size = ((n * w + 7) >>> 3) + byteEncodedSize(nOver) - 1;
+            for(int i = off; i < off + n && size < bestSize; i++) {
+                if(width(vals[i]) > w) {
+                    size += 1 + byteEncodedSize(vals[i] >>> w);
+                }
+            }
+            if(size < bestSize) {
+                bestSize = size;
+                bestWidth = w;
+            }
+        }
+
+        int start = b.position();
+        b.put((byte) bestWidth);
+        int nExc = 0;
+        for(int i = off; i < off + n; i++) {
+            if(width(vals[i]) > bestWidth) {
+                nExc++;
+            }
+        }
+        b.byteEncode(nExc);
+
+        //
+        // Pack the low order bits.
+        if(bestWidth > 0) {
+            long mask = (1L << bestWidth) - 1;
+            long acc = 0;
+            int bits = 0;
+            for(int i = off; i < off + n; i++) {
+                acc |= (vals[i] & mask) << bits;
+                bits += bestWidth;
+                while(bits >= 8) {
+                    b.put((byte) acc);
+                    acc >>>= 8;
+                    bits -= 8;
+                }
+            }
+            if(bits > 0) {
+                b.put((byte) acc);
+            }
+        }
+
+        //
+        // The exceptions.
+        if(nExc > 0) {
+            for(int i = off; i < off + n; i++) {
+                if(width(vals[i]) > bestWidth) {
+                    b.put((byte) (i - off));
+                    b.byteEncode(vals[i] >>> bestWidth);
+                }
+            }
+        }
+        return b.position() - start;
+    }
+
+    /**
+     * Decodes a block of values from a buffer.  The buffer must be positioned
+     * at the start of the block, and will be positioned just after the block
+     * when this method returns.
+     *
+     * @param b the buffer containing the encoded block
+     * @param vals an array into which the values will be decoded
+     * @param n the number of values in the block
+     * @param scratch an array used to hold the packed bytes, which must be at
+     * least <code>BLOCK_SIZE * 4</code> bytes long
+     */
+    public static void decode(ReadableBuffer b, int[] vals, int n,
+            byte[] scratch) {
+        int w = b.get();
+        int nExc = b.byteDecode();
+
+        if(w == 0) {
+            for(int i = 0; i < n; i++) {
+                vals[i] = 0;
+            }
+        } else {
+            b.get(scratch, 0, (n * w + 7) >>> 3);
+
+            //
+            // Unpack the whole block in one tight loop.
+            long mask = (1L << w) - 1;
+            long acc = 0;
+            int bits = 0;
+            int bp = 0;
+            for(int i = 0; i < n; i++) {
+                while(bits < w) {
+                    acc |= (scratch[bp++] & 0xFFL) << bits;
+                    bits += 8;
+                }
+                vals[i] = (int) (acc & mask);
+                acc >>>= w;
+                bits -= w;
+            }
+        }
+
+        //
+        // Patch in the exceptions.
+        for(int i = 0; i < nExc; i++) {
+            int p = b.get() & 0xFF;
+            vals[p] |= b.byteDecode() << w;
+        }
+    }
+} // PForDelta
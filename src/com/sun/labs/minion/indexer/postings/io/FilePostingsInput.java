@@ -24,15 +24,19 @@
 
 package com.sun.labs.minion.indexer.postings.io;
 
-import java.io.IOException;
+import java.io.EOFException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
+import com.sun.labs.minion.util.ChannelUtil;
 import com.sun.labs.minion.util.buffer.ArrayBuffer;
 import com.sun.labs.minion.util.buffer.FileReadableBuffer;
 import com.sun.labs.minion.util.buffer.ReadableBuffer;
 
 /**
- * A postings input that is backed by a random access file.
+ * A postings input that is backed by a random access file.  Postings are
+ * read using positional reads on the file's channel, so concurrent readers
+ * of the same file don't need to lock it.
  */
 public class FilePostingsInput implements PostingsInput {
 
@@ -80,9 +84,11 @@ public class FilePostingsInput implements PostingsInput {
 
         if(full) {
             byte[] val = new byte[size];
-            synchronized(raf) {
-                raf.seek(offset);
-                raf.readFully(val);
+            ByteBuffer b = ChannelUtil.readFully(raf.getChannel(), offset,
+                    ByteBuffer.wrap(val));
+            if(b.hasRemaining()) {
+                throw new EOFException("Postings at " + offset + " of size " +
+                        size + " extend past the end of the file");
             }
             return new ArrayBuffer(val);
         } else {
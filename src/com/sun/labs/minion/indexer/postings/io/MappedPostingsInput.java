@@ -0,0 +1,70 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.indexer.postings.io;
+
+import java.io.RandomAccessFile;
+
+import com.sun.labs.minion.util.buffer.MappedReadableBuffer;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+
+/**
+ * A postings input that maps the postings file into memory.
+ *
+ * <p>
+ *
+ * Postings are returned as views on the mapped file, so reading a postings
+ * list doesn't require any system calls or copying, and the operating
+ * system's page cache acts as the postings cache.
+ */
+public class MappedPostingsInput implements PostingsInput {
+
+    /**
+     * The mapped postings file.
+     */
+    protected MappedReadableBuffer file;
+
+    /**
+     * Creates a postings input that will read postings from the given
+     * file.
+     *
+     * @param raf The file that the postings will be read from.
+     * @throws java.io.IOException if there is any error mapping the file
+     */
+    public MappedPostingsInput(RandomAccessFile raf)
+            throws java.io.IOException {
+        file = new MappedReadableBuffer(raf);
+    } // MappedPostingsInput constructor
+
+    /**
+     * Returns a set of postings that are backed by the mapped file.
+     * @param offset The offset in the input at which the postings can be
+     * found.
+     * @param size The number of bytes in the postings.
+     * @return A readable buffer containing the postings.
+     */
+    public ReadableBuffer read(long offset, int size) {
+        return file.view(offset, size);
+    }
+
+} // MappedPostingsInput
@@ -24,8 +24,9 @@
 package com.sun.labs.minion.indexer.postings.io;
 
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
-
+import com.sun.labs.minion.util.ChannelUtil;
 import com.sun.labs.minion.util.buffer.ArrayBuffer;
 import com.sun.labs.minion.util.buffer.ReadableBuffer;
 import java.util.logging.Level;
@@ -98,13 +99,14 @@ public class StreamPostingsInput implements PostingsInput {
      * @return The number of bytes read.
      */
     protected int read(long off) throws java.io.IOException {
-        synchronized(raf) {
-            raf.seek(off);
-            int n = raf.read(b);
-            ms = off;
-            me = off + n;
-            return n;
+        int n = ChannelUtil.readFully(raf.getChannel(), off,
+                ByteBuffer.wrap(b)).position();
+        if(n == 0) {
+            n = -1;
         }
+        ms = off;
+        me = off + n;
+        return n;
     }
 
     /**
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.pipeline;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.util.props.ConfigStringList;
+import com.sun.labs.util.props.PropertyException;
+import com.sun.labs.util.props.PropertySheet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A stage that adds a shingle for each pair of adjacent words to the token
+ * stream, so that phrase queries can find the documents that contain each
+ * adjacent pair of words in the phrase without looking at positions.
+ *
+ * <p>
+ *
+ * A shingle is a term made of the two words separated by
+ * {@link #SEPARATOR}, which no tokenizer will produce.  It is sent down the
+ * pipeline right after the second word, with that word's position and a
+ * type of {@link Token#SHINGLE}, so it will occur in any field where the
+ * second word does.  Shingles are not added to document vectors and are
+ * not used when calculating document vector lengths, so they don't change
+ * the scores of any queries.
+ *
+ * <p>
+ *
+ * This stage should be placed right before the memory partition, after
+ * any stages that modify or remove words, so that shingles are made from
+ * the words that are actually indexed.  At the start of each document,
+ * the stage sends a marker term for each of the fields that it has been
+ * configured to shingle (or a single marker if it is shingling all
+ * fields), so that the query side can tell whether every document in a
+ * partition has shingles for the fields being searched.
+ */
+public class ShingleStage extends StageAdapter {
+
+    /**
+     * The character that separates the two words in a shingle.
+     */
+    public static final char SEPARATOR = '\u0001';
+
+    /**
+     * The names of the fields whose words should be shingled.  If this is
+     * empty, then words in all fields are shingled.
+     */
+    @ConfigStringList(defaultList = {})
+    public static final String PROP_FIELDS = "fields";
+
+    /**
+     * The fields we're shingling, or <code>null</code> for all fields.
+     */
+    private Set<String> fields;
+
+    /**
+     * How many of the fields that we're shingling are currently open.
+     */
+    private int nOpen;
+
+    /**
+     * The words at the previous position.
+     */
+    private String[] prev = new String[4];
+
+    private int nPrev;
+
+    /**
+     * The words at the current position.
+     */
+    private String[] curr = new String[4];
+
+    private int nCurr;
+
+    /**
+     * The current position.
+     */
+    private int currNum = -1;
+
+    public ShingleStage() {
+    }
+
+    /**
+     * Makes the shingle for a pair of words.
+     *
+     * @param w1 the first word
+     * @param w2 the word following the first word
+     * @return the shingle for the pair
+     */
+    public static String shingle(String w1, String w2) {
+        return w1 + SEPARATOR + w2;
+    }
+
+    /**
+     * Gets the name of the marker term that indicates that a document has
+     * shingles for a field.
+     *
+     * @param field the name of the field, or <code>null</code> for the
+     * marker indicating that all fields are shingled.
+     * @return the name of the marker term
+     */
+    public static String marker(String field) {
+        return field == null ? String.valueOf(SEPARATOR) : SEPARATOR + field;
+    }
+
+    /**
+     * Tells whether a term is a shingle or a shingle marker, rather than a
+     * word.
+     *
+     * @param name the name of a term
+     * @return <code>true</code> if the term was added by this stage.
+     */
+    public static boolean isShingle(String name) {
+        return name.indexOf(SEPARATOR) >= 0;
+    }
+
+    public void startDocument(String key) {
+        if(downstream == null) {
+            return;
+        }
+        downstream.startDocument(key);
+        nPrev = 0;
+        nCurr = 0;
+        currNum = -1;
+        nOpen = 0;
+        if(fields == null) {
+            downstream.token(new Token(marker(null), 0, Token.SHINGLE));
+        } else {
+            for(String f : fields) {
+                downstream.token(new Token(marker(f), 0, Token.SHINGLE));
+            }
+        }
+    }
+
+    public void startField(FieldInfo fi) {
+        if(fields != null && fields.contains(fi.getName())) {
+            nOpen++;
+        }
+        super.startField(fi);
+    }
+
+    public void endField(FieldInfo fi) {
+        if(fields != null && fields.contains(fi.getName())) {
+            nOpen--;
+        }
+        super.endField(fi);
+    }
+
+    /**
+     * Passes a token down the pipeline, followed by the shingles that it
+     * makes with the words at the previous position.
+     *
+     * @param t The token to process.
+     */
+    public void token(Token t) {
+        if(downstream == null) {
+            return;
+        }
+
+        //
+        // Get the word before passing the token on, since downstream
+        // stages may modify it.
+        String word = t.getToken();
+        int wordNum = t.getWordNum();
+        if(wordNum != currNum) {
+            String[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+            nPrev = wordNum == currNum + 1 ? nCurr : 0;
+            nCurr = 0;
+            currNum = wordNum;
+        }
+        if(nCurr == curr.length) {
+            String[] tmp = new String[nCurr * 2];
+            System.arraycopy(curr, 0, tmp, 0, nCurr);
+            curr = tmp;
+        }
+        curr[nCurr++] = word;
+
+        downstream.token(t);
+
+        if(fields == null || nOpen > 0) {
+            for(int i = 0; i < nPrev; i++) {
+                downstream.token(new Token(shingle(prev[i], word), wordNum,
+                        Token.SHINGLE));
+            }
+        }
+    }
+
+    /**
+     * Processes text passed in from the upstream stage.  The text is simply
+     * processed as a token.
+     */
+    public void text(char[] t, int b, int e) {
+        token(new Token(new String(t, b, (e - b)), 1));
+    }
+
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        List<String> l = ps.getStringList(PROP_FIELDS);
+        fields = l.isEmpty() ? null : new HashSet<String>(l);
+    }
+} // ShingleStage
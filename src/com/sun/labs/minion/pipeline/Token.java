@@ -47,7 +47,8 @@ public class Token implements FieldOccurrence {
     protected int wordNum;
     
     /**
-     * The type of this token, whether standard, bigram, or punctuation.
+     * The type of this token, whether standard, bigram, punctuation, or
+     * shingle.
      */
     protected int type;
     
@@ -88,6 +89,8 @@ public class Token implements FieldOccurrence {
     
     public static final int PUNCT = 3;
     
+    public static final int SHINGLE = 4;
+    
     public Token() {
     }
     
@@ -24,9 +24,12 @@
 
 package com.sun.labs.minion.retrieval;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+
 public class And extends Operator {
 
     protected static String logTag = "AND";
@@ -38,7 +41,16 @@ public class And extends Operator {
         super(operands);
     } // And constructor
 
-    
+
+    /**
+     * Orders the operands using the plan from the query planner, so that
+     * the cheapest and most selective operands are evaluated first.
+     */
+    @Override
+    protected void order(DiskPartition part) {
+        QueryPlanner.order(operands, part);
+    }
+
     /**
      * Estimates the size of the results set.
      */
@@ -55,6 +67,57 @@ public class And extends Operator {
         return and(ag, operands, strictEval);
     }
 
+    /**
+     * Gets a cursor for the intersection of the operands.
+     */
+    @Override
+    protected QueryCursor getCursor() {
+        return getCursor(operands, strictEval);
+    }
+
+    /**
+     * Gets a cursor for the intersection of the given operands.  Operands
+     * that are <code>Not</code>s exclude the documents of their operand.
+     *
+     * @param operands The operands to intersect.
+     * @param strict Whether the intersection is being evaluated in a strict
+     * boolean context.  If it's not, then the operands must be terms that
+     * aren't strict either.  The scores that the array engine gives for
+     * nested operators depend on the order in which it evaluates them (a
+     * term intersected into an or is counted once for each of the or's
+     * operands, for example), so we don't try to reproduce them.
+     * @return a cursor for the intersection, or <code>null</code> if one of
+     * the operands can't be evaluated a document at a time.
+     */
+    protected static QueryCursor getCursor(List<QueryElement> operands,
+            boolean strict) {
+        List<QueryCursor> cursors = new ArrayList<QueryCursor>();
+        List<QueryCursor> excluded = new ArrayList<QueryCursor>();
+        for(QueryElement qe : operands) {
+            QueryCursor c;
+            if(qe instanceof Not) {
+                c = ((Not) qe).operands.get(0).getCursor();
+                if(c == null) {
+                    return null;
+                }
+                excluded.add(c);
+                continue;
+            }
+            if(!strict && (qe.strictEval || !qe.canScoreAsCursor())) {
+                return null;
+            }
+            c = qe.getCursor();
+            if(c == null) {
+                return null;
+            }
+            cursors.add(c);
+        }
+        if(cursors.isEmpty()) {
+            return null;
+        }
+        return new AndCursor(cursors, excluded);
+    }
+
     protected static ArrayGroup and(ArrayGroup ag, List operands) {
         return and(ag, operands, false);
     }
@@ -71,6 +134,13 @@ public class And extends Operator {
         ArrayGroup ret = ag;
         for(Iterator i = operands.iterator(); i.hasNext(); ) {
             QueryElement qe = (QueryElement) i.next();
+
+            //
+            // We need at least one operand's results to return, since our
+            // callers can't cope with a null group.
+            if(ret != null && qe.timedOut()) {
+                break;
+            }
             if(strict) {
                 qe.strictEval = strict;
             }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A cursor for the intersection of a number of cursors, less the documents
+ * produced by a number of excluded cursors.
+ *
+ * <p>
+ *
+ * The cursors are ordered by their cost, and the least costly one leads:
+ * each of its documents is looked for in the others by advancing them, and
+ * when one of them passes the document, the lead is advanced to where that
+ * one stopped.  The cursors for common terms therefore only look at the
+ * parts of their postings around the documents in the rarer ones.
+ */
+public class AndCursor extends QueryCursor {
+
+    /**
+     * The cursors that must all contain a document, in increasing order of
+     * cost.
+     */
+    protected QueryCursor[] cursors;
+
+    /**
+     * The cursors whose documents are excluded.
+     */
+    protected QueryCursor[] excluded;
+
+    /**
+     * Creates a cursor for an intersection.
+     *
+     * @param cursors the cursors to intersect.  There must be at least one.
+     * @param excluded cursors whose documents should not be produced
+     */
+    public AndCursor(List<QueryCursor> cursors, List<QueryCursor> excluded) {
+        this.cursors = cursors.toArray(new QueryCursor[0]);
+        this.excluded = excluded.toArray(new QueryCursor[0]);
+        Arrays.sort(this.cursors, new Comparator<QueryCursor>() {
+
+            public int compare(QueryCursor o1, QueryCursor o2) {
+                return o1.cost() - o2.cost();
+            }
+        });
+    }
+
+    /**
+     * Finds the first document, at or after the lead cursor's current
+     * document, that is in all of the cursors and none of the excluded
+     * ones.
+     */
+    private boolean doNext(boolean more) {
+        QueryCursor lead = cursors[0];
+        while(more) {
+            int target = lead.doc();
+            int i = 1;
+            for(; i < cursors.length; i++) {
+                if(!cursors[i].advance(target)) {
+                    doc = NO_MORE_DOCS;
+                    return false;
+                }
+                if(cursors[i].doc() > target) {
+                    break;
+                }
+            }
+            if(i < cursors.length) {
+                more = lead.advance(cursors[i].doc());
+                continue;
+            }
+
+            boolean ex = false;
+            for(QueryCursor c : excluded) {
+                if(c.advance(target) && c.doc() == target) {
+                    ex = true;
+                    break;
+                }
+            }
+            if(ex) {
+                more = lead.next();
+                continue;
+            }
+            doc = target;
+            return true;
+        }
+        doc = NO_MORE_DOCS;
+        return false;
+    }
+
+    public boolean next() {
+        if(doc == NO_MORE_DOCS) {
+            return false;
+        }
+        return doNext(cursors[0].next());
+    }
+
+    public boolean advance(int target) {
+        if(doc >= target) {
+            return doc != NO_MORE_DOCS;
+        }
+        return doNext(cursors[0].advance(target));
+    }
+
+    public float score() {
+        float score = 0;
+        for(QueryCursor c : cursors) {
+            score += c.score();
+        }
+        return score;
+    }
+
+    public float getSquaredQueryWeight() {
+        float sqw = 0;
+        for(QueryCursor c : cursors) {
+            sqw += c.getSquaredQueryWeight();
+        }
+        return sqw;
+    }
+
+    public int cost() {
+        return cursors[0].cost();
+    }
+} // AndCursor
@@ -369,7 +369,8 @@ public class ArrayGroup implements Cloneable {
 
         int rp = 0;
 
-        if(pi.getN() < 10 * size) {
+        if(QueryPlanner.getStrategy(pi.getN(), size) ==
+                QueryPlanner.Strategy.MERGE) {
             pi.next();
             for(int i = 0; i < size; i++) {
                 while(pi.getID() < docs[i] && pi.next());
@@ -418,11 +419,46 @@ public class ArrayGroup implements Cloneable {
      */
     protected ArrayGroup agUnion(ArrayGroup ag) {
 
+        QueryPlanner.Strategy strategy = getStrategy(ag);
+        if(strategy == QueryPlanner.Strategy.BITMAP) {
+            long[] bits = getBits(docs, size, getRange(ag));
+            setBits(bits, ag.docs, ag.size);
+            ArrayGroup ret = new ArrayGroup(size + ag.size);
+            ret.size = getDocs(bits, ret.docs);
+            return ret;
+        }
+
         //
         // Straightforward boolean union.  How beautiful!
         ArrayGroup ret = new ArrayGroup(size + ag.size);
         int i1 = 0, i2 = 0;
 
+        if(strategy == QueryPlanner.Strategy.GALLOP) {
+
+            //
+            // Copy runs of documents that are only in one of the groups, 
+            // rather than going a document at a time.
+            while(i1 < size && i2 < ag.size) {
+                int d1 = docs[i1];
+                int d2 = ag.docs[i2];
+                if(d1 < d2) {
+                    int e = gallop(docs, i1, size, d2);
+                    System.arraycopy(docs, i1, ret.docs, ret.size, e - i1);
+                    ret.size += e - i1;
+                    i1 = e;
+                } else if(d1 > d2) {
+                    int e = gallop(ag.docs, i2, ag.size, d1);
+                    System.arraycopy(ag.docs, i2, ret.docs, ret.size, e - i2);
+                    ret.size += e - i2;
+                    i2 = e;
+                } else {
+                    ret.docs[ret.size++] = d1;
+                    i1++;
+                    i2++;
+                }
+            }
+        }
+
         while(i1 < size && i2 < ag.size) {
             int d1 = docs[i1];
             int d2 = ag.docs[i2];
@@ -611,6 +647,26 @@ public class ArrayGroup implements Cloneable {
 
     protected ArrayGroup agIntersect(ArrayGroup ag) {
         ArrayGroup ret = new ArrayGroup(Math.min(size, ag.size));
+        switch(getStrategy(ag)) {
+            case GALLOP:
+                if(size <= ag.size) {
+                    ret.size = gallopIntersect(docs, size, ag.docs, ag.size,
+                            ret.docs, null, null);
+                } else {
+                    ret.size = gallopIntersect(ag.docs, ag.size, docs, size,
+                            ret.docs, null, null);
+                }
+                return ret;
+            case BITMAP:
+                long[] bits = getBits(docs, size, getRange(ag));
+                for(int i = 0; i < ag.size; i++) {
+                    if(isSet(bits, ag.docs[i])) {
+                        ret.docs[ret.size++] = ag.docs[i];
+                    }
+                }
+                return ret;
+        }
+
         int i1 = 0, i2 = 0;
         while(i1 < size && i2 < ag.size) {
             int d1 = docs[i1];
@@ -632,6 +688,31 @@ public class ArrayGroup implements Cloneable {
 
     protected ArrayGroup destructiveIntersect(ArrayGroup ag) {
         int i1 = 0, i2 = 0, s = 0;
+        switch(getStrategy(ag)) {
+            case GALLOP:
+
+                //
+                // We only ever write to positions that we've already
+                // searched past, so we can work in place.
+                if(size <= ag.size) {
+                    size = gallopIntersect(docs, size, ag.docs, ag.size, docs,
+                            null, null);
+                } else {
+                    size = gallopIntersect(ag.docs, ag.size, docs, size, docs,
+                            null, null);
+                }
+                return this;
+            case BITMAP:
+                long[] bits = getBits(ag.docs, ag.size, getRange(ag));
+                for(; i1 < size; i1++) {
+                    if(isSet(bits, docs[i1])) {
+                        docs[s++] = docs[i1];
+                    }
+                }
+                size = s;
+                return this;
+        }
+
         while(i1 < size && i2 < ag.size) {
             int d1 = docs[i1];
             int d2 = ag.docs[i2];
@@ -654,6 +735,32 @@ public class ArrayGroup implements Cloneable {
 
     public ArrayGroup intersect(ScoredGroup ag) {
         ScoredGroup ret = new ScoredGroup(Math.min(size, ag.size));
+        ret.normalized = ag.normalized;
+
+        switch(getStrategy(ag)) {
+            case GALLOP:
+                int[] pos = new int[ret.docs.length];
+                if(size <= ag.size) {
+                    ret.size = gallopIntersect(docs, size, ag.docs, ag.size,
+                            ret.docs, null, pos);
+                } else {
+                    ret.size = gallopIntersect(ag.docs, ag.size, docs, size,
+                            ret.docs, pos, null);
+                }
+                for(int i = 0; i < ret.size; i++) {
+                    ret.scores[i] = ag.scores[pos[i]];
+                }
+                return ret;
+            case BITMAP:
+                long[] bits = getBits(docs, size, getRange(ag));
+                for(int i = 0; i < ag.size; i++) {
+                    if(isSet(bits, ag.docs[i])) {
+                        ret.docs[ret.size] = ag.docs[i];
+                        ret.scores[ret.size++] = ag.scores[i];
+                    }
+                }
+                return ret;
+        }
 
         int i1 = 0, i2 = 0;
         while(i1 < size && i2 < ag.size) {
@@ -670,10 +777,170 @@ public class ArrayGroup implements Cloneable {
                 i1++;
             }
         }
-        ret.normalized = ag.normalized;
         return ret;
     }
 
+    /**
+     * Gets the number of document IDs covered by this group and another
+     * group, that is, one more than the largest document ID in either group.
+     */
+    protected int getRange(ArrayGroup ag) {
+        int max = 0;
+        if(size > 0) {
+            max = docs[size - 1];
+        }
+        if(ag.size > 0) {
+            max = Math.max(max, ag.docs[ag.size - 1]);
+        }
+        return max + 1;
+    }
+
+    /**
+     * Gets the strategy that we should use to combine this group with
+     * another group.
+     */
+    protected QueryPlanner.Strategy getStrategy(ArrayGroup ag) {
+        return QueryPlanner.getGroupStrategy(size, ag.size, getRange(ag));
+    }
+
+    /**
+     * Finds the first position in a sorted array of documents that holds a
+     * document greater than or equal to a given document.  The search takes
+     * exponentially increasing steps from the start position before doing a
+     * binary search, so finding a document that is close to the start is
+     * cheap.
+     *
+     * @param a the array to search
+     * @param lo the position to start searching from
+     * @param hi the position just past the last document in the array
+     * @param d the document to search for
+     * @return the position of the first document not less than
+     * <code>d</code>, or <code>hi</code> if there is no such document.
+     */
+    protected static int gallop(int[] a, int lo, int hi, int d) {
+        if(lo >= hi || a[lo] >= d) {
+            return lo;
+        }
+
+        //
+        // Find a range containing the document.  We know that a[lo] < d.
+        int step = 1;
+        int p = lo + 1;
+        while(p < hi && a[p] < d) {
+            lo = p;
+            step <<= 1;
+            p = lo + step;
+        }
+        if(p > hi) {
+            p = hi;
+        }
+
+        //
+        // Now a[lo] < d and either p == hi or a[p] >= d.
+        lo++;
+        while(lo < p) {
+            int mid = (lo + p) >>> 1;
+            if(a[mid] < d) {
+                lo = mid + 1;
+            } else {
+                p = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Intersects a small sorted array of documents with a larger one by
+     * searching for each of the documents in the small array in the larger
+     * one.
+     *
+     * @param small the smaller array of documents
+     * @param ns the number of documents in <code>small</code>
+     * @param large the larger array of documents
+     * @param nl the number of documents in <code>large</code>
+     * @param out if not <code>null</code>, the documents in both arrays
+     * will be written here.  This may be either of the input arrays.
+     * @param sp if not <code>null</code>, the positions in the small array
+     * of the documents in both arrays will be written here.
+     * @param lp if not <code>null</code>, the positions in the large array
+     * of the documents in both arrays will be written here.
+     * @return the number of documents in both arrays.
+     */
+    protected static int gallopIntersect(int[] small, int ns, int[] large,
+            int nl, int[] out, int[] sp, int[] lp) {
+        int n = 0;
+        int j = 0;
+        for(int i = 0; i < ns && j < nl; i++) {
+            int d = small[i];
+            j = gallop(large, j, nl, d);
+            if(j < nl && large[j] == d) {
+                if(out != null) {
+                    out[n] = d;
+                }
+                if(sp != null) {
+                    sp[n] = i;
+                }
+                if(lp != null) {
+                    lp[n] = j;
+                }
+                n++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Makes a bit set with the bits for the given documents set.
+     *
+     * @param docs the documents
+     * @param n the number of documents
+     * @param range the number of document IDs that the bit set should be
+     * able to hold
+     */
+    protected static long[] getBits(int[] docs, int n, int range) {
+        long[] bits = new long[(range + 63) >>> 6];
+        setBits(bits, docs, n);
+        return bits;
+    }
+
+    /**
+     * Sets the bits for the given documents in a bit set.
+     */
+    protected static void setBits(long[] bits, int[] docs, int n) {
+        for(int i = 0; i < n; i++) {
+            bits[docs[i] >>> 6] |= 1L << docs[i];
+        }
+    }
+
+    /**
+     * Tests whether the bit for a document is set in a bit set.
+     */
+    protected static boolean isSet(long[] bits, int d) {
+        int w = d >>> 6;
+        return w < bits.length && (bits[w] & (1L << d)) != 0;
+    }
+
+    /**
+     * Gets the documents whose bits are set in a bit set, in order.
+     *
+     * @param bits the bit set
+     * @param docs the array to put the documents in, which must be big
+     * enough
+     * @return the number of documents
+     */
+    protected static int getDocs(long[] bits, int[] docs) {
+        int n = 0;
+        for(int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while(word != 0) {
+                docs[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return n;
+    }
+
     public ArrayGroup intersect(NegativeGroup ag) {
         ArrayGroup ret = new ArrayGroup(Math.max(size, ag.size));
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import java.util.List;
+
+/**
+ * An evaluation of a ranked query that can be put off until results are
+ * requested from a result set.  When the first request is for only the top
+ * of the ranked list, the query can be evaluated for only the top documents,
+ * without scoring every document that matches.
+ *
+ * @see ResultSetImpl#getResults(int, int, com.sun.labs.minion.ResultsFilter)
+ */
+interface DeferredEvaluation {
+
+    /**
+     * Evaluates the query completely.
+     *
+     * @return a list of normalized groups, one for each partition
+     */
+    public List<ArrayGroup> eval();
+
+    /**
+     * Evaluates the query for only the highest scoring documents.
+     *
+     * @param k the number of documents that we want
+     * @return a list of normalized groups that together contain the
+     * <code>k</code> highest scoring documents, or <code>null</code> if the
+     * query can't be evaluated this way.
+     */
+    public List<ArrayGroup> evalTopK(int k);
+
+} // DeferredEvaluation
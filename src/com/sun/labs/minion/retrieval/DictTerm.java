@@ -36,7 +36,10 @@ import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
 import com.sun.labs.minion.indexer.postings.PosPostingsIterator;
 import com.sun.labs.minion.indexer.entry.QueryEntry;
 import com.sun.labs.minion.indexer.partition.InvFileDiskPartition;
+import com.sun.labs.minion.indexer.dictionary.VariantTable;
+import com.sun.labs.minion.knowledge.KnowledgeSource;
 import com.sun.labs.minion.lextax.ConceptEntry;
+import com.sun.labs.minion.retrieval.cache.EntryCache;
 import com.sun.labs.minion.retrieval.cache.TermCache;
 import com.sun.labs.minion.retrieval.cache.TermCacheElement;
 import com.sun.labs.minion.util.Util;
@@ -57,7 +60,8 @@ public class DictTerm extends QueryTerm implements Comparator {
     /**
      * The set of morphological variations of the term as computed by the
      * lightweight morphology. We only need to compute this once per query
-     * term, when the term is instantiated.
+     * term, the first time that we evaluate against a partition that
+     * doesn't have a variant table we can use.
      */
     protected String[] knowledgeVariants;
 
@@ -140,7 +144,12 @@ public class DictTerm extends QueryTerm implements Comparator {
                     searchFieldNames);
             feat.setFields(searchFields);
             feat.setCaseSensitive(matchCase);
-            feat.setPositions(loadPositions);
+
+            //
+            // Positions are fetched separately, for the documents that
+            // survive the document level evaluation, so we don't want the
+            // document level iterators to load them.
+            feat.setPositions(false);
             feat.setQueryStats(qs);
             feat.setWeightingFunction(wf);
             feat.setWeightingComponents(wc);
@@ -148,22 +157,6 @@ public class DictTerm extends QueryTerm implements Comparator {
             feat.setQueryStats(qs);
         }
 
-        //
-        // We'll get morphological variants once.
-        if(doMorph && knowledgeVariants == null && qc.getKnowledgeSource() !=
-                null) {
-
-            //
-            // If we're supposed to match case, we'll use the case given in
-            // the query term.
-            Set<String> variants = qc.getKnowledgeSource().variantsOf(val);
-            knowledgeVariants = new String[variants.size()];
-            int i = 0;
-            for(Iterator<String> iter = variants.iterator(); iter.hasNext();) {
-                knowledgeVariants[i++] = iter.next();
-            }
-        }
-
         //
         //We'll get the semantic expansions once, for all the partitions
         if(doExpand && semanticVariants == null) {
@@ -196,13 +189,13 @@ public class DictTerm extends QueryTerm implements Comparator {
 
         //
         // A set to hold term variants from morphology or other sources.
-        Set variants = new HashSet();
+        Set<QueryEntry> variants = new HashSet<QueryEntry>();
 
         //
         // We'll start with the term itself, unless we're doing a wildcard.
         if(!doWild) {
             if(val != null) {
-                QueryEntry e = part.getTerm(val, matchCase);
+                QueryEntry e = getTerm(part, val, matchCase);
                 if(e != null) {
                     variants.add(e);
                 }
@@ -212,12 +205,7 @@ public class DictTerm extends QueryTerm implements Comparator {
         //
         // Knowledge Variants are up next.
         if(doMorph) {
-            for(int i = 0; i < knowledgeVariants.length; i++) {
-                QueryEntry me = part.getTerm(knowledgeVariants[i], matchCase);
-                if(me != null) {
-                    variants.add(me);
-                }
-            }
+            addKnowledgeVariants((InvFileDiskPartition) part, variants);
         }
 
         //
@@ -233,8 +221,9 @@ public class DictTerm extends QueryTerm implements Comparator {
                     qc.getMaxDictTerms(),
                     qc.getMaxDictLookupTime());
             if(e != null) {
+                EntryCache ec = qc.getEntryCache();
                 for(int i = 0; i < e.length; i++) {
-                    variants.add(e[i]);
+                    variants.add(ec == null ? e[i] : ec.share(part, e[i]));
                 }
             }
         }
@@ -244,7 +233,7 @@ public class DictTerm extends QueryTerm implements Comparator {
         if(doExpand) {
             for(int i = 0; i < semanticVariants.length; i++) {
                 QueryEntry me =
-                        part.getTerm(semanticVariants[i], matchCase);
+                        getTerm(part, semanticVariants[i], matchCase);
                 if(me != null) {
                     variants.add(me);
                 }
@@ -272,6 +261,85 @@ public class DictTerm extends QueryTerm implements Comparator {
         super.setPartition(part);
     }
 
+    /**
+     * Gets the entry for a term from a partition, from the entries shared by
+     * the batch of queries that this query is part of, if there is one.
+     *
+     * @param part the partition to get the entry from
+     * @param name the name of the term
+     * @param caseSensitive whether to look up the term in the case given
+     * @return the entry, or <code>null</code> if the term isn't in the
+     * partition
+     */
+    private QueryEntry getTerm(DiskPartition part, String name,
+            boolean caseSensitive) {
+        EntryCache ec = qc == null ? null : qc.getEntryCache();
+        if(ec != null) {
+            return ec.getTerm(part, name, caseSensitive);
+        }
+        return part.getTerm(name, caseSensitive);
+    }
+
+    /**
+     * Gets the entry with a given ID from a partition, from the entries
+     * shared by the batch of queries that this query is part of, if there is
+     * one.
+     */
+    private QueryEntry getTerm(DiskPartition part, int id) {
+        EntryCache ec = qc == null ? null : qc.getEntryCache();
+        if(ec != null) {
+            return ec.getTerm(part, id);
+        }
+        return part.getTerm(id);
+    }
+
+    /**
+     * Adds the entries for the morphological variants of the term in a
+     * partition to a set of entries.  If the partition has a table of
+     * variants built with our knowledge source and the term occurs in the
+     * partition, then the variants come straight from the table.
+     * Otherwise, we get the variants from the knowledge source (once per
+     * query term) and look each of them up in the partition.
+     *
+     * @param part the partition that we're evaluating against
+     * @param variants the set to add the variant entries to
+     */
+    private void addKnowledgeVariants(InvFileDiskPartition part,
+            Set<QueryEntry> variants) {
+        KnowledgeSource ks = qc.getKnowledgeSource();
+        if(ks == null) {
+            return;
+        }
+
+        VariantTable vt = part.getVariantTable();
+        if(!matchCase && vt != null && vt.builtWith(ks)) {
+            QueryEntry e = getTerm(part, val, false);
+            if(e != null) {
+                for(int id : vt.getVariants(e.getID())) {
+                    QueryEntry me = getTerm(part, id);
+                    if(me != null) {
+                        variants.add(me);
+                    }
+                }
+                return;
+            }
+        }
+
+        //
+        // If we're supposed to match case, we'll use the case given in
+        // the query term.
+        if(knowledgeVariants == null) {
+            Set<String> kvs = ks.variantsOf(val);
+            knowledgeVariants = kvs.toArray(new String[kvs.size()]);
+        }
+        for(int i = 0; i < knowledgeVariants.length; i++) {
+            QueryEntry me = getTerm(part, knowledgeVariants[i], matchCase);
+            if(me != null) {
+                variants.add(me);
+            }
+        }
+    }
+
     /**
      * Returns the already calculated estimated size.
      */
@@ -323,6 +391,9 @@ public class DictTerm extends QueryTerm implements Comparator {
                     part, estSize);
             or.setQueryStats(qs);
             for(QueryEntry qe : dictEntries) {
+                if(timedOut()) {
+                    break;
+                }
                 wc.setTerm((String) qe.getName());
                 float qw;
                 if(termWeight == 0) {
@@ -349,6 +420,60 @@ public class DictTerm extends QueryTerm implements Comparator {
         }
     }
 
+    /**
+     * Adds the postings for the entries for this term in the current
+     * partition to an or that will find the top scoring documents.  The
+     * postings will be processed together, so each entry gets its own
+     * weighting components.
+     *
+     * @param or the or to add to
+     */
+    protected void addTo(TopKOr or) {
+        for(QueryEntry qe : dictEntries) {
+            WeightingComponents twc =
+                    new WeightingComponents(qc.getCollectionStats());
+            twc.setTerm((String) qe.getName());
+            float qw = wf.initTerm(twc);
+            if(termWeight != 0) {
+                qw = termWeight;
+            }
+            PostingsIteratorFeatures tf = (PostingsIteratorFeatures) feat.clone();
+            tf.setWeightingComponents(twc);
+            or.add(qe.iterator(tf), qw);
+        }
+    }
+
+    @Override
+    protected boolean canScoreAsCursor() {
+        return true;
+    }
+
+    /**
+     * Gets a cursor for the postings for the entries for this term in the
+     * current partition.  As when adding to a {@link TopKOr}, each entry
+     * gets its own weighting components.
+     */
+    @Override
+    protected QueryCursor getCursor() {
+        if(dictEntries == null) {
+            return null;
+        }
+        TermCursor tc = new TermCursor(dictEntries.length);
+        for(QueryEntry qe : dictEntries) {
+            WeightingComponents twc =
+                    new WeightingComponents(qc.getCollectionStats());
+            twc.setTerm((String) qe.getName());
+            float qw = wf.initTerm(twc);
+            if(termWeight != 0) {
+                qw = termWeight;
+            }
+            PostingsIteratorFeatures tf = (PostingsIteratorFeatures) feat.clone();
+            tf.setWeightingComponents(twc);
+            tc.add(qe.iterator(tf), qw);
+        }
+        return tc;
+    }
+
     private TermCacheElement getTermCacheElement(PostingsIteratorFeatures feat) {
         TermCache tc = part.getTermCache();
         if(tc == null) {
@@ -400,6 +525,9 @@ public class DictTerm extends QueryTerm implements Comparator {
         float sqw = 0;
         qs.intersectW.start();
         for(int i = 0; i < dictEntries.length; i++) {
+            if(timedOut()) {
+                break;
+            }
 
             //
             // Keep track of the query weights.
@@ -415,7 +543,8 @@ public class DictTerm extends QueryTerm implements Comparator {
             //
             // We need to decide whether we're going to use findID or just
             // iterate through the postings for the current term.
-            if(dictEntries[i].getN() < 10 * ag.size) {
+            if(QueryPlanner.getStrategy(dictEntries[i].getN(), ag.size) ==
+                    QueryPlanner.Strategy.MERGE) {
 
                 //
                 // We're going to iterate, since that will be less work.
@@ -505,7 +634,7 @@ public class DictTerm extends QueryTerm implements Comparator {
         PostingsIteratorFeatures feat =
                 new PostingsIteratorFeatures(wf, wc, searchFields,
                 fieldMultipliers,
-                loadPositions,
+                false,
                 matchCase);
         feat.setQueryStats(qs);
 
@@ -514,6 +643,9 @@ public class DictTerm extends QueryTerm implements Comparator {
         float sqw = 0;
         qs.intersectW.start();
         for(int i = 0; i < dictEntries.length; i++) {
+            if(timedOut()) {
+                break;
+            }
             wc.setTerm((String) dictEntries[i].getName());
             float qw = wf.initTerm(wc);
             sqw += qw * qw;
@@ -529,7 +661,8 @@ public class DictTerm extends QueryTerm implements Comparator {
             // iterate through the postings for the current term.  We'll
             // iterate through the postings if it's less work than running
             // findID too many times.
-            if(dictEntries[i].getN() < 10 * ag.size) {
+            if(QueryPlanner.getStrategy(dictEntries[i].getN(), ag.size) ==
+                    QueryPlanner.Strategy.MERGE) {
 
                 qs.piW.start();
                 //
@@ -709,6 +842,20 @@ public class DictTerm extends QueryTerm implements Comparator {
         return ((QueryEntry) o1).getN() - ((QueryEntry) o2).getN();
     }
 
+    /**
+     * Makes a copy of this term.  The postings features and the entries and
+     * iterators for the current partition are not shared with the copy.
+     */
+    @Override
+    protected QueryElement copy() {
+        DictTerm result = (DictTerm) super.copy();
+        result.feat = null;
+        result.dictEntries = null;
+        result.pis = null;
+        result.posns = null;
+        return result;
+    }
+
     public List getQueryTerms(java.util.Comparator c) {
         List l = new ArrayList();
         l.add(this);
@@ -558,8 +558,6 @@ public class DocumentVectorImpl implements DocumentVector, Serializable {
         // Get the features if we need them
         getFeatures();
 
-        qs.queryW.start();
-
         //
         // OK, we can do things the usual way:  process the document vector
         // postings, build up the weighted features, and then process the
@@ -591,83 +589,178 @@ public class DocumentVectorImpl implements DocumentVector, Serializable {
 
         //
         // We now have sf, which is the (possibly skimmed) set of features
-        // that we want to use for finding similar documents.  Let's go ahead
-        // and find them!
-        //
-        // Step through each partition and look up the terms
-        // in the weighted feature vector.  Add the postings for each
-        // term in to the QuickOr for that partition, and keep track of
-        // the scored groups generated for each one.
-        List<ArrayGroup> groups = new ArrayList<ArrayGroup>();
+        // that we want to use for finding similar documents.  We'll find
+        // them when someone asks for the results, so that if they only want
+        // the most similar documents, that's all we need to find.
+        return new ResultSetImpl(e, sortOrder, qs,
+                new SimilarityEvaluation(sf));
+    }
 
-        //
-        // Iterate through the partitions, looking for the features.
-        PostingsIteratorFeatures feat = new PostingsIteratorFeatures(wf, wc);
-        feat.setFields(fields);
-        feat.setQueryStats(qs);
-        for(DiskPartition curr : e.getManager().getActivePartitions()) {
+    /**
+     * The evaluation of a find similar operation, which is put off until
+     * results are requested from the result set.
+     */
+    protected class SimilarityEvaluation implements DeferredEvaluation {
 
-            if(curr.isClosed()) {
-                continue;
-            }
+        /**
+         * The features that we're looking for.
+         */
+        private WeightedFeature[] sf;
 
-            ScoredQuickOr qor = new ScoredQuickOr(curr, 1024, true);
-            qor.setQueryStats(qs);
-            qor.setField(fieldID);
+        public SimilarityEvaluation(WeightedFeature[] sf) {
+            this.sf = sf;
+        }
 
-            TermCache termCache = curr.getTermCache();
+        public List<ArrayGroup> eval() {
 
-            for(WeightedFeature f : sf) {
-                
-                //
-                // Try to do things with the term cache if we can.
-                PostingsIterator pi = null;
-                if(termCache != null) {
-                    TermCacheElement el = termCache.get(f.getName(), feat);
-                    pi = el.iterator();
-                } else {
-                    QueryEntry entry = curr.getTerm(f.getName());
-                    if(entry != null) {
-                        wf.initTerm(wc.setTerm(f.getName()));
-                        pi = entry.iterator(feat);
-                    }
+            qs.queryW.start();
+
+            //
+            // Step through each partition and look up the terms
+            // in the weighted feature vector.  Add the postings for each
+            // term in to the QuickOr for that partition, and keep track of
+            // the scored groups generated for each one.
+            List<ArrayGroup> groups = new ArrayList<ArrayGroup>();
+
+            //
+            // Iterate through the partitions, looking for the features.
+            PostingsIteratorFeatures feat = new PostingsIteratorFeatures(wf, wc);
+            feat.setFields(fields);
+            feat.setQueryStats(qs);
+            for(DiskPartition curr : e.getManager().getActivePartitions()) {
+
+                if(curr.isClosed()) {
+                    continue;
                 }
 
-                if(pi != null) {
+                ScoredQuickOr qor = new ScoredQuickOr(curr, 1024, true);
+                qor.setQueryStats(qs);
+                qor.setField(fieldID);
+
+                TermCache termCache = curr.getTermCache();
+
+                for(WeightedFeature f : sf) {
+
                     //
-                    // If we got an entry in this partition, add its postings
-                    // to the quick or.
-                    qor.add(pi, f.getWeight());
+                    // Try to do things with the term cache if we can.
+                    PostingsIterator pi = null;
+                    if(termCache != null) {
+                        TermCacheElement el = termCache.get(f.getName(), feat);
+                        pi = el.iterator();
+                    } else {
+                        QueryEntry entry = curr.getTerm(f.getName());
+                        if(entry != null) {
+                            wf.initTerm(wc.setTerm(f.getName()));
+                            pi = entry.iterator(feat);
+                        }
+                    }
+
+                    if(pi != null) {
+                        //
+                        // If we got an entry in this partition, add its postings
+                        // to the quick or.
+                        qor.add(pi, f.getWeight());
+                    } else {
+                        qor.addWeightOnly(f.getWeight());
+                    }
+                }
+
+                //
+                // Add the results for this partition into the list
+                // of results.
+                ScoredGroup sg = (ScoredGroup) qor.getGroup();
+                qs.normW.start();
+                if(fields == null) {
+                    sg.normalize();
                 } else {
-                    qor.addWeightOnly(f.getWeight());
+                    for(int i = 0; i < fields.length; i++) {
+                        if(fields[i] == 1) {
+                            sg.normalize(i);
+                            break;
+                        }
+                    }
                 }
+                qs.normW.stop();
+                sg.removeDeleted();
+                groups.add(sg);
             }
+            qs.queryW.stop();
+            ((SearchEngineImpl) e).addQueryStats(qs);
+            return groups;
+        }
+
+        public List<ArrayGroup> evalTopK(int k) {
 
             //
-            // Add the results for this partition into the list
-            // of results.
-            ScoredGroup sg = (ScoredGroup) qor.getGroup();
-            qs.normW.start();
-            if(fields == null) {
-                sg.normalize();
-            } else {
+            // Figure out which lengths we'll normalize with.  If there are
+            // none, the scores won't be normalized, and we can't bound them.
+            int lengthField = -1;
+            if(fields != null) {
+                lengthField = -2;
                 for(int i = 0; i < fields.length; i++) {
                     if(fields[i] == 1) {
-                        sg.normalize(i);
+                        lengthField = i;
                         break;
                     }
                 }
+                if(lengthField == -2) {
+                    return null;
+                }
             }
-            qs.normW.stop();
-            sg.removeDeleted();
-            groups.add(sg);
-        }
-        qs.queryW.stop();
-        ((SearchEngineImpl) e).addQueryStats(qs);
 
-        ResultSetImpl ret = new ResultSetImpl(e, sortOrder, groups);
-        ret.setQueryStats(qs);
-        return ret;
+            qs.queryW.start();
+            List<ArrayGroup> groups = new ArrayList<ArrayGroup>();
+            float threshold = 0;
+            for(DiskPartition curr : e.getManager().getActivePartitions()) {
+
+                if(curr.isClosed()) {
+                    continue;
+                }
+
+                TopKOr or = new TopKOr(curr, k);
+                or.setQueryStats(qs);
+                or.setField(fieldID);
+                or.setLengthField(lengthField);
+                or.setThreshold(threshold);
+
+                for(WeightedFeature f : sf) {
+                    QueryEntry entry = curr.getTerm(f.getName());
+                    if(entry != null) {
+
+                        //
+                        // The postings will be processed together, so each
+                        // one needs its own weighting components.
+                        WeightingComponents twc = new WeightingComponents();
+                        if(wc.cs != null) {
+                            twc.setCollection(wc.cs);
+                        }
+                        wf.initTerm(twc.setTerm(f.getName()));
+                        PostingsIteratorFeatures feat =
+                                new PostingsIteratorFeatures(wf, twc);
+                        feat.setFields(fields);
+                        feat.setQueryStats(qs);
+                        or.add(entry.iterator(feat), f.getWeight());
+                    } else {
+                        or.addWeightOnly(f.getWeight());
+                    }
+                }
+
+                ScoredGroup sg = (ScoredGroup) or.getGroup();
+                if(sg == null) {
+                    qs.queryW.stop();
+                    return null;
+                }
+                threshold = or.getThreshold();
+                qs.normW.start();
+                sg.normalize(lengthField);
+                qs.normW.stop();
+                sg.removeDeleted();
+                groups.add(sg);
+            }
+            qs.queryW.stop();
+            ((SearchEngineImpl) e).addQueryStats(qs);
+            return groups;
+        }
     }
 
     /**
@@ -30,9 +30,11 @@ import java.util.List;
 import java.util.ArrayList;
 
 import com.sun.labs.minion.indexer.dictionary.DictionaryIterator;
+import com.sun.labs.minion.indexer.dictionary.DiskDictionary;
 import com.sun.labs.minion.indexer.partition.DiskPartition;
 import com.sun.labs.minion.FieldInfo;
 import com.sun.labs.minion.indexer.dictionary.BasicField;
+import com.sun.labs.minion.indexer.dictionary.RangeIndex;
 import com.sun.labs.minion.indexer.dictionary.SavedField;
 import com.sun.labs.minion.indexer.postings.PostingsIterator;
 import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
@@ -110,6 +112,19 @@ public class FieldTerm extends QueryTerm {
      */
     protected PostingsIterator pi;
 
+    /**
+     * The index of value ranges that we'll use to evaluate a range of values
+     * in the current partition, or <code>null</code> if we'll combine the
+     * postings for the values from the iterator.
+     */
+    protected RangeIndex rangeIndex;
+
+    /**
+     * The IDs of the first and last values in our range, when we're using
+     * the range index.
+     */
+    protected int lowID, highID;
+
     /**
      * This should be true if this FieldTerm was constructed with
      * range data.
@@ -157,6 +172,21 @@ public class FieldTerm extends QueryTerm {
 
     }
 
+    /**
+     * Makes a copy of this term.  The field, iterators and date parser used
+     * for the current partition are not shared with the copy.
+     */
+    @Override
+    protected QueryElement copy() {
+        FieldTerm result = (FieldTerm) super.copy();
+        result.sf = null;
+        result.iter = null;
+        result.pi = null;
+        result.rangeIndex = null;
+        result.dp = null;
+        return result;
+    }
+
     public String getName() {
         return name;
     }
@@ -183,6 +213,8 @@ public class FieldTerm extends QueryTerm {
         // Set up for our range or for a single term.
         iter = null;
         pi = null;
+        sf = null;
+        rangeIndex = null;
 
         //
         // We'll need to operate based on the type.
@@ -336,6 +368,9 @@ public class FieldTerm extends QueryTerm {
                             time = d.getTime();
                             if(isDayResolution(d) && includeUpper) {
                                 upperBound = new Date(time + dayMilliSeconds);
+                                includeUpper = false;
+                            } else {
+                                upperBound = new Date(time);
                             }
                         }
                     } catch(java.text.ParseException pe) {
@@ -391,6 +426,24 @@ public class FieldTerm extends QueryTerm {
             iter = null;
         }
 
+        //
+        // A range of values of a numeric or date field can be evaluated using
+        // the field's range index, if that means combining fewer lists than
+        // there are values in the range.
+        if(getIterator && iter instanceof DiskDictionary.DiskDictionaryIterator
+                && sf instanceof BasicField) {
+            RangeIndex ri = ((BasicField) sf).getRangeIndex();
+            if(ri != null) {
+                DiskDictionary.DiskDictionaryIterator di =
+                        (DiskDictionary.DiskDictionaryIterator) iter;
+                lowID = di.getStartPos() + 1;
+                highID = di.getStopPos();
+                if(ri.getNLists(lowID, highID) < di.getNEntries()) {
+                    rangeIndex = ri;
+                }
+            }
+        }
+
         //
         // Setup the partition for the superclass.
         super.setPartition(part);
@@ -408,6 +461,31 @@ public class FieldTerm extends QueryTerm {
                 valCal.get(Calendar.SECOND) == 0;
     }
 
+    /**
+     * Gets the number of distinct values for our field in the current
+     * partition.
+     *
+     * @return the number of values, or 0 if the field has no saved values
+     * in the partition.
+     */
+    protected int getNValues() {
+        return sf == null ? 0 : sf.size();
+    }
+
+    /**
+     * Gets the number of field values whose postings will be combined to
+     * evaluate this term in the current partition.
+     */
+    protected int getNEntries() {
+        if(iter == null) {
+            return pi == null ? 0 : 1;
+        }
+        if(rangeIndex != null) {
+            return rangeIndex.getNLists(lowID, highID);
+        }
+        return iter.getNEntries();
+    }
+
     /**
      * Estimates the size of the results set for the given term.
      */
@@ -419,6 +497,9 @@ public class FieldTerm extends QueryTerm {
             return pi.getN();
         }
 
+        if(rangeIndex != null) {
+            return rangeIndex.estimateSize(lowID, highID);
+        }
         return iter.estimateSize();
     }
 
@@ -530,15 +611,20 @@ public class FieldTerm extends QueryTerm {
         // because the case sensitivity for the various string operations that
         // produce a number of entries has been taken care of at the point where
         // the query entries were generated from the underlying dictionaries.
-        QuickOr or = new QuickOr(null, 2048);
         PostingsIteratorFeatures feat = new PostingsIteratorFeatures();
         feat.setCaseSensitive(true);
         feat.setQueryStats(qs);
-        while(iter.hasNext()) {
-            QueryEntry qe = iter.next();
-            or.add(qe.iterator(feat));
+        ArrayGroup og;
+        if(rangeIndex != null) {
+            og = rangeIndex.getGroup(lowID, highID, feat);
+        } else {
+            QuickOr or = new QuickOr(null, 2048);
+            while(iter.hasNext()) {
+                QueryEntry qe = iter.next();
+                or.add(qe.iterator(feat));
+            }
+            og = or.getGroup();
         }
-        ArrayGroup og = or.getGroup();
 
         //
         // Intersect with whatever constraint we were given.  We'll
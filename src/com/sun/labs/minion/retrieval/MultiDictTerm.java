@@ -94,7 +94,7 @@ public class MultiDictTerm extends DictTerm
         // whatever DictTerm changed.
         
         super.setPartition(part);
-        Set variants = new HashSet();
+        Set<QueryEntry> variants = new HashSet<QueryEntry>();
 
         //
         // Get all the dictionary entries for all the dict terms.
@@ -113,6 +113,28 @@ public class MultiDictTerm extends DictTerm
         Util.sort(dictEntries, (Comparator)this);
     }
 
+    /**
+     * The entries for a TOR come from several terms, so they aren't scored
+     * the way that a cursor for a single term would score them.
+     */
+    @Override
+    protected boolean canScoreAsCursor() {
+        return false;
+    }
+
+    /**
+     * Makes a copy of this term and all of the terms that it contains.
+     */
+    @Override
+    protected QueryElement copy() {
+        MultiDictTerm result = (MultiDictTerm) super.copy();
+        result.terms = new ArrayList();
+        for (Iterator it = terms.iterator(); it.hasNext();) {
+            result.terms.add(((DictTerm)it.next()).copy());
+        }
+        return result;
+    }
+
     public String getName() {
         return "MultiDictTerm";
     }
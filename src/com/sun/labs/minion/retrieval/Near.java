@@ -79,7 +79,16 @@ public class Near extends Proximity {
         // Since all of the terms must appear in a satisfying document, we
         // will do an initial AND of the terms and any embedded operators.
         // This will give us a candidate list.
-        ArrayGroup candidates = And.and(ag, operands);
+        ArrayGroup candidates = null;
+        if(ag == null && qc.getDocumentAtATime()) {
+            QueryCursor c = And.getCursor(operands, false);
+            if(c != null) {
+                candidates = c.getGroup(part, false, qs, qc);
+            }
+        }
+        if(candidates == null) {
+            candidates = And.and(ag, operands);
+        }
 
         //
         // Now make a list of the terms and pass it through.
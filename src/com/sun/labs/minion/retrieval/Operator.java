@@ -68,14 +68,25 @@ public abstract class Operator extends QueryElement {
         }
 
         //
-        // Sort the elements by their estimated result set size.
-        Collections.sort(operands);
+        // Put the elements into the order that we'll evaluate them.
+        order(part);
 
         //
         // Do the set partition for this level.
         super.setPartition(part);
     }
 
+    /**
+     * Orders the operands before they are evaluated in a partition.  By
+     * default, the elements are sorted by their estimated result set size.
+     *
+     * @param part the partition that we're about to evaluate against.  Our
+     * operands have already had their partition set.
+     */
+    protected void order(DiskPartition part) {
+        Collections.sort(operands);
+    }
+
     /**
      * Sets the current query configuration.
      */
@@ -91,7 +102,7 @@ public abstract class Operator extends QueryElement {
      *
      * @return the operands
      */
-    public List getOperands() {
+    public List<QueryElement> getOperands() {
         return operands;
     }
 
@@ -99,7 +110,7 @@ public abstract class Operator extends QueryElement {
      * Gets the internal copy of the list of operands to this operator
      *
      */
-    public void setOperands(List operands) {
+    public void setOperands(List<QueryElement> operands) {
         this.operands = operands;
     }
 
@@ -137,6 +148,21 @@ public abstract class Operator extends QueryElement {
         }
     }
 
+    /**
+     * Makes a copy of this operator and all of its operands.
+     */
+    @Override
+    protected QueryElement copy() {
+        Operator result = (Operator) super.copy();
+        if(operands != null) {
+            result.operands = new ArrayList<QueryElement>(operands.size());
+            for(QueryElement qe : operands) {
+                result.operands.add(qe.copy());
+            }
+        }
+        return result;
+    }
+
     public List getQueryTerms(Comparator c) {
         List terms = new ArrayList();
         List subs = new ArrayList();
@@ -24,6 +24,7 @@
 
 package com.sun.labs.minion.retrieval;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -50,6 +51,29 @@ public class Or extends Operator {
         return estSize;
     }
 
+    /**
+     * Gets a cursor for the union of the operands.  Unless we're in a
+     * strict boolean context, the operands must all be terms.
+     *
+     * @see And#getCursor(List, boolean)
+     */
+    @Override
+    protected QueryCursor getCursor() {
+        List<QueryCursor> cursors = new ArrayList<QueryCursor>();
+        for(QueryElement qe : operands) {
+            if(qe instanceof Not || (!strictEval &&
+                    (qe.strictEval || !qe.canScoreAsCursor()))) {
+                return null;
+            }
+            QueryCursor c = qe.getCursor();
+            if(c == null) {
+                return null;
+            }
+            cursors.add(c);
+        }
+        return new OrCursor(cursors);
+    }
+
     /**
      * Evaluates this operator, returning the results.
      */
@@ -58,6 +82,9 @@ public class Or extends Operator {
         ArrayGroup ret = null;
         for(Iterator i = operands.iterator(); i.hasNext(); ) {
             QueryElement qe = (QueryElement) i.next();
+            if(ret != null && timedOut()) {
+                break;
+            }
             if(strictEval) {
                 qe.strictEval = strictEval;
             }
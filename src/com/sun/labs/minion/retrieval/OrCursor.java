@@ -0,0 +1,108 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import java.util.List;
+
+/**
+ * A cursor for the union of a number of cursors.  The score for a document
+ * is the sum of the scores from the cursors that contain it.
+ */
+public class OrCursor extends QueryCursor {
+
+    /**
+     * The cursors whose documents we're combining.
+     */
+    protected QueryCursor[] cursors;
+
+    /**
+     * Creates a cursor for a union.
+     *
+     * @param cursors the cursors to union
+     */
+    public OrCursor(List<QueryCursor> cursors) {
+        this.cursors = cursors.toArray(new QueryCursor[0]);
+    }
+
+    /**
+     * Positions the cursor on the lowest document among the cursors.
+     */
+    private boolean setDoc() {
+        doc = NO_MORE_DOCS;
+        for(QueryCursor c : cursors) {
+            if(c.doc() < doc) {
+                doc = c.doc();
+            }
+        }
+        return doc != NO_MORE_DOCS;
+    }
+
+    public boolean next() {
+        if(doc == NO_MORE_DOCS) {
+            return false;
+        }
+        for(QueryCursor c : cursors) {
+            if(c.doc() == doc) {
+                c.next();
+            }
+        }
+        return setDoc();
+    }
+
+    public boolean advance(int target) {
+        if(doc >= target) {
+            return doc != NO_MORE_DOCS;
+        }
+        for(QueryCursor c : cursors) {
+            c.advance(target);
+        }
+        return setDoc();
+    }
+
+    public float score() {
+        float score = 0;
+        for(QueryCursor c : cursors) {
+            if(c.doc() == doc) {
+                score += c.score();
+            }
+        }
+        return score;
+    }
+
+    public float getSquaredQueryWeight() {
+        float sqw = 0;
+        for(QueryCursor c : cursors) {
+            sqw += c.getSquaredQueryWeight();
+        }
+        return sqw;
+    }
+
+    public int cost() {
+        int cost = 0;
+        for(QueryCursor c : cursors) {
+            cost += c.cost();
+        }
+        return cost;
+    }
+} // OrCursor
@@ -24,6 +24,12 @@
 
 package com.sun.labs.minion.retrieval;
 
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.indexer.MetaFile;
+import com.sun.labs.minion.indexer.entry.QueryEntry;
+import com.sun.labs.minion.indexer.partition.InvFileDiskPartition;
+import com.sun.labs.minion.indexer.postings.PostingsIteratorFeatures;
+import com.sun.labs.minion.pipeline.ShingleStage;
 import java.util.List;
 
 /**
@@ -31,8 +37,24 @@ import java.util.List;
  * is just like a <code>&lt;near&gt;</code>, except the window size is
  * restricted so that only the given number of terms can be contained and
  * the terms need to be in order.
+ *
+ * <p>
+ *
+ * If the partition was indexed with a {@link ShingleStage} covering the
+ * fields being searched, then the candidate documents are found using the
+ * shingles for each adjacent pair of terms in the phrase, rather than by
+ * intersecting the documents for each term, and only the positions for
+ * those candidates are checked.
  */
 public class Phrase extends Near {
+
+    /**
+     * The largest number of shingles that we'll look up for a pair of
+     * terms.  Pairs of terms with more variants than this won't be used to
+     * restrict the candidates.
+     */
+    protected static final int MAX_SHINGLES = 64;
+
     public Phrase(List operands) {
         super(operands, 0);
 
@@ -45,5 +67,112 @@ public class Phrase extends Near {
         inOrder = true;
         
     } // Phrase constructor
+
+    /**
+     * Evaluates this phrase, using shingles to find the candidate documents
+     * if we can.
+     */
+    @Override
+    public ArrayGroup eval(ArrayGroup ag) {
+        if(ag == null) {
+            ArrayGroup shingled = getShingled();
+            if(shingled != null) {
+                return super.eval(shingled);
+            }
+        }
+        return super.eval(ag);
+    }
+
+    /**
+     * Gets the documents that contain a shingle for each adjacent pair of
+     * terms in the phrase.  Every document containing the phrase will be
+     * in this set.
+     *
+     * @return the documents containing the shingles, or <code>null</code>
+     * if we can't use shingles for this phrase in the current partition.
+     */
+    protected ArrayGroup getShingled() {
+        if(!(part instanceof InvFileDiskPartition) || terms.length < 2 ||
+                !hasShingles()) {
+            return null;
+        }
+
+        PostingsIteratorFeatures feat = new PostingsIteratorFeatures();
+        feat.setFields(searchFields);
+        feat.setQueryStats(qs);
+        ArrayGroup ret = null;
+        for(int i = 0; i < terms.length - 1; i++) {
+            DictTerm t1 = terms[i];
+            DictTerm t2 = terms[i + 1];
+            if(t1 == null || t2 == null || ocTerms[i] || ocTerms[i + 1]) {
+                return null;
+            }
+            if(t1.dictEntries.length * t2.dictEntries.length > MAX_SHINGLES) {
+                continue;
+            }
+
+            //
+            // Any shingle for a variant of the first term followed by a
+            // variant of the second will do.
+            boolean matchCase = t1.matchCase && t2.matchCase;
+            feat.setCaseSensitive(matchCase);
+            QuickOr or = new QuickOr(part, Math.min(t1.estimateSize(),
+                    t2.estimateSize()));
+            or.setQueryStats(qs);
+            for(QueryEntry e1 : t1.dictEntries) {
+                for(QueryEntry e2 : t2.dictEntries) {
+                    QueryEntry se = part.getTerm(ShingleStage.shingle(
+                            e1.getName().toString(), e2.getName().toString()),
+                            matchCase);
+                    if(se != null) {
+                        or.add(se.iterator(feat));
+                    }
+                }
+            }
+            ArrayGroup pg = or.getGroup();
+            ret = ret == null ? pg : ret.intersect(pg);
+            if(ret.size == 0 || timedOut()) {
+                break;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Tells whether every document in the current partition has shingles
+     * for all of the fields that we're searching.
+     */
+    protected boolean hasShingles() {
+        if(complete(ShingleStage.marker(null))) {
+            return true;
+        }
+
+        //
+        // Words that aren't in a field can only be shingled by a stage that
+        // shingles everything.
+        if(searchFields == null || searchFields[0] != 0) {
+            return false;
+        }
+        MetaFile mf = part.getManager().getMetaFile();
+        for(int i = 1; i < searchFields.length; i++) {
+            if(searchFields[i] == 0) {
+                continue;
+            }
+            FieldInfo fi = mf.getFieldInfo(i);
+            if(fi == null || !complete(ShingleStage.marker(fi.getName()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a shingle marker occurs in every document in the
+     * current partition.
+     */
+    private boolean complete(String marker) {
+        QueryEntry e = part.getTerm(marker, true);
+        return e != null && e.getN() == part.getMaxDocumentID();
+    }
     
 } // Phrase
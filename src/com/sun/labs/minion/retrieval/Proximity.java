@@ -115,6 +115,25 @@ public abstract class Proximity extends Operator {
         }
     } // Proximity constructor
 
+    /**
+     * Makes a copy of this operator, pointing the query ordered operands at
+     * the copies of the operands.
+     */
+    @Override
+    protected QueryElement copy() {
+        Proximity result = (Proximity) super.copy();
+        result.orderedOps = new QueryElement[orderedOps.length];
+        result.terms = new DictTerm[terms.length];
+        result.ocTerms = ocTerms.clone();
+        for(QueryElement qe : result.operands) {
+            result.orderedOps[qe.order] = qe;
+            if(qe instanceof DictTerm) {
+                result.terms[qe.order] = (DictTerm) qe;
+            }
+        }
+        return result;
+    }
+
     /**
      * Sets the out-of-order penalty.
      */
@@ -259,6 +278,9 @@ public abstract class Proximity extends Operator {
         // OK, here we go. For each candidate document, we will want to
         // pull the positions for the terms and check for valid passages.
         for(int i = 0; i < candidates.size; i++) {
+            if((i & 1023) == 0 && timedOut()) {
+                break;
+            }
             int doc = candidates.docs[i];
 
             //
@@ -279,6 +301,13 @@ public abstract class Proximity extends Operator {
                     continue;
                 }
 
+                //
+                // If all we need to know is whether the document has a
+                // passage, then one will do.
+                if(somePassage && strictEval && !storePassages) {
+                    break;
+                }
+
                 //
                 // Zero out the column lengths.
                 for(int j = 0; j < lens.length; j++) {
@@ -710,8 +739,9 @@ public abstract class Proximity extends Operator {
             //
             // If we find a hit with 0 penalty, and we're not supposed to
             // keep our positions around, we may as well call it a day,
-            // since we can't find a better hit.
-            if(penalty == 0 && !storePassages) {
+            // since we can't find a better hit.  If we're evaluating
+            // strictly, the score doesn't matter, so any hit will do.
+            if(!storePassages && (penalty == 0 || strictEval)) {
                 break colLoop;
             }
 
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.util.LRACache;
+
+/**
+ * A cache of parsed queries, so that popular queries don't need to be run
+ * through the parser, the transformer, the query pipeline and the planner
+ * every time they are run.
+ *
+ * <p>
+ *
+ * The cache holds a template for each query that is never evaluated.  Each
+ * lookup gets its own copy of the template, made with
+ * {@link QueryElement#copy}, which can be given its own configuration and
+ * statistics and evaluated like a freshly parsed query.
+ */
+public class QueryCache {
+
+    /**
+     * The cached query templates.
+     */
+    protected LRACache<QueryKey, QueryElement> cache;
+
+    /**
+     * The number of lookups that found a query.
+     */
+    protected long hits;
+
+    /**
+     * The number of lookups that didn't.
+     */
+    protected long misses;
+
+    /**
+     * Creates a query cache.
+     *
+     * @param size the number of parsed queries that will be held
+     */
+    public QueryCache(int size) {
+        cache = new LRACache<QueryKey, QueryElement>(size);
+    }
+
+    /**
+     * Gets a parsed query from the cache.
+     *
+     * @param key the key for the query
+     * @return a copy of the parsed query that is ready to be evaluated, or
+     * <code>null</code> if the query is not in the cache.
+     */
+    public QueryElement get(QueryKey key) {
+        QueryElement template;
+        synchronized(this) {
+            template = cache.get(key);
+            if(template == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return template.copy();
+    }
+
+    /**
+     * Puts a parsed query into the cache.  The cache keeps its own copy of
+     * the query, so the query may be evaluated once it has been put.
+     *
+     * @param key the key for the query
+     * @param qe the parsed query, which must not have been evaluated yet.
+     */
+    public void put(QueryKey key, QueryElement qe) {
+        QueryElement template = qe.copy();
+        synchronized(this) {
+            cache.put(key, template);
+        }
+    }
+
+    /**
+     * Removes all of the queries from the cache.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+} // QueryCache
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.QueryConfig;
+import com.sun.labs.minion.QueryStats;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.util.Util;
+
+/**
+ * An abstract base class for cursors that evaluate a query a document at a
+ * time.  A query is compiled into a tree of cursors (see
+ * {@link QueryElement#getCursor}) whose leaves step through the postings for
+ * the query terms, so the documents that match the whole query are found
+ * without building a group for each of the elements of the query.
+ *
+ * <p>
+ *
+ * A cursor is positioned on a document by {@link #next} or {@link #advance}
+ * and the document and its (unnormalized) score are then available from
+ * {@link #doc} and {@link #score}.  Documents are produced in increasing
+ * order of document ID.
+ */
+public abstract class QueryCursor {
+
+    /**
+     * The document ID of a cursor that has been exhausted.
+     */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * The document that the cursor is positioned on.  This will be 0 before
+     * the cursor has been advanced and {@link #NO_MORE_DOCS} after it has
+     * been exhausted.
+     */
+    protected int doc;
+
+    /**
+     * Gets the document that the cursor is positioned on.
+     *
+     * @return the current document, 0 if the cursor has not been advanced
+     * yet, or {@link #NO_MORE_DOCS} if the cursor has been exhausted.
+     */
+    public int doc() {
+        return doc;
+    }
+
+    /**
+     * Moves to the next document.
+     *
+     * @return <code>true</code> if the cursor is positioned on a document,
+     * <code>false</code> if it has been exhausted.
+     */
+    public abstract boolean next();
+
+    /**
+     * Moves to the first document whose ID is greater than or equal to the
+     * given ID.  If the cursor is already positioned on such a document, it
+     * does not move.
+     *
+     * @param target the ID to advance to
+     * @return <code>true</code> if the cursor is positioned on a document,
+     * <code>false</code> if it has been exhausted.
+     */
+    public abstract boolean advance(int target);
+
+    /**
+     * Gets the unnormalized score for the current document.
+     */
+    public abstract float score();
+
+    /**
+     * Gets the sum of the squared query weights for the terms under this
+     * cursor, which is used to normalize the scores.
+     */
+    public abstract float getSquaredQueryWeight();
+
+    /**
+     * Gets an estimate of the number of documents that this cursor will
+     * produce, which is used to decide the order in which cursors are
+     * advanced.
+     */
+    public abstract int cost();
+
+    /**
+     * Runs this cursor to the end, collecting the documents that it
+     * produces into a group.
+     *
+     * @param part the partition that the cursor is evaluating against
+     * @param strict if <code>true</code>, a strict group will be returned,
+     * otherwise a scored group will be returned
+     * @param qs the statistics for the query
+     * @param qc the configuration for the query, which is checked every so
+     * often to see whether the query has run out of time.  May be
+     * <code>null</code>.
+     * @return a group containing the documents produced by this cursor.  As
+     * for any group built from the postings, a scored group needs to be
+     * normalized.  If the query runs out of time, the group will only
+     * contain some of the documents.
+     */
+    public ArrayGroup getGroup(DiskPartition part, boolean strict,
+            QueryStats qs, QueryConfig qc) {
+        qs.piW.start();
+        int[] docs = new int[Math.max(Math.min(cost(), part.getMaxDocumentID()), 16)];
+        float[] scores = strict ? null : new float[docs.length];
+        int n = 0;
+        while(next()) {
+            if((n & 1023) == 0 && qc != null && qc.timedOut()) {
+                break;
+            }
+            if(n == docs.length) {
+                docs = Util.expandInt(docs, n * 2);
+                if(!strict) {
+                    scores = Util.expandFloat(scores, n * 2);
+                }
+            }
+            docs[n] = doc;
+            if(!strict) {
+                scores[n] = score();
+            }
+            n++;
+        }
+        qs.piW.stop();
+        if(strict) {
+            return new ArrayGroup(part, docs, n);
+        }
+        return new ScoredGroup(part, docs, scores, n, getSquaredQueryWeight());
+    }
+} // QueryCursor
@@ -41,7 +41,7 @@ import java.util.logging.Logger;
  * take part in the evaluation of a query.
  *
  */
-public abstract class QueryElement implements Comparable {
+public abstract class QueryElement implements Comparable, Cloneable {
 
     /**
      * A partition upon which retrieval will be performed.
@@ -163,6 +163,18 @@ public abstract class QueryElement implements Comparable {
         this.qc = qc;
     }
 
+    /**
+     * Indicates whether the time allowed for the query has run out, in which
+     * case the evaluation should stop as soon as it can.  Whatever has been
+     * computed for the current partition at that point will be thrown away.
+     *
+     * @return <code>true</code> if the query has run out of time.
+     * @see QueryConfig#timedOut
+     */
+    protected boolean timedOut() {
+        return qc != null && qc.timedOut();
+    }
+
     /**
      * Sets the query statistics.
      */
@@ -316,6 +328,53 @@ public abstract class QueryElement implements Comparable {
         return estimateSize() - ((QueryElement) o).estimateSize();
     }
 
+    /**
+     * Makes a copy of this query element that can be evaluated against a
+     * partition independently of this element, so that several partitions
+     * can be evaluated at once.  Elements that hold other elements or
+     * per-partition state need to override this to copy or reset them.
+     *
+     * @return a copy of this element.  The copy shares the query
+     * configuration and weighting function with this element, but the
+     * caller must give it its own query statistics and weighting components.
+     */
+    protected QueryElement copy() {
+        QueryElement result = null;
+        try {
+            result = (QueryElement) super.clone();
+        } catch(CloneNotSupportedException e) {
+            throw new InternalError();
+        }
+        result.part = null;
+        return result;
+    }
+
+    /**
+     * Gets a cursor that will evaluate this element against the current
+     * partition a document at a time.
+     *
+     * @return a cursor for this element, or <code>null</code> if this
+     * element can't be evaluated a document at a time, in which case it
+     * should be evaluated using {@link #eval}.
+     */
+    protected QueryCursor getCursor() {
+        return null;
+    }
+
+    /**
+     * Indicates whether this element is a single term whose documents can be
+     * scored by a cursor, or by a {@link TopKOr}, in the same way that they
+     * are scored by {@link #eval}.  Only such elements can be combined into
+     * cursors for ranked boolean queries or evaluated for only the top
+     * documents.
+     *
+     * @return <code>true</code> if this element can be scored as a cursor,
+     * <code>false</code> otherwise.
+     */
+    protected boolean canScoreAsCursor() {
+        return false;
+    }
+
     /**
      * Evaluates this query element.
      */
@@ -26,9 +26,14 @@ package com.sun.labs.minion.retrieval;
 import java.util.ArrayList;
 import java.util.List;
 import com.sun.labs.minion.QueryConfig;
+import com.sun.labs.minion.QueryStats;
 import com.sun.labs.minion.indexer.partition.DiskPartition;
 import com.sun.labs.minion.query.Relation;
 import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 public class QueryEvaluator {
@@ -37,6 +42,61 @@ public class QueryEvaluator {
 
     protected static String logTag = "EVAL";
 
+    /**
+     * A pool of threads to use for evaluating a query against several
+     * partitions at once.
+     */
+    protected ExecutorService executor;
+
+    /**
+     * Whether the query ran out of time before it was evaluated against all
+     * of the partitions.
+     */
+    protected volatile boolean timedOut;
+
+    /**
+     * Creates an evaluator that will evaluate queries against one partition
+     * at a time.
+     */
+    public QueryEvaluator() {
+    }
+
+    /**
+     * Creates an evaluator that will evaluate queries against several
+     * partitions at once.
+     *
+     * @param executor the pool of threads to use for evaluating the query
+     * against each partition.  If this is <code>null</code>, the partitions
+     * will be evaluated one at a time.
+     */
+    public QueryEvaluator(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Indicates whether the last query evaluated ran out of time.  If it
+     * did, then the results returned are those for the partitions that
+     * were completely evaluated before the time ran out.
+     *
+     * @return <code>true</code> if the query ran out of time.
+     */
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Checks whether a query has run out of time, noting the fact if it has.
+     *
+     * @param qe the query
+     * @return <code>true</code> if the query has run out of time.
+     */
+    private boolean checkTime(QueryElement qe) {
+        if(qe.timedOut()) {
+            timedOut = true;
+        }
+        return timedOut;
+    }
+
     /**
      * Evaluates a field term.
      *
@@ -47,7 +107,7 @@ public class QueryEvaluator {
      * @return a list of <code>ArrayGroup</code>s containing the results
      * for the corresponding partitions.
      */
-    public List eval(List parts,
+    public List<ArrayGroup> eval(List<DiskPartition> parts,
             QueryConfig qc,
             String name, Relation.Operator op, String value) {
         QueryElement qe = new FieldTerm(name, op, value);
@@ -63,9 +123,10 @@ public class QueryEvaluator {
      * @return a list of <code>ArrayGroup</code>s containing the results
      * for the corresponding partitions.
      */
-    public List eval(Collection<DiskPartition> parts, QueryElement qe) {
+    public List<ArrayGroup> eval(Collection<DiskPartition> parts,
+            QueryElement qe) {
 
-        List ret = new ArrayList();
+        List<ArrayGroup> ret = new ArrayList<ArrayGroup>();
 
         //
         // We want to check for a single all-asterisk wildcard, which is a query
@@ -88,12 +149,247 @@ public class QueryEvaluator {
 
         //
         // This is a normal evaluation.
+        if(executor != null && parts.size() > 1) {
+            return evalParallel(parts, qe);
+        }
+        for(DiskPartition p : parts) {
+            if(p.isClosed()) {
+                continue;
+            }
+            if(checkTime(qe)) {
+                break;
+            }
+            qe.setPartition(p);
+            ArrayGroup ag = evalPartition(qe);
+            if(checkTime(qe)) {
+                break;
+            }
+            ag.part = p;
+            ag.queryTerms = qe.getQueryTerms();
+            qe.qs.normW.start();
+            ag.normalize();
+            qe.qs.normW.stop();
+            ret.add(ag);
+        }
+        return ret;
+    }
+
+    /**
+     * Evaluates a query against the partition that has been set for it.  If
+     * the query configuration asks for it and the query can be, the query
+     * is evaluated a document at a time using the cursor for the query,
+     * otherwise the query is evaluated in the usual way.
+     *
+     * @param qe the query, whose partition has been set
+     * @return the results of evaluating the query against the partition
+     */
+    protected static ArrayGroup evalPartition(QueryElement qe) {
+        if(qe.qc != null && qe.qc.getDocumentAtATime()) {
+            QueryCursor c = qe.getCursor();
+            if(c != null) {
+                return c.getGroup(qe.part, qe.strictEval, qe.qs, qe.qc);
+            }
+        }
+        return qe.eval(null);
+    }
+
+    /**
+     * Evaluates a query against each of a number of partitions at the same
+     * time.  Each partition gets its own copy of the query, with its own
+     * weighting components and query statistics.  The statistics are
+     * added into those of the query once all of the partitions have been
+     * evaluated.
+     *
+     * @param parts The partitions to evaluate against.
+     * @param qe The query element, with query config and weight function
+     * already set
+     * @return a list of <code>ArrayGroup</code>s containing the results
+     * for the corresponding partitions.
+     */
+    protected List<ArrayGroup> evalParallel(Collection<DiskPartition> parts,
+            QueryElement qe) {
+
+        List<Future<ArrayGroup>> futures = new ArrayList<Future<ArrayGroup>>();
+        List<QueryStats> stats = new ArrayList<QueryStats>();
+        for(final DiskPartition p : parts) {
+            if(p.isClosed()) {
+                continue;
+            }
+            final QueryElement pqe = qe.copy();
+            QueryStats pqs = new QueryStats();
+            pqe.setQueryStats(pqs);
+            if(qe.wc != null) {
+                pqe.setWeightingComponents(qe.qc.getWeightingComponents());
+            }
+            stats.add(pqs);
+            futures.add(executor.submit(new Callable<ArrayGroup>() {
+
+                public ArrayGroup call() {
+                    if(checkTime(pqe)) {
+                        return null;
+                    }
+                    pqe.setPartition(p);
+                    ArrayGroup ag = evalPartition(pqe);
+                    if(checkTime(pqe)) {
+                        return null;
+                    }
+                    ag.part = p;
+                    ag.queryTerms = pqe.getQueryTerms();
+                    pqe.qs.normW.start();
+                    ag.normalize();
+                    pqe.qs.normW.stop();
+                    return ag;
+                }
+            }));
+        }
+
+        List<ArrayGroup> ret = new ArrayList<ArrayGroup>();
+        try {
+            for(Future<ArrayGroup> f : futures) {
+                ArrayGroup ag = f.get();
+                if(ag != null) {
+                    ret.add(ag);
+                }
+            }
+        } catch(InterruptedException ex) {
+            //
+            // Don't interrupt the running evaluations: an interrupt during a
+            // read would close the file channel shared by all the queries.
+            for(Future<ArrayGroup> f : futures) {
+                f.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during evaluation", ex);
+        } catch(ExecutionException ex) {
+            for(Future<ArrayGroup> f : futures) {
+                f.cancel(false);
+            }
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if(ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw new IllegalStateException("Error during evaluation", ex.getCause());
+        }
+
+        //
+        // Accumulate the statistics from the partitions.
+        if(qe.qs != null) {
+            for(QueryStats pqs : stats) {
+                qe.qs.accumulate(pqs);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the terms of a query that can be evaluated for only the top
+     * scoring documents.  This is the case for a single term or for a
+     * disjunction of terms, as long as no field multipliers could push the
+     * term weights past the bounds recorded in the postings.
+     *
+     * @param qe the query
+     * @return the terms in the query, or <code>null</code> if the query
+     * can't be evaluated for the top documents.
+     */
+    protected static List<DictTerm> getTopKTerms(QueryElement qe) {
+        List<DictTerm> terms = new ArrayList<DictTerm>();
+        if(qe instanceof DictTerm && qe.canScoreAsCursor()) {
+            terms.add((DictTerm) qe);
+        } else if(qe.getClass() == Or.class && !qe.strictEval) {
+            for(Object o : ((Or) qe).getOperands()) {
+                if(!(o instanceof DictTerm) ||
+                        !((DictTerm) o).canScoreAsCursor()) {
+                    return null;
+                }
+                terms.add((DictTerm) o);
+            }
+        } else {
+            return null;
+        }
+
+        for(DictTerm dt : terms) {
+            if(dt.strictEval || dt.getName() == null ||
+                    dt.getName().matches("\\**")) {
+                return null;
+            }
+        }
+
+        float[] mv = qe.qc == null ? null : qe.qc.getMultValues();
+        if(mv != null) {
+            for(float m : mv) {
+                if(m > 1) {
+                    return null;
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Determines whether a query can be evaluated for only the top scoring
+     * documents.
+     *
+     * @see #evalTopK
+     */
+    public static boolean canEvalTopK(QueryElement qe) {
+        return getTopKTerms(qe) != null;
+    }
+
+    /**
+     * Evaluates a query for only the top scoring documents, using a
+     * {@link TopKOr} for each partition.  The score of the last of the top
+     * documents in one partition is used to prune the evaluation in the
+     * next.
+     *
+     * @param parts The partitions to evaluate against.
+     * @param qe The query element, with query config and weight function
+     * already set
+     * @param k the number of documents that we want
+     * @return a list of <code>ArrayGroup</code>s that together contain the
+     * top <code>k</code> documents, or <code>null</code> if the query can't
+     * be evaluated this way.
+     */
+    public List<ArrayGroup> evalTopK(Collection<DiskPartition> parts,
+            QueryElement qe, int k) {
+
+        List<DictTerm> terms = getTopKTerms(qe);
+        if(terms == null) {
+            return null;
+        }
+
+        List<ArrayGroup> ret = new ArrayList<ArrayGroup>();
+        float threshold = 0;
         for(DiskPartition p : parts) {
             if(p.isClosed()) {
                 continue;
             }
+            if(checkTime(qe)) {
+                break;
+            }
             qe.setPartition(p);
-            ArrayGroup ag = qe.eval(null);
+            ArrayGroup ag;
+            if(p.getDVL() == null) {
+                ag = evalPartition(qe);
+            } else {
+                TopKOr or = new TopKOr(p, k);
+                or.setQueryStats(qe.qs);
+                or.setQueryConfig(qe.qc);
+                or.setThreshold(threshold);
+                for(DictTerm dt : terms) {
+                    dt.addTo(or);
+                }
+                ag = or.getGroup();
+                if(ag == null) {
+                    ag = evalPartition(qe);
+                } else {
+                    threshold = or.getThreshold();
+                }
+            }
+            if(checkTime(qe)) {
+                break;
+            }
             ag.part = p;
             ag.queryTerms = qe.getQueryTerms();
             qe.qs.normW.start();
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.QueryConfig;
+import com.sun.labs.minion.Searcher;
+import java.util.List;
+
+/**
+ * The key for a query string in the engine's caches of parsed queries and
+ * query results.  A query is identified by its text, with any leading and
+ * trailing whitespace removed, the default operator and the grammar used to
+ * parse it.  A key for the cache of query results also includes the sorting
+ * specification and the settings of the query configuration, since they
+ * change the results.
+ */
+public class QueryKey {
+
+    private String query;
+
+    private Searcher.Operator op;
+
+    private Searcher.Grammar grammar;
+
+    private String sortSpec;
+
+    private List<Object> settings;
+
+    private int hash;
+
+    public QueryKey(String query, Searcher.Operator op,
+            Searcher.Grammar grammar) {
+        this.query = query.trim();
+        this.op = op;
+        this.grammar = grammar;
+        hash = (this.query.hashCode() * 31 + op.hashCode()) * 31 +
+                grammar.hashCode();
+    }
+
+    /**
+     * Creates a key for the results of a query.
+     *
+     * @param key the key for the query text
+     * @param sortSpec the sorting specification for the results
+     * @param qc the configuration that the query will be evaluated with
+     */
+    public QueryKey(QueryKey key, String sortSpec, QueryConfig qc) {
+        query = key.query;
+        op = key.op;
+        grammar = key.grammar;
+        this.sortSpec = sortSpec;
+        settings = qc.getResultSettings();
+        hash = (key.hash * 31 + hashCode(sortSpec)) * 31 + settings.hashCode();
+    }
+
+    private static int hashCode(Object o) {
+        return o == null ? 0 : o.hashCode();
+    }
+
+    private static boolean equals(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey k = (QueryKey) o;
+        return hash == k.hash && op == k.op && grammar == k.grammar &&
+                query.equals(k.query) && equals(sortSpec, k.sortSpec) &&
+                equals(settings, k.settings);
+    }
+
+    @Override
+    public String toString() {
+        return query + " " + op + " " + grammar +
+                (sortSpec == null ? "" : " " + sortSpec);
+    }
+} // QueryKey
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+
+import com.sun.labs.minion.QueryConfig;
+import com.sun.labs.minion.QueryStats;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.query.Relation;
+
+/**
+ * A cost based planner for queries.
+ *
+ * <p>
+ *
+ * Planning happens in two stages.  When a query is parsed, {@link #optimize}
+ * rewrites it into a simpler form that gives the same results: nested
+ * <code>And</code>s and <code>Or</code>s are flattened into their parents and
+ * pairs of relational operators on the same field are combined into a
+ * range.
+ *
+ * <p>
+ *
+ * When a query is evaluated against a partition, the planner estimates the
+ * number of documents that each element will match and the amount of work
+ * it will take to evaluate it.  The estimates are built from the document
+ * frequencies of the dictionary entries for terms and the number of distinct
+ * values for saved fields, assuming that the operands of an operator are
+ * independent.  The operands of an <code>And</code> are evaluated in order of
+ * increasing estimated size, with field restrictions, which don't need to
+ * be weighted, going ahead of text terms of similar size and negations going
+ * last.  Each term after the first is intersected with the documents
+ * matched so far using the {@link Strategy} that the planner picks for the
+ * sizes involved.
+ *
+ * <p>
+ *
+ * The plan that will be used for a query in a partition can be described
+ * using {@link #explain}.
+ */
+public class QueryPlanner {
+
+    /**
+     * The strategies that can be used to intersect the postings for a term
+     * with a group of documents, or to combine two groups of documents.
+     */
+    public enum Strategy {
+
+        /**
+         * Walk the postings and the group together.  This is best when the
+         * postings list is not much longer than the group.
+         */
+        MERGE,
+        /**
+         * Search for each document of the smaller side in the larger one in
+         * turn, using the skips in the postings or an exponential search
+         * through a group.  This is best when one side is much smaller than
+         * the other.
+         */
+        GALLOP,
+        /**
+         * Mark the documents in one group in a bit set and then test the
+         * documents in the other against it.  This is only used for
+         * combining groups, when both groups cover a large part of the
+         * partition.
+         */
+        BITMAP
+
+    }
+
+    /**
+     * The ratio of postings list size to group size above which we'll skip
+     * through the postings rather than walking them.
+     */
+    protected static final int GALLOP_RATIO = 10;
+
+    /**
+     * We'll combine two groups using bit sets when the smaller group contains
+     * at least one in this many of the document IDs covered by the groups.
+     */
+    protected static final int BITMAP_DENSITY = 16;
+
+    /**
+     * The discount applied to the estimated size of a field restriction when
+     * ordering the operands of an <code>And</code>.  Field restrictions are
+     * cheaper to evaluate than text terms, since there are no weights to
+     * compute, so they go first unless they're quite a bit bigger.
+     */
+    protected static final float FIELD_DISCOUNT = 0.5f;
+
+    public QueryPlanner() {
+    }
+
+    /**
+     * Rewrites a query into a simpler form that will give the same results.
+     *
+     * @param qe the query element to optimize
+     * @return the optimized query
+     */
+    public QueryElement optimize(QueryElement qe) {
+        if(qe instanceof Operator) {
+            ListIterator<QueryElement> it =
+                    ((Operator) qe).getOperands().listIterator();
+            while(it.hasNext()) {
+                QueryElement curr = it.next();
+                QueryElement opt = optimize(curr);
+                if(opt != curr) {
+                    it.set(opt);
+                }
+            }
+        }
+
+        if(qe instanceof And || qe instanceof Or) {
+            flatten((Operator) qe);
+        }
+
+        if(qe instanceof And) {
+            makeRanges((And) qe);
+        }
+        return qe;
+    }
+
+    /**
+     * Pulls the operands of any operands that are the same kind of operator
+     * as the given one up into the given operator.  An operand is only
+     * pulled up when evaluating it separately couldn't make a difference,
+     * that is, when it has the same fields and strictness as its parent.
+     *
+     * @param op the operator to flatten
+     */
+    protected void flatten(Operator op) {
+        List<QueryElement> flat = new ArrayList<QueryElement>();
+        boolean changed = false;
+        for(QueryElement curr : op.getOperands()) {
+            if(sameKind(curr, op) &&
+                    curr.strictEval == op.strictEval &&
+                    Arrays.equals(curr.getSearchFieldNames(),
+                    op.getSearchFieldNames())) {
+                flat.addAll(((Operator) curr).getOperands());
+                changed = true;
+            } else {
+                flat.add(curr);
+            }
+        }
+        if(changed) {
+            op.setOperands(flat);
+        }
+    }
+
+    /**
+     * Indicates whether an operand is the same kind of boolean operator as
+     * its parent, so that its operands can be pulled up into the parent.
+     *
+     * @param qe the operand
+     * @param op the parent
+     */
+    private static boolean sameKind(QueryElement qe, Operator op) {
+        return (qe instanceof And && op instanceof And) ||
+                (qe instanceof Or && op instanceof Or);
+    }
+
+    /**
+     * Combines pairs of relational operators on the same field in a
+     * conjunction into a single range operator.
+     *
+     * @param qand the conjunction
+     */
+    protected void makeRanges(And qand) {
+        List<QueryElement> operands = qand.getOperands();
+
+        //
+        // Group the field terms by the field that they apply to.
+        Map<String, List<FieldTerm>> fields =
+                new LinkedHashMap<String, List<FieldTerm>>();
+        for(QueryElement curr : operands) {
+            if(curr instanceof FieldTerm) {
+                FieldTerm ft = (FieldTerm) curr;
+                List<FieldTerm> terms = fields.get(ft.getName());
+                if(terms == null) {
+                    terms = new ArrayList<FieldTerm>();
+                    fields.put(ft.getName(), terms);
+                }
+                terms.add(ft);
+            }
+        }
+
+        //
+        // Now see if there are two of any field and if they're
+        // appropriate for being replaced with a range op.
+        for(List<FieldTerm> terms : fields.values()) {
+            if(terms.size() != 2) {
+                continue;
+            }
+            FieldTerm upper;
+            FieldTerm lower;
+            if(isUpper(terms.get(0)) && isLower(terms.get(1))) {
+                upper = terms.get(0);
+                lower = terms.get(1);
+            } else if(isLower(terms.get(0)) && isUpper(terms.get(1))) {
+                lower = terms.get(0);
+                upper = terms.get(1);
+            } else {
+                continue;
+            }
+
+            //
+            // Replace the individual field terms with the range.
+            FieldTerm result = new FieldTerm(upper.getName(),
+                    lower.getValue(),
+                    lower.getOp() == Relation.Operator.GEQ,
+                    upper.getValue(),
+                    upper.getOp() == Relation.Operator.LEQ);
+            operands.set(operands.indexOf(terms.get(0)), result);
+            operands.remove(terms.get(1));
+        }
+    }
+
+    private static boolean isUpper(FieldTerm ft) {
+        return ft.getOp() == Relation.Operator.LESS_THAN ||
+                ft.getOp() == Relation.Operator.LEQ;
+    }
+
+    private static boolean isLower(FieldTerm ft) {
+        return ft.getOp() == Relation.Operator.GREATER_THAN ||
+                ft.getOp() == Relation.Operator.GEQ;
+    }
+
+    /**
+     * Orders the operands of a conjunction so that the cheapest ones are
+     * evaluated first.  The operands must already have had their partition
+     * set.
+     *
+     * @param operands the operands of the conjunction
+     * @param part the partition that the conjunction will be evaluated in
+     */
+    public static void order(List<QueryElement> operands, DiskPartition part) {
+        final int n = part.getNDocs();
+        Collections.sort(operands, new Comparator<QueryElement>() {
+
+            public int compare(QueryElement o1, QueryElement o2) {
+                return Double.compare(orderKey(o1, n), orderKey(o2, n));
+            }
+        });
+    }
+
+    private static double orderKey(QueryElement qe, int n) {
+        double sz = estimateSize(qe, n);
+        if(qe instanceof Not) {
+            //
+            // Negations are only cheap when they're applied to a group
+            // that we already have.
+            return n + sz;
+        }
+        if(qe instanceof FieldTerm) {
+            return sz * FIELD_DISCOUNT;
+        }
+        return sz;
+    }
+
+    /**
+     * Picks the strategy to use to intersect a postings list with a group.
+     *
+     * @param n the number of documents in the postings list
+     * @param groupSize the number of documents in the group
+     * @return the strategy to use for the intersection
+     */
+    public static Strategy getStrategy(int n, int groupSize) {
+        return n < GALLOP_RATIO * groupSize ? Strategy.MERGE : Strategy.GALLOP;
+    }
+
+    /**
+     * Picks the strategy to use to combine two groups of documents.
+     *
+     * @param n1 the number of documents in one group
+     * @param n2 the number of documents in the other group
+     * @param range the number of document IDs covered by the groups
+     * @return the strategy to use to intersect or union the groups
+     */
+    public static Strategy getGroupStrategy(int n1, int n2, int range) {
+        int small = Math.min(n1, n2);
+        int large = Math.max(n1, n2);
+        if(large >= GALLOP_RATIO * small) {
+            return Strategy.GALLOP;
+        }
+        if(small >= range / BITMAP_DENSITY) {
+            return Strategy.BITMAP;
+        }
+        return Strategy.MERGE;
+    }
+
+    /**
+     * Estimates the number of documents that a query element will match in
+     * the partition that it has been set up for.
+     *
+     * @param qe the element
+     * @param n the number of documents in the partition
+     * @return the estimated number of matching documents
+     */
+    public static double estimateSize(QueryElement qe, int n) {
+        if(n <= 0) {
+            return 0;
+        }
+        if(qe instanceof FieldTerm) {
+            FieldTerm ft = (FieldTerm) qe;
+            if(ft.getNValues() == 0) {
+                return 0;
+            }
+            if(ft.getOp() == Relation.Operator.SIMILAR) {
+                //
+                // We can't tell how many values will be similar, so we
+                // assume that it will be about as many as for an equality.
+                return n / (double) ft.getNValues();
+            }
+            return Math.min(n, ft.estimateSize());
+        }
+        if(qe instanceof Not) {
+            return n - estimateSize(((Not) qe).operands.get(0), n);
+        }
+        if(qe instanceof Or) {
+            double miss = 1;
+            for(QueryElement op : ((Or) qe).operands) {
+                miss *= 1 - estimateSize(op, n) / n;
+            }
+            return n * (1 - miss);
+        }
+        if(qe instanceof UnaryOperator) {
+            return estimateSize(((UnaryOperator) qe).operands.get(0), n);
+        }
+        if(qe instanceof Operator) {
+            //
+            // Conjunctions and proximity operators match at most the
+            // documents that all of their operands match.
+            double hit = 1;
+            for(QueryElement op : ((Operator) qe).operands) {
+                hit *= estimateSize(op, n) / n;
+            }
+            return n * hit;
+        }
+        return Math.min(n, qe.estimateSize());
+    }
+
+    /**
+     * Estimates the work required to evaluate a query element in the
+     * partition that it has been set up for, as the number of postings that
+     * will be processed.
+     *
+     * @param qe the element
+     * @param n the number of documents in the partition
+     * @return the estimated cost of evaluating the element
+     */
+    public static double estimateCost(QueryElement qe, int n) {
+        if(qe instanceof FieldTerm) {
+            FieldTerm ft = (FieldTerm) qe;
+            if(ft.getOp() == Relation.Operator.SIMILAR) {
+                //
+                // Similarity is computed against every value in the field.
+                return ft.getNValues();
+            }
+            return ft.estimateSize() + ft.getNEntries();
+        }
+        if(qe instanceof And) {
+            double cost = 0;
+            double sz = -1;
+            for(QueryElement op : ((And) qe).operands) {
+                if(sz < 0) {
+                    cost += estimateCost(op, n);
+                } else {
+                    cost += intersectCost(op, sz, n);
+                }
+                sz = sz < 0 ? estimateSize(op, n) : sz * estimateSize(op, n) / n;
+            }
+            return cost;
+        }
+        if(qe instanceof Operator) {
+            double cost = 0;
+            for(QueryElement op : ((Operator) qe).operands) {
+                cost += estimateCost(op, n);
+            }
+            return cost;
+        }
+        return qe.estimateSize();
+    }
+
+    /**
+     * Estimates the cost of intersecting a query element with a group of
+     * documents.
+     */
+    private static double intersectCost(QueryElement qe, double groupSize,
+            int n) {
+        if(qe instanceof DictTerm) {
+            int df = qe.estimateSize();
+            if(getStrategy(df, (int) Math.ceil(groupSize)) == Strategy.MERGE) {
+                return df;
+            }
+            return groupSize * Math.max(1, Math.log(df) / Math.log(2));
+        }
+        return estimateCost(qe, n);
+    }
+
+    /**
+     * Describes the plans for evaluating a query in a number of partitions.
+     *
+     * @param qe the query
+     * @param qc the configuration to use for the query
+     * @param parts the partitions that the query would be evaluated against
+     * @return a description of the plan for each of the partitions
+     */
+    public String explain(QueryElement qe, QueryConfig qc,
+            Collection<DiskPartition> parts) {
+        qe.setQueryConfig(qc);
+        qe.setQueryStats(new QueryStats());
+        qe.setWeightingFunction(qc.getWeightingFunction());
+        qe.setWeightingComponents(qc.getWeightingComponents());
+        StringBuilder sb = new StringBuilder();
+        for(DiskPartition p : parts) {
+            if(p.isClosed()) {
+                continue;
+            }
+            qe.setPartition(p);
+            sb.append(String.format("Partition %d (%d documents)\n",
+                    p.getPartitionNumber(), p.getNDocs()));
+            sb.append(explain(qe));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Describes the plan for evaluating a query in the partition that it
+     * has been set up for.
+     *
+     * @param qe the query
+     * @return a description of the plan, with one line per query element
+     */
+    public String explain(QueryElement qe) {
+        StringBuilder sb = new StringBuilder();
+        explain(qe, qe.part == null ? 0 : qe.part.getNDocs(), -1, "", sb);
+        return sb.toString();
+    }
+
+    private void explain(QueryElement qe, int n, double groupSize,
+            String prefix, StringBuilder sb) {
+        sb.append(String.format("%s%s size: %.0f cost: %.0f", prefix,
+                describe(qe), estimateSize(qe, n), estimateCost(qe, n)));
+        if(groupSize >= 0 && qe instanceof DictTerm) {
+            sb.append(" intersect: ").append(getStrategy(qe.estimateSize(),
+                    (int) Math.ceil(groupSize)));
+        }
+        sb.append('\n');
+        if(qe instanceof Operator) {
+            double sz = -1;
+            for(QueryElement op : ((Operator) qe).operands) {
+                explain(op, n, qe instanceof And ? sz : -1, prefix + "  ", sb);
+                sz = sz < 0 ? estimateSize(op, n) : sz * estimateSize(op, n) / n;
+            }
+        }
+    }
+
+    private static String describe(QueryElement qe) {
+        String name = qe.getClass().getName();
+        name = name.substring(name.lastIndexOf('.') + 1);
+        if(qe instanceof FieldTerm) {
+            FieldTerm ft = (FieldTerm) qe;
+            if(ft.getOp() == Relation.Operator.RANGE) {
+                return name + " " + ft.getName() + " " + ft.getOp();
+            }
+            return name + " " + ft.getName() + " " + ft.getOp() + " " +
+                    ft.getValue();
+        }
+        if(qe instanceof DictTerm) {
+            return name + " " + ((DictTerm) qe).getName();
+        }
+        return name;
+    }
+}
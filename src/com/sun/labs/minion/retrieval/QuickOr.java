@@ -150,6 +150,7 @@ public class QuickOr {
                 docs = Util.expandInt(docs, s * 2);
             }
             System.arraycopy(d, 0, docs, p, d.length);
+            p = s;
         }
     }
 
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.LRACache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A cache of the results of evaluating queries, so that popular queries
+ * don't need to be evaluated against the index every time they are run.
+ *
+ * <p>
+ *
+ * The cache holds the documents and scores for each partition, rather than
+ * any results.  Since the scores depend on collection-wide statistics,
+ * including the number of documents that haven't been deleted, an entry
+ * with scores is only used if the partitions that were searched to make it
+ * are exactly the active partitions of the index and none of them has had
+ * any documents deleted since.  An entry for a strict query, which has no
+ * scores, survives deletions:  the newly deleted documents are simply
+ * removed from it.  Otherwise, the entry is thrown away when it is next
+ * looked up.
+ *
+ * <p>
+ *
+ * An entry may hold either all of the documents that matched a query, or
+ * just enough of them to contain the top documents, as computed by
+ * {@link QueryEvaluator#evalTopK}.
+ */
+public class ResultCache {
+
+    /**
+     * The cached results.
+     */
+    protected LRACache<QueryKey, Entry> cache;
+
+    /**
+     * The largest number of documents that we'll hold for a query.
+     */
+    protected int maxDocs;
+
+    /**
+     * The number of lookups that found usable results.
+     */
+    protected long hits;
+
+    /**
+     * The number of lookups that didn't.
+     */
+    protected long misses;
+
+    /**
+     * Creates a result cache.
+     *
+     * @param size the number of queries whose results will be held
+     * @param maxDocs the largest number of documents that will be held for
+     * a single query.  The results of queries matching more documents than
+     * this won't be cached.
+     */
+    public ResultCache(int size, int maxDocs) {
+        cache = new LRACache<QueryKey, Entry>(size);
+        this.maxDocs = maxDocs;
+    }
+
+    /**
+     * Gets cached results for a query.
+     *
+     * @param key the key for the query
+     * @param parts the partitions that the query would be evaluated against
+     * @param k the number of top documents wanted, or 0 if all of the
+     * documents are wanted
+     * @return new groups containing the cached results, or <code>null</code>
+     * if there are no usable results for the query.
+     */
+    public List<ArrayGroup> get(QueryKey key, Collection<DiskPartition> parts,
+            int k) {
+        CachedGroup[] cgs;
+        synchronized(this) {
+            Entry e = cache.get(key);
+            if(e != null && !e.state.isCurrent(parts)) {
+                if(e.isStrict() && e.state.sameParts(parts)) {
+                    e.removeDeleted();
+                } else {
+                    cache.remove(key);
+                    e = null;
+                }
+            }
+            if(e == null || (e.all == null &&
+                    (k == 0 || e.top == null || e.topK < k))) {
+                misses++;
+                return null;
+            }
+            hits++;
+            cgs = e.all != null ? e.all : e.top;
+        }
+        return makeGroups(cgs);
+    }
+
+    /**
+     * Notes the state of a set of partitions before a query is evaluated
+     * against them, so that we can tell whether the results of the
+     * evaluation can be cached.
+     *
+     * @param parts the partitions that the query will be evaluated against
+     * @return the state of the partitions
+     */
+    public PartitionState getState(Collection<DiskPartition> parts) {
+        return new PartitionState(parts);
+    }
+
+    /**
+     * Puts the results of evaluating a query into the cache.  Results that
+     * might not be complete, or that can't be held compactly, are not
+     * cached.
+     *
+     * Results are also not cached if documents were
+     * deleted from the partitions while the query was being evaluated, since
+     * then we can't tell which state of the partitions they reflect.
+     *
+     * @param key the key for the query
+     * @param state the state of the partitions that the query was evaluated
+     * against, taken before the query was evaluated
+     * @param groups the results of the evaluation, with the deleted
+     * documents removed
+     * @param k the number of top documents that the groups contain, or 0
+     * if they contain all of the documents matching the query
+     * @see #getState
+     */
+    public void put(QueryKey key, PartitionState state,
+            List<ArrayGroup> groups, int k) {
+        CachedGroup[] cgs = makeCached(groups);
+        if(cgs == null) {
+            return;
+        }
+        synchronized(this) {
+            if(!state.isUnchanged()) {
+                return;
+            }
+            Entry e = cache.get(key);
+            if(e == null || !e.state.equals(state)) {
+                e = new Entry(state);
+                cache.put(key, e);
+            }
+            if(k == 0) {
+                e.all = cgs;
+                e.top = null;
+            } else if(e.all == null && k > e.topK) {
+                e.top = cgs;
+                e.topK = k;
+            }
+        }
+    }
+
+    /**
+     * Removes all of the entries from the cache.  This should be done when
+     * anything that affects the results of queries is changed.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Makes compact copies of a set of groups.
+     *
+     * @return the copies, or <code>null</code> if the groups can't be
+     * cached.
+     */
+    private CachedGroup[] makeCached(List<ArrayGroup> groups) {
+        CachedGroup[] ret = new CachedGroup[groups.size()];
+        int total = 0;
+        for(int i = 0; i < ret.length; i++) {
+            ArrayGroup ag = groups.get(i);
+
+            //
+            // Negative groups and groups with passages aren't just
+            // documents and scores.
+            if((ag.getClass() != ArrayGroup.class &&
+                    ag.getClass() != ScoredGroup.class) || ag.pass != null) {
+                return null;
+            }
+            total += ag.size;
+            if(total > maxDocs || ag.part == null) {
+                return null;
+            }
+            CachedGroup cg = new CachedGroup();
+            cg.part = ag.part;
+            cg.docs = Arrays.copyOf(ag.docs, ag.size);
+            if(ag instanceof ScoredGroup) {
+                ScoredGroup sg = (ScoredGroup) ag;
+                if(!sg.normalized || sg.weights != null) {
+                    return null;
+                }
+                cg.scores = Arrays.copyOf(sg.scores, ag.size);
+                cg.sqw = sg.sqw;
+            }
+            ret[i] = cg;
+        }
+        return ret;
+    }
+
+    /**
+     * Makes groups from cached results.  The groups get their own copies
+     * of the documents and scores, since groups can be modified.
+     */
+    private List<ArrayGroup> makeGroups(CachedGroup[] cgs) {
+        List<ArrayGroup> ret = new ArrayList<ArrayGroup>(cgs.length);
+        for(CachedGroup cg : cgs) {
+            int[] docs = cg.docs.clone();
+            if(cg.scores == null) {
+                ret.add(new ArrayGroup(cg.part, docs, docs.length));
+            } else {
+                ScoredGroup sg = new ScoredGroup(cg.part, docs,
+                        cg.scores.clone(), docs.length, cg.sqw);
+                sg.normalized = true;
+                ret.add(sg);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The documents and scores for one partition.
+     */
+    private static class CachedGroup {
+
+        DiskPartition part;
+
+        int[] docs;
+
+        /**
+         * The normalized scores, or <code>null</code> for a strict group.
+         */
+        float[] scores;
+
+        float sqw;
+    }
+
+    /**
+     * The state of a set of partitions that a query is evaluated against:
+     * which of them are open, and how many documents had been deleted from
+     * each.
+     */
+    public static class PartitionState {
+
+        /**
+         * The open partitions.
+         */
+        private DiskPartition[] parts;
+
+        /**
+         * The number of deleted documents in each of the partitions.
+         */
+        private int[] nDeleted;
+
+        PartitionState(Collection<DiskPartition> ps) {
+            List<DiskPartition> l = open(ps);
+            parts = l.toArray(new DiskPartition[l.size()]);
+            nDeleted = new int[parts.length];
+            for(int i = 0; i < parts.length; i++) {
+                nDeleted[i] = parts[i].getDelMap().getNDeleted();
+            }
+        }
+
+        /**
+         * Determines whether the given partitions are the ones that this
+         * state is for.
+         */
+        boolean sameParts(Collection<DiskPartition> ps) {
+            List<DiskPartition> l = open(ps);
+            if(l.size() != parts.length) {
+                return false;
+            }
+            for(int i = 0; i < parts.length; i++) {
+                if(l.get(i) != parts[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Determines whether this is the state of the given partitions as
+         * they are now.
+         */
+        boolean isCurrent(Collection<DiskPartition> ps) {
+            return sameParts(ps) && isUnchanged();
+        }
+
+        /**
+         * Determines whether our partitions are still open and have had no
+         * documents deleted since this state was taken.
+         */
+        boolean isUnchanged() {
+            for(int i = 0; i < parts.length; i++) {
+                if(parts[i].isClosed() ||
+                        parts[i].getDelMap().getNDeleted() != nDeleted[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Brings the deletion counts up to date.
+         */
+        void update() {
+            for(int i = 0; i < parts.length; i++) {
+                nDeleted[i] = parts[i].getDelMap().getNDeleted();
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof PartitionState)) {
+                return false;
+            }
+            PartitionState other = (PartitionState) o;
+            return Arrays.equals(parts, other.parts) &&
+                    Arrays.equals(nDeleted, other.nDeleted);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(nDeleted);
+        }
+
+        private static List<DiskPartition> open(Collection<DiskPartition> ps) {
+            List<DiskPartition> ret = new ArrayList<DiskPartition>(ps.size());
+            for(DiskPartition p : ps) {
+                if(!p.isClosed()) {
+                    ret.add(p);
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * The cached results for a query.
+     */
+    private static class Entry {
+
+        /**
+         * The state of the partitions that were searched.
+         */
+        PartitionState state;
+
+        /**
+         * All of the results, if we have them.
+         */
+        CachedGroup[] all;
+
+        /**
+         * Results containing the top documents, if we have them.
+         */
+        CachedGroup[] top;
+
+        /**
+         * The number of top documents in the top results.
+         */
+        int topK;
+
+        Entry(PartitionState state) {
+            this.state = state;
+        }
+
+        /**
+         * Determines whether this entry holds only all of the documents for
+         * a strict query, so that it doesn't depend on any collection
+         * statistics.
+         */
+        boolean isStrict() {
+            if(all == null || top != null) {
+                return false;
+            }
+            for(CachedGroup cg : all) {
+                if(cg.scores != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Removes the documents that have been deleted since the entry was
+         * made from a strict entry.  The groups are replaced rather than
+         * modified, since they may be being copied outside of the cache's
+         * lock.
+         */
+        void removeDeleted() {
+            state.update();
+            CachedGroup[] na = new CachedGroup[all.length];
+            for(int i = 0; i < all.length; i++) {
+                CachedGroup cg = all[i];
+                ReadableBuffer del = cg.part.getDeletedDocumentsMap();
+                int[] docs = new int[cg.docs.length];
+                int n = 0;
+                for(int doc : cg.docs) {
+                    if(del == null || !del.test(doc)) {
+                        docs[n++] = doc;
+                    }
+                }
+                na[i] = new CachedGroup();
+                na[i].part = cg.part;
+                na[i].docs = Arrays.copyOf(docs, n);
+            }
+            all = na;
+        }
+    }
+} // ResultCache
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.indexer.dictionary.DocValues;
 import com.sun.labs.minion.indexer.dictionary.FeatureVector;
 
 import com.sun.labs.minion.indexer.entry.DocKeyEntry;
@@ -424,9 +425,26 @@ public class ResultImpl implements Result, Comparable<Result>, Cloneable,
         }
     }
 
+    /**
+     * Gets the column of sort values for a field in our sort specification.
+     *
+     * @param i the index of the field in our sort specification
+     * @return the column, or <code>null</code> if there is no column for the
+     * field in our partition
+     */
+    protected DocValues getColumn(int i) {
+        return sortSpec.columns == null ? null : sortSpec.columns[i];
+    }
+
+    /**
+     * Gets the values of the fields that we're sorting on that can't be
+     * read from a column of sort values when we're compared.
+     */
     protected void setFields() {
         for(int i = 0; i < fields.length; i++) {
-            getFieldValue(i);
+            if(getColumn(i) == null) {
+                getFieldValue(i);
+            }
         }
     }
 
@@ -449,18 +467,31 @@ public class ResultImpl implements Result, Comparable<Result>, Cloneable,
         for(int i = 0; i < fields.length; i++) {
 
             //
-            // Make sure we have this field value in both results.
-            if(fields[i] == null) {
-                getFieldValue(i);
-            }
+            // If both results have columns for this field, we can compare
+            // the values in the columns.  String values can only be
+            // compared this way for results from the same partition.
+            int cmp;
+            DocValues c = getColumn(i);
+            DocValues rc = r.getColumn(i);
+            if(c != null && rc != null &&
+                    (c == rc || c.getType() != FieldInfo.Type.STRING)) {
+                cmp = c.compare(doc, rc, r.doc);
+            } else {
 
-            if(r.fields[i] == null) {
-                r.getFieldValue(i);
-            }
+                //
+                // Make sure we have this field value in both results.
+                if(fields[i] == null) {
+                    getFieldValue(i);
+                }
 
-            //
-            // Compare the field values.
-            int cmp = ((Comparable) fields[i]).compareTo(r.fields[i]);
+                if(r.fields[i] == null) {
+                    r.getFieldValue(i);
+                }
+
+                //
+                // Compare the field values.
+                cmp = ((Comparable) fields[i]).compareTo(r.fields[i]);
+            }
 
             //
             // No decision...
@@ -497,11 +528,18 @@ public class ResultImpl implements Result, Comparable<Result>, Cloneable,
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("(").append(ag.part).append(", ").append(doc).append(", ").append(score).append(", [");
-        for(int i = 0; i < fields.length; i++) {
-            if(i > 0) {
-                sb.append(", ");
+
+        //
+        // Only show the values that we already have, since fetching them
+        // here would change what the result holds.  Values that are read
+        // from a column when sorting show up as null.
+        if(fields != null) {
+            for(int i = 0; i < fields.length; i++) {
+                if(i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(fields[i]);
             }
-            sb.append(fields[i].toString());
         }
         sb.append("]");
         return sb.toString();
@@ -520,6 +558,13 @@ public class ResultImpl implements Result, Comparable<Result>, Cloneable,
     }
 
     public Object[] getSortVals() {
+        if(fields != null) {
+            for(int i = 0; i < fields.length; i++) {
+                if(fields[i] == null) {
+                    getFieldValue(i);
+                }
+            }
+        }
         return fields;
     }
 
@@ -23,6 +23,7 @@
  */
 package com.sun.labs.minion.retrieval;
 
+import com.sun.labs.minion.FieldFrequency;
 import com.sun.labs.minion.FieldInfo;
 import com.sun.labs.minion.HLPipeline;
 import com.sun.labs.minion.ResultsCluster;
@@ -33,6 +34,7 @@ import java.util.List;
 import com.sun.labs.minion.QueryConfig;
 import com.sun.labs.minion.QueryStats;
 import com.sun.labs.minion.Result;
+import com.sun.labs.minion.ResultCursor;
 import com.sun.labs.minion.ResultSet;
 import com.sun.labs.minion.ResultsFilter;
 import com.sun.labs.minion.ScoreModifier;
@@ -45,12 +47,22 @@ import com.sun.labs.minion.engine.SearchEngineImpl;
 import com.sun.labs.minion.SearchEngineException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
 import com.sun.labs.minion.clustering.AbstractClusterer;
 
 import com.sun.labs.minion.indexer.dictionary.BasicField;
+import com.sun.labs.minion.indexer.dictionary.SavedField;
 import com.sun.labs.minion.indexer.partition.DiskPartition;
 import com.sun.labs.minion.indexer.partition.InvFileDiskPartition;
+import com.sun.labs.minion.util.CharUtils;
+import com.sun.labs.minion.util.Util;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -106,6 +118,24 @@ public class ResultSetImpl implements ResultSet {
      */
     protected List<ArrayGroup> results;
 
+    /**
+     * An evaluation of the query that has been put off until results are
+     * requested, or <code>null</code> if the results are already available.
+     */
+    protected DeferredEvaluation deferred;
+
+    /**
+     * Groups containing the top documents for the query, when the query has
+     * been evaluated for only the top documents.
+     */
+    protected List<ArrayGroup> topResults;
+
+    /**
+     * The number of documents that were requested when evaluating for the
+     * top documents.
+     */
+    protected int topK;
+
     /**
      * A pipeline that can be used for highlighting documents from this
      * set.
@@ -117,6 +147,34 @@ public class ResultSetImpl implements ResultSet {
      */
     protected long queryTime;
 
+    /**
+     * Whether the query ran out of time while it was being evaluated or its
+     * results were being sorted.
+     */
+    protected volatile boolean timedOut;
+
+    /**
+     * A cache for the results of evaluating the query, or <code>null</code>
+     * if the results shouldn't be cached.
+     */
+    protected ResultCache cache;
+
+    /**
+     * The key for the query in the cache.
+     */
+    protected QueryKey cacheKey;
+
+    /**
+     * The partitions that the query is evaluated against.
+     */
+    protected Collection<DiskPartition> partitions;
+
+    /**
+     * The partitions that we are keeping open until a deferred evaluation
+     * is done with them, or <code>null</code> if we haven't pinned any.
+     */
+    private List<DiskPartition> pinned;
+
     protected static Logger logger = Logger.getLogger(ResultSetImpl.class.getName());
 
     protected static String logTag = "RSI";
@@ -129,7 +187,11 @@ public class ResultSetImpl implements ResultSet {
     }
 
     /**
-     * Creates a result set for the given query by evaluating the query.
+     * Creates a result set for the given query by evaluating the query.  If
+     * the query is a ranked disjunction of terms, the evaluation is put off
+     * until results are requested so that a request for the top of the
+     * ranked list can be answered without scoring every document that
+     * matches.
      *
      * @param query The query typed by the user.
      * query.
@@ -139,17 +201,44 @@ public class ResultSetImpl implements ResultSet {
      * @param partitions The partitions against which we will run the
      * query.
      */
-    public ResultSetImpl(QueryElement query,
+    public ResultSetImpl(final QueryElement query,
             QueryConfig qc,
             QueryStats qs,
-            Collection<DiskPartition> partitions,
+            final Collection<DiskPartition> partitions,
             SearchEngine e) {
+        this(query, qc, qs, partitions, e, null, null);
+    }
+
+    /**
+     * Creates a result set for the given query, using results from a cache
+     * if it has results for the query, and putting the results into the
+     * cache if it doesn't.
+     *
+     * @param query The query typed by the user.
+     * @param qc The query configuration for this query.
+     * @param qs The statistics to accumulate for this query.
+     * @param partitions The partitions against which we will run the
+     * query.
+     * @param e The engine against which we will run the query.
+     * @param cache the cache of results.  If this is <code>null</code>, the
+     * query will always be evaluated.
+     * @param cacheKey the key for the query in the cache
+     */
+    public ResultSetImpl(final QueryElement query,
+            QueryConfig qc,
+            QueryStats qs,
+            final Collection<DiskPartition> partitions,
+            SearchEngine e,
+            ResultCache cache,
+            QueryKey cacheKey) {
         this.query = query;
         this.e = e;
         this.qc = qc;
         this.qs = qs;
+        this.partitions = partitions;
+        this.cache = cache;
+        this.cacheKey = cacheKey;
         this.sortSpec = new SortSpec(e.getManager(), qc.getSortSpec());
-        this.qs.queryW.start();
 
         //
         // Set up the collection-level statistics for the weighting
@@ -158,23 +247,254 @@ public class ResultSetImpl implements ResultSet {
         query.setWeightingFunction(qc.getWeightingFunction());
         query.setWeightingComponents(qc.getWeightingComponents());
 
+        deferred = new DeferredEvaluation() {
+
+            public List<ArrayGroup> eval() {
+                boolean timing = startTimer();
+                ResultSetImpl.this.qs.queryW.start();
+                QueryEvaluator qev = new QueryEvaluator(getQueryExecutor());
+                try {
+                    return qev.eval(ResultSetImpl.this.partitions, query);
+                } finally {
+                    timedOut |= qev.timedOut();
+                    ResultSetImpl.this.qs.queryW.stop();
+                    stopTimer(timing);
+                }
+            }
+
+            public List<ArrayGroup> evalTopK(int k) {
+                boolean timing = startTimer();
+                ResultSetImpl.this.qs.queryW.start();
+                QueryEvaluator qev = new QueryEvaluator(getQueryExecutor());
+                try {
+                    return qev.evalTopK(ResultSetImpl.this.partitions,
+                            query, k);
+                } finally {
+                    timedOut |= qev.timedOut();
+                    ResultSetImpl.this.qs.queryW.stop();
+                    stopTimer(timing);
+                }
+            }
+        };
+
         //
-        // Go ahead and evaluate.
+        // Go ahead and evaluate, unless we might be able to do less work
+        // later.  In that case, the partitions have to stay open until
+        // we first evaluate, even if they are merged away before then.
+        if(QueryEvaluator.canEvalTopK(query)) {
+            pin();
+        } else {
+            getGroups();
+        }
+    } // ResultSetImpl constructor
+
+    /**
+     * Creates a result set whose evaluation is put off until results are
+     * requested.
+     *
+     * @param e the engine that the results are from
+     * @param spec the sorting specification for the results
+     * @param qs the statistics for the evaluation
+     * @param deferred the evaluation that will generate the results
+     */
+    ResultSetImpl(SearchEngine e, String spec, QueryStats qs,
+            DeferredEvaluation deferred) {
+        this.e = e;
+        qc = e.getQueryConfig();
+        qc.setSortSpec(spec);
+        this.sortSpec = new SortSpec(e.getManager(), spec);
+        this.qs = qs;
+        this.deferred = deferred;
+    }
+
+    /**
+     * Keeps the partitions that we will evaluate against from being closed
+     * until {@link #unpin} is called.
+     *
+     * @return <code>true</code> if all of the partitions were pinned,
+     * <code>false</code> if one of them has already been closed, in which
+     * case none of them are pinned.
+     */
+    private synchronized boolean pin() {
+        pinned = new ArrayList<DiskPartition>();
+        for(DiskPartition p : partitions) {
+            if(!p.pin()) {
+                unpin();
+                return false;
+            }
+            pinned.add(p);
+        }
+        return true;
+    }
+
+    /**
+     * Lets the partitions that we pinned be closed.
+     */
+    private synchronized void unpin() {
+        if(pinned != null) {
+            for(DiskPartition p : pinned) {
+                p.unpin();
+            }
+            pinned = null;
+        }
+    }
+
+    /**
+     * Makes sure that the partitions that we're about to evaluate against
+     * are pinned.  The pins from the constructor are released after the
+     * first evaluation, so a later one (for more of the top documents, or
+     * for all of them) may find that some of our partitions have been
+     * merged away.  In that case, we move to the partitions that are active
+     * now, which hold the merged documents.
+     */
+    private void pinForEval() {
+        if(partitions == null || pinned != null) {
+            return;
+        }
+        while(!pin()) {
+            partitions = e.getManager().getActivePartitions();
+        }
+    }
+
+    /**
+     * Starts the timer for the query, if there is a maximum query time and
+     * the timer isn't already running.  The time allowed for a query covers
+     * evaluating it and sorting the results requested at the same time, so
+     * it starts when that work does, rather than when the result set is
+     * made.
+     *
+     * @return <code>true</code> if we started the timer, in which case
+     * {@link #stopTimer} must be called when the work is done.
+     */
+    private boolean startTimer() {
+        return qc != null && e != null && e.getManager() != null
+                && qc.startQueryTimer(e.getManager().getQueryTimer());
+    }
+
+    /**
+     * Stops the timer for the query, if we started it.
+     *
+     * @param started whether the matching call to {@link #startTimer}
+     * started the timer
+     */
+    private void stopTimer(boolean started) {
+        if(started) {
+            qc.stopQueryTimer();
+        }
+    }
+
+    /**
+     * Gets the pool of threads that the engine uses to evaluate queries
+     * against several partitions at once.
+     *
+     * @return the pool, or <code>null</code> if partitions should be
+     * evaluated one at a time.
+     */
+    private ExecutorService getQueryExecutor() {
+        if(e instanceof SearchEngineImpl) {
+            return ((SearchEngineImpl) e).getQueryExecutor();
+        }
+        return null;
+    }
+
+    /**
+     * Evaluates the deferred query.
+     *
+     * @param k the number of top documents that we want, or 0 if we want all
+     * of the documents
+     * @return the groups resulting from the evaluation, with deleted
+     * documents removed, or <code>null</code> if the query couldn't be
+     * evaluated for the top documents.
+     */
+    private List<ArrayGroup> evaluate(int k) {
+        pinForEval();
+        try {
+            return evaluateCached(k);
+        } finally {
+            unpin();
+        }
+    }
+
+    /**
+     * Evaluates the deferred query against the pinned partitions, using
+     * the cache if we can.
+     *
+     * @param k the number of top documents that we want, or 0 if we want all
+     * of the documents
+     * @return the groups resulting from the evaluation
+     * @see #evaluate
+     */
+    private List<ArrayGroup> evaluateCached(int k) {
+        List<ArrayGroup> ret;
+        ResultCache.PartitionState state = null;
+        if(cache != null) {
+            ret = cache.get(cacheKey, partitions, k);
+            if(ret != null) {
+                List terms = query.getQueryTerms();
+                for(ArrayGroup ag : ret) {
+                    ag.queryTerms = terms;
+                }
+                return ret;
+            }
+
+            //
+            // Note the deletions before we evaluate, so that we don't
+            // cache results that missed some of them.
+            state = cache.getState(partitions);
+        }
         try {
-            results = (new QueryEvaluator()).eval(partitions, query);
+            ret = k > 0 ? deferred.evalTopK(k) : deferred.eval();
         } catch(Exception qe) {
             logger.log(Level.SEVERE, "Error evaluating query: " + query, qe);
-            results = new ArrayList();
+            ret = new ArrayList<ArrayGroup>();
         }
 
         //
         // In order that the document counts are accurate, we need to
         // remove deleted documents at this point.
-        for(int i = 0; i < results.size(); i++) {
-            results.get(i).removeDeleted();
+        if(ret != null) {
+            for(int i = 0; i < ret.size(); i++) {
+                ret.get(i).removeDeleted();
+            }
+            if(cache != null && !timedOut) {
+                cache.put(cacheKey, state, ret, k);
+            }
         }
-        this.qs.queryW.stop();
-    } // ResultSetImpl constructor
+        return ret;
+    }
+
+    /**
+     * Gets the per-partition groups of results, evaluating the query if
+     * that has been put off.
+     */
+    protected synchronized List<ArrayGroup> getGroups() {
+        if(deferred != null) {
+            results = evaluate(0);
+            deferred = null;
+            topResults = null;
+        }
+        return results;
+    }
+
+    /**
+     * Gets groups containing at least the top documents for the query, if
+     * the query has not been fully evaluated yet and can be evaluated for
+     * only the top documents.
+     *
+     * @param k the number of top documents that we want
+     * @return the groups, or <code>null</code> if the full results should be
+     * used instead.
+     */
+    private synchronized List<ArrayGroup> getTopGroups(int k) {
+        if(deferred == null) {
+            return null;
+        }
+        if(topResults == null || topK < k) {
+            topResults = evaluate(k);
+            topK = k;
+        }
+        return topResults;
+    }
 
     /**
      * Constructs a partial result set from the docs passed
@@ -192,6 +512,7 @@ public class ResultSetImpl implements ResultSet {
         rf = parent.rf;
         hlp = parent.hlp;
         queryTime = parent.queryTime;
+        timedOut = parent.timedOut;
 
         results = new ArrayList();
         for(int i = 0; (i < docs.length) && (docs[i] != null); i++) {
@@ -290,7 +611,7 @@ public class ResultSetImpl implements ResultSet {
             List<Object> values = new ArrayList<Object>();
             List<Object> scores = new ArrayList<Object>();
 
-            for(Iterator i = results.iterator(); i.hasNext();) {
+            for(Iterator i = getGroups().iterator(); i.hasNext();) {
                 ArrayGroup ag = (ArrayGroup) i.next();
                 //
                 // Fetchers for our two fields. Huzzah!      
@@ -428,15 +749,248 @@ public class ResultSetImpl implements ResultSet {
         }
 
         //
-        // Quick check for someone asking for everything.
-        if(start + n >= size()) {
-            List<Result> l = getAllResults(true, rf);
-            if(start > l.size()) {
-                return new ArrayList<Result>();
+        // Time the evaluation, if it hasn't happened yet, and the sort
+        // together.
+        boolean timing = startTimer();
+        try {
+
+            //
+            // If we want the top of the list ranked by score, we can select
+            // the results without building them all.  If the query hasn't
+            // been evaluated yet, then we only need the top documents.
+            if(rf == null && sm == null && sortSpec.isScoreDescending()) {
+                List<ArrayGroup> top = getTopGroups(start + n);
+                return getResultsByScore(top != null ? top : getGroups(),
+                        start, n);
+            }
+
+            //
+            // Quick check for someone asking for everything.
+            if(start + n >= size()) {
+                List<Result> l = getAllResults(true, rf);
+                if(start > l.size()) {
+                    return new ArrayList<Result>();
+                }
+                return l.subList(start, l.size());
+            }
+
+            return getResults(getGroups(), start, n, rf);
+        } finally {
+            stopTimer(timing);
+        }
+    }
+
+    /**
+     * Gets a subset of the results in a list of groups when the results are
+     * sorted by decreasing score.  The best documents in each group are
+     * selected using a heap built from arrays of documents and scores, and
+     * then the lists for the groups are merged, so that we only make results
+     * for the documents that are returned.  Documents with the same score
+     * are ordered by group and then by document ID.
+     */
+    private List<Result> getResultsByScore(List<ArrayGroup> groups, int start,
+            int n) throws SearchEngineException {
+        try {
+            int k = start + n;
+            if(k < 0) {
+                k = Integer.MAX_VALUE;
+            }
+            int ng = groups.size();
+            int[][] gdocs = new int[ng][];
+            float[][] gscores = new float[ng][];
+            int[] gsize = new int[ng];
+            int nd = 0;
+            boolean stop = false;
+            for(int g = 0; g < ng && !stop; g++) {
+                ArrayGroup ag = groups.get(g);
+                int cap = Math.max(1, Math.min(k, ag.getSize()));
+                int[] docs = new int[cap];
+                float[] scores = new float[cap];
+                int m = 0;
+                ArrayGroup.DocIterator iter = ag.iterator();
+                while(iter.next()) {
+                    if(checkTime(++nd)) {
+                        stop = true;
+                        break;
+                    }
+                    float score = iter.getScore();
+                    if(m < k) {
+                        if(m == docs.length) {
+                            cap = (int) Math.min(k, 2L * cap);
+                            docs = Util.expandInt(docs, cap);
+                            scores = Util.expandFloat(scores, cap);
+                        }
+                        docs[m] = iter.getDoc();
+                        scores[m] = score;
+                        upHeap(docs, scores, m++);
+                    } else if(score > scores[0]) {
+
+                        //
+                        // Documents come in increasing order, so this one is
+                        // only better than the worst one we have if it has a
+                        // higher score.
+                        docs[0] = iter.getDoc();
+                        scores[0] = score;
+                        downHeap(docs, scores, 0, m);
+                    }
+                }
+
+                //
+                // Sort the heap so that the best document comes first.
+                for(int e = m - 1; e > 0; e--) {
+                    swap(docs, scores, 0, e);
+                    downHeap(docs, scores, 0, e);
+                }
+                gdocs[g] = docs;
+                gscores[g] = scores;
+                gsize[g] = m;
+            }
+
+            //
+            // Merge the lists for the groups, only making results for the
+            // page that we're returning.
+            List<Result> ret = new ArrayList<Result>(Math.min(n, 1024));
+            SortSpec[] pss = new SortSpec[ng];
+            int[] pos = new int[ng];
+            for(int r = 0; r < k; r++) {
+                int best = -1;
+                for(int g = 0; g < ng; g++) {
+                    if(pos[g] < gsize[g] && (best < 0 || gscores[g][pos[g]] >
+                            gscores[best][pos[best]])) {
+                        best = g;
+                    }
+                }
+                if(best < 0) {
+                    break;
+                }
+                if(r >= start) {
+                    ArrayGroup ag = groups.get(best);
+                    if(pss[best] == null) {
+                        pss[best] = new SortSpec(sortSpec,
+                                (InvFileDiskPartition) ag.part);
+                    }
+                    ResultImpl ri = new ResultImpl(this, ag, pss[best],
+                            gdocs[best][pos[best]], gscores[best][pos[best]]);
+                    ri.setQueryStats(qs);
+                    ri.setFields();
+                    ret.add(ri);
+                }
+                pos[best]++;
+            }
+            return ret;
+        } catch(Exception ex) {
+            throw new SearchEngineException("Error getting search results", ex);
+        }
+    }
+
+    /**
+     * Tests whether the document at one position in a heap should be ranked
+     * below the document at another position.
+     */
+    private static boolean worse(int[] docs, float[] scores, int i, int j) {
+        return scores[i] < scores[j] ||
+                (scores[i] == scores[j] && docs[i] > docs[j]);
+    }
+
+    private static void swap(int[] docs, float[] scores, int i, int j) {
+        int d = docs[i];
+        docs[i] = docs[j];
+        docs[j] = d;
+        float s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+
+    /**
+     * Moves the document at the given position up a heap that has the worst
+     * document at the top.
+     */
+    private static void upHeap(int[] docs, float[] scores, int i) {
+        while(i > 0) {
+            int p = (i - 1) >>> 1;
+            if(!worse(docs, scores, i, p)) {
+                break;
+            }
+            swap(docs, scores, i, p);
+            i = p;
+        }
+    }
+
+    /**
+     * Moves the document at the given position down a heap of the given
+     * size that has the worst document at the top.
+     */
+    private static void downHeap(int[] docs, float[] scores, int i, int n) {
+        while(true) {
+            int c = 2 * i + 1;
+            if(c >= n) {
+                break;
+            }
+            if(c + 1 < n && worse(docs, scores, c + 1, c)) {
+                c++;
+            }
+            if(!worse(docs, scores, c, i)) {
+                break;
+            }
+            swap(docs, scores, i, c);
+            i = c;
+        }
+    }
+
+    /**
+     * Tests whether the document at one position in a heap of partition and
+     * document keys should be ranked below the document at another position.
+     *
+     * @see Cursor#key
+     */
+    private static boolean worse(long[] keys, float[] scores, int i, int j) {
+        return scores[i] < scores[j] ||
+                (scores[i] == scores[j] && keys[i] > keys[j]);
+    }
+
+    private static void swap(long[] keys, float[] scores, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        float s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+
+    private static void upHeap(long[] keys, float[] scores, int i) {
+        while(i > 0) {
+            int p = (i - 1) >>> 1;
+            if(!worse(keys, scores, i, p)) {
+                break;
             }
-            return l.subList(start, l.size());
+            swap(keys, scores, i, p);
+            i = p;
         }
+    }
 
+    private static void downHeap(long[] keys, float[] scores, int i, int n) {
+        while(true) {
+            int c = 2 * i + 1;
+            if(c >= n) {
+                break;
+            }
+            if(c + 1 < n && worse(keys, scores, c + 1, c)) {
+                c++;
+            }
+            if(!worse(keys, scores, c, i)) {
+                break;
+            }
+            swap(keys, scores, i, c);
+            i = c;
+        }
+    }
+
+    /**
+     * Gets a subset of the results in a list of groups, using a heap to
+     * keep the best results.
+     */
+    private List<Result> getResults(List<ArrayGroup> groups, int start, int n,
+            ResultsFilter rf) throws SearchEngineException {
         try {
             //
             // A place to organize our hits and a place to store the
@@ -446,13 +1000,19 @@ public class ResultSetImpl implements ResultSet {
             ResultImpl curr = new ResultImpl();
             curr.setQueryStats(qs);
 
-            for(Iterator i = results.iterator(); i.hasNext();) {
+            int nd = 0;
+            boolean stop = false;
+            for(Iterator i = groups.iterator(); i.hasNext() && !stop;) {
                 ArrayGroup ag = (ArrayGroup) i.next();
                 ag.setScoreModifier(sm);
                 SortSpec pss = new SortSpec(sortSpec,
                         (InvFileDiskPartition) ag.part);
                 ArrayGroup.DocIterator iter = ag.iterator();
                 while(iter.next()) {
+                    if(checkTime(++nd)) {
+                        stop = true;
+                        break;
+                    }
 
                     //
                     // Fill in our result from the iterator.
@@ -559,7 +1119,7 @@ public class ResultSetImpl implements ResultSet {
         Collection<Result> ret =
                 sorted ? new PriorityQueue<Result>() : new ArrayList<Result>();
 
-        for(Iterator i = results.iterator(); i.hasNext();) {
+        for(Iterator i = getGroups().iterator(); i.hasNext();) {
             ArrayGroup ag = (ArrayGroup) i.next();
             if(sm != null) {
                 ag.setScoreModifier(sm);
@@ -596,6 +1156,10 @@ public class ResultSetImpl implements ResultSet {
         return fres;
     }
 
+    public ResultCursor cursor() throws SearchEngineException {
+        return new Cursor();
+    }
+
     public void setQueryStats(QueryStats qs) {
         this.qs = qs;
     }
@@ -614,6 +1178,32 @@ public class ResultSetImpl implements ResultSet {
         return false;
     }
 
+    /**
+     * Indicates whether the time allowed for the query ran out before the
+     * query was completely evaluated and the results sorted.
+     *
+     * @return <code>true</code> if the results are incomplete because the
+     * query ran out of time, <code>false</code> otherwise.
+     */
+    public boolean queryTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Checks every so often whether the query has run out of time while
+     * its results are being sorted, noting the fact if it has.
+     *
+     * @param n the number of documents that have been considered so far
+     * @return <code>true</code> if the sort should stop.
+     */
+    private boolean checkTime(int n) {
+        if((n & 4095) == 0 && qc != null && qc.timedOut()) {
+            timedOut = true;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * Gets the size of the results set, that is, the number of documents
      * that matched the query.  If this number is 0, it may be worthwhile
@@ -624,7 +1214,7 @@ public class ResultSetImpl implements ResultSet {
      */
     public int size() {
         int size = 0;
-        for(Iterator i = results.iterator(); i.hasNext();) {
+        for(Iterator i = getGroups().iterator(); i.hasNext();) {
             size += ((ArrayGroup) i.next()).getSize();
         }
         return size;
@@ -660,7 +1250,7 @@ public class ResultSetImpl implements ResultSet {
      * implementation only, not the interface!
      */
     public Iterator<ArrayGroup> resultsIterator() {
-        return results.iterator();
+        return getGroups().iterator();
     }
 
     public AGDocs newAGDocs(ArrayGroup ag) {
@@ -707,10 +1297,228 @@ public class ResultSetImpl implements ResultSet {
         return clust.getClusters();
     }
 
+    public List<FieldFrequency> facet(String field, int n)
+            throws SearchEngineException {
+        return facet(field, n, -1, false);
+    }
+
+    public List<FieldFrequency> facet(String field, int n, int period)
+            throws SearchEngineException {
+        switch(period) {
+            case Calendar.YEAR:
+            case Calendar.MONTH:
+            case Calendar.WEEK_OF_YEAR:
+            case Calendar.DAY_OF_MONTH:
+            case Calendar.HOUR_OF_DAY:
+            case Calendar.MINUTE:
+                return facet(field, n, period, false);
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported time period for facets: " + period);
+        }
+    }
+
+    /**
+     * Counts the number of documents in this set that have each of the values
+     * of a saved field, optionally ignoring the case of the values of a case
+     * sensitive string field.
+     *
+     * @param field the name of the saved field whose values we want to count
+     * @param n the number of values to return.  If this is less than 1, all
+     * of the values that occur in the set are returned.
+     * @param ignoreCase if <code>true</code>, values of a case sensitive
+     * string field that differ only in case are counted together, and the
+     * lowercase value is returned.
+     * @return the values of the field that occur in this set with the number
+     * of documents that have them, ordered from most to least frequent.
+     * @throws SearchEngineException if there is any error evaluating the
+     * query
+     * @see #facet(String, int)
+     */
+    public List<FieldFrequency> facet(String field, int n, boolean ignoreCase)
+            throws SearchEngineException {
+        return facet(field, n, -1, ignoreCase);
+    }
+
+    private List<FieldFrequency> facet(String field, int n, int period,
+            boolean ignoreCase) throws SearchEngineException {
+        FieldInfo fi = e.getFieldInfo(field);
+        if(fi == null || !fi.isSaved() ||
+                fi.getType() == FieldInfo.Type.FEATURE_VECTOR) {
+            logger.warning("Can't facet on non-saved field: " + field);
+            return new ArrayList<FieldFrequency>();
+        }
+        boolean bucket = fi.getType() == FieldInfo.Type.DATE && period > 0;
+        boolean fold = ignoreCase && fi.getType() == FieldInfo.Type.STRING &&
+                fi.isCaseSensitive();
+        Calendar cal = bucket ? Calendar.getInstance() : null;
+
+        //
+        // Count the values in each partition by value ID, and then merge the
+        // counts by value.
+        Map<Object, FieldFrequency> merged =
+                new HashMap<Object, FieldFrequency>();
+        for(ArrayGroup ag : getGroups()) {
+            SavedField sf = ((InvFileDiskPartition) ag.part).getFieldStore().
+                    getSavedField(fi);
+            if(!(sf instanceof BasicField)) {
+                continue;
+            }
+            BasicField bf = (BasicField) sf;
+            int[] counts = fold ? bf.countValues(ag, bf.getCaseMap())
+                    : bf.countValues(ag);
+
+            //
+            // Date values are in order of their IDs, so when we're bucketing
+            // we only need to work out a new bucket when a value falls after
+            // the end of the current one.
+            Date start = null;
+            long end = Long.MIN_VALUE;
+            for(int id = 1; id < counts.length; id++) {
+                if(counts[id] == 0) {
+                    continue;
+                }
+                Object val = bf.getValue(id);
+                if(val == null) {
+                    continue;
+                }
+                if(bucket) {
+                    long t = ((Date) val).getTime();
+                    if(start == null || t >= end) {
+                        start = periodStart(cal, t, period);
+                        cal.add(period, 1);
+                        end = cal.getTimeInMillis();
+                    }
+                    val = start;
+                } else if(fold) {
+                    val = CharUtils.toLowerCase((String) val);
+                }
+                FieldFrequency ff = merged.get(val);
+                if(ff == null) {
+                    merged.put(val, new FieldFrequency(val, counts[id]));
+                } else {
+                    ff.setFreq(ff.getFreq() + counts[id]);
+                }
+            }
+        }
+        return topValues(merged.values(), n);
+    }
+
+    /**
+     * Orders field values from most to least frequent, breaking ties by the
+     * natural order of the values.
+     */
+    private static final Comparator<FieldFrequency> byFreq =
+            new Comparator<FieldFrequency>() {
+
+                public int compare(FieldFrequency o1, FieldFrequency o2) {
+                    if(o1.getFreq() != o2.getFreq()) {
+                        return o2.getFreq() - o1.getFreq();
+                    }
+                    return compareValues(o1.getVal(), o2.getVal());
+                }
+            };
+
+    /**
+     * Compares two values of the same saved field.
+     *
+     * @param v1 the first value
+     * @param v2 the second value
+     * @return the result of comparing the values in their natural order
+     */
+    private static int compareValues(Object v1, Object v2) {
+        if(v1 instanceof String) {
+            return ((String) v1).compareTo((String) v2);
+        } else if(v1 instanceof Long) {
+            return ((Long) v1).compareTo((Long) v2);
+        } else if(v1 instanceof Double) {
+            return ((Double) v1).compareTo((Double) v2);
+        } else if(v1 instanceof Date) {
+            return ((Date) v1).compareTo((Date) v2);
+        }
+        return String.valueOf(v1).compareTo(String.valueOf(v2));
+    }
+
+    /**
+     * Gets the most frequent of a collection of field values.
+     *
+     * @param vals the field values and their frequencies
+     * @param n the number of values to return.  If this is less than 1, all
+     * of the values are returned.
+     * @return the values, ordered from most to least frequent.  Values with
+     * the same frequency are in the natural order of the values.
+     */
+    public static List<FieldFrequency> topValues(
+            Collection<FieldFrequency> vals, int n) {
+
+        //
+        // If we only want the top n, we'll keep a heap of them with the least
+        // frequent on top.
+        List<FieldFrequency> ret;
+        if(n > 0 && vals.size() > n) {
+            PriorityQueue<FieldFrequency> h = new PriorityQueue<FieldFrequency>(
+                    n + 1, Collections.reverseOrder(byFreq));
+            for(FieldFrequency ff : vals) {
+                if(h.size() < n) {
+                    h.offer(ff);
+                } else if(byFreq.compare(ff, h.peek()) < 0) {
+                    h.poll();
+                    h.offer(ff);
+                }
+            }
+            ret = new ArrayList<FieldFrequency>(h);
+        } else {
+            ret = new ArrayList<FieldFrequency>(vals);
+        }
+        Collections.sort(ret, byFreq);
+        return ret;
+    }
+
+    /**
+     * Gets the start of the time period containing a given time.
+     *
+     * @param cal a calendar to use for the computation.  This will be left
+     * set to the start of the period.
+     * @param t the time, in milliseconds
+     * @param period the calendar field giving the length of the period
+     * @return the start of the period
+     */
+    @SuppressWarnings("fallthrough")
+    private static Date periodStart(Calendar cal, long t, int period) {
+        cal.setTimeInMillis(t);
+        switch(period) {
+            case Calendar.YEAR:
+                cal.set(Calendar.MONTH, Calendar.JANUARY);
+                // fall through
+            case Calendar.MONTH:
+                cal.set(Calendar.DAY_OF_MONTH, 1);
+                // fall through
+            case Calendar.WEEK_OF_YEAR:
+            case Calendar.DAY_OF_MONTH:
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                // fall through
+            case Calendar.HOUR_OF_DAY:
+                cal.set(Calendar.MINUTE, 0);
+                // fall through
+            case Calendar.MINUTE:
+                cal.set(Calendar.SECOND, 0);
+                cal.set(Calendar.MILLISECOND, 0);
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported time period for facets: " + period);
+        }
+        if(period == Calendar.WEEK_OF_YEAR) {
+            cal.add(Calendar.DAY_OF_MONTH, -((cal.get(Calendar.DAY_OF_WEEK) -
+                    cal.getFirstDayOfWeek() + 7) % 7));
+        }
+        return cal.getTime();
+    }
+
     public ResultSet weight(float w) {
         ResultSetImpl ret = new ResultSetImpl(this.e, this.qc, null);
         ret.results = new ArrayList();
-        for(Iterator i = results.iterator(); i.hasNext();) {
+        for(Iterator i = getGroups().iterator(); i.hasNext();) {
             ret.results.add(((ArrayGroup) i.next()).mult(w));
         }
         return ret;
@@ -720,9 +1528,9 @@ public class ResultSetImpl implements ResultSet {
         ResultSetImpl ret = new ResultSetImpl(this.e, this.qc, null);
         ret.sortSpec = sortSpec;
         ret.results = new ArrayList();
-        for(Iterator<ArrayGroup> i = results.iterator(); i.hasNext();) {
+        for(Iterator<ArrayGroup> i = getGroups().iterator(); i.hasNext();) {
             ArrayGroup ag1 = i.next();
-            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).results.iterator();
+            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).getGroups().iterator();
                     j.hasNext();) {
                 ArrayGroup ag2 = j.next();
                 if(ag1.part == ag2.part) {
@@ -738,9 +1546,9 @@ public class ResultSetImpl implements ResultSet {
     public ResultSet union(ResultSet rs) {
         ResultSetImpl ret = new ResultSetImpl(this.e, this.qc, null);
         ret.results = new ArrayList();
-        for(Iterator<ArrayGroup> i = results.iterator(); i.hasNext();) {
+        for(Iterator<ArrayGroup> i = getGroups().iterator(); i.hasNext();) {
             ArrayGroup ag1 = i.next();
-            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).results.iterator();
+            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).getGroups().iterator();
                     j.hasNext();) {
                 ArrayGroup ag2 = j.next();
                 if(ag1.part == ag2.part) {
@@ -756,9 +1564,9 @@ public class ResultSetImpl implements ResultSet {
     public ResultSet difference(ResultSet rs) {
         ResultSetImpl ret = new ResultSetImpl(this.e, this.qc, null);
         ret.results = new ArrayList();
-        for(Iterator<ArrayGroup> i = results.iterator(); i.hasNext();) {
+        for(Iterator<ArrayGroup> i = getGroups().iterator(); i.hasNext();) {
             ArrayGroup ag1 = i.next();
-            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).results.iterator();
+            for(Iterator<ArrayGroup> j = ((ResultSetImpl) rs).getGroups().iterator();
                     j.hasNext();) {
                 ArrayGroup ag2 = j.next();
                 if(ag1.part == ag2.part) {
@@ -779,9 +1587,9 @@ public class ResultSetImpl implements ResultSet {
      * and the documents have the same scores, <code>false</code> otherwise.
      */
     public boolean same(ResultSetImpl other) {
-        for(Iterator<ArrayGroup> i = results.iterator(); i.hasNext();) {
+        for(Iterator<ArrayGroup> i = getGroups().iterator(); i.hasNext();) {
             ArrayGroup ag1 = i.next();
-            for(Iterator<ArrayGroup> j = other.results.iterator();
+            for(Iterator<ArrayGroup> j = other.getGroups().iterator();
                     j.hasNext();) {
                 ArrayGroup ag2 = j.next();
                 if(ag1.part == ag2.part) {
@@ -799,6 +1607,243 @@ public class ResultSetImpl implements ResultSet {
         return "ResultSetImpl{" + "results=" + results + '}';
     }
 
+    /**
+     * A cursor for the results in this set.  Each page is selected by making
+     * a pass over the documents in the groups, keeping the best documents
+     * that follow the last result returned in a heap that is the size of the
+     * page.  Results that have the same sort values are ordered by partition
+     * number and then by document ID.
+     */
+    protected class Cursor implements ResultCursor {
+
+        /**
+         * The results filter in effect when the cursor was created.
+         */
+        private ResultsFilter crf;
+
+        /**
+         * The score modifier in effect when the cursor was created.
+         */
+        private ScoreModifier csm;
+
+        /**
+         * Whether the results are sorted by decreasing score, in which case
+         * we can select them using only the document IDs and scores.
+         */
+        private boolean byScore;
+
+        /**
+         * The last result that we returned, or <code>null</code> if we
+         * haven't returned any results.
+         */
+        private ResultImpl last;
+
+        /**
+         * The score of the last result that we returned.
+         */
+        private float lastScore;
+
+        /**
+         * The partition and document key of the last result that we
+         * returned.
+         */
+        private long lastKey;
+
+        /**
+         * Whether we've returned all of the results.
+         */
+        private boolean done;
+
+        public Cursor() {
+            crf = rf;
+            csm = sm;
+            byScore = crf == null && csm == null &&
+                    sortSpec.isScoreDescending();
+        }
+
+        /**
+         * Gets a key that orders documents by partition number and then by
+         * document ID.
+         */
+        private long key(ArrayGroup ag, int doc) {
+            return ((long) ag.part.getPartitionNumber() << 32) | doc;
+        }
+
+        public boolean hasNext() {
+            return !done;
+        }
+
+        public List<Result> next(int n) throws SearchEngineException {
+            if(done || n <= 0) {
+                return new ArrayList<Result>();
+            }
+            List<Result> ret;
+            try {
+                ret = byScore ? nextByScore(n) : nextSorted(n);
+            } catch(Exception ex) {
+                throw new SearchEngineException("Error getting search results",
+                        ex);
+            }
+            if(ret.size() < n) {
+                done = true;
+            }
+            return ret;
+        }
+
+        /**
+         * Gets the next page of results when results are sorted by
+         * decreasing score.
+         */
+        private List<Result> nextByScore(int n) {
+            List<ArrayGroup> groups = getGroups();
+            int cap = Math.max(1, Math.min(n, size()));
+            long[] keys = new long[cap];
+            float[] scores = new float[cap];
+            int m = 0;
+            for(ArrayGroup ag : groups) {
+                ArrayGroup.DocIterator iter = ag.iterator();
+                while(iter.next()) {
+                    float score = iter.getScore();
+                    long key = key(ag, iter.getDoc());
+
+                    //
+                    // Skip anything we've already returned.
+                    if(last != null && (score > lastScore ||
+                            (score == lastScore && key <= lastKey))) {
+                        continue;
+                    }
+                    if(m < n) {
+                        if(m == keys.length) {
+                            cap = (int) Math.min(n, 2L * cap);
+                            keys = Arrays.copyOf(keys, cap);
+                            scores = Arrays.copyOf(scores, cap);
+                        }
+                        keys[m] = key;
+                        scores[m] = score;
+                        upHeap(keys, scores, m++);
+                    } else if(score > scores[0] ||
+                            (score == scores[0] && key < keys[0])) {
+                        keys[0] = key;
+                        scores[0] = score;
+                        downHeap(keys, scores, 0, m);
+                    }
+                }
+            }
+
+            //
+            // Sort the heap so that the best document comes first.
+            for(int i = m - 1; i > 0; i--) {
+                swap(keys, scores, 0, i);
+                downHeap(keys, scores, 0, i);
+            }
+
+            List<Result> ret = new ArrayList<Result>(m);
+            Map<Integer, ArrayGroup> pg = new HashMap<Integer, ArrayGroup>();
+            Map<Integer, SortSpec> pss = new HashMap<Integer, SortSpec>();
+            for(ArrayGroup ag : groups) {
+                pg.put(ag.part.getPartitionNumber(), ag);
+            }
+            for(int i = 0; i < m; i++) {
+                int pn = (int) (keys[i] >>> 32);
+                ArrayGroup ag = pg.get(pn);
+                SortSpec ss = pss.get(pn);
+                if(ss == null) {
+                    ss = new SortSpec(sortSpec, (InvFileDiskPartition) ag.part);
+                    pss.put(pn, ss);
+                }
+                ResultImpl ri = new ResultImpl(ResultSetImpl.this, ag, ss,
+                        (int) keys[i], scores[i]);
+                ri.setQueryStats(qs);
+                ri.setFields();
+                ret.add(ri);
+            }
+            if(m > 0) {
+                last = (ResultImpl) ret.get(m - 1);
+                lastScore = scores[m - 1];
+                lastKey = keys[m - 1];
+            }
+            return ret;
+        }
+
+        /**
+         * Compares two results in the order used by the cursor.
+         *
+         * @return a positive number if the first result should come before the
+         * second, a negative number if it should come after it and 0 if they
+         * are the same result.
+         */
+        private int rank(ResultImpl r1, ResultImpl r2) {
+            int cmp = r1.compareTo(r2);
+            if(cmp != 0) {
+                return cmp;
+            }
+            long k1 = key(r1.ag, r1.doc);
+            long k2 = key(r2.ag, r2.doc);
+            return k1 < k2 ? 1 : (k1 > k2 ? -1 : 0);
+        }
+
+        /**
+         * Gets the next page of results for any sorting specification,
+         * applying the results filter and score modifier, if there are any.
+         */
+        private List<Result> nextSorted(int n) {
+            PriorityQueue<ResultImpl> sorter = new PriorityQueue<ResultImpl>(
+                    Math.max(1, Math.min(n, size())),
+                    new Comparator<ResultImpl>() {
+
+                        public int compare(ResultImpl o1, ResultImpl o2) {
+                            return rank(o1, o2);
+                        }
+                    });
+            ResultImpl curr = new ResultImpl();
+            curr.setQueryStats(qs);
+            for(ArrayGroup ag : getGroups()) {
+                if(csm != null) {
+                    ag.setScoreModifier(csm);
+                }
+                SortSpec pss = new SortSpec(sortSpec,
+                        (InvFileDiskPartition) ag.part);
+                ArrayGroup.DocIterator iter = ag.iterator();
+                while(iter.next()) {
+                    curr.init(ResultSetImpl.this, ag, pss, iter.getDoc(),
+                            iter.getScore());
+
+                    //
+                    // Skip anything we've already returned, and anything that
+                    // doesn't beat the worst result on a full heap.  The
+                    // filter is only run for documents that we might keep.
+                    if(last != null && rank(curr, last) >= 0) {
+                        continue;
+                    }
+                    if(sorter.size() >= n && rank(curr, sorter.peek()) <= 0) {
+                        continue;
+                    }
+                    if(crf != null && !crf.filter(iter)) {
+                        continue;
+                    }
+                    curr.setFields();
+                    sorter.offer(curr);
+                    if(sorter.size() > n) {
+                        curr = sorter.poll();
+                    } else {
+                        curr = new ResultImpl();
+                        curr.setQueryStats(qs);
+                    }
+                }
+            }
+
+            List<Result> ret = new ArrayList<Result>(sorter.size());
+            while(sorter.size() > 0) {
+                ret.add(sorter.poll());
+            }
+            Collections.reverse(ret);
+            if(ret.size() > 0) {
+                last = (ResultImpl) ret.get(ret.size() - 1);
+            }
+            return ret;
+        }
+    }
+
     public class AGDocs {
 
         protected int[] docIDs;
@@ -406,7 +406,35 @@ public class ScoredGroup extends ArrayGroup {
         // will depend on how things have been normalized
         ret.sqw = (ag.normalized ? 0 : ag.sqw) +
                 (normalized ? 0 : sqw);
-        
+
+        if(getStrategy(ag) == QueryPlanner.Strategy.GALLOP) {
+
+            //
+            // Copy runs of documents that are only in one of the groups,
+            // rather than going a document at a time.
+            while(i1 < size && i2 < ag.size) {
+                int d1 = docs[i1];
+                int d2 = ag.docs[i2];
+                if(d1 < d2) {
+                    int e = gallop(docs, i1, size, d2);
+                    System.arraycopy(docs, i1, ret.docs, ret.size, e - i1);
+                    System.arraycopy(scores, i1, ret.scores, ret.size, e - i1);
+                    ret.size += e - i1;
+                    i1 = e;
+                } else if(d1 > d2) {
+                    int e = gallop(ag.docs, i2, ag.size, d1);
+                    System.arraycopy(ag.docs, i2, ret.docs, ret.size, e - i2);
+                    System.arraycopy(ag.scores, i2, ret.scores, ret.size,
+                            e - i2);
+                    ret.size += e - i2;
+                    i2 = e;
+                } else {
+                    ret.docs[ret.size] = d1;
+                    ret.scores[ret.size++] = scores[i1++] + ag.scores[i2++];
+                }
+            }
+        }
+
         while(i1 < size && i2 < ag.size) {
             int d1 = docs[i1];
             int d2 = ag.docs[i2];
@@ -474,6 +502,22 @@ public class ScoredGroup extends ArrayGroup {
         ret.sqw = (ag.normalized ? 0 : ag.sqw) +
                 (normalized ? 0 : sqw);
         
+        if(getStrategy(ag) == QueryPlanner.Strategy.GALLOP) {
+            int[] p1 = new int[ret.docs.length];
+            int[] p2 = new int[ret.docs.length];
+            if(size <= ag.size) {
+                ret.size = gallopIntersect(docs, size, ag.docs, ag.size,
+                        ret.docs, p1, p2);
+            } else {
+                ret.size = gallopIntersect(ag.docs, ag.size, docs, size,
+                        ret.docs, p2, p1);
+            }
+            for(int i = 0; i < ret.size; i++) {
+                ret.scores[i] = scores[p1[i]] + ag.scores[p2[i]];
+            }
+            return ret;
+        }
+
         int i1 = 0, i2 = 0;
         while(i1 < size && i2 < ag.size) {
             int d1 = docs[i1];
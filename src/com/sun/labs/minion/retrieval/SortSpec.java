@@ -26,6 +26,8 @@ package com.sun.labs.minion.retrieval;
 import java.util.StringTokenizer;
 import com.sun.labs.minion.FieldInfo;
 import com.sun.labs.minion.indexer.dictionary.BasicField;
+import com.sun.labs.minion.indexer.dictionary.DocValues;
+import com.sun.labs.minion.indexer.dictionary.SavedField;
 import com.sun.labs.minion.indexer.partition.InvFileDiskPartition;
 import com.sun.labs.minion.indexer.partition.PartitionManager;
 import java.util.logging.Logger;
@@ -57,6 +59,12 @@ public class SortSpec {
      */
     protected BasicField.Fetcher[] fetchers;
 
+    /**
+     * Columns of sort values for any saved fields in the sorting spec, which
+     * let us compare results without fetching the field values.
+     */
+    protected DocValues[] columns;
+
     /**
      * The directions in which to sort each of the fields.
      * <code>true</code> indicates that the sort is in an increasing
@@ -120,7 +128,8 @@ public class SortSpec {
 
     /**
      * Constructs a partition specific sorting specification that includes fetchers
-     * for the saved fields appearing in the sorting specification.
+     * and columns of sort values for the saved fields appearing in the sorting
+     * specification.
      */
     public SortSpec(SortSpec ss, InvFileDiskPartition part) {
         spec = ss.spec;
@@ -128,9 +137,14 @@ public class SortSpec {
         fields = (FieldInfo[]) ss.fields.clone();
         directions = (boolean[]) ss.directions.clone();
         fetchers = new BasicField.Fetcher[size];
+        columns = new DocValues[size];
         for(int i = 0; i < size; i++) {
             if(fields[i] != null) {
                 fetchers[i] = part.getFieldStore().getFetcher(fields[i]);
+                SavedField sf = part.getFieldStore().getSavedField(fields[i]);
+                if(sf instanceof BasicField) {
+                    columns[i] = ((BasicField) sf).getDocValues();
+                }
             }
         }
     }
@@ -139,6 +153,14 @@ public class SortSpec {
         return directions[i];
     }
 
+    /**
+     * Indicates whether this specification sorts only by decreasing score.
+     */
+    public boolean isScoreDescending() {
+        return size == 1 && !directions[0] && fields[0] != null &&
+                fields[0].getName() == null;
+    }
+
     public String toString() {
         return spec;
     }
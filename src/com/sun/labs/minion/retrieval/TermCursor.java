@@ -0,0 +1,164 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.indexer.postings.PostingsIterator;
+
+/**
+ * A cursor for the postings of a query term.  A query term can match a
+ * number of dictionary entries (e.g., morphological variants), so this
+ * cursor produces the union of the documents in the postings for those
+ * entries.
+ *
+ * <p>
+ *
+ * Advancing the cursor uses {@link PostingsIterator#findID}, which uses the
+ * skip table for the postings, so a cursor for a very common term that is
+ * only asked about a few documents doesn't have to decode all of its
+ * postings.
+ */
+public class TermCursor extends QueryCursor {
+
+    /**
+     * The iterators for the postings of the entries.
+     */
+    protected PostingsIterator[] pis;
+
+    /**
+     * The query weights for the entries.
+     */
+    protected float[] qws;
+
+    /**
+     * The document that each of the iterators is positioned on.
+     */
+    protected int[] ids;
+
+    /**
+     * The number of iterators.
+     */
+    protected int n;
+
+    /**
+     * The sum of the squared query weights of the entries.
+     */
+    protected float sqw;
+
+    /**
+     * The sum of the document frequencies of the entries.
+     */
+    protected int cost;
+
+    /**
+     * Creates a cursor for a number of entries.
+     *
+     * @param size the maximum number of entries that will be added
+     */
+    public TermCursor(int size) {
+        pis = new PostingsIterator[size];
+        qws = new float[size];
+        ids = new int[size];
+    }
+
+    /**
+     * Adds the postings for an entry to this cursor.  The iterators for
+     * different entries must not share weighting components, since the
+     * postings are not processed until the cursor is advanced.
+     *
+     * @param pi the iterator for the postings for the entry.  If this is
+     * <code>null</code>, only the query weight is added.
+     * @param qw the query weight for the entry
+     */
+    public void add(PostingsIterator pi, float qw) {
+        sqw += qw * qw;
+        if(pi == null) {
+            return;
+        }
+        pis[n] = pi;
+        qws[n] = qw;
+        cost += pi.getN();
+        n++;
+    }
+
+    /**
+     * Positions the cursor on the lowest document among the iterators.
+     */
+    private boolean setDoc() {
+        doc = NO_MORE_DOCS;
+        for(int i = 0; i < n; i++) {
+            if(ids[i] < doc) {
+                doc = ids[i];
+            }
+        }
+        return doc != NO_MORE_DOCS;
+    }
+
+    public boolean next() {
+        if(doc == NO_MORE_DOCS) {
+            return false;
+        }
+        for(int i = 0; i < n; i++) {
+            if(ids[i] == doc) {
+                ids[i] = pis[i].next() ? pis[i].getID() : NO_MORE_DOCS;
+            }
+        }
+        return setDoc();
+    }
+
+    public boolean advance(int target) {
+        if(doc >= target) {
+            return doc != NO_MORE_DOCS;
+        }
+        for(int i = 0; i < n; i++) {
+            if(ids[i] >= target) {
+                continue;
+            }
+            if(pis[i].findID(target)) {
+                ids[i] = target;
+            } else {
+                ids[i] = pis[i].getID() > target ? pis[i].getID()
+                        : NO_MORE_DOCS;
+            }
+        }
+        return setDoc();
+    }
+
+    public float score() {
+        float score = 0;
+        for(int i = 0; i < n; i++) {
+            if(ids[i] == doc) {
+                score += pis[i].getWeight() * qws[i];
+            }
+        }
+        return score;
+    }
+
+    public float getSquaredQueryWeight() {
+        return sqw;
+    }
+
+    public int cost() {
+        return cost;
+    }
+} // TermCursor
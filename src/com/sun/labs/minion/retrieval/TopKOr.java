@@ -0,0 +1,470 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.QueryConfig;
+import com.sun.labs.minion.QueryStats;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.indexer.postings.BlockMaxPostingsIterator;
+import com.sun.labs.minion.indexer.postings.FieldedPostingsIterator;
+import com.sun.labs.minion.indexer.postings.PostingsIterator;
+import com.sun.labs.minion.util.Util;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * A class that will find the <em>k</em> highest scoring documents for a
+ * disjunction of terms without computing a score for every document that
+ * contains one of the terms.  This is meant to be used in place of a
+ * {@link ScoredQuickOr} when only the top of the ranked list is wanted.
+ *
+ * <p>
+ *
+ * The postings are processed a document at a time using the MaxScore
+ * algorithm.  Each term has an upper bound on the normalized score that it
+ * can contribute to a document, computed from the maximum weight in its
+ * postings and the smallest document vector length in the partition.  Once
+ * we have <em>k</em> documents, the terms whose bounds sum to less than the
+ * score of the <em>k</em>th document are <em>non-essential</em>: a document
+ * that contains only those terms can't make it into the top <em>k</em>, so
+ * the candidate documents are taken from the postings for the other terms.
+ * The non-essential postings are only consulted for a candidate while the
+ * candidate's score could still exceed the threshold, and postings that
+ * provide block bounds (see {@link BlockMaxPostingsIterator}) let us avoid
+ * decoding blocks that can't help.
+ *
+ * <p>
+ *
+ * The documents that are returned have the same scores (up to rounding)
+ * that a <code>ScoredQuickOr</code> would have given them.
+ */
+public class TopKOr {
+
+    /**
+     * The partition for which we're finding documents.
+     */
+    protected DiskPartition part;
+
+    QueryStats qs;
+
+    /**
+     * The configuration for the query, which tells us whether the query has
+     * run out of time.
+     */
+    protected QueryConfig qc;
+
+    /**
+     * The number of documents that we want.
+     */
+    protected int k;
+
+    /**
+     * The iterators for the terms that have been added.
+     */
+    protected PostingsIterator[] pis;
+
+    /**
+     * The query weights for the terms that have been added.
+     */
+    protected float[] qws;
+
+    /**
+     * The number of terms that have been added.
+     */
+    protected int added;
+
+    /**
+     * The sum of the squared query weights.
+     */
+    protected float sqw;
+
+    /**
+     * A particular field from which the term weights should be taken.
+     */
+    protected int fieldID = -1;
+
+    /**
+     * The field whose vector lengths should be used for normalization.
+     */
+    protected int lengthField = -1;
+
+    /**
+     * The score that a document must reach to be returned.
+     */
+    protected float threshold;
+
+    protected static Logger logger = Logger.getLogger(TopKOr.class.getName());
+
+    protected static String logTag = "TKO";
+
+    /**
+     * Creates an or that will find the top documents in a partition.
+     *
+     * @param part the partition that we're evaluating against
+     * @param k the number of documents that we want
+     */
+    public TopKOr(DiskPartition part, int k) {
+        this.part = part;
+        this.k = Math.max(k, 1);
+        qs = new QueryStats();
+        pis = new PostingsIterator[4];
+        qws = new float[4];
+    }
+
+    public void setQueryStats(QueryStats qs) {
+        this.qs = qs;
+    }
+
+    /**
+     * Sets the configuration for the query.  If the query runs out of time,
+     * the evaluation will stop and the group returned will contain the top
+     * documents found so far.
+     */
+    public void setQueryConfig(QueryConfig qc) {
+        this.qc = qc;
+    }
+
+    /**
+     * Sets the field from which term weights will be taken.
+     */
+    public void setField(int fieldID) {
+        this.fieldID = fieldID;
+    }
+
+    /**
+     * Sets the vectored field whose lengths will be used to normalize the
+     * scores.  The default is to use the length across all vectored fields.
+     */
+    public void setLengthField(int lengthField) {
+        this.lengthField = lengthField;
+    }
+
+    /**
+     * Sets the score that a document must reach in order to be returned.
+     * When evaluating against several partitions, the score of the
+     * <em>k</em>th document from the partitions evaluated so far can be
+     * used to prune the evaluation of the next one.
+     */
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Gets the score that a document must reach in order to be in the top
+     * <em>k</em>, as determined by the last call to {@link #getGroup}.
+     */
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Adds a set of postings to this or.  Unlike a
+     * <code>ScoredQuickOr</code>, the postings are not processed until
+     * {@link #getGroup} is called, so the iterators for different terms must
+     * not share weighting components.
+     *
+     * @param pi the iterator for the postings.
+     * @param qw the weight of the term in the query
+     */
+    public void add(PostingsIterator pi, float qw) {
+        if(pi == null) {
+            return;
+        }
+        if(added == pis.length) {
+            pis = Arrays.copyOf(pis, added * 2);
+            qws = Util.expandFloat(qws, added * 2);
+        }
+        pis[added] = pi;
+        qws[added++] = qw;
+        sqw += qw * qw;
+    }
+
+    /**
+     * Adds only a weight to this or, for a term that doesn't occur in this
+     * partition.
+     *
+     * @param qw the query weight of the term
+     */
+    public void addWeightOnly(float qw) {
+        sqw += qw * qw;
+    }
+
+    /**
+     * Gets the weight for the current document in an iterator.
+     */
+    private float weight(PostingsIterator pi) {
+        if(fieldID != -1) {
+            float[] fw = ((FieldedPostingsIterator) pi).getFieldWeights();
+            if(fw != null) {
+                return fw[fieldID];
+            }
+        }
+        return pi.getWeight();
+    }
+
+    /**
+     * Evaluates the or, returning the top documents.
+     *
+     * @return a group containing the top <em>k</em> documents that have not
+     * been deleted, in document ID order.  As with a
+     * <code>ScoredQuickOr</code>, the scores in the group need to be
+     * normalized.  If there are fewer than <em>k</em> documents that reach
+     * the threshold, all of them will be returned.  If the scores can't be
+     * bounded, for example because the term weights are not finite,
+     * <code>null</code> is returned and the caller should evaluate the
+     * query in the usual way.
+     */
+    public ArrayGroup getGroup() {
+
+        qs.unionW.start();
+        qs.piW.start();
+        float qn = (float) Math.sqrt(sqw);
+        if(qn == 0) {
+            qn = 1;
+        }
+
+        //
+        // Get the upper bounds for the terms.  A term whose postings
+        // can't give us a bound is always essential.
+        int m = added;
+        float minLen = part.getMinDocumentVectorLength(lengthField);
+        Integer[] order = new Integer[m];
+        final float[] ub = new float[m];
+        for(int i = 0; i < m; i++) {
+            order[i] = i;
+            if(pis[i] instanceof BlockMaxPostingsIterator) {
+                ub[i] = qws[i] *
+                        ((BlockMaxPostingsIterator) pis[i]).getMaxWeight();
+            } else {
+                ub[i] = Float.POSITIVE_INFINITY;
+            }
+            if(Float.isNaN(ub[i])) {
+                qs.piW.stop();
+                qs.unionW.stop();
+                return null;
+            }
+        }
+        if(Float.isNaN(qn) || Float.isInfinite(qn) || Float.isNaN(minLen)) {
+            qs.piW.stop();
+            qs.unionW.stop();
+            return null;
+        }
+        Arrays.sort(order, new java.util.Comparator<Integer>() {
+
+            public int compare(Integer o1, Integer o2) {
+                return Float.compare(ub[o1], ub[o2]);
+            }
+        });
+
+        //
+        // Lay out the terms in increasing order of their bounds, and compute
+        // the cumulative bounds.
+        PostingsIterator[] cp = new PostingsIterator[m];
+        BlockMaxPostingsIterator[] bm = new BlockMaxPostingsIterator[m];
+        float[] cw = new float[m];
+        float[] cub = new float[m];
+        float[] pre = new float[m];
+        int[] shallow = new int[m];
+        int[] cid = new int[m];
+        for(int i = 0; i < m; i++) {
+            cp[i] = pis[order[i]];
+            cw[i] = qws[order[i]];
+            cub[i] = ub[order[i]];
+            pre[i] = cub[i] + (i > 0 ? pre[i - 1] : 0);
+            if(cp[i] instanceof BlockMaxPostingsIterator) {
+                bm[i] = (BlockMaxPostingsIterator) cp[i];
+            }
+            cid[i] = cp[i].next() ? cp[i].getID() : Integer.MAX_VALUE;
+        }
+
+        //
+        // A heap of the top documents, with the lowest score at the top.
+        int[] hd = new int[k];
+        float[] hs = new float[k];
+        float[] hr = new float[k];
+        int hn = 0;
+
+        int ne = nonEssential(pre, m, threshold * minLen * qn);
+        int nc = 0;
+        while(true) {
+
+            if((++nc & 1023) == 0 && qc != null && qc.timedOut()) {
+                break;
+            }
+
+            //
+            // The next candidate is the lowest ID among the essential terms.
+            int d = Integer.MAX_VALUE;
+            for(int i = ne; i < m; i++) {
+                if(cid[i] < d) {
+                    d = cid[i];
+                }
+            }
+            if(d == Integer.MAX_VALUE) {
+                break;
+            }
+
+            float raw = 0;
+            for(int i = ne; i < m; i++) {
+                if(cid[i] == d) {
+                    raw += weight(cp[i]) * cw[i];
+                    cid[i] = cp[i].next() ? cp[i].getID() : Integer.MAX_VALUE;
+                }
+            }
+
+            if(part.isDeleted(d)) {
+                continue;
+            }
+
+            //
+            // Add in the non-essential terms, starting with the one that can
+            // contribute the most, as long as the document can still make it.
+            float norm = part.getDocumentVectorLength(d, lengthField) * qn;
+            boolean pruned = false;
+            for(int i = ne - 1; i >= 0; i--) {
+                if((raw + pre[i]) / norm < threshold) {
+                    pruned = true;
+                    break;
+                }
+                if(cid[i] > d) {
+                    continue;
+                }
+                if(cid[i] < d) {
+
+                    //
+                    // See if the block containing the document could help
+                    // before we decode anything.
+                    if(bm[i] != null) {
+                        if(shallow[i] < d) {
+                            shallow[i] = bm[i].advanceShallow(d);
+                        }
+                        if(shallow[i] < 0) {
+                            cid[i] = Integer.MAX_VALUE;
+                            continue;
+                        }
+                        float bub = bm[i].getBlockMaxWeight() * cw[i];
+                        if((raw + pre[i] - cub[i] + bub) / norm < threshold) {
+                            continue;
+                        }
+                    }
+                    if(!cp[i].findID(d)) {
+                        cid[i] = cp[i].getID() > d ? cp[i].getID()
+                                : Integer.MAX_VALUE;
+                        continue;
+                    }
+                    cid[i] = d;
+                }
+                raw += weight(cp[i]) * cw[i];
+            }
+            if(pruned) {
+                continue;
+            }
+
+            float score = raw / norm;
+            if(hn < k) {
+                if(score >= threshold) {
+                    hd[hn] = d;
+                    hs[hn] = score;
+                    hr[hn] = raw;
+                    up(hd, hs, hr, hn++);
+                    if(hn == k && hs[0] > threshold) {
+                        threshold = hs[0];
+                        ne = nonEssential(pre, m, threshold * minLen * qn);
+                    }
+                }
+            } else if(score > hs[0]) {
+                hd[0] = d;
+                hs[0] = score;
+                hr[0] = raw;
+                down(hd, hs, hr, hn);
+                if(hs[0] > threshold) {
+                    threshold = hs[0];
+                    ne = nonEssential(pre, m, threshold * minLen * qn);
+                }
+            }
+        }
+        qs.piW.stop();
+        qs.unionW.stop();
+
+        //
+        // Build the group from the unnormalized scores, so that it will be
+        // normalized just like any other.
+        qs.docCombW.start();
+        Util.sort(hd, hr, 0, hn);
+        qs.docCombW.stop();
+        return new ScoredGroup(part, hd, hr, hn, sqw);
+    }
+
+    /**
+     * Gets the number of terms, in increasing order of their upper bounds,
+     * whose bounds sum to less than the given raw score threshold.
+     */
+    private static int nonEssential(float[] pre, int m, float rt) {
+        int ne = 0;
+        while(ne < m && pre[ne] < rt) {
+            ne++;
+        }
+        return ne;
+    }
+
+    private static void up(int[] hd, float[] hs, float[] hr, int i) {
+        while(i > 0) {
+            int p = (i - 1) / 2;
+            if(hs[p] <= hs[i]) {
+                break;
+            }
+            swap(hd, hs, hr, i, p);
+            i = p;
+        }
+    }
+
+    private static void down(int[] hd, float[] hs, float[] hr, int n) {
+        int i = 0;
+        while(true) {
+            int l = 2 * i + 1;
+            if(l >= n) {
+                break;
+            }
+            int c = l + 1 < n && hs[l + 1] < hs[l] ? l + 1 : l;
+            if(hs[i] <= hs[c]) {
+                break;
+            }
+            swap(hd, hs, hr, i, c);
+            i = c;
+        }
+    }
+
+    private static void swap(int[] hd, float[] hs, float[] hr, int i,
+            int j) {
+        int td = hd[i];
+        hd[i] = hd[j];
+        hd[j] = td;
+        float ts = hs[i];
+        hs[i] = hs[j];
+        hs[j] = ts;
+        ts = hr[i];
+        hr[i] = hr[j];
+        hr[j] = ts;
+    }
+} // TopKOr
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval.cache;
+
+import com.sun.labs.minion.indexer.entry.QueryEntry;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.util.CharUtils;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of the main dictionary entries looked up while evaluating a batch
+ * of queries.  Every query in the batch that uses a term in a partition
+ * gets the same entry for it, so the term is only looked up in the
+ * dictionary once and its postings are only read once, no matter how many
+ * of the queries use it.
+ *
+ * <p>
+ *
+ * The entries are unbounded and are kept, along with any postings that have
+ * been read for them, until the cache is no longer referenced.  The cache
+ * may be used by several threads at once, as long as the postings
+ * iterators for the entries don't share state, which is the case for the
+ * postings types used in main dictionaries.
+ */
+public class EntryCache {
+
+    /**
+     * A marker for terms that aren't in a partition, so that we don't look
+     * them up again.
+     */
+    private static final Object MISSING = new Object();
+
+    /**
+     * The entries for each partition, keyed by both the name that was looked
+     * up and the entry ID.
+     */
+    private ConcurrentHashMap<DiskPartition, ConcurrentHashMap<Object, Object>> parts =
+            new ConcurrentHashMap<DiskPartition, ConcurrentHashMap<Object, Object>>();
+
+    public EntryCache() {
+    }
+
+    private ConcurrentHashMap<Object, Object> getEntries(DiskPartition part) {
+        ConcurrentHashMap<Object, Object> m = parts.get(part);
+        if(m == null) {
+            m = new ConcurrentHashMap<Object, Object>();
+            ConcurrentHashMap<Object, Object> old = parts.putIfAbsent(part, m);
+            if(old != null) {
+                m = old;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Gets the entry for a term from the main dictionary of a partition.
+     *
+     * @param part the partition
+     * @param name the name of the term
+     * @param caseSensitive whether the term should be looked up in the case
+     * that it is given
+     * @return the entry for the term, or <code>null</code> if the term
+     * doesn't occur in the partition
+     * @see DiskPartition#getTerm(String, boolean)
+     */
+    public QueryEntry getTerm(DiskPartition part, String name,
+            boolean caseSensitive) {
+        String key = caseSensitive ? name : CharUtils.toLowerCase(name);
+        ConcurrentHashMap<Object, Object> m = getEntries(part);
+        Object o = m.get(key);
+        if(o == null) {
+            QueryEntry e = part.getTerm(key, true);
+            o = e == null ? MISSING : add(m, e);
+            m.put(key, o);
+        }
+        return o == MISSING ? null : (QueryEntry) o;
+    }
+
+    /**
+     * Gets the entry with a given ID from the main dictionary of a partition.
+     *
+     * @param part the partition
+     * @param id the ID of the term
+     * @return the entry with the given ID, or <code>null</code> if there is
+     * no such entry
+     * @see DiskPartition#getTerm(int)
+     */
+    public QueryEntry getTerm(DiskPartition part, int id) {
+        ConcurrentHashMap<Object, Object> m = getEntries(part);
+        Object o = m.get(id);
+        if(o == null) {
+            QueryEntry e = part.getTerm(id);
+            if(e == null) {
+                return null;
+            }
+            o = add(m, e);
+            m.put(e.getName().toString(), o);
+        }
+        return (QueryEntry) o;
+    }
+
+    /**
+     * Gets the cached entry corresponding to an entry from the main
+     * dictionary of a partition, adding the entry to the cache if there is
+     * no such entry.  This can be used to share the entries returned by
+     * wildcard or other multiple-entry lookups.
+     *
+     * @param part the partition that the entry came from
+     * @param e the entry
+     * @return the cached entry with the same ID as the given one
+     */
+    public QueryEntry share(DiskPartition part, QueryEntry e) {
+        return (QueryEntry) add(getEntries(part), e);
+    }
+
+    /**
+     * Adds an entry to the map for a partition under its ID, unless there's
+     * already an entry with that ID.
+     *
+     * @return the entry in the map with the ID of the given entry
+     */
+    private Object add(ConcurrentHashMap<Object, Object> m, QueryEntry e) {
+        Object old = m.putIfAbsent(e.getID(), e);
+        return old == null ? e : old;
+    }
+}
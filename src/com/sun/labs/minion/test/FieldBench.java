@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.test;
+
+import com.sun.labs.minion.Result;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.SearchEngineFactory;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A benchmark for many threads getting saved field values for pages of
+ * results at the same time, the way that a server displaying results does.
+ * The results for a query are divided into pages of ten, and each thread
+ * repeatedly picks a random page and gets all of the values for each of the
+ * given fields for each result on the page.  The number of threads is
+ * doubled up to the maximum, and the rate at which field values are fetched
+ * is reported for each number of threads.
+ *
+ * <p>
+ *
+ * Usage: <code>FieldBench indexDir query field[,field...] [maxThreads]
+ * [pagesPerThread]</code>
+ */
+public class FieldBench {
+
+    private static final int PAGE_SIZE = 10;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 3) {
+            System.err.println("Usage: FieldBench indexDir query " +
+                    "field[,field...] [maxThreads] [pagesPerThread]");
+            return;
+        }
+        final String[] fields = args[2].split(",");
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : 32;
+        final int pages = args.length > 4 ? Integer.parseInt(args[4]) : 2000;
+
+        SearchEngine engine = SearchEngineFactory.getSearchEngine(args[0]);
+        final List<Result> results = engine.search(args[1]).getAllResults(
+                false);
+        if(results.size() < PAGE_SIZE) {
+            System.err.println("Not enough results for " + args[1]);
+            engine.close();
+            return;
+        }
+        final int nPages = results.size() / PAGE_SIZE;
+
+        System.out.format("%d results, fields %s%n", results.size(), args[2]);
+        System.out.format("%8s %12s %14s%n", "threads", "time (ms)",
+                "values/sec");
+        for(int pass = 0; pass < 2; pass++) {
+            for(int nThreads = 1; nThreads <= maxThreads; nThreads *= 2) {
+                final long[] counts = new long[nThreads];
+                Thread[] threads = new Thread[nThreads];
+                for(int i = 0; i < nThreads; i++) {
+                    final int t = i;
+                    threads[i] = new Thread() {
+
+                        public void run() {
+                            Random r = new Random(t);
+                            long n = 0;
+                            for(int p = 0; p < pages; p++) {
+                                int start = r.nextInt(nPages) * PAGE_SIZE;
+                                for(int j = start; j < start + PAGE_SIZE; j++) {
+                                    for(String f : fields) {
+                                        n += results.get(j).getField(f).size();
+                                    }
+                                }
+                            }
+                            counts[t] = n;
+                        }
+                    };
+                }
+                long s = System.nanoTime();
+                for(Thread t : threads) {
+                    t.start();
+                }
+                for(Thread t : threads) {
+                    t.join();
+                }
+                long time = System.nanoTime() - s;
+                long total = 0;
+                for(long c : counts) {
+                    total += c;
+                }
+
+                //
+                // The first pass is to warm up.
+                if(pass > 0) {
+                    System.out.format("%8d %12.1f %14.0f%n", nThreads,
+                            time / 1000000.0, total / (time / 1e9));
+                }
+            }
+        }
+        engine.close();
+    }
+}
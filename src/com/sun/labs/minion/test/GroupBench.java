@@ -0,0 +1,183 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.test;
+
+import com.sun.labs.minion.retrieval.ArrayGroup;
+import com.sun.labs.minion.retrieval.ScoredGroup;
+import java.util.Random;
+
+/**
+ * A micro-benchmark for intersecting and unioning groups of documents whose
+ * sizes are skewed.  For each ratio of sizes, the time taken by the group
+ * operations is compared with a plain linear merge of the document arrays.
+ *
+ * <p>
+ *
+ * Usage: <code>GroupBench [maxDoc] [reps]</code>
+ */
+public class GroupBench {
+
+    private static int[] sample(Random r, int n, int max) {
+        boolean[] in = new boolean[max];
+        for(int i = 0; i < n;) {
+            int d = 1 + r.nextInt(max - 1);
+            if(!in[d]) {
+                in[d] = true;
+                i++;
+            }
+        }
+        int[] ret = new int[n];
+        for(int d = 0, p = 0; d < max; d++) {
+            if(in[d]) {
+                ret[p++] = d;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * The linear merge intersection that the groups used to do.
+     */
+    private static int mergeIntersect(int[] d1, int n1, int[] d2, int n2,
+            int[] out) {
+        int i1 = 0, i2 = 0, n = 0;
+        while(i1 < n1 && i2 < n2) {
+            int x = d1[i1];
+            int y = d2[i2];
+            if(x < y) {
+                i1++;
+            } else if(x > y) {
+                i2++;
+            } else {
+                out[n++] = x;
+                i1++;
+                i2++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The linear merge union that the groups used to do.
+     */
+    private static int mergeUnion(int[] d1, int n1, int[] d2, int n2,
+            int[] out) {
+        int i1 = 0, i2 = 0, n = 0;
+        while(i1 < n1 && i2 < n2) {
+            int x = d1[i1];
+            int y = d2[i2];
+            if(x < y) {
+                out[n++] = x;
+                i1++;
+            } else {
+                out[n++] = y;
+                i2++;
+                if(x == y) {
+                    i1++;
+                }
+            }
+        }
+        System.arraycopy(d1, i1, out, n, n1 - i1);
+        n += n1 - i1;
+        System.arraycopy(d2, i2, out, n, n2 - i2);
+        return n + n2 - i2;
+    }
+
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int reps = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random r = new Random(1);
+        int large = max / 2;
+        int[] smalls = {50, 500, 5000, 50000, 500000, large};
+
+        System.out.format("%8s %8s %12s %12s %12s %12s %12s %12s%n",
+                "small", "large", "merge and", "and", "scored and",
+                "merge or", "or", "scored or");
+        for(int small : smalls) {
+            int[] d1 = sample(r, small, max);
+            int[] d2 = sample(r, large, max);
+            float[] s1 = new float[d1.length];
+            float[] s2 = new float[d2.length];
+            ArrayGroup g1 = new ArrayGroup(d1, d1.length);
+            ArrayGroup g2 = new ArrayGroup(d2, d2.length);
+            ScoredGroup sg1 = new ScoredGroup(d1, s1, d1.length);
+            ScoredGroup sg2 = new ScoredGroup(d2, s2, d2.length);
+            int[] out = new int[d1.length + d2.length];
+
+            //
+            // Enough iterations to get roughly the same amount of work
+            // done for each ratio.
+            int n = Math.max(1, reps * large / (small + large / 100));
+            long[] t = new long[6];
+            int check = 0;
+            for(int pass = 0; pass < 2; pass++) {
+                long[] pt = new long[6];
+                long s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += mergeIntersect(d1, d1.length, d2, d2.length, out);
+                }
+                pt[0] = System.nanoTime() - s;
+                s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += g1.intersect(g2).getSize();
+                }
+                pt[1] = System.nanoTime() - s;
+                s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += sg1.intersect(sg2).getSize();
+                }
+                pt[2] = System.nanoTime() - s;
+                s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += mergeUnion(d1, d1.length, d2, d2.length, out);
+                }
+                pt[3] = System.nanoTime() - s;
+                s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += g1.union(g2).getSize();
+                }
+                pt[4] = System.nanoTime() - s;
+                s = System.nanoTime();
+                for(int i = 0; i < n; i++) {
+                    check += sg1.union(sg2).getSize();
+                }
+                pt[5] = System.nanoTime() - s;
+
+                //
+                // The first pass is to warm up.
+                t = pt;
+            }
+            System.out.format("%8d %8d", small, large);
+            for(long x : t) {
+                System.out.format(" %12.2f", x / 1000.0 / n);
+            }
+            System.out.format("%n");
+            if(check == 0) {
+                System.out.println();
+            }
+        }
+        System.out.println("Times are microseconds per operation.");
+    }
+}
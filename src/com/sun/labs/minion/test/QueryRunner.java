@@ -34,6 +34,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.net.MalformedURLException;
 import java.util.Date;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -191,10 +192,18 @@ public class QueryRunner implements Runnable {
         //
         //Create the ENGINE
         try {
-            ENGINE = SearchEngineFactory.getSearchEngine(configFile, indexDir);
+            if(configFile == null) {
+                ENGINE = SearchEngineFactory.getSearchEngine(indexDir);
+            } else {
+                ENGINE = SearchEngineFactory.getSearchEngine(indexDir,
+                        new File(configFile).toURI().toURL());
+            }
         } catch(SearchEngineException e) {
             e.printStackTrace();
             return;
+        } catch(MalformedURLException e) {
+            e.printStackTrace();
+            return;
         }
         StopWatch wall = new StopWatch();
         wall.start();
@@ -290,6 +299,8 @@ public class QueryRunner implements Runnable {
         logger.info("Main: closing the engine");
         logger.info(String.format("avg speed %.1f ms/q, total: %d ms",
                 avgTime, wall.getTime()));
+        logger.info(String.format("throughput: %.1f q/s with %d threads",
+                nQs * 1000.0 / wall.getTime(), threadCount));
         try {
             ENGINE.close();
         } catch(SearchEngineException e) {
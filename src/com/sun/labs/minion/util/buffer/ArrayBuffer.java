@@ -473,6 +473,21 @@ public class ArrayBuffer extends StdBufferImpl implements Cloneable {
         return units[off+i];
     }
 
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.  This is a specialization of the general method that copies
+     * directly from the backing array.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param o The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int o, int n) {
+        System.arraycopy(units, pos, b, o, n);
+        pos += n;
+    }
+
     /**
      * Decodes an integer stored using the 7 bit encoding.  This is a
      * specialization of the general method that uses get for efficiency
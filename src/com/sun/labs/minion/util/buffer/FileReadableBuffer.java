@@ -24,6 +24,8 @@
 package com.sun.labs.minion.util.buffer;
 
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -38,6 +40,14 @@ import java.util.logging.Logger;
  * com.sun.labs.minion.indexer.dictionary.DiskDictionary DiskDictionary} so that only
  * a small amount of dictionary information needs to be in main memory at
  * any given time.
+ *
+ * <p>
+ *
+ * Data is read using positional reads on the file's channel, so the file
+ * pointer of the underlying file is never used or changed, and any number of
+ * buffers on the same file can read from it at the same time without
+ * locking.  Note that a thread that is interrupted while reading will cause
+ * the channel (and therefore the file) to be closed.
  */
 public class FileReadableBuffer extends StdReadableImpl {
 
@@ -46,6 +56,11 @@ public class FileReadableBuffer extends StdReadableImpl {
      */
     protected RandomAccessFile raf;
 
+    /**
+     * The channel for the file, which we use for positional reads.
+     */
+    protected FileChannel chan;
+
     /**
      * The offset in the file of the start of our in-memory buffer.
      */
@@ -123,6 +138,7 @@ public class FileReadableBuffer extends StdReadableImpl {
             int limit,
             int buffSize) {
         this.raf = raf;
+        chan = raf.getChannel();
         bs = offset;
         be = offset + limit;
         pos = bs;
@@ -149,15 +165,19 @@ public class FileReadableBuffer extends StdReadableImpl {
      * @return The number of bytes actually read from the file.
      */
     protected int read(long off) {
-        synchronized(raf) {
-            try {
-                raf.seek(off);
-                return raf.read(buff);
-            } catch(java.io.IOException ioe) {
-                logger.log(Level.SEVERE, 
-                        String.format("Error reading from file buffer: bs: %d be: %d pos: %d off: %d", bs, be, pos, off), ioe);
-                return -1;
+        try {
+            ByteBuffer b = ByteBuffer.wrap(buff);
+            while(b.hasRemaining()) {
+                int n = chan.read(b, off + b.position());
+                if(n < 0) {
+                    break;
+                }
             }
+            return b.position() == 0 ? -1 : b.position();
+        } catch(java.io.IOException ioe) {
+            logger.log(Level.SEVERE,
+                    String.format("Error reading from file buffer: bs: %d be: %d pos: %d off: %d", bs, be, pos, off), ioe);
+            return -1;
         }
     }
 
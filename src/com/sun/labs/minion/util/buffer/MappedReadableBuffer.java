@@ -0,0 +1,286 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.util.buffer;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A readable buffer that is backed by a memory mapped file.
+ *
+ * <p>
+ *
+ * The file is mapped in segments of at most 1GB, so files larger than 2GB
+ * can be mapped and all offsets into the file are longs.  Reads go straight
+ * to the mapped memory, so there is no in-memory buffer to fill and the
+ * operating system's page cache does the caching for us.
+ *
+ * <p>
+ *
+ * Buffers for parts of the file are made using {@link #view}, and
+ * {@link #duplicate} and {@link #slice} share the mapped segments rather than
+ * copying any data, so these are cheap operations.  The segments are only
+ * ever read using absolute gets, so a number of buffers on the same file can
+ * be used by different threads at the same time, although a single buffer
+ * cannot.
+ *
+ * <p>
+ *
+ * The mapping is released when the buffers that use it are garbage
+ * collected, not when the file is closed.
+ */
+public class MappedReadableBuffer extends StdReadableImpl {
+
+    /**
+     * The number of bits of an offset that address a byte in a segment.
+     */
+    protected static final int SEGMENT_BITS = 30;
+
+    /**
+     * The size of a segment.
+     */
+    protected static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    /**
+     * A mask for getting the position in a segment from a file offset.
+     */
+    protected static final int SEGMENT_MASK = (int) (SEGMENT_SIZE - 1);
+
+    /**
+     * The mapped segments of the file.  These are shared by all of the
+     * buffers for the file.
+     */
+    protected ByteBuffer[] segs;
+
+    /**
+     * The offset in the file of the buffer that we represent.
+     */
+    protected long bs;
+
+    /**
+     * The offset in the file of the end of the buffer that we represent.
+     */
+    protected long be;
+
+    /**
+     * The offset in the file of the current position in the buffer.
+     */
+    protected long pos;
+
+    /**
+     * Creates a buffer for the whole of the given file, mapping it into
+     * memory.  The positions in this buffer are the offsets in the file.
+     *
+     * @param raf the file to map
+     * @throws java.io.IOException if there is any error mapping the file
+     */
+    public MappedReadableBuffer(RandomAccessFile raf)
+            throws java.io.IOException {
+        FileChannel chan = raf.getChannel();
+        long size = chan.size();
+        segs = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for(int i = 0; i < segs.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            MappedByteBuffer mbb = chan.map(FileChannel.MapMode.READ_ONLY,
+                    start, Math.min(SEGMENT_SIZE, size - start));
+            segs[i] = mbb;
+        }
+        bs = 0;
+        be = size;
+        pos = 0;
+    }
+
+    /**
+     * Creates a buffer for a region of the given file, mapping only that
+     * region into memory.  The positions in this buffer are relative to the
+     * start of the region.
+     *
+     * @param raf the file to map
+     * @param offset the offset in the file where the region starts
+     * @param size the number of bytes in the region
+     * @throws java.io.IOException if there is any error mapping the file
+     */
+    public MappedReadableBuffer(RandomAccessFile raf, long offset, long size)
+            throws java.io.IOException {
+        FileChannel chan = raf.getChannel();
+        segs = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for(int i = 0; i < segs.length; i++) {
+            long start = (long) i << SEGMENT_BITS;
+            segs[i] = chan.map(FileChannel.MapMode.READ_ONLY,
+                    offset + start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        bs = 0;
+        be = size;
+        pos = 0;
+    }
+
+    /**
+     * Creates a buffer that shares the given segments.
+     *
+     * @param segs the mapped segments of the file
+     * @param bs the offset in the file where our buffer starts
+     * @param be the offset in the file where our buffer ends
+     */
+    protected MappedReadableBuffer(ByteBuffer[] segs, long bs, long be) {
+        this.segs = segs;
+        this.bs = bs;
+        this.be = be;
+        pos = bs;
+    }
+
+    /**
+     * Gets a buffer for part of the mapped file.  No data is copied.
+     *
+     * @param offset the offset in the file where the new buffer starts
+     * @param size the number of bytes in the new buffer
+     * @return a buffer whose position 0 is at the given offset in the file.
+     */
+    public MappedReadableBuffer view(long offset, int size) {
+        return new MappedReadableBuffer(segs, offset, offset + size);
+    }
+
+    /**
+     * Gets the byte at the given offset in the file.
+     */
+    protected byte getAt(long off) {
+        return segs[(int) (off >>> SEGMENT_BITS)].get((int) off & SEGMENT_MASK);
+    }
+
+    /**
+     * Duplicates this buffer, so that it can be used safely by other
+     * readers.  The data is shared with this buffer, but the duplicate has
+     * its own position.
+     *
+     * @return a buffer with the same contents and position as this one.
+     */
+    public ReadableBuffer duplicate() {
+        MappedReadableBuffer ret = new MappedReadableBuffer(segs, bs, be);
+        ret.pos = pos;
+        return ret;
+    }
+
+    /**
+     * Slices this buffer so that a sub-buffer can be used.  The data is
+     * shared with this buffer.
+     *
+     * @param p The position at which the buffer should be sliced.
+     * @param s The number of bytes that should be in the sliced buffer.
+     * @return A new buffer whose first position is the given position in
+     * this buffer and whose limit is the given size.
+     */
+    public ReadableBuffer slice(int p, int s) {
+        return new MappedReadableBuffer(segs, bs + p, bs + p + s);
+    }
+
+    /**
+     * Gets the limit of this buffer, i.e., the last readable position.
+     * @return The last readable position in this buffer.  For a buffer
+     * covering more than 2GB, this will be <code>Integer.MAX_VALUE</code>.
+     */
+    public int limit() {
+        return (int) Math.min(be - bs, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sets the limit of this buffer, i.e., the last readable position.
+     * @param l The limit that we wish to set for the buffer.
+     */
+    public void limit(int l) {
+        be = bs + l;
+    }
+
+    /**
+     * Returns the number of bytes remaining to be read in the buffer.
+     * @return The number of bytes remaining in the buffer.
+     */
+    public int remaining() {
+        return (int) Math.min(be - pos, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the position of the buffer.
+     * @return The current position in the buffer.
+     */
+    public int position() {
+        return (int) (pos - bs);
+    }
+
+    /**
+     * Positions the buffer.
+     * @param i The position to which we should set the buffer.
+     */
+    public void position(int i) {
+        pos = bs + i;
+    }
+
+    /**
+     * Gets the byte at the given position in the buffer.
+     * @param i The position from which we wish to get a byte.
+     * @return The byte at the given position.
+     */
+    public byte get(int i) {
+        return getAt(bs + i);
+    }
+
+    /**
+     * Gets the next byte in the buffer.
+     * @return The byte at the current buffer position.  This will advance
+     * the current position.
+     */
+    public byte get() {
+        return getAt(pos++);
+    }
+
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.  The bytes are copied a segment at a time.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param off The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int off, int n) {
+        while(n > 0) {
+            int sp = (int) pos & SEGMENT_MASK;
+            ByteBuffer seg = segs[(int) (pos >>> SEGMENT_BITS)].duplicate();
+            int k = Math.min(n, seg.limit() - sp);
+            seg.position(sp);
+            seg.get(b, off, k);
+            pos += k;
+            off += k;
+            n -= k;
+        }
+    }
+
+    /**
+     * Gets a string representation of the buffer.
+     * @return A string representation of the buffer.
+     */
+    public String toString() {
+        return "mapped: (" + bs + "," + be + ") pos: " + pos;
+    }
+} // MappedReadableBuffer
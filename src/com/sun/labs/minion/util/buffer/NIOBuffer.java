@@ -382,6 +382,19 @@ public class NIOBuffer extends StdBufferImpl {
         return units.get(i);
     }
 
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.  This uses the bulk get of the underlying buffer.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param off The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int off, int n) {
+        units.get(b, off, n);
+    }
+
     /**
      * Decodes an integer stored using the 7 bit encoding.  This is a
      * specialization of the general method that uses get for efficiency
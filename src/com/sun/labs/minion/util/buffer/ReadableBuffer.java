@@ -77,6 +77,17 @@ public interface ReadableBuffer extends Buffer {
      */
     public byte get(int i);
 
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.  Calling this method advances the position.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param off The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int off, int n);
+
     /**
      * Decodes a postive integer that was coded using a specific number of
      * bytes.
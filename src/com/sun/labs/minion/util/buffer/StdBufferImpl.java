@@ -409,6 +409,21 @@ public abstract class StdBufferImpl implements WriteableBuffer, ReadableBuffer {
         return Float.intBitsToFloat(byteDecode(4));
     }
 
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param off The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int off, int n) {
+        for(int i = 0; i < n; i++) {
+            b[off + i] = get();
+        }
+    }
+
     /**
      * Skips an integer encoded using our 7 bit encoding without actually
      * decoding it.
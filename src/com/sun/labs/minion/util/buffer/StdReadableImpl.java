@@ -118,6 +118,21 @@ public abstract class StdReadableImpl implements ReadableBuffer {
         return res;
     }
 
+    /**
+     * Gets a number of bytes from this buffer, starting at the current
+     * position.
+     *
+     * @param b The array into which the bytes will be read.
+     * @param off The offset in <code>b</code> where the first byte should
+     * be put.
+     * @param n The number of bytes to read.
+     */
+    public void get(byte[] b, int off, int n) {
+        for(int i = 0; i < n; i++) {
+            b[off + i] = get();
+        }
+    }
+
     /**
      * Skips a byte encoded integer without decoding it.
      *
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.SearchEngineException;
+import com.sun.labs.minion.SearchEngineFactory;
+import java.io.File;
+import java.util.EnumSet;
+
+/**
+ * An index in the temporary directory for tests that need several
+ * partitions.  Closing and reopening the engine dumps the documents indexed
+ * so far into a new partition.
+ */
+public class TestIndex {
+
+    private File indexDir;
+
+    private SearchEngine e;
+
+    /**
+     * Creates an empty index, removing any index left behind by an earlier
+     * run.
+     *
+     * @param name the name of the index directory in the temporary directory
+     */
+    public TestIndex(String name) throws SearchEngineException {
+        indexDir = new File(System.getProperty("java.io.tmpdir"), name);
+        if(indexDir.exists()) {
+            TestUtil.deleteDirectory(indexDir);
+        }
+        e = SearchEngineFactory.getSearchEngine(indexDir.toString());
+    }
+
+    /**
+     * Gets the engine for the index.  The engine changes when the index is
+     * reopened.
+     */
+    public SearchEngine getEngine() {
+        return e;
+    }
+
+    /**
+     * Defines a saved field.
+     *
+     * @param name the name of the field
+     * @param type the type of the field
+     * @param attrs any attributes that the field has besides being saved
+     * @return the engine for the index
+     */
+    public SearchEngine defineSaved(String name, FieldInfo.Type type,
+            FieldInfo.Attribute... attrs) throws SearchEngineException {
+        EnumSet<FieldInfo.Attribute> as = EnumSet.of(FieldInfo.Attribute.SAVED);
+        for(FieldInfo.Attribute a : attrs) {
+            as.add(a);
+        }
+        e.defineField(new FieldInfo(name, as, type));
+        return e;
+    }
+
+    /**
+     * Closes and reopens the index, so that the documents indexed since the
+     * last time are dumped into a partition and any deletions are written.
+     *
+     * @return the new engine for the index
+     */
+    public SearchEngine reopen() throws SearchEngineException {
+        e.close();
+        e = SearchEngineFactory.getSearchEngine(indexDir.toString());
+        return e;
+    }
+
+    /**
+     * Merges all of the partitions in the index into one and reopens it.
+     *
+     * @return the new engine for the index
+     */
+    public SearchEngine merge() throws SearchEngineException {
+        e.optimize();
+        return reopen();
+    }
+
+    /**
+     * Closes the engine and removes the index.
+     */
+    public void delete() throws SearchEngineException {
+        if(e != null) {
+            e.close();
+            e = null;
+        }
+        TestUtil.deleteDirectory(indexDir);
+    }
+}
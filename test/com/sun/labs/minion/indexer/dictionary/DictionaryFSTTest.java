@@ -0,0 +1,178 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.indexer.entry.Entry;
+import com.sun.labs.minion.indexer.entry.IDEntry;
+import com.sun.labs.minion.pipeline.ShingleStage;
+import com.sun.labs.minion.util.Util;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the dictionary transducer.
+ */
+public class DictionaryFSTTest {
+
+    private String[] names;
+
+    private DictionaryFST fst;
+
+    public DictionaryFSTTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Random r = new Random(42);
+        List<String> l = new ArrayList<String>();
+        for(int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + r.nextInt(8);
+            for(int j = 0; j < len; j++) {
+                sb.append((char) ((r.nextInt(10) == 0 ? 'A' : 'a') +
+                        r.nextInt(5)));
+            }
+            if(!l.contains(sb.toString())) {
+                l.add(sb.toString());
+            }
+        }
+        l.add(ShingleStage.shingle("ab", "cd"));
+        names = l.toArray(new String[0]);
+        Arrays.sort(names);
+        fst = new DictionaryFST(entries(names));
+    }
+
+    private static Entry[] entries(String[] names) {
+        Entry[] ret = new Entry[names.length];
+        for(int i = 0; i < names.length; i++) {
+            IDEntry e = new IDEntry(names[i]);
+            e.setID(i + 1);
+            ret[i] = e;
+        }
+        return ret;
+    }
+
+    /**
+     * Gets the IDs that match a pattern by checking every name.
+     */
+    private int[] brute(String pat, boolean caseSensitive) {
+        List<Integer> l = new ArrayList<Integer>();
+        for(int i = 0; i < names.length; i++) {
+            if(!ShingleStage.isShingle(names[i]) &&
+                    Util.match(pat, names[i], caseSensitive)) {
+                l.add(i + 1);
+            }
+        }
+        int[] ret = new int[l.size()];
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = l.get(i);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testLookup() {
+        assertEquals(names.length - 1, fst.size());
+        for(int i = 0; i < names.length; i++) {
+            if(!ShingleStage.isShingle(names[i])) {
+                assertEquals(i + 1, fst.getID(names[i]));
+            }
+        }
+        assertEquals(0, fst.getID("zzz"));
+        assertEquals(0, fst.getID(ShingleStage.shingle("ab", "cd")));
+    }
+
+    @Test
+    public void testMatching() {
+        String[] pats = {"*", "a*", "*a", "*ab*", "?b*c", "a?c?e", "*b*d*",
+            "A*", "**e", "abcde", "?", "*c?"};
+        for(String pat : pats) {
+            assertArrayEquals(pat, brute(pat, true),
+                    fst.getMatching(pat, true, 0, null));
+            assertArrayEquals(pat, brute(pat, false),
+                    fst.getMatching(pat, false, 0, null));
+        }
+        assertEquals(5, fst.getMatching("*", true, 5, null).length);
+    }
+
+    @Test
+    public void testSubstring() {
+        assertArrayEquals(brute("*cd*", false),
+                fst.getSubstring("cd", false, false, false, 0, null));
+        assertArrayEquals(brute("cd*", true),
+                fst.getSubstring("cd", true, true, false, 0, null));
+        assertArrayEquals(brute("*cd", true),
+                fst.getSubstring("cd", true, false, true, 0, null));
+        assertEquals(0,
+                fst.getSubstring("?", true, false, false, 0, null).length);
+    }
+
+    @Test
+    public void testVariants() {
+        String[] words = {"abcd", "eeee", "aBcde", "x", "bbaaccdd"};
+        for(String w : words) {
+            for(int k = 0; k <= 2; k++) {
+                List<Integer> exp = new ArrayList<Integer>();
+                for(int i = 0; i < names.length; i++) {
+                    if(!ShingleStage.isShingle(names[i]) &&
+                            Util.levenshteinDistance(w, names[i]) <= k) {
+                        exp.add(i + 1);
+                    }
+                }
+                List<Integer> got = new ArrayList<Integer>();
+                for(DictionaryFST.Variant v : fst.getVariants(w, true, k, null)) {
+                    assertEquals(Util.levenshteinDistance(w, names[v.id - 1]),
+                            v.dist);
+                    got.add(v.id);
+                }
+                assertEquals(w + " " + k, exp, got);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        File f = File.createTempFile("fst", ".dict");
+        f.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        raf.writeInt(17);
+        fst.write(raf);
+        raf.writeInt(42);
+        raf.seek(4);
+        DictionaryFST read = new DictionaryFST(raf);
+        assertEquals(42, raf.readInt());
+        raf.close();
+        assertEquals(fst.size(), read.size());
+        assertArrayEquals(fst.getMatching("*b?d*", false, 0, null),
+                read.getMatching("*b?d*", false, 0, null));
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.Result;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.engine.SearchEngineImpl;
+import com.sun.labs.minion.indexer.TestIndex;
+import com.sun.labs.minion.indexer.entry.QueryEntry;
+import com.sun.labs.minion.indexer.partition.DiskPartition;
+import com.sun.labs.minion.indexer.partition.InvFileDiskPartition;
+import com.sun.labs.minion.retrieval.ResultImpl;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the columns of sort values for saved fields.
+ */
+public class DocValuesTest {
+
+    private static String[] fields = {"s", "n", "f", "d"};
+
+    private TestIndex index;
+
+    private SearchEngine e;
+
+    public DocValuesTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        index = new TestIndex("docvalstest.idx");
+        index.defineSaved("s", FieldInfo.Type.STRING);
+        index.defineSaved("n", FieldInfo.Type.INTEGER);
+        index.defineSaved("f", FieldInfo.Type.FLOAT);
+        e = index.defineSaved("d", FieldInfo.Type.DATE);
+        Random r = new Random(7);
+        for(int i = 0; i < 400; i++) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("text", "t" + r.nextInt(5));
+
+            //
+            // Leave some of the fields out, so that we have some documents
+            // without values.
+            if(r.nextInt(4) > 0) {
+                List<String> l = new ArrayList<String>();
+                l.add("v" + r.nextInt(60));
+                if(r.nextBoolean()) {
+                    l.add("v" + r.nextInt(60));
+                }
+                m.put("s", l);
+            }
+            if(r.nextInt(4) > 0) {
+                m.put("n", (long) (r.nextInt(100) - 50));
+            }
+            if(r.nextInt(4) > 0) {
+                m.put("f", r.nextDouble() - 0.5);
+            }
+            if(r.nextInt(4) > 0) {
+                m.put("d", new Date(1000L * r.nextInt(100000)));
+            }
+            e.index("d" + i, m);
+            if(i == 199) {
+                e = index.reopen();
+            }
+        }
+        e = index.reopen();
+        for(int i = 0; i < 400; i += 9) {
+            e.delete("d" + i);
+        }
+        e = index.reopen();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.delete();
+    }
+
+    /**
+     * Checks that the columns for each partition hold the value that we
+     * would fetch for each document.
+     */
+    private void checkColumns() {
+        List<DiskPartition> parts =
+                ((SearchEngineImpl) e).getManager().getActivePartitions();
+        assertFalse(parts.isEmpty());
+        for(DiskPartition p : parts) {
+            DiskFieldStore fs = ((InvFileDiskPartition) p).getFieldStore();
+            for(String name : fields) {
+                BasicField bf = (BasicField) fs.getSavedField(name);
+                DocValues dv = bf.getDocValues();
+                assertNotNull(dv);
+                BasicField.Fetcher f = bf.getFetcher();
+                for(int i = 1; i <= p.getMaxDocumentID(); i++) {
+                    Object v = f.fetchOne(i);
+                    switch(dv.getType()) {
+                        case STRING:
+                            QueryEntry qe =
+                                    ((DiskDictionary) bf.values).getByID(dv.getOrd(i));
+                            assertEquals(v, qe == null ? "" : qe.getName());
+                            break;
+                        case INTEGER:
+                            assertEquals(v, dv.getLong(i));
+                            break;
+                        case FLOAT:
+                            assertEquals(v, dv.getDouble(i));
+                            break;
+                        case DATE:
+                            assertEquals(((Date) v).getTime(), dv.getLong(i));
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that sorting by a field gives results in order of the field
+     * values.
+     */
+    private void checkSort(String field, boolean increasing) throws Exception {
+        List<Result> l = e.search("t1 <or> t2 <or> t3",
+                (increasing ? "+" : "-") + field).getAllResults(true);
+        assertTrue(l.size() > 100);
+        for(int i = 1; i < l.size(); i++) {
+            Comparable prev =
+                    (Comparable) ((ResultImpl) l.get(i - 1)).getSortVals()[0];
+            Object curr = ((ResultImpl) l.get(i)).getSortVals()[0];
+            int cmp = prev.compareTo(curr);
+            assertTrue(increasing ? cmp <= 0 : cmp >= 0);
+        }
+    }
+
+    @Test
+    public void testDumpedColumns() throws Exception {
+        checkColumns();
+        for(String name : fields) {
+            checkSort(name, true);
+            checkSort(name, false);
+        }
+    }
+
+    @Test
+    public void testMergedColumns() throws Exception {
+        e = index.merge();
+        assertEquals(1,
+                ((SearchEngineImpl) e).getManager().getActivePartitions().size());
+        checkColumns();
+        for(String name : fields) {
+            checkSort(name, true);
+            checkSort(name, false);
+        }
+    }
+}
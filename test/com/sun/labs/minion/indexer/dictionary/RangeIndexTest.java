@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.Result;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.indexer.TestIndex;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for range queries on saved fields that have range indices.
+ */
+public class RangeIndexTest {
+
+    private TestIndex index;
+
+    private SearchEngine e;
+
+    /**
+     * The values of the fields for each document.
+     */
+    private Map<String, List<Long>> nVals = new HashMap<String, List<Long>>();
+
+    private Map<String, List<Long>> mVals = new HashMap<String, List<Long>>();
+
+    public RangeIndexTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        index = new TestIndex("rangeindextest.idx");
+        index.defineSaved("n", FieldInfo.Type.INTEGER);
+        e = index.defineSaved("m", FieldInfo.Type.INTEGER);
+
+        //
+        // Field n has one value per document from a wide range, while m has
+        // up to three values from a narrower one.
+        Random r = new Random(5);
+        for(int i = 0; i < 1500; i++) {
+            String key = "d" + i;
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("text", "doc");
+            List<Long> nl = new ArrayList<Long>();
+            if(r.nextInt(10) > 0) {
+                nl.add((long) r.nextInt(3000) - 500);
+                m.put("n", nl.get(0));
+            }
+            List<Long> ml = new ArrayList<Long>();
+            for(int j = r.nextInt(4); j > 0; j--) {
+                ml.add((long) r.nextInt(300));
+            }
+            if(!ml.isEmpty()) {
+                m.put("m", ml);
+            }
+            nVals.put(key, nl);
+            mVals.put(key, ml);
+            e.index(key, m);
+            if(i % 500 == 499) {
+                e = index.reopen();
+            }
+        }
+        e = index.reopen();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.delete();
+    }
+
+    /**
+     * Checks that a range query returns the documents with a value in the
+     * range.
+     */
+    private void checkRange(String field, Map<String, List<Long>> vals,
+            long lo, long hi) throws Exception {
+        Set<String> expected = new TreeSet<String>();
+        for(Map.Entry<String, List<Long>> en : vals.entrySet()) {
+            for(long v : en.getValue()) {
+                if(v >= lo && v < hi) {
+                    expected.add(en.getKey());
+                }
+            }
+        }
+        Set<String> got = new TreeSet<String>();
+        for(Result r : e.search(String.format("%s >= %d <and> %s < %d",
+                field, lo, field, hi)).getAllResults(false)) {
+            got.add(r.getKey());
+        }
+        assertEquals(field + " [" + lo + ", " + hi + ")", expected, got);
+    }
+
+    private void checkRanges() throws Exception {
+        Random r = new Random(9);
+        for(int i = 0; i < 40; i++) {
+            long lo = r.nextInt(3200) - 600;
+            checkRange("n", nVals, lo, lo + r.nextInt(i % 2 == 0 ? 40 : 2000));
+            lo = r.nextInt(320) - 10;
+            checkRange("m", mVals, lo, lo + r.nextInt(150));
+        }
+        checkRange("n", nVals, -1000, 5000);
+        checkRange("m", mVals, 0, 300);
+    }
+
+    @Test
+    public void testDumpedRanges() throws Exception {
+        checkRanges();
+    }
+
+    @Test
+    public void testMergedRanges() throws Exception {
+        e = index.merge();
+        checkRanges();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.indexer.dictionary;
+
+import com.sun.labs.minion.FieldFrequency;
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.ResultSet;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.indexer.TestIndex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the histograms of the values of saved fields.
+ */
+public class ValueHistogramTest {
+
+    private TestIndex index;
+
+    private SearchEngine e;
+
+    public ValueHistogramTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        index = new TestIndex("valhisttest.idx");
+        index.defineSaved("tag", FieldInfo.Type.STRING);
+        index.defineSaved("name", FieldInfo.Type.STRING,
+                FieldInfo.Attribute.CASE_SENSITIVE);
+        e = index.defineSaved("n", FieldInfo.Type.INTEGER);
+
+        //
+        // Skew the tags so that a few are much more frequent than the rest,
+        // and give some documents the same tag twice.
+        Random r = new Random(11);
+        for(int i = 0; i < 600; i++) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("text", "doc");
+            List<String> tags = new ArrayList<String>();
+            int t = (int) (100 * Math.pow(r.nextDouble(), 3));
+            tags.add("t" + t);
+            if(r.nextInt(4) == 0) {
+                tags.add("t" + t);
+                tags.add("t" + r.nextInt(100));
+            }
+            m.put("tag", tags);
+            m.put("name", (r.nextBoolean() ? "N" : "n") + r.nextInt(10));
+            m.put("n", (long) r.nextInt(50));
+            e.index("d" + i, m);
+            if(i % 200 == 199) {
+                e = index.reopen();
+            }
+        }
+        e = index.reopen();
+        for(int i = 0; i < 600; i += 7) {
+            e.delete("d" + i);
+        }
+        e = index.reopen();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.delete();
+    }
+
+    /**
+     * Checks the top values of a field against the values counted in a
+     * result set containing all of the undeleted documents.
+     */
+    private void checkTopValues(String field) throws Exception {
+        ResultSet rs = e.search("doc");
+        Map<Object, Integer> counts = new HashMap<Object, Integer>();
+        for(FieldFrequency ff : rs.facet(field, 0)) {
+            counts.put(ff.getVal(), ff.getFreq());
+        }
+        List<Integer> freqs = new ArrayList<Integer>(counts.values());
+        Collections.sort(freqs, Collections.reverseOrder());
+
+        for(int n : new int[]{1, 3, 10, 0}) {
+            List<FieldFrequency> top = e.getTopFieldValues(field, n, false);
+            assertEquals(n < 1 ? freqs.size() : n, top.size());
+            for(int i = 0; i < top.size(); i++) {
+                FieldFrequency ff = top.get(i);
+                assertEquals(freqs.get(i).intValue(), ff.getFreq());
+                assertEquals(counts.get(ff.getVal()).intValue(), ff.getFreq());
+            }
+        }
+    }
+
+    @Test
+    public void testDumpedHistograms() throws Exception {
+        checkTopValues("tag");
+        checkTopValues("name");
+        checkTopValues("n");
+    }
+
+    @Test
+    public void testMergedHistograms() throws Exception {
+        e = index.merge();
+        checkTopValues("tag");
+        checkTopValues("name");
+        checkTopValues("n");
+
+        //
+        // Deleting documents from the merged partition should be reflected
+        // in the counts.
+        for(int i = 1; i < 600; i += 5) {
+            e.delete("d" + i);
+        }
+        e = index.reopen();
+        checkTopValues("tag");
+        checkTopValues("n");
+    }
+
+    @Test
+    public void testResultSetValues() throws Exception {
+        ResultSet rs = e.search("doc");
+        List<FieldFrequency> l = e.getTopFieldValues("name", 0, true, rs);
+        assertEquals(10, l.size());
+        int total = 0;
+        for(FieldFrequency ff : l) {
+            assertEquals(((String) ff.getVal()).toLowerCase(), ff.getVal());
+            total += ff.getFreq();
+        }
+        assertEquals(rs.size(), total);
+
+        List<FieldFrequency> f = rs.facet("tag", 5);
+        l = e.getTopFieldValues("tag", 5, false, rs);
+        assertEquals(f.size(), l.size());
+        for(int i = 0; i < f.size(); i++) {
+            assertEquals(f.get(i).getVal(), l.get(i).getVal());
+            assertEquals(f.get(i).getFreq(), l.get(i).getFreq());
+        }
+    }
+}
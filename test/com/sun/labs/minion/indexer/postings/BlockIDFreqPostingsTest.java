@@ -0,0 +1,151 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package com.sun.labs.minion.indexer.postings;
+
+import com.sun.labs.minion.util.buffer.ArrayBuffer;
+import com.sun.labs.minion.util.buffer.ReadableBuffer;
+import com.sun.labs.minion.util.buffer.WriteableBuffer;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the block encoded postings.
+ */
+public class BlockIDFreqPostingsTest {
+
+    private int[] ids;
+
+    private int[] freqs;
+
+    public BlockIDFreqPostingsTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Random r = new Random(42);
+        int n = 10000;
+        ids = new int[n];
+        freqs = new int[n];
+        int id = 0;
+        for(int i = 0; i < n; i++) {
+            id += 1 + (r.nextInt(10) == 0 ? r.nextInt(5000) : r.nextInt(8));
+            ids[i] = id;
+            freqs[i] = r.nextInt(10) == 0 ? 1 + r.nextInt(300) : 1;
+        }
+    }
+
+    private static ReadableBuffer write(Postings p) {
+        p.finish();
+        ArrayBuffer all = new ArrayBuffer(1024);
+        for(WriteableBuffer b : p.getBuffers()) {
+            all.append(b.getReadableBuffer());
+        }
+        return all.getReadableBuffer();
+    }
+
+    private Postings index(Postings p) {
+        OccurrenceImpl o = new OccurrenceImpl();
+        for(int i = 0; i < ids.length; i++) {
+            o.setID(ids[i]);
+            o.setCount(freqs[i]);
+            p.add(o);
+        }
+        return p;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ReadableBuffer b = write(index(new BlockIDFreqPostings()));
+        assertTrue(BlockIDPostings.isBlockEncoded(b));
+        Postings p = new BlockIDFreqPostings(b);
+        assertEquals(ids.length, p.getN());
+        int max = 0;
+        for(int f : freqs) {
+            max = Math.max(f, max);
+        }
+        assertEquals(max, p.getMaxFDT());
+        PostingsIterator pi = p.iterator(null);
+        int n = 0;
+        while(pi.next()) {
+            assertEquals(ids[n], pi.getID());
+            assertEquals(freqs[n], pi.getFreq());
+            n++;
+        }
+        assertEquals(ids.length, n);
+    }
+
+    @Test
+    public void testIterateUnwritten() {
+        Postings p = index(new BlockIDFreqPostings());
+        p.finish();
+        PostingsIterator pi = p.iterator(null);
+        int n = 0;
+        while(pi.next()) {
+            assertEquals(ids[n], pi.getID());
+            assertEquals(freqs[n], pi.getFreq());
+            n++;
+        }
+        assertEquals(ids.length, n);
+        assertTrue(pi.findID(ids[ids.length / 2]));
+    }
+
+    @Test
+    public void testFindID() {
+        Postings p = new BlockIDFreqPostings(write(index(new BlockIDFreqPostings())));
+        PostingsIterator pi = p.iterator(null);
+        for(int i = 0; i < ids.length; i += 37) {
+            assertTrue(pi.findID(ids[i]));
+            assertEquals(freqs[i], pi.getFreq());
+            if(i + 1 < ids.length && pi.next()) {
+                assertEquals(ids[i + 1], pi.getID());
+            }
+        }
+        pi.reset();
+        assertFalse(pi.findID(ids[ids.length - 1] + 1));
+    }
+
+    @Test
+    public void testBlockMax() {
+        Postings p = new BlockIDFreqPostings(write(index(new BlockIDFreqPostings())));
+        BlockMaxPostingsIterator pi =
+                (BlockMaxPostingsIterator) p.iterator(null);
+        assertEquals((float) p.getMaxFDT(), pi.getMaxWeight(), 0);
+        for(int i = 0; i < ids.length; i += 53) {
+            int last = pi.advanceShallow(ids[i]);
+            assertTrue(last >= ids[i]);
+            int max = 0;
+            for(int j = i; j < ids.length && ids[j] <= last; j++) {
+                max = Math.max(freqs[j], max);
+            }
+            assertTrue(freqs[i] <= pi.getBlockMaxFreq());
+            assertTrue(max <= pi.getBlockMaxFreq());
+        }
+        assertEquals(-1, pi.advanceShallow(ids[ids.length - 1] + 1));
+    }
+
+    @Test
+    public void testAppendByteEncoded() {
+        ReadableBuffer old = write(index(new IDFreqPostings()));
+        assertFalse(BlockIDPostings.isBlockEncoded(old));
+        BlockIDFreqPostings np = new BlockIDFreqPostings();
+        np.append(new IDFreqPostings(old), 1);
+        Postings p = new BlockIDFreqPostings(write(np));
+        PostingsIterator pi = p.iterator(null);
+        int[] bi = new int[1000];
+        int[] bf = new int[1000];
+        int n = 0;
+        int g;
+        while((g = pi.get(bi, bf)) > 0) {
+            for(int i = 0; i < g; i++, n++) {
+                assertEquals(ids[n], bi[i]);
+                assertEquals(freqs[n], bf[i]);
+            }
+        }
+        assertEquals(ids.length, n);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the shingle stage.
+ */
+public class ShingleStageTest {
+
+    private ShingleStage ss;
+
+    private List<String> got;
+
+    public ShingleStageTest() {
+    }
+
+    @Before
+    public void setUp() {
+        got = new ArrayList<String>();
+        ss = new ShingleStage();
+        ss.setDownstream(new StageAdapter() {
+
+            @Override
+            public void token(Token t) {
+                got.add(t.getToken() + "@" + t.getWordNum());
+            }
+        });
+    }
+
+    private static String sh(String w1, String w2) {
+        return ShingleStage.shingle(w1, w2);
+    }
+
+    @Test
+    public void testAdjacentWords() {
+        ss.startDocument("d1");
+        ss.token(new Token("to", 1, Token.NORMAL));
+        ss.token(new Token("be", 2, Token.NORMAL));
+        ss.token(new Token("or", 3, Token.NORMAL));
+        assertEquals(Arrays.asList(ShingleStage.marker(null) + "@0",
+                "to@1", "be@2", sh("to", "be") + "@2",
+                "or@3", sh("be", "or") + "@3"), got);
+        assertTrue(ShingleStage.isShingle(got.get(3)));
+        assertFalse(ShingleStage.isShingle("be"));
+    }
+
+    @Test
+    public void testGapsAndDocuments() {
+        ss.startDocument("d1");
+        ss.token(new Token("a", 1, Token.NORMAL));
+        ss.token(new Token("b", 3, Token.NORMAL));
+        ss.startDocument("d2");
+        ss.token(new Token("c", 0, Token.NORMAL));
+        String m = ShingleStage.marker(null) + "@0";
+        assertEquals(Arrays.asList(m, "a@1", "b@3", m, "c@0"), got);
+    }
+
+    @Test
+    public void testSamePosition() {
+        ss.startDocument("d1");
+        ss.token(new Token("x", 1, Token.NORMAL));
+        ss.token(new Token("y", 1, Token.NORMAL));
+        ss.token(new Token("z", 2, Token.NORMAL));
+        assertTrue(got.contains(sh("x", "z") + "@2"));
+        assertTrue(got.contains(sh("y", "z") + "@2"));
+        assertFalse(got.contains(sh("x", "y") + "@1"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.QueryConfig;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Timer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the evaluation of intersections.
+ */
+public class AndTest {
+
+    /**
+     * A query element that evaluates to a fixed set of documents.
+     */
+    static class Docs extends QueryElement {
+
+        int[] docs;
+
+        Docs(int... docs) {
+            this.docs = docs;
+        }
+
+        @Override
+        public ArrayGroup eval(ArrayGroup ag) {
+            ArrayGroup ret = new ArrayGroup(docs.clone(), docs.length);
+            return ag == null ? ret : ret.intersect(ag);
+        }
+
+        protected int calculateEstimatedSize() {
+            return docs.length;
+        }
+
+        protected List getQueryTerms(Comparator c) {
+            return new ArrayList();
+        }
+    }
+
+    /**
+     * Gets a query configuration whose time budget has already run out.
+     */
+    private static QueryConfig expired() throws InterruptedException {
+        QueryConfig qc = new QueryConfig();
+        qc.setMaxQueryTime(1);
+        assertTrue(qc.startQueryTimer(new Timer(true)));
+        while(!qc.timedOut()) {
+            Thread.sleep(5);
+        }
+        return qc;
+    }
+
+    private static And and(QueryConfig qc) {
+        And and = new And(new ArrayList<QueryElement>(Arrays.asList(
+                new Docs(1, 2, 3, 5, 8), new Docs(2, 3, 4))));
+        and.setQueryConfig(qc);
+        return and;
+    }
+
+    @Test
+    public void testTimedOut() throws Exception {
+        ArrayGroup ag = and(expired()).eval(null);
+        assertNotNull(ag);
+        assertEquals(5, ag.getSize());
+    }
+
+    @Test
+    public void testNegatedTimedOut() throws Exception {
+        QueryConfig qc = expired();
+        Not not = new Not(and(qc));
+        not.setQueryConfig(qc);
+        assertTrue(not.eval(null) instanceof NegativeGroup);
+    }
+}
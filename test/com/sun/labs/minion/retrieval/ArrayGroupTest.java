@@ -24,6 +24,7 @@
 
 package com.sun.labs.minion.retrieval;
 
+import java.util.Random;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -205,4 +206,105 @@ public class ArrayGroupTest {
         checkIntersect(scored[10], scored[12], scored[10].mult(2));
     }
     
+
+    /**
+     * Gets a sorted sample of distinct documents.
+     */
+    private static int[] sample(Random r, int n, int max) {
+        boolean[] in = new boolean[max];
+        for(int i = 0; i < n; ) {
+            int d = 1 + r.nextInt(max - 1);
+            if(!in[d]) {
+                in[d] = true;
+                i++;
+            }
+        }
+        int[] ret = new int[n];
+        for(int d = 0, p = 0; d < max; d++) {
+            if(in[d]) {
+                ret[p++] = d;
+            }
+        }
+        return ret;
+    }
+
+    private static ScoredGroup scored(int[] docs, float m) {
+        float[] s = new float[docs.length];
+        for(int i = 0; i < docs.length; i++) {
+            s[i] = docs[i] * m;
+        }
+        return new ScoredGroup(docs.clone(), s, docs.length);
+    }
+
+    private static void checkScores(ScoredGroup sg, float m) {
+        for(int i = 0; i < sg.size; i++) {
+            assertEquals(sg.docs[i] * m, sg.scores[i], 0.01);
+        }
+    }
+
+    /**
+     * Tests intersection and union for groups whose sizes are very
+     * different or which are dense enough to be combined using bit sets.
+     */
+    @Test
+    public void testSkewedIntersectAndUnion() {
+        Random r = new Random(42);
+        int max = 20000;
+        int[][] sizes = {{5, 15000}, {15000, 5}, {40, 2000}, {4000, 8000},
+            {200, 300}, {0, 100}, {100, 0}};
+        for(int[] sz : sizes) {
+            int[] d1 = sample(r, sz[0], max);
+            int[] d2 = sample(r, sz[1], max);
+            boolean[] in1 = new boolean[max];
+            boolean[] in2 = new boolean[max];
+            for(int d : d1) {
+                in1[d] = true;
+            }
+            for(int d : d2) {
+                in2[d] = true;
+            }
+            int nand = 0;
+            int nor = 0;
+            for(int d = 0; d < max; d++) {
+                nand += in1[d] && in2[d] ? 1 : 0;
+                nor += in1[d] || in2[d] ? 1 : 0;
+            }
+            ArrayGroup g1 = new ArrayGroup(d1.clone(), d1.length);
+            ArrayGroup g2 = new ArrayGroup(d2.clone(), d2.length);
+
+            ArrayGroup and = g1.intersect(g2);
+            assertEquals(nand, and.size);
+            for(int i = 0; i < and.size; i++) {
+                assertTrue(in1[and.docs[i]] && in2[and.docs[i]]);
+                assertTrue(i == 0 || and.docs[i - 1] < and.docs[i]);
+            }
+            assertEquals(and, ((ArrayGroup) g1.clone()).destructiveIntersect(
+                    g2));
+            assertEquals(and, ((ArrayGroup) g2.clone()).destructiveIntersect(
+                    g1));
+
+            ArrayGroup or = g1.union(g2);
+            assertEquals(nor, or.size);
+            for(int i = 1; i < or.size; i++) {
+                assertTrue(or.docs[i - 1] < or.docs[i]);
+            }
+
+            ScoredGroup s1 = scored(d1, 1);
+            ScoredGroup s2 = scored(d2, 2);
+            ScoredGroup sand = (ScoredGroup) s1.intersect(s2);
+            assertEquals(and, sand);
+            checkScores(sand, 3);
+            ScoredGroup gand = (ScoredGroup) g1.intersect(s2);
+            assertEquals(and, gand);
+            checkScores(gand, 2);
+            ScoredGroup sor = (ScoredGroup) s1.union(s2);
+            assertEquals(or, sor);
+            for(int i = 0; i < sor.size; i++) {
+                int d = sor.docs[i];
+                assertEquals(d * ((in1[d] ? 1 : 0) + (in2[d] ? 2 : 0)),
+                        sor.scores[i], 0.01);
+            }
+        }
+    }
+    
 }// ArrayGroupTest
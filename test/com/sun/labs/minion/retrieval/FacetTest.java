@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ *
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ *
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.FieldFrequency;
+import com.sun.labs.minion.FieldInfo;
+import com.sun.labs.minion.ResultSet;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.indexer.TestIndex;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for counting the values of saved fields in a result set.
+ */
+public class FacetTest {
+
+    static TestIndex index;
+
+    static SearchEngine e;
+
+    public FacetTest() {
+    }
+
+    private static long time(int year, int month, int day, int hour) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, day, hour, 0);
+        return cal.getTimeInMillis();
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        index = new TestIndex("facettest.idx");
+        index.defineSaved("tag", FieldInfo.Type.STRING);
+        index.defineSaved("size", FieldInfo.Type.INTEGER);
+        e = index.defineSaved("date", FieldInfo.Type.DATE);
+
+        //
+        // Document i has the tags t0 through t(i % 4), so tag tj is in the
+        // documents where i % 4 >= j.  Every document has tag t0 twice,
+        // which should only be counted once.
+        for(int i = 0; i < 200; i++) {
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("text", i % 2 == 0 ? "even" : "odd");
+            List<String> tags = new ArrayList<String>();
+            tags.add("t0");
+            for(int j = 0; j <= i % 4; j++) {
+                tags.add("t" + j);
+            }
+            m.put("tag", tags);
+            m.put("size", (long) (i % 5));
+            m.put("date", new Date(time(2008, i % 3, 1 + i % 7, i % 24)));
+            e.index("d" + i, m);
+            if(i == 99) {
+                e = index.reopen();
+            }
+        }
+        e = index.reopen();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        index.delete();
+    }
+
+    @Test
+    public void testMultiValued() throws Exception {
+        ResultSet rs = e.search("even <or> odd");
+        assertEquals(200, rs.size());
+        List<FieldFrequency> l = rs.facet("tag", 0);
+        assertEquals(4, l.size());
+        for(int j = 0; j < 4; j++) {
+            assertEquals("t" + j, l.get(j).getVal());
+            assertEquals(50 * (4 - j), l.get(j).getFreq());
+        }
+    }
+
+    @Test
+    public void testTopN() throws Exception {
+
+        //
+        // The even documents have sizes 0, 2, 4, 1, 3, ... so all sizes
+        // occur 20 times, and ties are broken by value.
+        List<FieldFrequency> l = e.search("even").facet("size", 3);
+        assertEquals(3, l.size());
+        for(int j = 0; j < 3; j++) {
+            assertEquals(new Long(j), l.get(j).getVal());
+            assertEquals(20, l.get(j).getFreq());
+        }
+        assertTrue(e.search("even").facet("text", 3).isEmpty());
+    }
+
+    @Test
+    public void testDateBuckets() throws Exception {
+        ResultSet rs = e.search("even <or> odd");
+        List<FieldFrequency> l = rs.facet("date", 0, Calendar.MONTH);
+        assertEquals(3, l.size());
+        int total = 0;
+        for(FieldFrequency ff : l) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTime((Date) ff.getVal());
+            assertEquals(1, cal.get(Calendar.DAY_OF_MONTH));
+            assertEquals(0, cal.get(Calendar.HOUR_OF_DAY));
+            total += ff.getFreq();
+        }
+        assertEquals(200, total);
+        assertEquals(new Date(time(2008, 0, 1, 0)), l.get(0).getVal());
+        assertEquals(67, l.get(0).getFreq());
+
+        l = rs.facet("date", 0, Calendar.DAY_OF_MONTH);
+        assertEquals(21, l.size());
+        total = 0;
+        for(FieldFrequency ff : l) {
+            total += ff.getFreq();
+        }
+        assertEquals(200, total);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedPeriod() throws Exception {
+        e.search("even").facet("date", 0, Calendar.ERA);
+    }
+}
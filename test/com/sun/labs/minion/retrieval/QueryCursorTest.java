@@ -0,0 +1,134 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the cursors used for document-at-a-time evaluation.
+ */
+public class QueryCursorTest {
+
+    /**
+     * A cursor over an array of documents, each of which has a score of 1.
+     */
+    static class ArrayCursor extends QueryCursor {
+
+        int[] docs;
+
+        int p = -1;
+
+        ArrayCursor(int... docs) {
+            this.docs = docs;
+        }
+
+        public boolean next() {
+            p++;
+            doc = p < docs.length ? docs[p] : NO_MORE_DOCS;
+            return doc != NO_MORE_DOCS;
+        }
+
+        public boolean advance(int target) {
+            while(doc < target && next());
+            return doc != NO_MORE_DOCS;
+        }
+
+        public float score() {
+            return 1;
+        }
+
+        public float getSquaredQueryWeight() {
+            return 1;
+        }
+
+        public int cost() {
+            return docs.length;
+        }
+    }
+
+    private static List<QueryCursor> list(QueryCursor... cs) {
+        return new ArrayList<QueryCursor>(Arrays.asList(cs));
+    }
+
+    private static String run(QueryCursor c) {
+        StringBuilder sb = new StringBuilder();
+        while(c.next()) {
+            sb.append(c.doc()).append(':').append((int) c.score()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void testAnd() {
+        QueryCursor c = new AndCursor(list(
+                new ArrayCursor(1, 2, 3, 5, 8, 13, 21, 34),
+                new ArrayCursor(2, 3, 4, 8, 21, 22),
+                new ArrayCursor(3, 8, 21, 50)),
+                list());
+        assertEquals("3:3 8:3 21:3", run(c));
+        assertFalse(c.next());
+        assertEquals(QueryCursor.NO_MORE_DOCS, c.doc());
+    }
+
+    @Test
+    public void testAndNot() {
+        QueryCursor c = new AndCursor(list(
+                new ArrayCursor(1, 2, 3, 5, 8, 13),
+                new ArrayCursor(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13)),
+                list(new ArrayCursor(2, 8), new ArrayCursor(13, 14)));
+        assertEquals("1:2 3:2 5:2", run(c));
+    }
+
+    @Test
+    public void testOr() {
+        QueryCursor c = new OrCursor(list(
+                new ArrayCursor(1, 4, 9),
+                new ArrayCursor(2, 4),
+                new ArrayCursor()));
+        assertEquals("1:1 2:1 4:2 9:1", run(c));
+        assertEquals(3, c.getSquaredQueryWeight(), 0);
+    }
+
+    @Test
+    public void testAdvance() {
+        QueryCursor c = new AndCursor(list(
+                new OrCursor(list(new ArrayCursor(1, 10, 20),
+                new ArrayCursor(5, 15, 25))),
+                new ArrayCursor(5, 10, 15, 20, 25)),
+                list());
+        assertTrue(c.advance(11));
+        assertEquals(15, c.doc());
+        assertTrue(c.advance(15));
+        assertEquals(15, c.doc());
+        assertTrue(c.next());
+        assertEquals(20, c.doc());
+        assertFalse(c.advance(26));
+        assertFalse(c.next());
+    }
+}
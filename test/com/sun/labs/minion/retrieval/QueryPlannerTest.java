@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import com.sun.labs.minion.query.Relation;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the query rewriting done by the query planner.
+ */
+public class QueryPlannerTest {
+
+    private static List<QueryElement> list(QueryElement... qes) {
+        return new ArrayList<QueryElement>(Arrays.asList(qes));
+    }
+
+    @Test
+    public void testFlatten() {
+        DictTerm a = new DictTerm("a");
+        DictTerm b = new DictTerm("b");
+        DictTerm c = new DictTerm("c");
+        DictTerm d = new DictTerm("d");
+        And and = new And(list(a, new And(list(b, new And(list(c)))),
+                new Or(list(d))));
+        QueryElement qe = new QueryPlanner().optimize(and);
+        assertSame(and, qe);
+        List ops = and.getOperands();
+        assertEquals(4, ops.size());
+        assertSame(a, ops.get(0));
+        assertSame(b, ops.get(1));
+        assertSame(c, ops.get(2));
+        assertTrue(ops.get(3) instanceof Or);
+    }
+
+    @Test
+    public void testNoFlattenStrict() {
+        And inner = new And(list(new DictTerm("b"), new DictTerm("c")));
+        inner.strictEval = true;
+        And and = new And(list(new DictTerm("a"), inner));
+        new QueryPlanner().optimize(and);
+        assertEquals(2, and.getOperands().size());
+        assertSame(inner, and.getOperands().get(1));
+    }
+
+    @Test
+    public void testRanges() {
+        FieldTerm lt = new FieldTerm("num", Relation.Operator.LESS_THAN, "25");
+        FieldTerm geq = new FieldTerm("num", Relation.Operator.GEQ, "1");
+        DictTerm a = new DictTerm("a");
+        And and = new And(list(lt, a, new And(list(geq))));
+        new QueryPlanner().optimize(and);
+        List ops = and.getOperands();
+        assertEquals(2, ops.size());
+        FieldTerm range = (FieldTerm) ops.get(0);
+        assertEquals(Relation.Operator.RANGE, range.getOp());
+        assertSame(a, ops.get(1));
+    }
+
+    @Test
+    public void testStrategy() {
+        assertEquals(QueryPlanner.Strategy.MERGE,
+                QueryPlanner.getStrategy(100, 50));
+        assertEquals(QueryPlanner.Strategy.GALLOP,
+                QueryPlanner.getStrategy(100000, 50));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+package com.sun.labs.minion.retrieval;
+
+import com.sun.labs.minion.Result;
+import com.sun.labs.minion.ResultCursor;
+import com.sun.labs.minion.ResultSet;
+import com.sun.labs.minion.SearchEngine;
+import com.sun.labs.minion.SearchEngineException;
+import com.sun.labs.minion.indexer.TestIndex;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for getting results with a result cursor.
+ */
+public class ResultCursorTest {
+
+    static TestIndex index;
+
+    static SearchEngine e;
+
+    public ResultCursorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        index = new TestIndex("cursortest.idx");
+        e = index.getEngine();
+        Random r = new Random(5);
+        for(int i = 0; i < 600; i++) {
+            StringBuilder sb = new StringBuilder();
+            int n = 5 + r.nextInt(40);
+            for(int j = 0; j < n; j++) {
+                sb.append("t").append(r.nextInt(30)).append(' ');
+            }
+            Map<String, Object> m = new HashMap<String, Object>();
+            m.put("text", sb.toString());
+            e.index("d" + i, m);
+            if(i == 299) {
+                e = index.reopen();
+            }
+        }
+        e = index.reopen();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        index.delete();
+    }
+
+    /**
+     * Checks that the pages from a cursor add up to all of the results, in
+     * sorted order.
+     */
+    private void checkPages(String query, String sortSpec, int pageSize)
+            throws SearchEngineException {
+        ResultSet rs = e.search(query, sortSpec);
+        List<Result> all = rs.getAllResults(true);
+        assertTrue(all.size() > pageSize);
+
+        ResultCursor c = rs.cursor();
+        List<Result> got = new ArrayList<Result>();
+        while(c.hasNext()) {
+            List<Result> page = c.next(pageSize);
+            assertTrue(page.size() <= pageSize);
+            got.addAll(page);
+        }
+        assertTrue(c.next(pageSize).isEmpty());
+        assertEquals(all.size(), got.size());
+
+        Set<String> keys = new HashSet<String>();
+        for(int i = 0; i < got.size(); i++) {
+            assertTrue(keys.add(got.get(i).getKey()));
+            assertEquals(0, ((ResultImpl) all.get(i)).compareTo(got.get(i)));
+        }
+    }
+
+    @Test
+    public void testScorePages() throws SearchEngineException {
+        checkPages("t1 <or> t2", "-score", 1);
+        checkPages("t1 <or> t2", "-score", 17);
+    }
+
+    @Test
+    public void testSortedPages() throws SearchEngineException {
+        checkPages("t3 <or> t4", "+score", 23);
+    }
+}
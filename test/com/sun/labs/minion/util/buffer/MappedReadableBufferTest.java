@@ -0,0 +1,112 @@
+/*
+ * Copyright 2007-2008 Sun Microsystems, Inc. All Rights Reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER
+ * 
+ * This code is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2
+ * only, as published by the Free Software Foundation.
+ * 
+ * This code is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details (a copy is
+ * included in the LICENSE file that accompanied this code).
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ * 
+ * Please contact Sun Microsystems, Inc., 16 Network Circle, Menlo
+ * Park, CA 94025 or visit www.sun.com if you need additional
+ * information or have any questions.
+ */
+
+package com.sun.labs.minion.util.buffer;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the memory mapped buffer.
+ */
+public class MappedReadableBufferTest {
+
+    private File f;
+
+    private RandomAccessFile raf;
+
+    public MappedReadableBufferTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        f = File.createTempFile("mapped", ".buf");
+        raf = new RandomAccessFile(f, "rw");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        raf.close();
+        f.delete();
+    }
+
+    @Test
+    public void testViewAndDecode() throws Exception {
+        ArrayBuffer b = new ArrayBuffer(1024);
+        b.put((byte) 7);
+        for(int i = 0; i < 1000; i++) {
+            b.byteEncode(i * 37);
+        }
+        b.byteEncode(((long) Integer.MAX_VALUE) + 10);
+        int size = b.position();
+        raf.write(new byte[100]);
+        b.write(raf);
+
+        MappedReadableBuffer file = new MappedReadableBuffer(raf);
+        ReadableBuffer v = file.view(100, size);
+        assertEquals(size, v.limit());
+        assertEquals(7, v.get());
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(i * 37, v.byteDecode());
+        }
+        assertEquals(((long) Integer.MAX_VALUE) + 10, v.byteDecodeLong());
+        assertEquals(0, v.remaining());
+
+        ReadableBuffer d = v.duplicate();
+        assertEquals(v.position(), d.position());
+        d.position(0);
+        assertEquals(7, d.get());
+        assertEquals(size, v.position());
+
+        ReadableBuffer s = v.slice(1, 10);
+        assertEquals(10, s.limit());
+        assertEquals(0, s.byteDecode());
+        assertEquals(37, s.byteDecode());
+    }
+
+    @Test
+    public void testAcrossSegments() throws Exception {
+        long boundary = MappedReadableBuffer.SEGMENT_SIZE;
+        byte[] data = new byte[300];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        raf.setLength(boundary + 200);
+        raf.seek(boundary - 100);
+        raf.write(data);
+
+        MappedReadableBuffer file = new MappedReadableBuffer(raf);
+        ReadableBuffer v = file.view(boundary - 100, data.length);
+        for(int i = 0; i < data.length; i++) {
+            assertEquals(data[i], v.get(i));
+        }
+        byte[] got = new byte[data.length];
+        v.get(got, 0, got.length);
+        assertArrayEquals(data, got);
+    }
+}